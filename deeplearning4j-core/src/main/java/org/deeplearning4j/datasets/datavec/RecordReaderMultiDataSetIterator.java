@@ -28,7 +28,6 @@ import org.datavec.api.records.metadata.RecordMetaData;
 import org.datavec.api.records.metadata.RecordMetaDataComposableMap;
 import org.datavec.api.records.reader.RecordReader;
 import org.datavec.api.records.reader.SequenceRecordReader;
-import org.datavec.api.util.ndarray.RecordConverter;
 import org.datavec.api.writable.NDArrayWritable;
 import org.datavec.api.writable.Writable;
 import org.deeplearning4j.datasets.datavec.exception.ZeroLengthSequenceException;
@@ -86,6 +85,10 @@ public class RecordReaderMultiDataSetIterator implements MultiDataSetIterator, S
 
     private MultiDataSetPreProcessor preProcessor;
 
+    // primitive staging buffers of the arrays and mask arrays of every subset, reused between minibatches
+    private transient Map<SubsetDetails, WritableStagingBuffer> stagingBuffers;
+    private transient Map<SubsetDetails, WritableStagingBuffer> maskStagingBuffers;
+
     private RecordReaderMultiDataSetIterator(Builder builder) {
         this.batchSize = builder.batchSize;
         this.alignmentMode = builder.alignmentMode;
@@ -352,81 +355,83 @@ public class RecordReaderMultiDataSetIterator implements MultiDataSetIterator, S
     }
 
     private INDArray convertWritables(List<List<Writable>> list, int minValues, SubsetDetails details) {
-        INDArray arr;
+        //Special case: a single NDArrayWritable with more than 2 dimensions (example: ImageRecordReader)
+        int column = -1;
+        if (details.entireReader && list.get(0).size() == 1)
+            column = 0;
+        else if (!details.entireReader && !details.oneHot && details.subsetStart == details.subsetEndInclusive)
+            column = details.subsetStart;
+        if (column >= 0 && list.get(0).get(column) instanceof NDArrayWritable
+                        && ((NDArrayWritable) list.get(0).get(column)).get().rank() > 2) {
+            INDArray temp = ((NDArrayWritable) list.get(0).get(column)).get();
+            int[] shape = ArrayUtils.clone(temp.shape());
+            shape[0] = minValues;
+            INDArray arr = Nd4j.create(shape);
+            for (int i = 0; i < minValues; i++)
+                putExample(arr, ((NDArrayWritable) list.get(i).get(column)).get(), i);
+            return arr;
+        }
+
+        //Everything else is a matrix: write the rows into a primitive buffer and create the array in one go
+        int columns;
         if (details.entireReader) {
-            if (list.get(0).size() == 1 && list.get(0).get(0) instanceof NDArrayWritable) {
-                //Special case: single NDArrayWritable...
-                INDArray temp = ((NDArrayWritable) list.get(0).get(0)).get();
-                int[] shape = ArrayUtils.clone(temp.shape());
-                shape[0] = minValues;
-                arr = Nd4j.create(shape);
-            } else {
-                arr = Nd4j.create(minValues, countLength(list.get(0)));
-            }
+            columns = countLength(list.get(0));
         } else if (details.oneHot) {
-            arr = Nd4j.zeros(minValues, details.oneHotNumClasses);
+            columns = details.oneHotNumClasses;
         } else {
-            if (details.subsetStart == details.subsetEndInclusive
-                            && list.get(0).get(details.subsetStart) instanceof NDArrayWritable) {
-                //Special case: single NDArrayWritable (example: ImageRecordReader)
-                INDArray temp = ((NDArrayWritable) list.get(0).get(details.subsetStart)).get();
-                int[] shape = ArrayUtils.clone(temp.shape());
-                shape[0] = minValues;
-                arr = Nd4j.create(shape);
-            } else {
-                //Need to check for multiple NDArrayWritables, or mixed NDArrayWritable + DoubleWritable etc
-                int length = countLength(list.get(0), details.subsetStart, details.subsetEndInclusive);
-                arr = Nd4j.create(minValues, length);
-            }
+            //Need to check for multiple NDArrayWritables, or mixed NDArrayWritable + DoubleWritable etc
+            columns = countLength(list.get(0), details.subsetStart, details.subsetEndInclusive);
         }
 
+        WritableStagingBuffer buffer = stagingBuffer(details, false);
+        buffer.reset(minValues * columns, 0.0);
         for (int i = 0; i < minValues; i++) {
             List<Writable> c = list.get(i);
-            if (details.entireReader) {
-                //Convert entire reader contents, without modification
-                INDArray converted = RecordConverter.toArray(c);
-                putExample(arr, converted, i);
-            } else if (details.oneHot) {
+            int offset = i * columns;
+            if (details.oneHot) {
                 //Convert a single column to a one-hot representation
                 Writable w = c.get(details.subsetStart);
                 //Index of class
                 int classIdx = w.toInt();
-                if (classIdx >= details.oneHotNumClasses) {
-                    throw new DL4JException("Cannot convert sequence writables to one-hot: class index " + classIdx
-                                    + " >= numClass (" + details.oneHotNumClasses + ")");
+                if (classIdx < 0 || classIdx >= details.oneHotNumClasses) {
+                    throw new DL4JException("Cannot convert writables to one-hot: class index " + classIdx
+                                    + " is not in [0, numClass) (numClass = " + details.oneHotNumClasses + ")");
                 }
-                arr.putScalar(i, w.toInt(), 1.0);
+                buffer.put(offset + classIdx, 1.0);
             } else {
-                //Convert a subset of the columns
-
-                //Special case: subsetStart == subsetEndInclusive && NDArrayWritable. Example: ImageRecordReader
-                if (details.subsetStart == details.subsetEndInclusive
-                                && (c.get(details.subsetStart) instanceof NDArrayWritable)) {
-                    putExample(arr, ((NDArrayWritable) c.get(details.subsetStart)).get(), i);
-                } else {
-
-                    Iterator<Writable> iter = c.iterator();
-                    for (int j = 0; j < details.subsetStart; j++)
-                        iter.next();
-                    int k = 0;
-                    for (int j = details.subsetStart; j <= details.subsetEndInclusive; j++) {
-                        Writable w = iter.next();
-
-                        if (w instanceof NDArrayWritable) {
-                            INDArray toPut = ((NDArrayWritable) w).get();
-                            arr.put(new INDArrayIndex[] {NDArrayIndex.point(i),
-                                            NDArrayIndex.interval(k, k + toPut.length())}, toPut);
-                            k += toPut.length();
-                        } else {
-                            arr.putScalar(i, k, w.toDouble());
-                            k++;
-                        }
+                //Convert the entire reader contents, or a subset of the columns
+                int from = details.entireReader ? 0 : details.subsetStart;
+                int to = details.entireReader ? c.size() - 1 : details.subsetEndInclusive;
+                Iterator<Writable> iter = c.iterator();
+                for (int j = 0; j < from; j++)
+                    iter.next();
+                int k = 0;
+                for (int j = from; j <= to; j++) {
+                    Writable w = iter.next();
+                    if (k + WritableStagingBuffer.length(w) > columns) {
+                        throw new DL4JException("Example " + i + " has more than " + columns
+                                        + " values, the number of values of the first example in the minibatch");
                     }
+                    k += buffer.put(offset + k, 1, w);
                 }
             }
         }
 
-        return arr;
+        return buffer.toArray(new int[] {minValues, columns}, 'c');
+    }
+
+    private WritableStagingBuffer stagingBuffer(SubsetDetails details, boolean mask) {
+        if (stagingBuffers == null) {
+            stagingBuffers = new IdentityHashMap<>();
+            maskStagingBuffers = new IdentityHashMap<>();
+        }
+        Map<SubsetDetails, WritableStagingBuffer> buffers = mask ? maskStagingBuffers : stagingBuffers;
+        WritableStagingBuffer buffer = buffers.get(details);
+        if (buffer == null) {
+            buffer = new WritableStagingBuffer();
+            buffers.put(details, buffer);
+        }
+        return buffer;
     }
 
     private void putExample(INDArray arr, INDArray singleExample, int exampleIdx) {
@@ -454,7 +459,6 @@ public class RecordReaderMultiDataSetIterator implements MultiDataSetIterator, S
                     int maxTSLength, SubsetDetails details, int[] longestSequence, long rngSeed) {
         if (maxTSLength == -1)
             maxTSLength = list.get(0).size();
-        INDArray arr;
 
         if (list.get(0).size() == 0) {
             throw new ZeroLengthSequenceException("Zero length sequence encountered");
@@ -485,7 +489,9 @@ public class RecordReaderMultiDataSetIterator implements MultiDataSetIterator, S
                 }
             }
         }
-        arr = Nd4j.create(new int[] {minValues, size, maxTSLength}, 'f');
+        //Values are staged in 'f' order: (i, j, k) is at i + minValues * (j + size * k)
+        WritableStagingBuffer buffer = stagingBuffer(details, false);
+        buffer.reset(minValues * size * maxTSLength, 0.0);
 
         boolean needMaskArray = false;
         for (List<List<Writable>> c : list) {
@@ -499,11 +505,10 @@ public class RecordReaderMultiDataSetIterator implements MultiDataSetIterator, S
                                             + "encountered. Use AlignmentMode.ALIGN_START or AlignmentMode.ALIGN_END with variable length data");
         }
 
-        INDArray maskArray;
+        WritableStagingBuffer maskBuffer = null;
         if (needMaskArray) {
-            maskArray = Nd4j.ones(minValues, maxTSLength);
-        } else {
-            maskArray = null;
+            maskBuffer = stagingBuffer(details, true);
+            maskBuffer.reset(minValues * maxTSLength, 1.0);
         }
 
         //Don't use the global RNG as we need repeatability for each subset (i.e., features and labels must be aligned)
@@ -534,6 +539,7 @@ public class RecordReaderMultiDataSetIterator implements MultiDataSetIterator, S
             int k;
             for (List<Writable> timeStep : sequence) {
                 k = startOffset + t++;
+                int offset = i + minValues * size * k;
 
                 if (details.entireReader) {
                     //Convert entire reader contents, without modification
@@ -541,17 +547,8 @@ public class RecordReaderMultiDataSetIterator implements MultiDataSetIterator, S
                     int j = 0;
                     while (iter.hasNext()) {
                         Writable w = iter.next();
-
-                        if (w instanceof NDArrayWritable) {
-                            INDArray row = ((NDArrayWritable) w).get();
-
-                            arr.put(new INDArrayIndex[] {NDArrayIndex.point(i),
-                                            NDArrayIndex.interval(j, j + row.length()), NDArrayIndex.point(k)}, row);
-                            j += row.length();
-                        } else {
-                            arr.putScalar(i, j, k, w.toDouble());
-                            j++;
-                        }
+                        checkTimeStepLength(j + WritableStagingBuffer.length(w), size, i);
+                        j += buffer.put(offset + minValues * j, minValues, w);
                     }
                 } else if (details.oneHot) {
                     //Convert a single column to a one-hot representation
@@ -564,26 +561,18 @@ public class RecordReaderMultiDataSetIterator implements MultiDataSetIterator, S
                             w = iter.next();
                     }
                     int classIdx = w.toInt();
-                    if (classIdx >= details.oneHotNumClasses) {
+                    if (classIdx < 0 || classIdx >= details.oneHotNumClasses) {
                         throw new DL4JException("Cannot convert sequence writables to one-hot: class index " + classIdx
-                                        + " >= numClass (" + details.oneHotNumClasses + ")");
+                                        + " is not in [0, numClass) (numClass = " + details.oneHotNumClasses + ")");
                     }
-                    arr.putScalar(i, classIdx, k, 1.0);
+                    buffer.put(offset + minValues * classIdx, 1.0);
                 } else {
                     //Convert a subset of the columns...
                     int l = 0;
                     for (int j = details.subsetStart; j <= details.subsetEndInclusive; j++) {
                         Writable w = timeStep.get(j);
-
-                        if (w instanceof NDArrayWritable) {
-                            INDArray row = ((NDArrayWritable) w).get();
-                            arr.put(new INDArrayIndex[] {NDArrayIndex.point(i),
-                                            NDArrayIndex.interval(l, l + row.length()), NDArrayIndex.point(k)}, row);
-
-                            l += row.length();
-                        } else {
-                            arr.putScalar(i, l++, k, w.toDouble());
-                        }
+                        checkTimeStepLength(l + WritableStagingBuffer.length(w), size, i);
+                        l += buffer.put(offset + minValues * l, minValues, w);
                     }
                 }
             }
@@ -593,7 +582,7 @@ public class RecordReaderMultiDataSetIterator implements MultiDataSetIterator, S
                 //Masking array entries at start (for align end)
                 if (timeSeriesRandomOffset || alignmentMode == AlignmentMode.ALIGN_END) {
                     for (int t2 = 0; t2 < startOffset; t2++) {
-                        maskArray.putScalar(i, t2, 0.0);
+                        maskBuffer.put(i * maxTSLength + t2, 0.0);
                     }
                 }
 
@@ -601,15 +590,24 @@ public class RecordReaderMultiDataSetIterator implements MultiDataSetIterator, S
                 if (timeSeriesRandomOffset || alignmentMode == AlignmentMode.ALIGN_START) {
                     int lastStep = startOffset + sequence.size();
                     for (int t2 = lastStep; t2 < maxTSLength; t2++) {
-                        maskArray.putScalar(i, t2, 0.0);
+                        maskBuffer.put(i * maxTSLength + t2, 0.0);
                     }
                 }
             }
         }
 
+        INDArray arr = buffer.toArray(new int[] {minValues, size, maxTSLength}, 'f');
+        INDArray maskArray = needMaskArray ? maskBuffer.toArray(new int[] {minValues, maxTSLength}, 'c') : null;
         return new Pair<>(arr, maskArray);
     }
 
+    private static void checkTimeStepLength(int length, int size, int example) {
+        if (length > size) {
+            throw new DL4JException("Time step of example " + example + " has more than " + size
+                            + " values, the number of values of the first time step in the minibatch");
+        }
+    }
+
     @Override
     public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
         this.preProcessor = preProcessor;
@@ -0,0 +1,117 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.datasets.datavec;
+
+import org.datavec.api.writable.NDArrayWritable;
+import org.datavec.api.writable.Writable;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * Primitive staging buffer for converting writables to an INDArray.
+ *
+ * Values are written to a plain float[] (double[] when the global data type is double) at their offset in the
+ * final array, which is then created from the buffer with a single bulk copy, instead of a putScalar or an
+ * indexed put per value. The primitive array is reused as long as consecutive minibatches have the same size.
+ *
+ * Not thread safe: every iterator keeps its own buffers.
+ */
+class WritableStagingBuffer {
+    private boolean useDouble;
+    private float[] floats;
+    private double[] doubles;
+
+    /**
+     * Prepares the buffer for an array with the given number of values, all set to fill
+     */
+    void reset(int length, double fill) {
+        this.useDouble = Nd4j.dataType() == DataBuffer.Type.DOUBLE;
+        if (useDouble) {
+            floats = null;
+            if (doubles == null || doubles.length != length)
+                doubles = new double[length];
+            Arrays.fill(doubles, fill);
+        } else {
+            doubles = null;
+            if (floats == null || floats.length != length)
+                floats = new float[length];
+            Arrays.fill(floats, (float) fill);
+        }
+    }
+
+    void put(int index, double value) {
+        if (useDouble)
+            doubles[index] = value;
+        else
+            floats[index] = (float) value;
+    }
+
+    /**
+     * Writes the values of a writable to offset, offset + stride, ...: a single value, or all values of
+     * an NDArrayWritable row vector
+     *
+     * @return the number of values written
+     */
+    int put(int offset, int stride, Writable w) {
+        if (!(w instanceof NDArrayWritable)) {
+            put(offset, w.toDouble());
+            return 1;
+        }
+
+        INDArray row = ((NDArrayWritable) w).get();
+        if (row.isView())
+            row = row.dup();
+        int n = row.length();
+        if (useDouble) {
+            double[] values = row.data().asDouble();
+            if (stride == 1) {
+                System.arraycopy(values, 0, doubles, offset, n);
+            } else {
+                for (int i = 0; i < n; i++)
+                    doubles[offset + i * stride] = values[i];
+            }
+        } else {
+            float[] values = row.data().asFloat();
+            if (stride == 1) {
+                System.arraycopy(values, 0, floats, offset, n);
+            } else {
+                for (int i = 0; i < n; i++)
+                    floats[offset + i * stride] = values[i];
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return a new array with the given shape and order holding a copy of the buffer
+     */
+    INDArray toArray(int[] shape, char order) {
+        return useDouble ? Nd4j.create(doubles, shape, order) : Nd4j.create(floats, shape, order);
+    }
+
+    /**
+     * @return the number of values a writable contributes to an example: its length for NDArrayWritables, 1 otherwise
+     */
+    static int length(Writable w) {
+        return w instanceof NDArrayWritable ? ((NDArrayWritable) w).get().length() : 1;
+    }
+}
@@ -20,11 +20,14 @@
 package org.deeplearning4j.plot;
 
 
-import com.google.common.util.concurrent.AtomicDouble;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.math3.util.FastMath;
+import org.deeplearning4j.clustering.nndescent.KnnGraph;
+import org.deeplearning4j.clustering.nndescent.NNDescent;
 import org.deeplearning4j.clustering.sptree.DataPoint;
-import org.deeplearning4j.clustering.sptree.SpTree;
+import org.deeplearning4j.clustering.sptree.FlatSpTree;
+import org.deeplearning4j.clustering.util.MultiThreadUtils;
+import org.deeplearning4j.clustering.util.MultiThreadUtils.RangeBody;
 import org.deeplearning4j.clustering.vptree.VPTree;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
@@ -45,12 +48,14 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.nd4j.linalg.factory.Nd4j.*;
-import static org.nd4j.linalg.ops.transforms.Transforms.pow;
 import static org.nd4j.linalg.ops.transforms.Transforms.sign;
 
 
@@ -82,24 +87,41 @@ public class BarnesHutTsne implements Model {
     protected INDArray Y;
     private int N;
     private double theta;
-    private INDArray rows;
-    private INDArray cols;
-    private INDArray vals;
+    // sparse P matrix in CSR format
+    private int[] rowP;
+    private int[] colP;
+    private double[] valP;
     private String simiarlityFunction = "cosinesimilarity";
     private boolean invert = true;
     private INDArray x;
     private int numDimensions = 0;
     public final static String Y_GRAD = "yIncs";
-    private SpTree tree;
+    // reused across iterations, only its contents are rebuilt
+    private transient FlatSpTree tree;
     private INDArray gains;
     private INDArray yIncs;
     protected transient IterationListener iterationListener;
+    protected int workers = Runtime.getRuntime().availableProcessors();
+    // find the input neighbours with NN-descent instead of an exact VPTree search per point
+    protected boolean approximateNeighbors = false;
+    // only set while a fit() or another public parallel method is running, see acquirePool()
+    private transient ForkJoinPool pool;
 
     public BarnesHutTsne(int numDimensions, String simiarlityFunction, double theta, boolean invert, int maxIter,
                     double realMin, double initialMomentum, double finalMomentum, double momentum,
                     int switchMomentumIteration, boolean normalize, int stopLyingIteration, double tolerance,
                     double learningRate, boolean useAdaGrad, double perplexity, IterationListener iterationListener,
                     double minGain) {
+        this(numDimensions, simiarlityFunction, theta, invert, maxIter, realMin, initialMomentum, finalMomentum,
+                        momentum, switchMomentumIteration, normalize, stopLyingIteration, tolerance, learningRate,
+                        useAdaGrad, perplexity, iterationListener, minGain, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BarnesHutTsne(int numDimensions, String simiarlityFunction, double theta, boolean invert, int maxIter,
+                    double realMin, double initialMomentum, double finalMomentum, double momentum,
+                    int switchMomentumIteration, boolean normalize, int stopLyingIteration, double tolerance,
+                    double learningRate, boolean useAdaGrad, double perplexity, IterationListener iterationListener,
+                    double minGain, int workers) {
         this.maxIter = maxIter;
         this.realMin = realMin;
         this.initialMomentum = initialMomentum;
@@ -118,6 +140,7 @@ public class BarnesHutTsne implements Model {
         this.theta = theta;
         this.iterationListener = iterationListener;
         this.invert = invert;
+        this.workers = workers;
     }
 
 
@@ -153,6 +176,22 @@ public class BarnesHutTsne implements Model {
         this.numDimensions = numDimensions;
     }
 
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public boolean isApproximateNeighbors() {
+        return approximateNeighbors;
+    }
+
+    public void setApproximateNeighbors(boolean approximateNeighbors) {
+        this.approximateNeighbors = approximateNeighbors;
+    }
+
     /**
      * Convert data to probability
      * co-occurrences (aka calculating the kernel)
@@ -166,84 +205,109 @@ public class BarnesHutTsne implements Model {
         final int k = (int) (3 * u);
         if (u > k)
             throw new IllegalStateException("Illegal k value " + k + "greater than " + u);
+        if (N - 1 < k)
+            throw new IllegalStateException("Perplexity " + u + " too large for the number of data points " + N);
 
-
-        rows = zeros(1, N + 1);
-        cols = zeros(1, N * k);
-        vals = zeros(1, N * k);
+        rowP = new int[N + 1];
+        colP = new int[N * k];
+        valP = new double[N * k];
 
         for (int n = 0; n < N; n++)
-            rows.putScalar(n + 1, rows.getDouble(n) + k);
-
-
-        final INDArray beta = ones(N, 1);
+            rowP[n + 1] = rowP[n] + k;
 
         final double logU = FastMath.log(u);
-        VPTree tree = new VPTree(d, simiarlityFunction, invert);
+        final VPTree tree;
+        final KnnGraph graph;
+        if (approximateNeighbors) {
+            tree = null;
+            graph = new NNDescent.Builder().k(k).similarityFunction(simiarlityFunction).invertDistanceMetric(invert)
+                            .workers(workers).build().build(d);
+        } else {
+            tree = new VPTree(d, simiarlityFunction, workers, invert);
+            graph = null;
+        }
+        final AtomicInteger handled = new AtomicInteger();
 
         log.info("Calculating probabilities of data similarities...");
-        for (int i = 0; i < N; i++) {
-            if (i % 500 == 0)
-                log.info("Handled " + i + " records");
-
-            double betaMin = -Double.MAX_VALUE;
-            double betaMax = Double.MAX_VALUE;
-            List<DataPoint> results = new ArrayList<>();
-            tree.search(d.slice(i), k + 1, results, new ArrayList<Double>());
-            double betas = beta.getDouble(i);
-
-            INDArray cArr = VPTree.buildFromData(results);
-            Pair<INDArray, Double> pair = computeGaussianKernel(cArr, beta.getDouble(i), k);
-            INDArray currP = pair.getFirst();
-            double hDiff = pair.getSecond() - logU;
-            int tries = 0;
-            boolean found = false;
-            //binary search
-            while (!found && tries < 200) {
-                if (hDiff < tolerance && -hDiff < tolerance)
-                    found = true;
-                else {
-                    if (hDiff > 0) {
-                        betaMin = betas;
-
-                        if (betaMax == Double.MAX_VALUE || betaMax == -Double.MAX_VALUE)
-                            betas *= 2;
-                        else
-                            betas = (betas + betaMax) / 2.0;
+        parallelFor(0, N, 16, new RangeBody() {
+            @Override
+            public void apply(int from, int to) {
+                List<DataPoint> results = new ArrayList<>();
+                List<Double> distances = new ArrayList<>();
+                double[] dist = new double[k];
+                double[] currP = new double[k];
+
+                for (int i = from; i < to; i++) {
+                    if (handled.incrementAndGet() % 500 == 0)
+                        log.info("Handled " + handled.get() + " records");
+
+                    if (graph != null) {
+                        for (int m = 0; m < k; m++)
+                            dist[m] = graph.getDistance(i, m);
                     } else {
-                        betaMax = betas;
-                        if (betaMin == -Double.MAX_VALUE || betaMin == Double.MAX_VALUE)
-                            betas /= 2.0;
-                        else
-                            betas = (betas + betaMin) / 2.0;
+                        // the first result is the point itself
+                        tree.search(d.getRow(i), k + 1, results, distances);
+                        for (int m = 0; m < k; m++)
+                            dist[m] = distances.get(m + 1);
                     }
 
-                    pair = computeGaussianKernel(cArr, betas, k);
-                    hDiff = pair.getSecond() - logU;
-                    tries++;
-                }
-
-            }
+                    double betaMin = -Double.MAX_VALUE;
+                    double betaMax = Double.MAX_VALUE;
+                    double betas = 1.0;
+                    double hDiff = computeGaussianKernel(dist, betas, currP) - logU;
+                    int tries = 0;
+                    //binary search
+                    while (tries < 200 && (hDiff >= tolerance || -hDiff >= tolerance)) {
+                        if (hDiff > 0) {
+                            betaMin = betas;
+
+                            if (betaMax == Double.MAX_VALUE || betaMax == -Double.MAX_VALUE)
+                                betas *= 2;
+                            else
+                                betas = (betas + betaMax) / 2.0;
+                        } else {
+                            betaMax = betas;
+                            if (betaMin == -Double.MAX_VALUE || betaMin == Double.MAX_VALUE)
+                                betas /= 2.0;
+                            else
+                                betas = (betas + betaMin) / 2.0;
+                        }
 
+                        hDiff = computeGaussianKernel(dist, betas, currP) - logU;
+                        tries++;
+                    }
 
-            currP.divi(currP.sum(Integer.MAX_VALUE));
-            INDArray indices = Nd4j.create(1, k + 1);
-            for (int j = 0; j < indices.length(); j++) {
-                if (j >= results.size())
-                    break;
-                indices.putScalar(j, results.get(j).getIndex());
-            }
+                    double sum = 0.0;
+                    for (int m = 0; m < k; m++)
+                        sum += currP[m];
 
-            for (int l = 0; l < k; l++) {
-                cols.putScalar(rows.getInt(i) + l, indices.getDouble(l + 1));
-                vals.putScalar(rows.getInt(i) + l, currP.getDouble(l));
+                    int offset = rowP[i];
+                    for (int l = 0; l < k; l++) {
+                        colP[offset + l] = graph != null ? graph.getIndex(i, l) : results.get(l + 1).getIndex();
+                        valP[offset + l] = currP[l] / sum;
+                    }
+                }
             }
+        });
 
+        return Nd4j.create(valP);
+    }
 
-
+    /**
+     * Fills currP with the gaussian kernel of the given distances and returns the entropy
+     */
+    private static double computeGaussianKernel(double[] distances, double beta, double[] currP) {
+        double sum = Double.MIN_VALUE;
+        for (int m = 0; m < distances.length; m++) {
+            currP[m] = FastMath.exp(-beta * distances[m]);
+            sum += currP[m];
         }
-        return vals;
 
+        double h = 0.0;
+        for (int m = 0; m < distances.length; m++)
+            h += beta * (distances[m] * currP[m]);
+
+        return (h / sum) + FastMath.log(sum);
     }
 
     @Override
@@ -319,86 +383,121 @@ public class BarnesHutTsne implements Model {
      * @return
      */
     public INDArray symmetrized(INDArray rowP, INDArray colP, INDArray valP) {
-        INDArray rowCounts = Nd4j.create(N);
-        for (int n = 0; n < N; n++) {
-            int begin = rowP.getInt(n);
-            int end = rowP.getInt(n + 1);
-            for (int i = begin; i < end; i++) {
-                boolean present = false;
-                for (int m = rowP.getInt(colP.getInt(i)); m < rowP.getInt(colP.getInt(i) + 1); m++)
-                    if (colP.getInt(m) == n) {
-                        present = true;
-                    }
-
-
-                if (present)
-                    rowCounts.putScalar(n, rowCounts.getDouble(n) + 1);
+        boolean ownsPool = acquirePool();
+        try {
+            symmetrized(rowP.dup().data().asInt(), colP.dup().data().asInt(), valP.dup().data().asDouble());
+        } finally {
+            releasePool(ownsPool);
+        }
+        return Nd4j.create(this.valP);
+    }
 
-                else {
-                    rowCounts.putScalar(n, rowCounts.getDouble(n) + 1);
-                    rowCounts.putScalar(colP.getInt(i), rowCounts.getDouble(colP.getInt(i)) + 1);
+    /**
+     * Symmetrize the sparse P matrix, replacing {@link #rowP}, {@link #colP} and {@link #valP}
+     * with the symmetric matrix (P + P^T) / 2
+     */
+    private void symmetrized(final int[] rowP, final int[] colP, final double[] valP) {
+        final int N = rowP.length - 1;
+
+        // Sort every row by column so that the transposed element can be found with a binary search
+        parallelFor(0, N, 256, new RangeBody() {
+            @Override
+            public void apply(int from, int to) {
+                for (int n = from; n < to; n++)
+                    sortRow(colP, valP, rowP[n], rowP[n + 1]);
+            }
+        });
+
+        // Position of element (colP[i], n) for every element (n, colP[i]), or -1 if not present
+        final int[] transposed = new int[colP.length];
+        parallelFor(0, N, 256, new RangeBody() {
+            @Override
+            public void apply(int from, int to) {
+                for (int n = from; n < to; n++) {
+                    for (int i = rowP[n]; i < rowP[n + 1]; i++) {
+                        int col = colP[i];
+                        int m = Arrays.binarySearch(colP, rowP[col], rowP[col + 1], n);
+                        transposed[i] = m < 0 ? -1 : m;
+                    }
                 }
             }
-        }
+        });
 
+        // Count number of elements and row counts of symmetric matrix
+        int[] rowCounts = new int[N];
+        for (int n = 0; n < N; n++) {
+            for (int i = rowP[n]; i < rowP[n + 1]; i++) {
+                rowCounts[n]++;
+                if (transposed[i] < 0)
+                    rowCounts[colP[i]]++;
+            }
+        }
 
-        int numElements = rowCounts.sum(Integer.MAX_VALUE).getInt(0);
-        INDArray offset = Nd4j.create(N);
-        INDArray symRowP = Nd4j.create(N + 1);
-        INDArray symColP = Nd4j.create(numElements);
-        INDArray symValP = Nd4j.create(numElements);
-
+        int[] symRowP = new int[N + 1];
         for (int n = 0; n < N; n++)
-            symRowP.putScalar(n + 1, symRowP.getDouble(n) + rowCounts.getDouble(n));
-
+            symRowP[n + 1] = symRowP[n] + rowCounts[n];
 
+        int numElements = symRowP[N];
+        int[] symColP = new int[numElements];
+        double[] symValP = new double[numElements];
+        int[] offset = new int[N];
 
         for (int n = 0; n < N; n++) {
-            for (int i = rowP.getInt(n); i < rowP.getInt(n + 1); i++) {
-                boolean present = false;
-                for (int m = rowP.getInt(colP.getInt(i)); m < rowP.getInt(colP.getInt(i)) + 1; m++) {
-                    if (colP.getInt(m) == n) {
-                        present = true;
-                        if (n < colP.getInt(i)) {
-                            // make sure we do not add elements twice
-                            symColP.putScalar(symRowP.getInt(n) + offset.getInt(n), colP.getInt(i));
-                            symColP.putScalar(symRowP.getInt(colP.getInt(i)) + offset.getInt(colP.getInt(i)), n);
-                            symValP.putScalar(symRowP.getInt(n) + offset.getInt(n),
-                                            valP.getDouble(i) + valP.getDouble(m));
-                            symValP.putScalar(symRowP.getInt(colP.getInt(i)) + offset.getInt(colP.getInt(i)),
-                                            valP.getDouble(i) + valP.getDouble(m));
-                        }
+            for (int i = rowP[n]; i < rowP[n + 1]; i++) {
+                int col = colP[i];
+                int m = transposed[i];
+                boolean present = m >= 0;
+
+                if (present) {
+                    // make sure we do not add elements twice
+                    if (n <= col) {
+                        symColP[symRowP[n] + offset[n]] = col;
+                        symColP[symRowP[col] + offset[col]] = n;
+                        symValP[symRowP[n] + offset[n]] = valP[i] + valP[m];
+                        symValP[symRowP[col] + offset[col]] = valP[i] + valP[m];
                     }
-                }
-
-                // If (colP[i], n) is not present, there is no addition involved
-                if (!present) {
-                    int colPI = colP.getInt(i);
-                    if (n < colPI) {
-                        symColP.putScalar(symRowP.getInt(n) + offset.getInt(n), colPI);
-                        symColP.putScalar(symRowP.getInt(colP.getInt(i)) + offset.getInt(colPI), n);
-                        symValP.putScalar(symRowP.getInt(n) + offset.getInt(n), valP.getDouble(i));
-                        symValP.putScalar(symRowP.getInt(colPI) + offset.getInt(colPI), valP.getDouble(i));
-                    }
-
+                } else {
+                    // If (colP[i], n) is not present, there is no addition involved
+                    symColP[symRowP[n] + offset[n]] = col;
+                    symColP[symRowP[col] + offset[col]] = n;
+                    symValP[symRowP[n] + offset[n]] = valP[i];
+                    symValP[symRowP[col] + offset[col]] = valP[i];
                 }
 
                 // Update offsets
-                if (!present || (present && n < colP.getInt(i))) {
-                    offset.putScalar(n, offset.getInt(n) + 1);
-                    int colPI = colP.getInt(i);
-                    if (colPI != n)
-                        offset.putScalar(colPI, offset.getDouble(colPI) + 1);
+                if (!present || n <= col) {
+                    offset[n]++;
+                    if (col != n)
+                        offset[col]++;
                 }
             }
         }
 
         // Divide the result by two
-        symValP.divi(2.0);
+        for (int i = 0; i < numElements; i++)
+            symValP[i] /= 2.0;
 
+        this.rowP = symRowP;
+        this.colP = symColP;
+        this.valP = symValP;
+    }
 
-        return symValP;
-
+    /**
+     * Insertion sort of a CSR row by column index, rows only hold 3 * perplexity elements
+     */
+    private static void sortRow(int[] colP, double[] valP, int begin, int end) {
+        for (int i = begin + 1; i < end; i++) {
+            int col = colP[i];
+            double val = valP[i];
+            int j = i - 1;
+            while (j >= begin && colP[j] > col) {
+                colP[j + 1] = colP[j];
+                valP[j + 1] = valP[j];
+                j--;
+            }
+            colP[j + 1] = col;
+            valP[j + 1] = val;
+        }
     }
 
     /**
@@ -469,27 +568,42 @@ public class BarnesHutTsne implements Model {
             }
 
 
-            computeGaussianPerplexity(x, perplexity);
-            vals = symmetrized(rows, cols, vals).divi(vals.sum(Integer.MAX_VALUE));
-            //lie about gradient
-            vals.muli(12);
-            for (int i = 0; i < maxIter; i++) {
-                step(vals, i);
+            boolean ownsPool = acquirePool();
+            try {
+                computeGaussianPerplexity(x, perplexity);
+                symmetrized(rowP, colP, valP);
+
+                double sumP = 0.0;
+                for (double v : valP)
+                    sumP += v;
+                //lie about gradient
+                scaleP(12.0 / sumP);
+                for (int i = 0; i < maxIter; i++) {
+                    step(null, i);
 
-                if (i == switchMomentumIteration)
-                    momentum = finalMomentum;
-                if (i == stopLyingIteration)
-                    vals.divi(12);
+                    if (i == switchMomentumIteration)
+                        momentum = finalMomentum;
+                    if (i == stopLyingIteration)
+                        scaleP(1.0 / 12);
 
 
-                if (iterationListener != null) {
-                    iterationListener.iterationDone(this, i);
+                    if (iterationListener != null) {
+                        iterationListener.iterationDone(this, i);
+                    }
+                    if (i % 50 == 0 || i == maxIter - 1)
+                        log.info("Error at iteration " + i + " is " + score());
                 }
-                log.info("Error at iteration " + i + " is " + score());
+            } finally {
+                releasePool(ownsPool);
             }
         }
     }
 
+    private void scaleP(double factor) {
+        for (int i = 0; i < valP.length; i++)
+            valP[i] *= factor;
+    }
+
     @Override
     public void update(Gradient gradient) {
 
@@ -497,8 +611,8 @@ public class BarnesHutTsne implements Model {
 
     /**
      * An individual iteration
-     * @param p the probabilities that certain points
-     *          are near each other
+     * @param p unused, the probabilities that certain points are near each other
+     *          are held by this instance in sparse form
      * @param i the iteration (primarily for debugging purposes)
      */
     public void step(INDArray p, int i) {
@@ -598,32 +712,49 @@ public class BarnesHutTsne implements Model {
 
     @Override
     public double score() {
+        boolean ownsPool = acquirePool();
+        try {
+            return computeScore();
+        } finally {
+            releasePool(ownsPool);
+        }
+    }
+
+    private double computeScore() {
+        final double[] y = flatten(Y);
+        final int D = numDimensions;
+        final FlatSpTree tree = buildTree(y);
+
         // Get estimate of normalization term
-        INDArray buff = Nd4j.create(numDimensions);
-        AtomicDouble sum_Q = new AtomicDouble(0.0);
-        for (int n = 0; n < N; n++)
-            tree.computeNonEdgeForces(n, theta, buff, sum_Q);
+        final double[] sumQPerPoint = new double[N];
+        parallelFor(0, N, 64, new RangeBody() {
+            @Override
+            public void apply(int from, int to) {
+                double[] buff = new double[D];
+                for (int n = from; n < to; n++)
+                    sumQPerPoint[n] = tree.computeNonEdgeForces(n, theta, y, buff);
+            }
+        });
+        final double sumQ = sum(sumQPerPoint);
 
         // Loop over all edges to compute t-SNE error
-        double C = .0;
-        INDArray linear = Y;
-        for (int n = 0; n < N; n++) {
-            int begin = rows.getInt(n);
-            int end = rows.getInt(n + 1);
-            int ind1 = n;
-            for (int i = begin; i < end; i++) {
-                int ind2 = cols.getInt(i);
-                buff.assign(linear.slice(ind1));
-                buff.subi(linear.slice(ind2));
-
-                double Q = pow(buff, 2).sum(Integer.MAX_VALUE).getDouble(0);
-                Q = (1.0 / (1.0 + Q)) / sum_Q.doubleValue();
-                C += vals.getDouble(i) * FastMath.log(vals.getDouble(i) + Nd4j.EPS_THRESHOLD)
-                                / (Q + Nd4j.EPS_THRESHOLD);
+        final double[] cPerPoint = new double[N];
+        parallelFor(0, N, 256, new RangeBody() {
+            @Override
+            public void apply(int from, int to) {
+                for (int n = from; n < to; n++) {
+                    double c = 0.0;
+                    for (int i = rowP[n]; i < rowP[n + 1]; i++) {
+                        double Q = squaredDistance(y, n, colP[i], D);
+                        Q = (1.0 / (1.0 + Q)) / sumQ;
+                        c += valP[i] * FastMath.log((valP[i] + Nd4j.EPS_THRESHOLD) / (Q + Nd4j.EPS_THRESHOLD));
+                    }
+                    cPerPoint[n] = c;
+                }
             }
-        }
+        });
 
-        return C;
+        return sum(cPerPoint);
     }
 
     @Override
@@ -696,30 +827,128 @@ public class BarnesHutTsne implements Model {
 
     @Override
     public Gradient gradient() {
+        boolean ownsPool = acquirePool();
+        try {
+            return computeGradient();
+        } finally {
+            releasePool(ownsPool);
+        }
+    }
+
+    private Gradient computeGradient() {
         if (yIncs == null)
             yIncs = zeros(Y.shape());
         if (gains == null)
             gains = ones(Y.shape());
 
-        AtomicDouble sumQ = new AtomicDouble(0);
+        final double[] y = flatten(Y);
+        final int D = numDimensions;
         /* Calculate gradient based on barnes hut approximation with positive and negative forces */
-        INDArray posF = Nd4j.create(Y.shape());
-        INDArray negF = Nd4j.create(Y.shape());
-        if (tree == null)
-            tree = new SpTree(Y);
-        tree.computeEdgeForces(rows, cols, vals, N, posF);
-
-        for (int n = 0; n < N; n++)
-            tree.computeNonEdgeForces(n, theta, negF.slice(n), sumQ);
+        final double[] posF = new double[N * D];
+        final double[] negF = new double[N * D];
+        final double[] sumQPerPoint = new double[N];
+        // the embedding moves every iteration, so the tree has to be rebuilt
+        final FlatSpTree tree = buildTree(y);
+
+        parallelFor(0, N, 64, new RangeBody() {
+            @Override
+            public void apply(int from, int to) {
+                double[] negForce = new double[D];
+                for (int n = from; n < to; n++) {
+                    int ind1 = n * D;
+
+                    // edge forces
+                    for (int i = rowP[n]; i < rowP[n + 1]; i++) {
+                        int ind2 = colP[i] * D;
+                        double q = valP[i] / (1.0 + squaredDistance(y, n, colP[i], D));
+                        for (int d = 0; d < D; d++)
+                            posF[ind1 + d] += q * (y[ind1 + d] - y[ind2 + d]);
+                    }
 
+                    // non edge forces
+                    Arrays.fill(negForce, 0.0);
+                    sumQPerPoint[n] = tree.computeNonEdgeForces(n, theta, y, negForce);
+                    System.arraycopy(negForce, 0, negF, ind1, D);
+                }
+            }
+        });
 
-        INDArray dC = posF.subi(negF.divi(sumQ));
+        double sumQ = sum(sumQPerPoint);
+        double[] dC = new double[N * D];
+        for (int i = 0; i < dC.length; i++)
+            dC[i] = posF[i] - negF[i] / sumQ;
 
         Gradient ret = new DefaultGradient();
-        ret.gradientForVariable().put(Y_GRAD, dC);
+        ret.gradientForVariable().put(Y_GRAD, Nd4j.create(dC, new int[] {N, D}));
         return ret;
     }
 
+    private FlatSpTree buildTree(double[] y) {
+        if (tree == null || tree.getDimensions() != numDimensions)
+            tree = new FlatSpTree(numDimensions);
+        boolean ownsPool = acquirePool();
+        try {
+            tree.build(y, N, pool);
+        } finally {
+            releasePool(ownsPool);
+        }
+        return tree;
+    }
+
+    private static double[] flatten(INDArray arr) {
+        return arr.dup('c').data().asDouble();
+    }
+
+    private static double squaredDistance(double[] y, int i, int j, int D) {
+        int ind1 = i * D;
+        int ind2 = j * D;
+        double dist = 0.0;
+        for (int d = 0; d < D; d++) {
+            double diff = y[ind1 + d] - y[ind2 + d];
+            dist += diff * diff;
+        }
+        return dist;
+    }
+
+    private static double sum(double[] values) {
+        double sum = 0.0;
+        for (double v : values)
+            sum += v;
+        return sum;
+    }
+
+    protected void parallelFor(int from, int to, int grain, RangeBody body) {
+        if (workers <= 1) {
+            body.apply(from, to);
+            return;
+        }
+        boolean ownsPool = acquirePool();
+        try {
+            MultiThreadUtils.parallelFor(pool, from, to, grain, body);
+        } finally {
+            releasePool(ownsPool);
+        }
+    }
+
+    /**
+     * Creates the fork join pool unless a caller up the stack already did, so that nested calls share one pool.
+     *
+     * @return true if the caller created the pool and has to release it with {@link #releasePool(boolean)}
+     */
+    private boolean acquirePool() {
+        if (workers <= 1 || pool != null)
+            return false;
+        pool = new ForkJoinPool(workers);
+        return true;
+    }
+
+    private void releasePool(boolean ownsPool) {
+        if (ownsPool) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
     @Override
     public Pair<Gradient, Double> gradientAndScore() {
         return new Pair<>(gradient(), score());
@@ -769,6 +998,26 @@ public class BarnesHutTsne implements Model {
         private boolean invert = true;
         private int numDim = 2;
         private String similarityFunction = "cosinesimilarity";
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private boolean approximateNeighbors = false;
+
+        /**
+         * Number of threads used for the nearest neighbour search, the perplexity calibration and the gradient
+         * computation
+         */
+        public Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Use an approximate nearest neighbour graph built with {@link NNDescent} for the input similarities,
+         * much faster than an exact search per point on large data sets
+         */
+        public Builder approximateNeighbors(boolean approximateNeighbors) {
+            this.approximateNeighbors = approximateNeighbors;
+            return this;
+        }
 
         public Builder minGain(double minGain) {
             this.minGain = minGain;
@@ -858,9 +1107,11 @@ public class BarnesHutTsne implements Model {
         }
 
         public BarnesHutTsne build() {
-            return new BarnesHutTsne(numDim, similarityFunction, theta, invert, maxIter, realMin, initialMomentum,
-                            finalMomentum, momentum, switchMomentumIteration, normalize, stopLyingIteration, tolerance,
-                            learningRate, useAdaGrad, perplexity, null, minGain);
+            BarnesHutTsne tsne = new BarnesHutTsne(numDim, similarityFunction, theta, invert, maxIter, realMin,
+                            initialMomentum, finalMomentum, momentum, switchMomentumIteration, normalize,
+                            stopLyingIteration, tolerance, learningRate, useAdaGrad, perplexity, null, minGain, workers);
+            tsne.setApproximateNeighbors(approximateNeighbors);
+            return tsne;
         }
 
     }
@@ -1,14 +1,22 @@
 package org.deeplearning4j;
 
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
 import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TestUtils {
 
@@ -52,4 +60,29 @@ public class TestUtils {
         }
     }
 
+    /**
+     * Freshly initialized BN layers are identity functions, so statistics are randomized to make folding visible
+     */
+    public static void randomizeBatchNorm(Layer[] layers) {
+        for (Layer layer : layers) {
+            if (!(layer.conf().getLayer() instanceof BatchNormalization))
+                continue;
+
+            BatchNormalization bn = (BatchNormalization) layer.conf().getLayer();
+            int nOut = bn.getNOut();
+            layer.setParam(BatchNormalizationParamInitializer.GLOBAL_MEAN, Nd4j.rand(1, nOut).subi(0.5));
+            layer.setParam(BatchNormalizationParamInitializer.GLOBAL_VAR, Nd4j.rand(1, nOut).addi(0.5));
+            if (!bn.isLockGammaBeta()) {
+                layer.setParam(BatchNormalizationParamInitializer.GAMMA, Nd4j.rand(1, nOut).addi(0.5));
+                layer.setParam(BatchNormalizationParamInitializer.BETA, Nd4j.rand(1, nOut).subi(0.5));
+            }
+        }
+    }
+
+    public static void assertOutputEquals(INDArray expected, INDArray actual) {
+        assertArrayEquals(expected.shape(), actual.shape());
+        double maxDiff = Transforms.abs(expected.sub(actual)).maxNumber().doubleValue();
+        assertTrue("Max difference: " + maxDiff, maxDiff < 1e-4);
+    }
+
 }
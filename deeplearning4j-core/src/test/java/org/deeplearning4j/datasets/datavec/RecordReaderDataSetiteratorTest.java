@@ -37,6 +37,7 @@ import org.datavec.api.writable.Writable;
 import org.deeplearning4j.datasets.datavec.exception.ZeroLengthSequenceException;
 import org.deeplearning4j.datasets.datavec.tools.SpecialImageRecordReader;
 import org.deeplearning4j.datasets.iterator.AsyncDataSetIterator;
+import org.deeplearning4j.exception.DL4JException;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -46,6 +47,7 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.io.ClassPathResource;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
 
 import static org.junit.Assert.*;
@@ -1157,4 +1159,145 @@ public class RecordReaderDataSetiteratorTest {
         assertEquals(expF, ds.getFeatures());
         assertEquals(expL, ds.getLabels());
     }
+
+    @Test
+    public void testWideCsvThroughput() throws Exception {
+        //Wide tabular data: values are written into a primitive buffer and copied to the features in bulk
+        int numExamples = 1000;
+        int numColumns = 2000;
+        int numClasses = 5;
+        int batchSize = 100;
+
+        File f = File.createTempFile("wideCsv", ".csv");
+        f.deleteOnExit();
+        Random r = new Random(12345);
+        double[][] expFeatures = new double[numExamples][numColumns];
+        int[] expLabels = new int[numExamples];
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(f))) {
+            for (int i = 0; i < numExamples; i++) {
+                StringBuilder sb = new StringBuilder();
+                for (int j = 0; j < numColumns; j++) {
+                    expFeatures[i][j] = r.nextInt(1000) / 100.0;
+                    sb.append(expFeatures[i][j]).append(',');
+                }
+                expLabels[i] = r.nextInt(numClasses);
+                writer.write(sb.append(expLabels[i]).append('\n').toString());
+            }
+        }
+
+        RecordReader rr = new CSVRecordReader();
+        rr.initialize(new FileSplit(f));
+        DataSetIterator iter = new RecordReaderDataSetIterator(rr, batchSize, numColumns, numClasses);
+
+        int example = 0;
+        while (iter.hasNext()) {
+            DataSet ds = iter.next();
+            assertArrayEquals(new int[] {batchSize, numColumns}, ds.getFeatures().shape());
+            for (int i = 0; i < batchSize; i++, example++) {
+                for (int j : new int[] {0, 1, numColumns / 2, numColumns - 1})
+                    assertEquals(expFeatures[example][j], ds.getFeatures().getDouble(i, j), 1e-4);
+                assertEquals(expLabels[example], Nd4j.argMax(ds.getLabels().getRow(i), 1).getInt(0));
+                assertEquals(1.0, ds.getLabels().getRow(i).sumNumber().doubleValue(), 0.0);
+            }
+        }
+        assertEquals(numExamples, example);
+
+        int epochs = 3;
+        long start = System.nanoTime();
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            iter.reset();
+            while (iter.hasNext())
+                iter.next();
+        }
+        long time = System.nanoTime() - start;
+        log.info("CSV ETL, {} columns: {} examples/sec", numColumns, epochs * numExamples * 1e9 / time);
+    }
+
+    @Test
+    public void testSequenceThroughput() throws Exception {
+        //Variable length sequences with the label in the last column, aligned at the start and masked
+        int numSequences = 200;
+        int numFeatures = 100;
+        int numClasses = 4;
+        int batchSize = 20;
+
+        File dir = Files.createTempDirectory("sequences").toFile();
+        dir.deleteOnExit();
+        Random r = new Random(12345);
+        int[] lengths = new int[numSequences];
+        double[][][] expFeatures = new double[numSequences][][];
+        for (int s = 0; s < numSequences; s++) {
+            lengths[s] = 10 + r.nextInt(40);
+            expFeatures[s] = new double[lengths[s]][numFeatures];
+            File f = new File(dir, "seq_" + s + ".csv");
+            f.deleteOnExit();
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(f))) {
+                for (int t = 0; t < lengths[s]; t++) {
+                    StringBuilder sb = new StringBuilder();
+                    for (int j = 0; j < numFeatures; j++) {
+                        expFeatures[s][t][j] = r.nextInt(1000) / 100.0;
+                        sb.append(expFeatures[s][t][j]).append(',');
+                    }
+                    writer.write(sb.append(r.nextInt(numClasses)).append('\n').toString());
+                }
+            }
+        }
+
+        SequenceRecordReader reader = new CSVSequenceRecordReader(0, ",");
+        reader.initialize(new NumberedFileInputSplit(dir.getAbsolutePath() + "/seq_%d.csv", 0, numSequences - 1));
+        DataSetIterator iter = new SequenceRecordReaderDataSetIterator(reader, batchSize, numClasses, numFeatures);
+
+        int sequence = 0;
+        while (iter.hasNext()) {
+            DataSet ds = iter.next();
+            INDArray features = ds.getFeatures();
+            INDArray mask = ds.getFeaturesMaskArray();
+            //Lengths differ within every minibatch, so there is always a mask
+            assertNotNull(mask);
+            int maxLength = features.size(2);
+            for (int i = 0; i < batchSize; i++, sequence++) {
+                for (int t = 0; t < maxLength; t++) {
+                    if (t < lengths[sequence]) {
+                        for (int j : new int[] {0, numFeatures - 1})
+                            assertEquals(expFeatures[sequence][t][j], features.getDouble(i, j, t), 1e-4);
+                    } else {
+                        assertEquals(0.0, features.getDouble(i, 0, t), 0.0);
+                    }
+                    assertEquals(t < lengths[sequence] ? 1.0 : 0.0, mask.getDouble(i, t), 0.0);
+                }
+            }
+        }
+        assertEquals(numSequences, sequence);
+
+        int epochs = 3;
+        long start = System.nanoTime();
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            iter.reset();
+            while (iter.hasNext())
+                iter.next();
+        }
+        long time = System.nanoTime() - start;
+        log.info("Sequence ETL, {} features: {} sequences/sec", numFeatures, epochs * numSequences * 1e9 / time);
+    }
+
+    @Test(expected = DL4JException.class)
+    public void testNegativeOneHotIndex() {
+        List<List<Writable>> l = new ArrayList<>();
+        l.add(Arrays.<Writable>asList(new DoubleWritable(1), new DoubleWritable(2), new IntWritable(1)));
+        l.add(Arrays.<Writable>asList(new DoubleWritable(3), new DoubleWritable(4), new IntWritable(-1)));
+
+        DataSetIterator iter = new RecordReaderDataSetIterator(new CollectionRecordReader(l), 2, 2, 3);
+        iter.next();
+    }
+
+    @Test(expected = DL4JException.class)
+    public void testRowLongerThanFirstRow() {
+        List<List<Writable>> l = new ArrayList<>();
+        l.add(Arrays.<Writable>asList(new DoubleWritable(1), new DoubleWritable(2)));
+        l.add(Arrays.<Writable>asList(new DoubleWritable(3), new DoubleWritable(4), new DoubleWritable(5)));
+
+        RecordReaderMultiDataSetIterator iter = new RecordReaderMultiDataSetIterator.Builder(2)
+                        .addReader("reader", new CollectionRecordReader(l)).addInput("reader").build();
+        iter.next();
+    }
 }
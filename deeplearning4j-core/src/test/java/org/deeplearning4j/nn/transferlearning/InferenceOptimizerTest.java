@@ -0,0 +1,152 @@
+package org.deeplearning4j.nn.transferlearning;
+
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.conf.layers.misc.FrozenLayer;
+import org.deeplearning4j.nn.conf.preprocessor.*;
+import org.deeplearning4j.nn.conf.weightnoise.DropConnect;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.deeplearning4j.TestUtils.assertOutputEquals;
+import static org.deeplearning4j.TestUtils.randomizeBatchNorm;
+import static org.junit.Assert.*;
+
+public class InferenceOptimizerTest {
+
+    @Test
+    public void testMultiLayerNetwork() {
+        Nd4j.getRandom().setSeed(12345);
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).activation(Activation.IDENTITY)
+                        .list()
+                        .layer(0, new ConvolutionLayer.Builder(3, 3).nOut(4).dropOut(0.8).build())
+                        .layer(1, new BatchNormalization.Builder().build())
+                        .layer(2, new ActivationLayer.Builder().activation(Activation.RELU).build())
+                        .layer(3, new DropoutLayer.Builder(0.5).build())
+                        .layer(4, new DenseLayer.Builder().nOut(10).hasBias(false).weightNoise(new DropConnect(0.9))
+                                        .build())
+                        .layer(5, new BatchNormalization.Builder().build())
+                        .layer(6, new ActivationLayer.Builder().activation(Activation.TANH).build())
+                        .layer(7, new DenseLayer.Builder().nOut(10).activation(Activation.TANH).build())
+                        .layer(8, new BatchNormalization.Builder().lockGammaBeta(true).build())
+                        .layer(9, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                                        .activation(Activation.SOFTMAX).nOut(3).build())
+                        .setInputType(InputType.convolutional(8, 8, 2)).build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        randomizeBatchNorm(net.getLayers());
+
+        MultiLayerNetwork optimized = InferenceOptimizer.optimize(net);
+
+        //BN after tanh dense layer can't be folded
+        assertEquals(7, optimized.getnLayers());
+        assertTrue(optimized.getLayer(0).conf().getLayer() instanceof ConvolutionLayer);
+        assertTrue(optimized.getLayer(1).conf().getLayer() instanceof ActivationLayer);
+        assertTrue(optimized.getLayer(2).conf().getLayer() instanceof DenseLayer);
+        assertTrue(optimized.getLayer(5).conf().getLayer() instanceof BatchNormalization);
+        assertTrue(((DenseLayer) optimized.getLayer(2).conf().getLayer()).hasBias());
+        for (Layer layer : optimized.getLayers()) {
+            assertNull(layer.conf().getLayer().getIDropout());
+            if (layer.conf().getLayer() instanceof BaseLayer)
+                assertNull(((BaseLayer) layer.conf().getLayer()).getWeightNoise());
+        }
+
+        //Dense layer after removed dropout layer keeps its preprocessor
+        assertTrue(optimized.getLayerWiseConfigurations()
+                        .getInputPreProcess(2) instanceof CnnToFeedForwardPreProcessor);
+
+        INDArray input = Nd4j.rand(new int[] {5, 2, 8, 8});
+        assertOutputEquals(net.output(input), optimized.output(input));
+
+        //Original network is unchanged
+        assertEquals(10, net.getnLayers());
+        assertNotNull(net.getLayer(0).conf().getLayer().getIDropout());
+    }
+
+    @Test
+    public void testFrozenLayers() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list()
+                        .layer(0, new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.IDENTITY).build())
+                        .layer(1, new BatchNormalization.Builder().build())
+                        .layer(2, new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
+                                        .activation(Activation.IDENTITY).nIn(5).nOut(3).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        randomizeBatchNorm(net.getLayers());
+
+        MultiLayerNetwork frozen = new TransferLearning.Builder(net).setFeatureExtractor(1).build();
+        assertTrue(frozen.getLayer(0).conf().getLayer() instanceof FrozenLayer);
+
+        MultiLayerNetwork optimized = InferenceOptimizer.optimize(frozen);
+        assertEquals(2, optimized.getnLayers());
+        assertTrue(optimized.getLayer(0).conf().getLayer() instanceof DenseLayer);
+        assertEquals("layer0", optimized.getLayer(0).conf().getLayer().getLayerName());
+
+        INDArray input = Nd4j.rand(6, 4);
+        assertOutputEquals(frozen.output(input), optimized.output(input));
+    }
+
+    @Test
+    public void testComputationGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .activation(Activation.IDENTITY).graphBuilder().addInputs("in")
+                        .addLayer("conv1", new ConvolutionLayer.Builder(3, 3).nIn(2).nOut(4).build(), "in")
+                        .addLayer("bn1", new BatchNormalization.Builder().build(), "conv1")
+                        .addLayer("act1", new ActivationLayer.Builder().activation(Activation.RELU).build(), "bn1")
+                        .addLayer("drop", new DropoutLayer.Builder(0.5).build(), "act1")
+                        .addLayer("conv2", new ConvolutionLayer.Builder(1, 1).nIn(4).nOut(4).build(), "drop")
+                        .addLayer("bn2", new BatchNormalization.Builder().build(), "conv2")
+                        //conv2 output is used twice, so bn2 can't be folded
+                        .addVertex("add", new ElementWiseVertex(ElementWiseVertex.Op.Add), "bn2", "conv2")
+                        .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                                        .activation(Activation.SOFTMAX).nIn(4 * 6 * 6).nOut(3).build(), "add")
+                        .setOutputs("out").setInputTypes(InputType.convolutional(8, 8, 2)).build();
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init();
+        randomizeBatchNorm(graph.getLayers());
+
+        ComputationGraph optimized = InferenceOptimizer.optimize(graph);
+        ComputationGraphConfiguration optimizedConf = optimized.getConfiguration();
+        assertFalse(optimizedConf.getVertices().containsKey("bn1"));
+        assertFalse(optimizedConf.getVertices().containsKey("drop"));
+        assertTrue(optimizedConf.getVertices().containsKey("bn2"));
+        assertEquals("conv1", optimizedConf.getVertexInputs().get("act1").get(0));
+        assertEquals("act1", optimizedConf.getVertexInputs().get("conv2").get(0));
+
+        INDArray input = Nd4j.rand(new int[] {5, 2, 8, 8});
+        assertOutputEquals(graph.outputSingle(input), optimized.outputSingle(input));
+    }
+
+    @Test
+    public void testMergePreProcessors() {
+        assertNull(InferenceOptimizer.merge(null, null));
+        assertNull(InferenceOptimizer.merge(new CnnToFeedForwardPreProcessor(4, 5, 3),
+                        new FeedForwardToCnnPreProcessor(4, 5, 3)));
+        assertNull(InferenceOptimizer.merge(new FeedForwardToRnnPreProcessor(), new RnnToFeedForwardPreProcessor()));
+
+        //Different shapes: not an identity
+        InputPreProcessor merged = InferenceOptimizer.merge(new CnnToFeedForwardPreProcessor(4, 5, 3),
+                        new FeedForwardToCnnPreProcessor(5, 4, 3));
+        assertTrue(merged instanceof ComposableInputPreProcessor);
+        assertEquals(2, ((ComposableInputPreProcessor) merged).getInputPreProcessors().length);
+
+        //Nested preprocessors are flattened before cancelling
+        merged = InferenceOptimizer.merge(
+                        new ComposableInputPreProcessor(new CnnToFeedForwardPreProcessor(4, 5, 3),
+                                        new FeedForwardToRnnPreProcessor()),
+                        new RnnToFeedForwardPreProcessor());
+        assertEquals(new CnnToFeedForwardPreProcessor(4, 5, 3), merged);
+    }
+}
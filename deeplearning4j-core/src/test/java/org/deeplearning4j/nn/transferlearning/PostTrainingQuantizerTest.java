@@ -0,0 +1,310 @@
+package org.deeplearning4j.nn.transferlearning;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.datasets.iterator.impl.IrisDataSetIterator;
+import org.deeplearning4j.datasets.iterator.impl.ListDataSetIterator;
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.deeplearning4j.nn.params.QuantizedLayerParamInitializer;
+import org.deeplearning4j.util.QuantizationUtils;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.convolution.Convolution;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@Slf4j
+public class PostTrainingQuantizerTest {
+
+    @Test
+    public void testGemm() {
+        checkGemm(7, 13, 5);
+        //Large enough to be multiplied by several threads
+        checkGemm(257, 256, 64);
+    }
+
+    private static void checkGemm(int rows, int cols, int nOut) {
+        Random r = new Random(12345);
+        float[] a = new float[rows * cols];
+        float[] w = new float[nOut * cols];
+        float[] bias = new float[nOut];
+        for (int i = 0; i < a.length; i++)
+            a[i] = (float) r.nextGaussian();
+        for (int i = 0; i < w.length; i++)
+            w[i] = (float) r.nextGaussian();
+        for (int i = 0; i < bias.length; i++)
+            bias[i] = (float) r.nextGaussian();
+
+        byte[] qa = new byte[a.length];
+        byte[] qw = new byte[w.length];
+        float[] aScales = QuantizationUtils.quantizeRows(a, rows, cols, qa);
+        float[] wScales = QuantizationUtils.quantizeRows(w, nOut, cols, qw);
+        float[] out = new float[rows * nOut];
+        QuantizationUtils.gemm(qa, aScales, qw, wScales, bias, rows, cols, nOut, out);
+
+        INDArray expected = Nd4j.create(a, new int[] {rows, cols}, 'c')
+                        .mmul(Nd4j.create(w, new int[] {nOut, cols}, 'c').transpose())
+                        .addiRowVector(Nd4j.create(bias));
+        assertOutputClose(expected, Nd4j.create(out, new int[] {rows, nOut}, 'c'), 0.02);
+    }
+
+    @Test
+    public void testIm2col() {
+        Nd4j.getRandom().setSeed(12345);
+        int[] kernel = {3, 2};
+        int[] stride = {2, 1};
+        int[] pad = {1, 2};
+        int[] dilation = {1, 2};
+        INDArray input = Nd4j.rand(new int[] {2, 3, 7, 6}).subi(0.5);
+        int outH = (7 + 2 * pad[0] - ((kernel[0] - 1) * dilation[0] + 1)) / stride[0] + 1;
+        int outW = (6 + 2 * pad[1] - ((kernel[1] - 1) * dilation[1] + 1)) / stride[1] + 1;
+        int rows = 2 * outH * outW;
+        int cols = 3 * kernel[0] * kernel[1];
+
+        INDArray col = Nd4j.create(new int[] {2, outH, outW, 3, kernel[0], kernel[1]}, 'c');
+        Convolution.im2col(input, kernel[0], kernel[1], stride[0], stride[1], pad[0], pad[1], dilation[0],
+                        dilation[1], false, col.permute(0, 3, 4, 5, 1, 2));
+        float[] colData = col.data().asFloat();
+
+        for (float scale : new float[] {0.0f, QuantizationUtils.scaleFor(0.5)}) {
+            byte[] expected = new byte[rows * cols];
+            float[] expectedScales;
+            if (scale > 0) {
+                QuantizationUtils.quantize(colData, 0, colData.length, scale, expected);
+                expectedScales = new float[rows];
+                Arrays.fill(expectedScales, scale);
+            } else {
+                expectedScales = QuantizationUtils.quantizeRows(colData, rows, cols, expected);
+            }
+
+            byte[] actual = new byte[rows * cols];
+            float[] actualScales = QuantizationUtils.im2col(input.dup('c').data().asFloat(), input.shape(), kernel,
+                            stride, pad, dilation, new int[] {outH, outW}, scale, actual);
+            assertArrayEquals(expected, actual);
+            assertArrayEquals(expectedScales, actualScales, 0.0f);
+        }
+    }
+
+    @Test
+    public void testMultiLayerNetwork() throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list()
+                        .layer(0, new ConvolutionLayer.Builder(3, 3).nOut(6).activation(Activation.IDENTITY).build())
+                        .layer(1, new BatchNormalization.Builder().build())
+                        .layer(2, new ActivationLayer.Builder().activation(Activation.RELU).build())
+                        .layer(3, new SubsamplingLayer.Builder(2, 2).stride(2, 2).build())
+                        .layer(4, new DenseLayer.Builder().nOut(20).activation(Activation.TANH).build())
+                        .layer(5, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                                        .activation(Activation.SOFTMAX).nOut(3).build())
+                        .setInputType(InputType.convolutional(10, 10, 2)).build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        DataSetIterator calibration = new ListDataSetIterator<>(
+                        new DataSet(Nd4j.rand(new int[] {20, 2, 10, 10}), Nd4j.zeros(20, 3)).asList(), 5);
+
+        for (boolean calibrate : new boolean[] {false, true}) {
+            PostTrainingQuantizer.Builder builder = new PostTrainingQuantizer.Builder();
+            if (calibrate)
+                builder.calibrationData(calibration);
+            MultiLayerNetwork quantized = builder.build().quantize(net);
+
+            //BN is folded into convolution layer before quantization
+            assertEquals(5, quantized.getnLayers());
+            assertTrue(quantized.getLayer(0).conf().getLayer() instanceof QuantizedLayer);
+            assertTrue(quantized.getLayer(3).conf().getLayer() instanceof QuantizedLayer);
+            assertTrue(quantized.getLayer(4).conf().getLayer() instanceof OutputLayer);
+
+            QuantizedLayer conv = (QuantizedLayer) quantized.getLayer(0).conf().getLayer();
+            INDArray convWeights = quantized.getLayer(0).getParam(QuantizedLayerParamInitializer.WEIGHT_KEY);
+            assertArrayEquals(new int[] {6, 2 * 3 * 3}, convWeights.shape());
+            assertEquals(convWeights, Transforms.round(convWeights));
+            assertEquals(6, quantized.getLayer(0).getParam(QuantizedLayerParamInitializer.SCALE_KEY).length());
+            assertEquals(calibrate, conv.getInputScale() > 0);
+
+            INDArray input = Nd4j.rand(new int[] {4, 2, 10, 10});
+            assertOutputClose(net.output(input), quantized.output(input), 0.02);
+
+            //Quantized weights are network parameters, and aren't stored in the configuration
+            assertFalse(quantized.getLayerWiseConfigurations().toJson().contains("\"weights\""));
+            MultiLayerConfiguration fromJson =
+                            MultiLayerConfiguration.fromJson(quantized.getLayerWiseConfigurations().toJson());
+            assertEquals(quantized.getLayerWiseConfigurations(), fromJson);
+            MultiLayerNetwork restored = new MultiLayerNetwork(fromJson);
+            restored.init(quantized.params(), false);
+            assertEquals(quantized.output(input), restored.output(input));
+        }
+
+        //Original network is unchanged
+        assertEquals(6, net.getnLayers());
+        assertTrue(net.getLayer(0).conf().getLayer() instanceof ConvolutionLayer);
+    }
+
+    @Test
+    @Ignore //Benchmark, should be run manually
+    public void testGemmBenchmark() {
+        //Quantized path includes input quantization, as in QuantizedLayer forward pass
+        Random r = new Random(12345);
+        int rows = 256;
+        int cols = 1024;
+        int nOut = 1024;
+        int iterations = 50;
+        float[] a = new float[rows * cols];
+        float[] w = new float[nOut * cols];
+        for (int i = 0; i < a.length; i++)
+            a[i] = (float) r.nextGaussian();
+        for (int i = 0; i < w.length; i++)
+            w[i] = (float) r.nextGaussian();
+        float[] bias = new float[nOut];
+
+        byte[] qw = new byte[w.length];
+        float[] wScales = QuantizationUtils.quantizeRows(w, nOut, cols, qw);
+        byte[] qa = new byte[a.length];
+        float[] out = new float[rows * nOut];
+
+        INDArray input = Nd4j.create(a, new int[] {rows, cols}, 'c');
+        INDArray weights = Nd4j.create(w, new int[] {nOut, cols}, 'c').transpose().dup('f');
+        INDArray biasRow = Nd4j.create(bias);
+
+        for (int run = 0; run < 2; run++) {
+            //First run is warmup
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                float[] aScales = QuantizationUtils.quantizeRows(a, rows, cols, qa);
+                QuantizationUtils.gemm(qa, aScales, qw, wScales, bias, rows, cols, nOut, out);
+            }
+            long int8Time = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                input.mmul(weights).addiRowVector(biasRow);
+            long floatTime = System.nanoTime() - start;
+
+            log.info("[{}x{}] x [{}x{}]: int8 {} ms, float BLAS {} ms per multiplication", rows, cols, cols, nOut,
+                            int8Time / 1e6 / iterations, floatTime / 1e6 / iterations);
+        }
+    }
+
+    @Test
+    public void testClone() {
+        Nd4j.getRandom().setSeed(12345);
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list()
+                        .layer(0, new DenseLayer.Builder().nIn(4).nOut(5).activation(Activation.TANH).build())
+                        .layer(1, new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
+                                        .activation(Activation.IDENTITY).nIn(5).nOut(3).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        net.getLayer(0).setParam(DefaultParamInitializer.BIAS_KEY, Nd4j.rand(1, 5));
+
+        MultiLayerNetwork quantized = new PostTrainingQuantizer.Builder().build().quantize(net);
+        org.deeplearning4j.nn.api.Layer layer = quantized.getLayer(0);
+        org.deeplearning4j.nn.api.Layer copy = layer.clone();
+
+        assertEquals(layer.params(), copy.params());
+        assertNotSame(layer.params(), copy.params());
+        INDArray input = Nd4j.rand(3, 4);
+        assertEquals(layer.activate(input, false), copy.activate(input, false));
+
+        //Cached parameters follow parameter changes, including ones made through the flattened parameters
+        INDArray before = layer.preOutput(input, false);
+        INDArray bias = layer.getParam(DefaultParamInitializer.BIAS_KEY).dup();
+        int nParams = layer.numParams();
+        layer.params().get(NDArrayIndex.point(0), NDArrayIndex.interval(nParams - 5, nParams)).assign(0);
+        assertTrue(before.subRowVector(bias).equalsWithEps(layer.preOutput(input, false), 1e-5));
+        assertEquals(before, copy.preOutput(input, false));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFitUnsupported() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list()
+                        .layer(0, new DenseLayer.Builder().nIn(4).nOut(5).build())
+                        .layer(1, new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
+                                        .activation(Activation.IDENTITY).nIn(5).nOut(3).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        MultiLayerNetwork quantized = new PostTrainingQuantizer.Builder().build().quantize(net);
+        quantized.fit(new DataSet(Nd4j.rand(3, 4), Nd4j.rand(3, 3)));
+    }
+
+    @Test
+    public void testComputationGraph() {
+        Nd4j.getRandom().setSeed(12345);
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .activation(Activation.RELU).graphBuilder().addInputs("in")
+                        .addLayer("conv", new ConvolutionLayer.Builder(3, 3).nIn(2).nOut(4).build(), "in")
+                        .addLayer("dense", new DenseLayer.Builder().nOut(10).build(), "conv")
+                        .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                                        .activation(Activation.SOFTMAX).nOut(3).build(), "dense")
+                        .setOutputs("out").setInputTypes(InputType.convolutional(6, 6, 2)).build();
+        ComputationGraph graph = new ComputationGraph(conf);
+        graph.init();
+
+        DataSetIterator calibration = new ListDataSetIterator<>(
+                        new DataSet(Nd4j.rand(new int[] {10, 2, 6, 6}), Nd4j.zeros(10, 3)).asList(), 5);
+        ComputationGraph quantized =
+                        new PostTrainingQuantizer.Builder().calibrationData(calibration).build().quantize(graph);
+
+        assertTrue(quantized.getLayer("conv").conf().getLayer() instanceof QuantizedLayer);
+        assertTrue(quantized.getLayer("dense").conf().getLayer() instanceof QuantizedLayer);
+        assertTrue(quantized.getLayer("out").conf().getLayer() instanceof OutputLayer);
+        assertTrue(((QuantizedLayer) quantized.getLayer("dense").conf().getLayer()).getInputScale() > 0);
+
+        INDArray input = Nd4j.rand(new int[] {3, 2, 6, 6});
+        assertOutputClose(graph.outputSingle(input), quantized.outputSingle(input), 0.02);
+    }
+
+    @Test
+    public void testEvaluate() {
+        Nd4j.getRandom().setSeed(12345);
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list()
+                        .layer(0, new DenseLayer.Builder().nIn(4).nOut(10).activation(Activation.TANH).build())
+                        .layer(1, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT)
+                                        .activation(Activation.SOFTMAX).nIn(10).nOut(3).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        DataSetIterator iris = new IrisDataSetIterator(30, 150);
+        for (int i = 0; i < 20; i++) {
+            net.fit(iris);
+            iris.reset();
+        }
+
+        PostTrainingQuantizer quantizer = new PostTrainingQuantizer.Builder().calibrationData(iris).build();
+        MultiLayerNetwork quantized = quantizer.quantize(net);
+        Pair<Evaluation, Evaluation> evaluations = quantizer.evaluate(net, quantized, iris);
+
+        assertEquals(150, evaluations.getFirst().getNumRowCounter());
+        assertEquals(150, evaluations.getSecond().getNumRowCounter());
+        assertEquals(evaluations.getFirst().accuracy(), evaluations.getSecond().accuracy(), 0.05);
+    }
+
+    private static void assertOutputClose(INDArray expected, INDArray actual, double maxRelError) {
+        assertArrayEquals(expected.shape(), actual.shape());
+        double maxDiff = Transforms.abs(expected.sub(actual)).maxNumber().doubleValue();
+        double range = Transforms.abs(expected).maxNumber().doubleValue();
+        assertTrue("Max difference " + maxDiff + " for output range " + range, maxDiff <= maxRelError * range);
+    }
+}
@@ -31,7 +31,9 @@ import org.nd4j.linalg.io.ClassPathResource;
 import java.io.File;
 import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 // import org.nd4j.jita.conf.CudaEnvironment;
 
@@ -90,7 +92,7 @@ public class BarnesHutTsneTest {
                         .setInitialMomentum(initialMomentum).setFinalMomentum(finalMomentum).setMomentum(momentum)
                         .setSwitchMomentumIteration(switchMomentumIteration).normalize(normalize)
                         .stopLyingIteration(stopLyingIteration).tolerance(tolerance).learningRate(learningRate)
-                        .perplexity(perplexity).minGain(minGain).build();
+                        .perplexity(perplexity).minGain(minGain).workers(2).build();
 
         final double DELTA = 1e-15;
 
@@ -110,5 +112,43 @@ public class BarnesHutTsneTest {
         assertEquals("useAdaGrad", useAdaGrad, b.useAdaGrad);
         assertEquals(perplexity, b.getPerplexity(), DELTA);
         assertEquals(minGain, b.minGain, DELTA);
+        assertEquals("workers", 2, b.getWorkers());
+    }
+
+    @Test
+    public void testSymmetrized() throws Exception {
+        DataTypeUtil.setDTypeForContext(DataBuffer.Type.DOUBLE);
+        BarnesHutTsne b = new BarnesHutTsne.Builder().workers(2).build();
+
+        // P(0,1) = 0.2, P(1,2) = 0.3, P(2,0) = 0.5
+        INDArray rowP = Nd4j.create(new double[] {0, 1, 2, 3});
+        INDArray colP = Nd4j.create(new double[] {1, 2, 0});
+        INDArray valP = Nd4j.create(new double[] {0.2, 0.3, 0.5});
+
+        INDArray sym = b.symmetrized(rowP, colP, valP);
+        assertArrayEquals(new double[] {0.1, 0.25, 0.1, 0.15, 0.15, 0.25}, sym.data().asDouble(), 1e-6);
+    }
+
+    @Test
+    public void testApproximateNeighbors() throws Exception {
+        DataTypeUtil.setDTypeForContext(DataBuffer.Type.DOUBLE);
+        Nd4j.getRandom().setSeed(123);
+        INDArray data = Nd4j.randn(300, 10);
+        double perplexity = 5;
+        int k = (int) (3 * perplexity);
+
+        BarnesHutTsne b = new BarnesHutTsne.Builder().similarityFunction("euclidean").invertDistanceMetric(false)
+                        .approximateNeighbors(true).workers(2).build();
+        assertTrue(b.isApproximateNeighbors());
+
+        // every row of P is a distribution over the k neighbours of its point
+        INDArray valP = b.computeGaussianPerplexity(data, perplexity);
+        assertEquals(300 * k, valP.length());
+        for (int i = 0; i < 300; i++) {
+            double sum = 0;
+            for (int m = 0; m < k; m++)
+                sum += valP.getDouble(i * k + m);
+            assertEquals(1.0, sum, 1e-6);
+        }
     }
 }
@@ -0,0 +1,96 @@
+package org.deeplearning4j.util;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.layers.custom.testclasses.CustomLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Startup time benchmark: measures ModelSerializer.restoreMultiLayerNetwork() in a fresh JVM, with custom subtypes
+ * found via index files only, and with classpath scanning enabled. Restoring subtypes from the index alone is
+ * covered by DL4JSubtypesIndexTest and the custom layer tests.
+ */
+public class ModelSerializerStartupTest {
+    private static final Logger log = LoggerFactory.getLogger(ModelSerializerStartupTest.class);
+
+    private static final String RESULT_PREFIX = "restore time: ";
+
+    @Test
+    @Ignore //Benchmark, should be run manually
+    public void testRestoreInFreshJvm() throws Exception {
+        // custom layer is listed in test subtype index, so it must be restored without scanning
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list()
+                        .layer(0, new CustomLayer(3.14159)).layer(1, new OutputLayer.Builder()
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).activation(Activation.SOFTMAX)
+                                        .nIn(10).nOut(3).build())
+                        .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        File file = File.createTempFile("startup", "model");
+        file.deleteOnExit();
+        ModelSerializer.writeModel(net, file, false);
+
+        long indexTime = restoreInFreshJvm(file, false);
+        long scanTime = restoreInFreshJvm(file, true);
+
+        log.info("Restore in fresh JVM: [{}] ms with subtype index, [{}] ms with classpath scanning", indexTime,
+                        scanTime);
+    }
+
+    private static long restoreInFreshJvm(File file, boolean scan) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-D" + NeuralNetConfiguration.CUSTOM_FUNCTIONALITY_SCAN + "=" + scan);
+        command.add(ModelSerializerStartupTest.class.getName());
+        command.add(file.getAbsolutePath());
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        long time = -1;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX))
+                    time = Long.parseLong(line.substring(RESULT_PREFIX.length()));
+            }
+        }
+
+        assertEquals(0, process.waitFor());
+        assertTrue(time >= 0);
+        return time;
+    }
+
+    /**
+     * Entry point of the child JVM: restores the model, and prints time spent
+     */
+    public static void main(String[] args) throws Exception {
+        long start = System.currentTimeMillis();
+        MultiLayerNetwork net = ModelSerializer.restoreMultiLayerNetwork(new File(args[0]));
+        long time = System.currentTimeMillis() - start;
+
+        if (!(net.getLayerWiseConfigurations().getConf(0).getLayer() instanceof CustomLayer))
+            System.exit(1);
+
+        System.out.println(RESULT_PREFIX + time);
+    }
+}
@@ -0,0 +1,59 @@
+package org.deeplearning4j.util.reflections;
+
+import org.deeplearning4j.nn.conf.ComputationGraphConfigurationTest;
+import org.deeplearning4j.nn.conf.layers.Convolution2D;
+import org.deeplearning4j.nn.layers.custom.testclasses.CustomLayer;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DL4JSubtypesIndexTest {
+
+    @Test
+    public void testLoadFromClasspath() {
+        Set<Class<?>> classes = DL4JSubtypesIndex.load();
+
+        // listed in deeplearning4j-nn index, and in test resources index
+        assertTrue(classes.contains(Convolution2D.class));
+        assertTrue(classes.contains(CustomLayer.class));
+        assertTrue(classes.contains(ComputationGraphConfigurationTest.StaticInnerGraphVertex.class));
+    }
+
+    @Test
+    public void testSkipsCommentsAndMissingClasses() throws Exception {
+        File dir = Files.createTempDirectory("subtypes").toFile();
+        File index = new File(dir, DL4JSubtypesIndex.INDEX_RESOURCE);
+        assertTrue(index.getParentFile().mkdirs());
+
+        try (PrintWriter pw = new PrintWriter(index)) {
+            pw.println("# comment");
+            pw.println();
+            pw.println("  " + CustomLayer.class.getName() + "  ");
+            pw.println("org.deeplearning4j.NoSuchClass");
+        }
+
+        // parent-less class loader, so only this index is visible
+        ClassLoader classLoader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, null) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                if (name.equals(CustomLayer.class.getName()))
+                    return CustomLayer.class;
+                throw new ClassNotFoundException(name);
+            }
+        };
+
+        Set<Class<?>> classes = DL4JSubtypesIndex.load(classLoader);
+        assertEquals(1, classes.size());
+        assertTrue(classes.contains(CustomLayer.class));
+
+        index.delete();
+    }
+}
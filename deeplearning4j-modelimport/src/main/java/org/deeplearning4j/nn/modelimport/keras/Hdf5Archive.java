@@ -20,15 +20,20 @@ package org.deeplearning4j.nn.modelimport.keras;
 
 import lombok.extern.slf4j.Slf4j;
 import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
 import org.bytedeco.javacpp.FloatPointer;
 import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacpp.Pointer;
 import org.bytedeco.javacpp.hdf5;
 import org.deeplearning4j.nn.modelimport.keras.exceptions.UnsupportedKerasConfigurationException;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.shade.jackson.databind.DeserializationFeature;
 import org.nd4j.shade.jackson.databind.ObjectMapper;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.lang.Exception;
 import java.util.ArrayList;
@@ -40,10 +45,17 @@ import static org.bytedeco.javacpp.hdf5.*;
  * Class for reading ND4J arrays and JSON strings from HDF5
  * achive files.
  *
+ * Data sets are read straight into the buffer of the resulting
+ * ND4J array, in chunks of at most {@link #CHUNK_ELEMENTS} values
+ * (by default).
+ * The HDF5 library is not reentrant, so all native calls are
+ * serialized on a global lock. Archives may be used from several
+ * threads, but reads do not run concurrently.
+ *
  * @author dave@skymind.io
  */
 @Slf4j
-public class Hdf5Archive {
+public class Hdf5Archive implements Closeable {
 
     static {
         try {
@@ -54,11 +66,46 @@ public class Hdf5Archive {
         }
     }
 
+    /** Default maximum number of values read from a data set with a single HDF5 call. */
+    public static final int CHUNK_ELEMENTS = 1 << 22;
+
+    private static final Object LOCK = new Object();
+
+    private final int chunkElements;
     private hdf5.H5File file;
     private hdf5.DataType dataType = new hdf5.DataType(hdf5.PredType.NATIVE_FLOAT());
+    private hdf5.DataType doubleDataType = new hdf5.DataType(hdf5.PredType.NATIVE_DOUBLE());
 
     public Hdf5Archive(String archiveFilename) {
-        this.file = new hdf5.H5File(archiveFilename, H5F_ACC_RDONLY);
+        this(archiveFilename, CHUNK_ELEMENTS);
+    }
+
+    /**
+     * @param archiveFilename   HDF5 file name
+     * @param chunkElements     maximum number of values read from a data set with a single HDF5 call
+     */
+    public Hdf5Archive(String archiveFilename, int chunkElements) {
+        if (chunkElements <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive, got " + chunkElements);
+        this.chunkElements = chunkElements;
+        synchronized (LOCK) {
+            this.file = new hdf5.H5File(archiveFilename, H5F_ACC_RDONLY);
+        }
+    }
+
+    /**
+     * Close the underlying HDF5 file.
+     */
+    @Override
+    public void close() {
+        synchronized (LOCK) {
+            if (file == null)
+                return;
+            file.deallocate();
+            dataType.deallocate();
+            doubleDataType.deallocate();
+            file = null;
+        }
     }
 
     private hdf5.Group[] openGroups(String ... groups) {
@@ -87,10 +134,17 @@ public class Hdf5Archive {
     public INDArray readDataSet(String datasetName, String... groups) throws UnsupportedKerasConfigurationException {
         if (groups.length == 0)
             return readDataSet(this.file.asCommonFG(), datasetName);
-        hdf5.Group[] groupArray = openGroups(groups);
-        INDArray a = readDataSet(groupArray[groupArray.length - 1].asCommonFG(), datasetName);
-        closeGroups(groupArray);
-        return a;
+        hdf5.Group[] groupArray;
+        synchronized (LOCK) {
+            groupArray = openGroups(groups);
+        }
+        try {
+            return readDataSet(groupArray[groupArray.length - 1].asCommonFG(), datasetName);
+        } finally {
+            synchronized (LOCK) {
+                closeGroups(groupArray);
+            }
+        }
     }
 
     /**
@@ -103,12 +157,14 @@ public class Hdf5Archive {
      */
     public String readAttributeAsJson(String attributeName, String... groups)
                     throws UnsupportedKerasConfigurationException {
-        if (groups.length == 0)
-            return readAttributeAsJson(this.file.openAttribute(attributeName));
-        hdf5.Group[] groupArray = openGroups(groups);
-        String s = readAttributeAsJson(groupArray[groups.length - 1].openAttribute(attributeName));
-        closeGroups(groupArray);
-        return s;
+        synchronized (LOCK) {
+            if (groups.length == 0)
+                return readAttributeAsJson(this.file.openAttribute(attributeName));
+            hdf5.Group[] groupArray = openGroups(groups);
+            String s = readAttributeAsJson(groupArray[groups.length - 1].openAttribute(attributeName));
+            closeGroups(groupArray);
+            return s;
+        }
     }
 
     /**
@@ -121,12 +177,14 @@ public class Hdf5Archive {
      */
     public String readAttributeAsString(String attributeName, String... groups)
                     throws UnsupportedKerasConfigurationException {
-        if (groups.length == 0)
-            return readAttributeAsString(this.file.openAttribute(attributeName));
-        hdf5.Group[] groupArray = openGroups(groups);
-        String s = readAttributeAsString(groupArray[groupArray.length - 1].openAttribute(attributeName));
-        closeGroups(groupArray);
-        return s;
+        synchronized (LOCK) {
+            if (groups.length == 0)
+                return readAttributeAsString(this.file.openAttribute(attributeName));
+            hdf5.Group[] groupArray = openGroups(groups);
+            String s = readAttributeAsString(groupArray[groupArray.length - 1].openAttribute(attributeName));
+            closeGroups(groupArray);
+            return s;
+        }
     }
 
     /**
@@ -137,12 +195,14 @@ public class Hdf5Archive {
      * @return                  Boolean indicating whether attribute exists in group path.
      */
     public boolean hasAttribute(String attributeName, String... groups) {
-        if (groups.length == 0)
-            return this.file.attrExists(attributeName);
-        hdf5.Group[] groupArray = openGroups(groups);
-        boolean b = groupArray[groupArray.length - 1].attrExists(attributeName);
-        closeGroups(groupArray);
-        return b;
+        synchronized (LOCK) {
+            if (groups.length == 0)
+                return this.file.attrExists(attributeName);
+            hdf5.Group[] groupArray = openGroups(groups);
+            boolean b = groupArray[groupArray.length - 1].attrExists(attributeName);
+            closeGroups(groupArray);
+            return b;
+        }
     }
 
     /**
@@ -152,12 +212,14 @@ public class Hdf5Archive {
      * @return
      */
     public List<String> getDataSets(String... groups) {
-        if (groups.length == 0)
-            return getObjects(this.file.asCommonFG(), H5O_TYPE_DATASET);
-        hdf5.Group[] groupArray = openGroups(groups);
-        List<String> ls = getObjects(groupArray[groupArray.length - 1].asCommonFG(), H5O_TYPE_DATASET);
-        closeGroups(groupArray);
-        return ls;
+        synchronized (LOCK) {
+            if (groups.length == 0)
+                return getObjects(this.file.asCommonFG(), H5O_TYPE_DATASET);
+            hdf5.Group[] groupArray = openGroups(groups);
+            List<String> ls = getObjects(groupArray[groupArray.length - 1].asCommonFG(), H5O_TYPE_DATASET);
+            closeGroups(groupArray);
+            return ls;
+        }
     }
 
     /**
@@ -167,12 +229,14 @@ public class Hdf5Archive {
      * @return
      */
     public List<String> getGroups(String... groups) {
-        if (groups.length == 0)
-            return getObjects(this.file.asCommonFG(), H5O_TYPE_GROUP);
-        hdf5.Group[] groupArray = openGroups(groups);
-        List<String> ls = getObjects(groupArray[groupArray.length - 1].asCommonFG(), H5O_TYPE_GROUP);
-        closeGroups(groupArray);
-        return ls;
+        synchronized (LOCK) {
+            if (groups.length == 0)
+                return getObjects(this.file.asCommonFG(), H5O_TYPE_GROUP);
+            hdf5.Group[] groupArray = openGroups(groups);
+            List<String> ls = getObjects(groupArray[groupArray.length - 1].asCommonFG(), H5O_TYPE_GROUP);
+            closeGroups(groupArray);
+            return ls;
+        }
     }
 
     /**
@@ -185,68 +249,101 @@ public class Hdf5Archive {
      */
     private INDArray readDataSet(hdf5.CommonFG fileGroup, String datasetName)
                     throws UnsupportedKerasConfigurationException {
-        hdf5.DataSet dataset = fileGroup.openDataSet(datasetName);
-        hdf5.DataSpace space = dataset.getSpace();
-        int nbDims = space.getSimpleExtentNdims();
-        long[] dims = new long[nbDims];
-        space.getSimpleExtentDims(dims);
-        float[] dataBuffer = null;
-        FloatPointer fp = null;
-        int j = 0;
-        INDArray data = null;
-        switch (nbDims) {
-            case 4: /* 2D Convolution weights */
-                dataBuffer = new float[(int) (dims[0] * dims[1] * dims[2] * dims[3])];
-                fp = new FloatPointer(dataBuffer);
-                dataset.read(fp, dataType);
-                fp.get(dataBuffer);
-                data = Nd4j.create((int) dims[0], (int) dims[1], (int) dims[2], (int) dims[3]);
-                j = 0;
-                for (int i1 = 0; i1 < dims[0]; i1++)
-                    for (int i2 = 0; i2 < dims[1]; i2++)
-                        for (int i3 = 0; i3 < dims[2]; i3++)
-                            for (int i4 = 0; i4 < dims[3]; i4++)
-                                data.putScalar(i1, i2, i3, i4, dataBuffer[j++]);
-                break;
-            case 3:
-                dataBuffer = new float[(int) (dims[0] * dims[1] * dims[2])];
-                fp = new FloatPointer(dataBuffer);
-                dataset.read(fp, dataType);
-                fp.get(dataBuffer);
-                data = Nd4j.create((int) dims[0], (int) dims[1], (int) dims[2]);
-                j = 0;
-                for (int i1 = 0; i1 < dims[0]; i1++)
-                    for (int i2 = 0; i2 < dims[1]; i2++)
-                        for (int i3 = 0; i3 < dims[2]; i3++)
-                            data.putScalar(i1, i2, i3, dataBuffer[j++]);
-                break;
-            case 2: /* Dense and Recurrent weights */
-                dataBuffer = new float[(int) (dims[0] * dims[1])];
-                fp = new FloatPointer(dataBuffer);
-                dataset.read(fp, dataType);
-                fp.get(dataBuffer);
-                data = Nd4j.create((int) dims[0], (int) dims[1]);
-                j = 0;
-                for (int i1 = 0; i1 < dims[0]; i1++)
-                    for (int i2 = 0; i2 < dims[1]; i2++)
-                        data.putScalar(i1, i2, dataBuffer[j++]);
-                break;
-            case 1: /* Bias */
-                dataBuffer = new float[(int) dims[0]];
-                fp = new FloatPointer(dataBuffer);
-                dataset.read(fp, dataType);
-                fp.get(dataBuffer);
-                data = Nd4j.create((int) dims[0]);
-                j = 0;
-                for (int i1 = 0; i1 < dims[0]; i1++)
-                    data.putScalar(i1, dataBuffer[j++]);
-                break;
-            default:
-                throw new UnsupportedKerasConfigurationException("Cannot import weights with rank " + nbDims);
+        hdf5.DataSet dataset;
+        hdf5.DataSpace space;
+        long[] dims;
+        synchronized (LOCK) {
+            dataset = fileGroup.openDataSet(datasetName);
+            space = dataset.getSpace();
+            int nbDims = space.getSimpleExtentNdims();
+            dims = new long[nbDims];
+            space.getSimpleExtentDims(dims);
+        }
+        try {
+            INDArray data;
+            switch (dims.length) {
+                case 4: /* 2D Convolution weights */
+                case 3:
+                case 2: /* Dense and Recurrent weights */
+                    int[] shape = new int[dims.length];
+                    for (int i = 0; i < dims.length; i++)
+                        shape[i] = (int) dims[i];
+                    data = Nd4j.create(shape, 'c');
+                    break;
+                case 1: /* Bias */
+                    data = Nd4j.create((int) dims[0]);
+                    break;
+                default:
+                    throw new UnsupportedKerasConfigurationException("Cannot import weights with rank " + dims.length);
+            }
+            readChunks(dataset, space, dims, data);
+            return data;
+        } finally {
+            synchronized (LOCK) {
+                space.deallocate();
+                dataset.deallocate();
+            }
+        }
+    }
+
+    /**
+     * Read a data set into the (c ordered, freshly allocated) buffer of an ND4J array, one slab
+     * of the leading dimension at a time. Float and double buffers are written in place, any
+     * other data type goes through a native staging buffer of at most one chunk.
+     *
+     * @param dataset   HDF5 data set
+     * @param space     data space of the data set
+     * @param dims      dimensions of the data set
+     * @param data      array to read into, with the same number of elements as the data set
+     */
+    private void readChunks(hdf5.DataSet dataset, hdf5.DataSpace space, long[] dims, INDArray data) {
+        long sliceLength = 1;
+        for (int i = 1; i < dims.length; i++)
+            sliceLength *= dims[i];
+        long slicesPerChunk = Math.max(1, chunkElements / Math.max(1, sliceLength));
+
+        DataBuffer buffer = data.data();
+        DataBuffer.Type type = buffer.dataType();
+        boolean inPlace = type == DataBuffer.Type.FLOAT || type == DataBuffer.Type.DOUBLE;
+        hdf5.DataType memType = type == DataBuffer.Type.DOUBLE ? doubleDataType : dataType;
+        FloatPointer staging = inPlace ? null : new FloatPointer(Math.min(dims[0], slicesPerChunk) * sliceLength);
+
+        try {
+            for (long slice = 0; slice < dims[0]; slice += slicesPerChunk) {
+                long[] start = new long[dims.length];
+                long[] count = dims.clone();
+                start[0] = slice;
+                count[0] = Math.min(slicesPerChunk, dims[0] - slice);
+                long offset = slice * sliceLength;
+
+                Pointer target;
+                if (!inPlace)
+                    target = staging;
+                else if (type == DataBuffer.Type.DOUBLE)
+                    target = new DoublePointer(buffer.addressPointer()).position(offset);
+                else
+                    target = new FloatPointer(buffer.addressPointer()).position(offset);
+
+                synchronized (LOCK) {
+                    hdf5.DataSpace memSpace = new hdf5.DataSpace(count.length, count);
+                    space.selectHyperslab(H5S_SELECT_SET, count, start);
+                    dataset.read(target, memType, memSpace, space);
+                    memSpace.deallocate();
+                }
+
+                if (!inPlace) {
+                    long length = count[0] * sliceLength;
+                    for (long i = 0; i < length; i++)
+                        buffer.put(offset + i, staging.get(i));
+                }
+            }
+        } finally {
+            if (staging != null)
+                staging.deallocate();
         }
-        space.deallocate();
-        dataset.deallocate();
-        return data;
+
+        if (inPlace)
+            Nd4j.getAffinityManager().tagLocation(data, AffinityManager.Location.HOST);
     }
 
     /**
@@ -355,7 +452,9 @@ public class Hdf5Archive {
      */
     public String readAttributeAsFixedLengthString(String attributeName, int bufferSize)
             throws UnsupportedKerasConfigurationException {
-        return readAttributeAsFixedLengthString(this.file.openAttribute(attributeName), bufferSize);
+        synchronized (LOCK) {
+            return readAttributeAsFixedLengthString(this.file.openAttribute(attributeName), bufferSize);
+        }
     }
 
     /**
@@ -0,0 +1,169 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+package org.deeplearning4j.nn.modelimport.keras;
+
+import org.deeplearning4j.nn.modelimport.keras.utils.KerasModelUtils;
+import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.util.DataTypeUtil;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.io.ClassPathResource;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for chunked reading of Keras weights.
+ */
+public class Hdf5ArchiveTest {
+    private static final String MODEL_PATH = "modelimport/keras/examples/mnist_mlp/mnist_mlp_tf_keras_2_model.h5";
+    private static final String WEIGHTS_ROOT = "model_weights";
+    private static final int SMALL_CHUNK = 1000;
+
+    @Test
+    public void testChunkedRead() throws Exception {
+        String modelFile = copyModel();
+        try (Hdf5Archive whole = new Hdf5Archive(modelFile);
+             Hdf5Archive chunked = new Hdf5Archive(modelFile, SMALL_CHUNK)) {
+            //Dense kernels of the model are read one row per chunk
+            assertTrue(compareDataSets(whole, chunked, WEIGHTS_ROOT) > SMALL_CHUNK);
+        }
+    }
+
+    @Test
+    public void testChunkedReadStaging() throws Exception {
+        //Non float buffers go through the staging buffer
+        DataBuffer.Type type = DataTypeUtil.getDtypeFromContext();
+        String modelFile = copyModel();
+        try {
+            DataTypeUtil.setDTypeForContext(DataBuffer.Type.FLOAT);
+            Map<String, INDArray> expected;
+            try (Hdf5Archive archive = new Hdf5Archive(modelFile)) {
+                expected = readAll(archive, WEIGHTS_ROOT);
+            }
+
+            for (DataBuffer.Type other : new DataBuffer.Type[] {DataBuffer.Type.DOUBLE, DataBuffer.Type.HALF}) {
+                DataTypeUtil.setDTypeForContext(other);
+                Map<String, INDArray> actual;
+                try (Hdf5Archive archive = new Hdf5Archive(modelFile, SMALL_CHUNK)) {
+                    actual = readAll(archive, WEIGHTS_ROOT);
+                }
+                assertEquals(expected.keySet(), actual.keySet());
+                for (String name : expected.keySet()) {
+                    assertEquals(other, actual.get(name).data().dataType());
+                    double eps = other == DataBuffer.Type.HALF ? 1e-2 : 1e-6;
+                    assertTrue(name, expected.get(name).equalsWithEps(actual.get(name), eps));
+                }
+            }
+        } finally {
+            DataTypeUtil.setDTypeForContext(type);
+        }
+    }
+
+    @Test
+    public void testChunkedImportMatchesWhole() throws Exception {
+        String modelFile = copyModel();
+        KerasModel model = new KerasModel().modelBuilder().modelHdf5Filename(modelFile)
+                .enforceTrainingConfig(false).buildSequential();
+
+        Map<String, Map<String, INDArray>> whole;
+        try (Hdf5Archive archive = new Hdf5Archive(modelFile)) {
+            KerasModelUtils.importWeights(archive, WEIGHTS_ROOT, model.layers);
+            whole = snapshotWeights(model.layers);
+        }
+        Map<String, Map<String, INDArray>> chunked;
+        try (Hdf5Archive archive = new Hdf5Archive(modelFile, SMALL_CHUNK)) {
+            KerasModelUtils.importWeights(archive, WEIGHTS_ROOT, model.layers);
+            chunked = snapshotWeights(model.layers);
+        }
+
+        assertFalse(whole.isEmpty());
+        assertEquals(whole.keySet(), chunked.keySet());
+        for (String layerName : whole.keySet()) {
+            Map<String, INDArray> expected = whole.get(layerName);
+            Map<String, INDArray> actual = chunked.get(layerName);
+            assertEquals(layerName, expected.keySet(), actual.keySet());
+            for (String paramName : expected.keySet())
+                assertEquals(layerName + "/" + paramName, expected.get(paramName), actual.get(paramName));
+        }
+    }
+
+    private static String copyModel() throws Exception {
+        ClassPathResource modelResource = new ClassPathResource(MODEL_PATH, Hdf5ArchiveTest.class.getClassLoader());
+        File modelFile = File.createTempFile("tempModel", ".h5");
+        modelFile.deleteOnExit();
+        Files.copy(modelResource.getInputStream(), modelFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return modelFile.getAbsolutePath();
+    }
+
+    /**
+     * Compare all data sets below the given group, returning the length of the largest one.
+     */
+    private static long compareDataSets(Hdf5Archive expected, Hdf5Archive actual, String... groups)
+            throws Exception {
+        long maxLength = 0;
+        for (String dataSet : expected.getDataSets(groups)) {
+            INDArray e = expected.readDataSet(dataSet, groups);
+            INDArray a = actual.readDataSet(dataSet, groups);
+            assertEquals(dataSet, e, a);
+            maxLength = Math.max(maxLength, e.length());
+        }
+        for (String group : expected.getGroups(groups))
+            maxLength = Math.max(maxLength, compareDataSets(expected, actual, append(groups, group)));
+        return maxLength;
+    }
+
+    private static Map<String, INDArray> readAll(Hdf5Archive archive, String... groups) throws Exception {
+        Map<String, INDArray> out = new HashMap<>();
+        for (String dataSet : archive.getDataSets(groups))
+            out.put(Arrays.toString(groups) + dataSet, archive.readDataSet(dataSet, groups));
+        for (String group : archive.getGroups(groups))
+            out.putAll(readAll(archive, append(groups, group)));
+        return out;
+    }
+
+    private static String[] append(String[] groups, String group) {
+        List<String> path = new ArrayList<>();
+        for (String g : groups)
+            path.add(g);
+        path.add(group);
+        return path.toArray(new String[path.size()]);
+    }
+
+    private static Map<String, Map<String, INDArray>> snapshotWeights(Map<String, KerasLayer> layers) {
+        Map<String, Map<String, INDArray>> out = new HashMap<>();
+        for (Map.Entry<String, KerasLayer> entry : layers.entrySet()) {
+            Map<String, INDArray> weights = entry.getValue().weights;
+            if (weights == null || weights.isEmpty())
+                continue;
+            Map<String, INDArray> copy = new HashMap<>();
+            for (Map.Entry<String, INDArray> param : weights.entrySet())
+                copy.put(param.getKey(), param.getValue().dup());
+            out.put(entry.getKey(), copy);
+        }
+        return out;
+    }
+}
@@ -3,6 +3,7 @@ package org.deeplearning4j.nearestneighbor.server;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import org.deeplearning4j.clustering.sptree.DataPoint;
+import org.deeplearning4j.clustering.vptree.FlatVPTree;
 import org.deeplearning4j.clustering.vptree.VPTree;
 import org.deeplearning4j.nearestneighbor.model.NearestNeighborRequest;
 import org.deeplearning4j.nearestneighbor.model.NearestNeighborsResult;
@@ -19,15 +20,20 @@ import java.util.List;
 public class NearestNeighbor {
     private NearestNeighborRequest record;
     private VPTree tree;
+    private FlatVPTree flatTree;
     private INDArray points;
 
     public List<NearestNeighborsResult> search() {
-        INDArray input = points.slice(record.getInputIndex());
+        INDArray input = points != null ? points.slice(record.getInputIndex())
+                        : flatTree.getPoint(record.getInputIndex());
         List<NearestNeighborsResult> results = new ArrayList<>();
         if (input.isVector()) {
             List<DataPoint> add = new ArrayList<>();
             List<Double> distances = new ArrayList<>();
-            tree.search(input, record.getK(), add, distances);
+            if (flatTree != null)
+                flatTree.search(input, record.getK(), add, distances);
+            else
+                tree.search(input, record.getK(), add, distances);
 
             if (add.size() != distances.size()) {
                 throw new IllegalStateException(
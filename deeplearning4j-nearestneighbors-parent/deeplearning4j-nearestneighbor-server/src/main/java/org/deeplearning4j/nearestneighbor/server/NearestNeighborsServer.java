@@ -6,8 +6,7 @@ import com.beust.jcommander.ParameterException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.deeplearning4j.clustering.sptree.DataPoint;
-import org.deeplearning4j.clustering.vptree.VPTree;
-import org.deeplearning4j.clustering.vptree.VPTreeFillSearch;
+import org.deeplearning4j.clustering.vptree.FlatVPTree;
 import org.deeplearning4j.exception.DL4JInvalidInputException;
 import org.deeplearning4j.nearestneighbor.model.*;
 import org.nd4j.linalg.api.buffer.DataBuffer;
@@ -19,41 +18,76 @@ import org.nd4j.serde.base64.Nd4jBase64;
 import org.nd4j.serde.binary.BinarySerde;
 import play.Mode;
 import play.libs.Json;
+import play.mvc.Http;
 import play.routing.RoutingDsl;
 import play.server.Server;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static play.mvc.Controller.request;
 import static play.mvc.Results.*;
 
 /**
- * A rest server for using an
- * {@link VPTree} based on loading an ndarray containing
+ * A rest server for using a
+ * {@link FlatVPTree} based on loading an ndarray containing
  * the data points for the path
  * The input values are an {@link CSVRecord}
  * which (based on the input schema) will automatically
  * have their values transformed.
  *
+ * Building the tree for a large number of points takes a long time, so the tree
+ * can also be built once and saved with --saveIndexPath
+ * (--buildIndexOnly exits afterwards), then loaded on startup with --indexPath. The similarity function
+ * and invert flag are stored in the index; if they're given together with --indexPath, they must match it.
+ *
+ * Many queries can be sent at once to /knnbatch?k=...: the body is the query matrix
+ * (one query per row) serialized with {@link BinarySerde}, the queries are split across
+ * --searchWorkers threads sharing the tree and the results come back in a single
+ * {@link NearestNeighborsBatchResults}.
+ *
  * @author Adam Gibson
  */
 @Slf4j
 public class NearestNeighborsServer {
-    @Parameter(names = {"--ndarrayPath"}, arity = 1, required = true)
+    private static final String DEFAULT_SIMILARITY_FUNCTION = "euclidean";
+
+    @Parameter(names = {"--ndarrayPath"}, arity = 1)
     private String ndarrayPath = null;
+    @Parameter(names = {"--indexPath"}, arity = 1, description = "Load a prebuilt index instead of building the tree")
+    private String indexPath = null;
+    @Parameter(names = {"--saveIndexPath"}, arity = 1, description = "Save the index built from --ndarrayPath")
+    private String saveIndexPath = null;
+    @Parameter(names = {"--buildIndexOnly"}, arity = 1, description = "Exit after saving the index")
+    private boolean buildIndexOnly = false;
+    @Parameter(names = {"--workers"}, arity = 1, description = "Number of threads used to build the index")
+    private int workers = Runtime.getRuntime().availableProcessors();
     @Parameter(names = {"--labelsPath"}, arity = 1, required = false)
     private String labelsPath = null;
     @Parameter(names = {"--nearestNeighborsPort"}, arity = 1)
     private int port = 9000;
-    @Parameter(names = {"--similarityFunction"}, arity = 1)
-    private String similarityFunction = "euclidean";
-    @Parameter(names = {"--invert"}, arity = 1)
-    private boolean invert = false;
+    // null unless set by the user, so values given with --indexPath can be told apart from defaults
+    @Parameter(names = {"--similarityFunction"}, arity = 1,
+                    description = "Default: euclidean. Must match the index loaded with --indexPath")
+    private String similarityFunction = null;
+    @Parameter(names = {"--invert"}, arity = 1,
+                    description = "Default: false. Must match the index loaded with --indexPath")
+    private Boolean invert = null;
+    @Parameter(names = {"--searchWorkers"}, arity = 1, description = "Number of threads used for batched searches")
+    private int searchWorkers = Runtime.getRuntime().availableProcessors();
 
     private Server server;
+    private ExecutorService searchExecutor;
+    private FlatVPTree flatTree;
+    private final List<String> labels = new ArrayList<>();
 
     public void runMain(String... args) throws Exception {
         JCommander jcmdr = new JCommander(this);
@@ -72,62 +106,56 @@ public class NearestNeighborsServer {
             System.exit(1);
         }
 
-        String[] pathArr = ndarrayPath.split(",");
-        //INDArray[] pointsArr = new INDArray[pathArr.length];
-        // first of all we reading shapes of saved eariler files
-        int rows = 0;
-        int cols = 0;
-        for (int i = 0; i < pathArr.length; i++) {
-            DataBuffer shape = BinarySerde.readShapeFromDisk(new File(pathArr[i]));
-
-            log.info("Loading shape {} of {}; Shape: [{} x {}]", i + 1, pathArr.length, Shape.size(shape, 0),
-                            Shape.size(shape, 1));
-
-            if (Shape.rank(shape) != 2)
-                throw new DL4JInvalidInputException("NearestNeighborsServer assumes 2D chunks");
-
-            rows += Shape.size(shape, 0);
-
-            if (cols == 0)
-                cols = Shape.size(shape, 1);
-            else if (cols != Shape.size(shape, 1))
-                throw new DL4JInvalidInputException(
-                                "NearestNeighborsServer requires equal 2D chunks. Got columns mismatch.");
+        if (ndarrayPath == null && indexPath == null) {
+            jcmdr.usage();
+            throw new DL4JInvalidInputException("Either --ndarrayPath or --indexPath is required");
         }
+        if (saveIndexPath != null && ndarrayPath == null)
+            throw new DL4JInvalidInputException("--saveIndexPath requires --ndarrayPath");
 
-        final List<String> labels = new ArrayList<>();
+        labels.clear();
         if (labelsPath != null) {
             String[] labelsPathArr = labelsPath.split(",");
             for (int i = 0; i < labelsPathArr.length; i++) {
                 labels.addAll(FileUtils.readLines(new File(labelsPathArr[i]), "utf-8"));
             }
         }
-        if (labels.size() > 0 && labels.size() != rows)
-            throw new DL4JInvalidInputException(String.format("Number of labels must match number of rows in points matrix (expected %d, found %d)", rows, labels.size()));
-
-        final INDArray points = Nd4j.createUninitialized(rows, cols);
-
-        int lastPosition = 0;
-        for (int i = 0; i < pathArr.length; i++) {
-            log.info("Loading chunk {} of {}", i + 1, pathArr.length);
-            INDArray pointsArr = BinarySerde.readFromDisk(new File(pathArr[i]));
-
-            points.get(NDArrayIndex.interval(lastPosition, lastPosition + pointsArr.rows())).assign(pointsArr);
-            lastPosition += pointsArr.rows();
 
-            // let's ensure we don't bring too much stuff in next loop
-            System.gc();
+        if (indexPath != null) {
+            long start = System.currentTimeMillis();
+            flatTree = FlatVPTree.load(new File(indexPath));
+            log.info("Loaded index of {} points from {} in {} ms", flatTree.getNumPoints(), indexPath,
+                            System.currentTimeMillis() - start);
+            if (labels.size() > 0 && labels.size() != flatTree.getNumPoints())
+                throw new DL4JInvalidInputException(String.format("Number of labels must match number of points in index (expected %d, found %d)", flatTree.getNumPoints(), labels.size()));
+            checkIndexSettings(flatTree);
+        } else {
+            // the tree keeps its own copy of the points, queries by index read them from the tree
+            INDArray points = loadPoints(labels);
+            String similarity = similarityFunction != null ? similarityFunction : DEFAULT_SIMILARITY_FUNCTION;
+            boolean invertDistance = invert != null && invert;
+            long start = System.currentTimeMillis();
+            flatTree = new FlatVPTree(points, similarity, invertDistance, FlatVPTree.DEFAULT_LEAF_SIZE, workers);
+            log.info("Built tree over {} points in {} ms", points.rows(), System.currentTimeMillis() - start);
+
+            if (saveIndexPath != null) {
+                start = System.currentTimeMillis();
+                flatTree.save(new File(saveIndexPath));
+                log.info("Saved index to {} in {} ms", saveIndexPath, System.currentTimeMillis() - start);
+                if (buildIndexOnly)
+                    return;
+            }
         }
 
-        VPTree tree = new VPTree(points, similarityFunction, invert);
+        searchExecutor = Executors.newFixedThreadPool(Math.max(1, searchWorkers));
 
         RoutingDsl routingDsl = new RoutingDsl();
         //return the host information for a given id
         routingDsl.POST("/knn").routeTo(FunctionUtil.function0((() -> {
             try {
                 NearestNeighborRequest record = Json.fromJson(request().body().asJson(), NearestNeighborRequest.class);
-                NearestNeighbor nearestNeighbor =
-                                NearestNeighbor.builder().points(points).record(record).tree(tree).build();
+                NearestNeighbor nearestNeighbor = NearestNeighbor.builder().record(record).flatTree(flatTree)
+                                .build();
 
                 if (record == null)
                     return badRequest(Json.toJson(Collections.singletonMap("status", "invalid json passed.")));
@@ -151,33 +179,7 @@ public class NearestNeighborsServer {
                     return badRequest(Json.toJson(Collections.singletonMap("status", "invalid json passed.")));
 
                 INDArray arr = Nd4jBase64.fromBase64(record.getNdarray());
-                List<DataPoint> results;
-                List<Double> distances;
-
-                if (record.isForceFillK()) {
-                    VPTreeFillSearch vpTreeFillSearch = new VPTreeFillSearch(tree, record.getK(), arr);
-                    vpTreeFillSearch.search();
-                    results = vpTreeFillSearch.getResults();
-                    distances = vpTreeFillSearch.getDistances();
-                } else {
-                    results = new ArrayList<>();
-                    distances = new ArrayList<>();
-                    tree.search(arr, record.getK(), results, distances);
-                }
-
-                if (results.size() != distances.size()) {
-                    return internalServerError(
-                            String.format("results.size == %d != %d == distances.size",
-                                    results.size(), distances.size()));
-                }
-
-                List<NearestNeighborsResult> nnResult = new ArrayList<>();
-                for (int i=0; i<results.size(); i++) {
-                    if (labels.size() > 0)
-                        nnResult.add(new NearestNeighborsResult(results.get(i).getIndex(), distances.get(i), labels.get(results.get(i).getIndex())));
-                    else
-                        nnResult.add(new NearestNeighborsResult(results.get(i).getIndex(), distances.get(i)));
-                }
+                List<NearestNeighborsResult> nnResult = search(arr, record.getK());
 
                 NearstNeighborsResults results2 = NearstNeighborsResults.builder().results(nnResult).build();
                 return ok(Json.toJson(results2));
@@ -188,17 +190,184 @@ public class NearestNeighborsServer {
             }
         })));
 
+        routingDsl.POST("/knnbatch").routeTo(FunctionUtil.function0((() -> {
+            try {
+                String k = request().getQueryString("k");
+                Http.RawBuffer body = request().body().asRaw();
+                if (k == null || body == null)
+                    return badRequest(Json.toJson(Collections.singletonMap("status",
+                                    "expected a binary ndarray body and a k parameter.")));
+                int numNeighbors = parsePositiveInt(k);
+                if (numNeighbors <= 0)
+                    return badRequest(Json.toJson(Collections.singletonMap("status",
+                                    "k must be a positive integer, got " + k)));
+
+                // large bodies are buffered to disk by play
+                byte[] bytes = body.asBytes();
+                if (bytes == null)
+                    bytes = Files.readAllBytes(body.asFile().toPath());
+                ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+                buffer.put(bytes);
+                buffer.rewind();
+                INDArray queries = BinarySerde.toArray(buffer);
+                int dimensions = flatTree.getDimensions();
+                if (queries.rank() != 2 || (queries.isVector() ? queries.length() : queries.columns()) != dimensions)
+                    return badRequest(Json.toJson(Collections.singletonMap("status",
+                                    "expected a matrix with " + dimensions + " columns, got shape "
+                                                    + Arrays.toString(queries.shape()))));
+
+                // the flat tree search is exact, it always fills k results, so forceFillK needs no handling
+                List<NearstNeighborsResults> results = searchBatch(queries, numNeighbors);
+                return ok(Json.toJson(NearestNeighborsBatchResults.builder().results(results).build()));
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                return internalServerError();
+            }
+        })));
+
         server = Server.forRouter(routingDsl.build(), Mode.PROD, port);
 
 
     }
 
+    /**
+     * The loaded index is searched with the settings it was built with, so settings given on the command line
+     * have to match them
+     */
+    private void checkIndexSettings(FlatVPTree index) {
+        String indexSimilarity = index.getSimilarityFunction() != null ? index.getSimilarityFunction()
+                        : DEFAULT_SIMILARITY_FUNCTION;
+        if (similarityFunction != null && !similarityFunction.equals(indexSimilarity))
+            throw new DL4JInvalidInputException(String.format(
+                            "--similarityFunction %s doesn't match similarity function %s of index %s",
+                            similarityFunction, indexSimilarity, indexPath));
+        if (invert != null && invert != index.isInvert())
+            throw new DL4JInvalidInputException(String.format("--invert %b doesn't match invert flag %b of index %s",
+                            invert, index.isInvert(), indexPath));
+    }
+
+    /**
+     * Returns the value of a positive integer parameter, or -1 if it isn't a positive integer
+     */
+    private static int parsePositiveInt(String value) {
+        try {
+            return Math.max(-1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Search the k nearest neighbors of a single query. The flat tree search is exact, it always fills k results.
+     */
+    private List<NearestNeighborsResult> search(INDArray arr, int k) {
+        List<DataPoint> results = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+        flatTree.search(arr, k, results, distances);
+
+        List<NearestNeighborsResult> nnResult = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++)
+            nnResult.add(result(results.get(i).getIndex(), distances.get(i)));
+        return nnResult;
+    }
+
+    private NearestNeighborsResult result(int index, double distance) {
+        if (labels.size() > 0)
+            return new NearestNeighborsResult(index, distance, labels.get(index));
+        else
+            return new NearestNeighborsResult(index, distance);
+    }
+
+    /**
+     * Search the k nearest neighbors of every row of the given matrix. The rows are split
+     * into one contiguous range per search worker, all sharing the same (read only) tree.
+     */
+    private List<NearstNeighborsResults> searchBatch(INDArray queries, int k) throws Exception {
+        if (queries.isVector() && queries.rows() != 1)
+            queries = queries.reshape(1, queries.length());
+        if (queries.rank() != 2)
+            throw new DL4JInvalidInputException("Batched queries must be a matrix with one query per row");
+
+        final int numQueries = queries.rows();
+        final int dimensions = queries.columns();
+        final NearstNeighborsResults[] out = new NearstNeighborsResults[numQueries];
+        // the flat tree searches plain float arrays, so the whole batch is copied out once
+        final float[] data = queries.dup('c').data().asFloat();
+
+        int workers = Math.max(1, Math.min(searchWorkers, numQueries));
+        int perWorker = (numQueries + workers - 1) / workers;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < numQueries; from += perWorker) {
+            final int start = from;
+            final int end = Math.min(numQueries, from + perWorker);
+            futures.add(searchExecutor.submit(() -> {
+                int[] indices = new int[Math.max(0, Math.min(k, flatTree.getNumPoints()))];
+                float[] distances = new float[indices.length];
+                for (int q = start; q < end; q++) {
+                    float[] query = Arrays.copyOfRange(data, q * dimensions, (q + 1) * dimensions);
+                    int found = flatTree.search(query, k, indices, distances);
+                    List<NearestNeighborsResult> nnResult = new ArrayList<>(found);
+                    for (int i = 0; i < found; i++)
+                        nnResult.add(result(indices[i], distances[i]));
+                    out[q] = NearstNeighborsResults.builder().results(nnResult).build();
+                }
+            }));
+        }
+
+        for (Future<?> future : futures)
+            future.get();
+        return Arrays.asList(out);
+    }
+
+    private INDArray loadPoints(List<String> labels) throws Exception {
+        String[] pathArr = ndarrayPath.split(",");
+        //INDArray[] pointsArr = new INDArray[pathArr.length];
+        // first of all we reading shapes of saved eariler files
+        int rows = 0;
+        int cols = 0;
+        for (int i = 0; i < pathArr.length; i++) {
+            DataBuffer shape = BinarySerde.readShapeFromDisk(new File(pathArr[i]));
+
+            log.info("Loading shape {} of {}; Shape: [{} x {}]", i + 1, pathArr.length, Shape.size(shape, 0),
+                            Shape.size(shape, 1));
+
+            if (Shape.rank(shape) != 2)
+                throw new DL4JInvalidInputException("NearestNeighborsServer assumes 2D chunks");
+
+            rows += Shape.size(shape, 0);
+
+            if (cols == 0)
+                cols = Shape.size(shape, 1);
+            else if (cols != Shape.size(shape, 1))
+                throw new DL4JInvalidInputException(
+                                "NearestNeighborsServer requires equal 2D chunks. Got columns mismatch.");
+        }
+
+        if (labels.size() > 0 && labels.size() != rows)
+            throw new DL4JInvalidInputException(String.format("Number of labels must match number of rows in points matrix (expected %d, found %d)", rows, labels.size()));
+
+        final INDArray points = Nd4j.createUninitialized(rows, cols);
+
+        int lastPosition = 0;
+        for (int i = 0; i < pathArr.length; i++) {
+            log.info("Loading chunk {} of {}", i + 1, pathArr.length);
+            INDArray pointsArr = BinarySerde.readFromDisk(new File(pathArr[i]));
+
+            points.get(NDArrayIndex.interval(lastPosition, lastPosition + pointsArr.rows())).assign(pointsArr);
+            lastPosition += pointsArr.rows();
+        }
+        return points;
+    }
+
     /**
      * Stop the server
      */
     public void stop() {
         if (server != null)
             server.stop();
+        if (searchExecutor != null)
+            searchExecutor.shutdown();
     }
 
     public static void main(String[] args) throws Exception {
@@ -1,23 +1,30 @@
 package org.deeplearning4j.nearestneighbor.server;
 
+import com.mashape.unirest.http.Unirest;
 import org.deeplearning4j.clustering.sptree.DataPoint;
 import org.deeplearning4j.clustering.vptree.VPTree;
 import org.deeplearning4j.clustering.vptree.VPTreeFillSearch;
+import org.deeplearning4j.exception.DL4JInvalidInputException;
 import org.deeplearning4j.nearestneighbor.client.NearestNeighborsClient;
 import org.deeplearning4j.nearestneighbor.model.NearestNeighborRequest;
+import org.deeplearning4j.nearestneighbor.model.NearestNeighborsBatchResults;
+import org.deeplearning4j.nearestneighbor.model.NearestNeighborsResult;
 import org.deeplearning4j.nearestneighbor.model.NearstNeighborsResults;
 import org.junit.Test;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.serde.binary.BinarySerde;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 /**
  * Created by agibsonccc on 4/27/17.
@@ -63,14 +70,149 @@ public class NearestNeighborTest {
         server.runMain("--ndarrayPath", writeToTmp.getAbsolutePath(), "--nearestNeighborsPort",
                         String.valueOf(localPort));
 
-        NearestNeighborsClient client = new NearestNeighborsClient("http://localhost:" + localPort);
-        NearstNeighborsResults result = client.knnNew(5, rand.getRow(0));
-        assertEquals(5, result.getResults().size());
-        server.stop();
+        try {
+            NearestNeighborsClient client = new NearestNeighborsClient("http://localhost:" + localPort);
+            NearstNeighborsResults result = client.knnNew(5, rand.getRow(0));
+            assertEquals(5, result.getResults().size());
+        } finally {
+            server.stop();
+        }
+    }
+
+
+
+    @Test
+    public void testBatchServer() throws Exception {
+        int localPort = getAvailablePort();
+        Nd4j.getRandom().setSeed(7);
+        INDArray rand = Nd4j.randn(100, 5);
+        File writeToTmp = new File(System.getProperty("java.io.tmpdir"), "ndarray" + UUID.randomUUID().toString());
+        writeToTmp.deleteOnExit();
+        BinarySerde.writeArrayToDisk(rand, writeToTmp);
+        NearestNeighborsServer server = new NearestNeighborsServer();
+        server.runMain("--ndarrayPath", writeToTmp.getAbsolutePath(), "--nearestNeighborsPort",
+                        String.valueOf(localPort), "--searchWorkers", "4");
+
+        try {
+            NearestNeighborsClient client = new NearestNeighborsClient("http://localhost:" + localPort);
+            INDArray queries = rand.get(NDArrayIndex.interval(0, 20), NDArrayIndex.all());
+            NearestNeighborsBatchResults batch = client.knnBatch(5, queries);
+            assertEquals(20, batch.getResults().size());
+            for (int i = 0; i < 20; i++) {
+                NearstNeighborsResults single = client.knnNew(5, rand.getRow(i));
+                assertEquals(single.getResults(), batch.getResults().get(i).getResults());
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testBatchServerFlatIndex() throws Exception {
+        Nd4j.getRandom().setSeed(7);
+        INDArray rand = Nd4j.randn(200, 5);
+        File writeToTmp = new File(System.getProperty("java.io.tmpdir"), "ndarray" + UUID.randomUUID().toString());
+        writeToTmp.deleteOnExit();
+        BinarySerde.writeArrayToDisk(rand, writeToTmp);
+        File index = new File(System.getProperty("java.io.tmpdir"), "index" + UUID.randomUUID().toString());
+        index.deleteOnExit();
+        new NearestNeighborsServer().runMain("--ndarrayPath", writeToTmp.getAbsolutePath(), "--saveIndexPath",
+                        index.getAbsolutePath(), "--buildIndexOnly", "true");
+
+        int localPort = getAvailablePort();
+        NearestNeighborsServer server = new NearestNeighborsServer();
+        server.runMain("--indexPath", index.getAbsolutePath(), "--nearestNeighborsPort", String.valueOf(localPort),
+                        "--searchWorkers", "4");
+        try {
+            NearestNeighborsClient client = new NearestNeighborsClient("http://localhost:" + localPort);
+            INDArray queries = rand.get(NDArrayIndex.interval(0, 20), NDArrayIndex.all());
+            NearestNeighborsBatchResults batch = client.knnBatch(5, queries);
+            assertEquals(20, batch.getResults().size());
+            for (int i = 0; i < 20; i++) {
+                List<NearestNeighborsResult> results = batch.getResults().get(i).getResults();
+                assertEquals(5, results.size());
+                //Every point is its own nearest neighbor
+                assertEquals(i, results.get(0).getIndex());
+                assertEquals(client.knnNew(5, rand.getRow(i)).getResults(), results);
+            }
+
+            //Queries must have as many columns as the indexed points
+            ByteBuffer buffer = BinarySerde.toByteBuffer(Nd4j.randn(3, 4));
+            byte[] body = new byte[buffer.capacity()];
+            buffer.rewind();
+            buffer.get(body);
+            int status = Unirest.post("http://localhost:" + localPort + "/knnbatch").queryString("k", "5")
+                            .header("Content-Type", "application/octet-stream").body(body).asString().getStatus();
+            assertEquals(400, status);
+        } finally {
+            server.stop();
+        }
     }
 
 
 
+    @Test
+    public void testBatchServerInvalidK() throws Exception {
+        int localPort = getAvailablePort();
+        INDArray rand = Nd4j.randn(10, 5);
+        File writeToTmp = new File(System.getProperty("java.io.tmpdir"), "ndarray" + UUID.randomUUID().toString());
+        writeToTmp.deleteOnExit();
+        BinarySerde.writeArrayToDisk(rand, writeToTmp);
+        NearestNeighborsServer server = new NearestNeighborsServer();
+        server.runMain("--ndarrayPath", writeToTmp.getAbsolutePath(), "--nearestNeighborsPort",
+                        String.valueOf(localPort));
+
+        ByteBuffer buffer = BinarySerde.toByteBuffer(rand.getRow(0));
+        byte[] body = new byte[buffer.capacity()];
+        buffer.rewind();
+        buffer.get(body);
+        try {
+            for (String k : new String[] {"abc", "0", "-3", "99999999999"}) {
+                int status = Unirest.post("http://localhost:" + localPort + "/knnbatch").queryString("k", k)
+                                .header("Content-Type", "application/octet-stream").body(body).asString()
+                                .getStatus();
+                assertEquals("k = " + k, 400, status);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testIndexSettingsMustMatch() throws Exception {
+        INDArray rand = Nd4j.randn(50, 5);
+        File writeToTmp = new File(System.getProperty("java.io.tmpdir"), "ndarray" + UUID.randomUUID().toString());
+        writeToTmp.deleteOnExit();
+        BinarySerde.writeArrayToDisk(rand, writeToTmp);
+        File index = new File(System.getProperty("java.io.tmpdir"), "index" + UUID.randomUUID().toString());
+        index.deleteOnExit();
+        new NearestNeighborsServer().runMain("--ndarrayPath", writeToTmp.getAbsolutePath(), "--saveIndexPath",
+                        index.getAbsolutePath(), "--buildIndexOnly", "true", "--similarityFunction", "manhattan");
+
+        String[][] mismatches = {{"--similarityFunction", "euclidean"}, {"--invert", "true"}};
+        for (String[] mismatch : mismatches) {
+            try {
+                new NearestNeighborsServer().runMain("--indexPath", index.getAbsolutePath(), "--nearestNeighborsPort",
+                                String.valueOf(getAvailablePort()), mismatch[0], mismatch[1]);
+                fail("Expected exception for " + mismatch[0] + " " + mismatch[1]);
+            } catch (DL4JInvalidInputException e) {
+                //Expected
+            }
+        }
+
+        //Matching settings, or none at all, are accepted
+        int localPort = getAvailablePort();
+        NearestNeighborsServer server = new NearestNeighborsServer();
+        server.runMain("--indexPath", index.getAbsolutePath(), "--nearestNeighborsPort", String.valueOf(localPort),
+                        "--similarityFunction", "manhattan", "--invert", "false");
+        try {
+            NearestNeighborsClient client = new NearestNeighborsClient("http://localhost:" + localPort);
+            assertEquals(5, client.knnNew(5, rand.getRow(0)).getResults().size());
+        } finally {
+            server.stop();
+        }
+    }
+
     @Test
     public void testFullSearch() throws Exception {
         int numRows = 1000;
@@ -5,12 +5,15 @@ import com.mashape.unirest.http.Unirest;
 import lombok.AllArgsConstructor;
 import org.deeplearning4j.nearestneighbor.model.Base64NDArrayBody;
 import org.deeplearning4j.nearestneighbor.model.NearestNeighborRequest;
+import org.deeplearning4j.nearestneighbor.model.NearestNeighborsBatchResults;
 import org.deeplearning4j.nearestneighbor.model.NearstNeighborsResults;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.serde.base64.Nd4jBase64;
+import org.nd4j.serde.binary.BinarySerde;
 import org.nd4j.shade.jackson.core.JsonProcessingException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Client for the nearest neighbors server.
@@ -93,5 +96,30 @@ public class NearestNeighborsClient {
         return ret;
     }
 
+    /**
+     * Run a k nearest neighbors search
+     * on many NEW data points at once.
+     * The queries are sent as a single binary
+     * ndarray and searched in parallel on the server.
+     * @param k the number of results
+     *          to retrieve per query
+     * @param queries the points to search for,
+     *                one query per row
+     * @return the results, one entry per row of queries
+     * @throws Exception
+     */
+    public NearestNeighborsBatchResults knnBatch(int k, INDArray queries) throws Exception {
+        ByteBuffer buffer = BinarySerde.toByteBuffer(queries);
+        byte[] body = new byte[buffer.capacity()];
+        buffer.rewind();
+        buffer.get(body);
+
+        NearestNeighborsBatchResults ret = Unirest.post(url + "/knnbatch").queryString("k", k)
+                        .header("accept", "application/json").header("Content-Type", "application/octet-stream")
+                        .body(body).asObject(NearestNeighborsBatchResults.class).getBody();
+
+        return ret;
+    }
+
 
 }
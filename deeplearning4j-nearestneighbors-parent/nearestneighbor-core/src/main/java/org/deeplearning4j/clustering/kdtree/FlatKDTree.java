@@ -0,0 +1,499 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.clustering.kdtree;
+
+import lombok.Getter;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Static KD tree over the rows of a matrix, built in bulk and searched with euclidean distance.
+ *
+ * Unlike {@link KDTree}, which inserts points one at a time into a graph of {@link KDTree.KDNode}
+ * objects and compares INDArrays with ND4J ops, this tree:
+ * <ul>
+ *     <li>is built once by median splits over an index permutation of the points, splitting each range
+ *     along the dimension with the largest spread</li>
+ *     <li>uses an implicit layout: the range [lo, hi) has its split point at (lo + hi) / 2, the left subtree
+ *     at [lo, mid) and the right one at (mid, hi), so no node objects or child pointers are stored</li>
+ *     <li>keeps the coordinates in a flat double array in tree order and reads them directly</li>
+ *     <li>scans ranges of at most {@link #DEFAULT_LEAF_SIZE} points linearly</li>
+ * </ul>
+ *
+ * Searches don't modify the tree and can run concurrently; {@link #knn(INDArray, int)} runs a whole batch
+ * of queries across the worker threads given at construction.
+ */
+public class FlatKDTree implements Serializable {
+
+    public static final int DEFAULT_LEAF_SIZE = 8;
+
+    // ranges smaller than this are built, and query batches smaller than this are searched, on the current thread
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    @Getter
+    private final int numPoints;
+    @Getter
+    private final int dimensions;
+    @Getter
+    private final int leafSize;
+    @Getter
+    private final int workers;
+
+    // points in tree order: row p holds the original point ids[p]
+    private final double[] coords;
+    private final int[] ids;
+    // position of every original point in tree order
+    private final int[] positions;
+    // split dimension of the range whose split point is at row p, unused for rows inside leaf ranges
+    private final int[] splitDim;
+
+    // created on first parallel use and shared by the build and all batched queries. Its worker threads
+    // are daemon threads, which exit once idle
+    private transient volatile ForkJoinPool pool;
+
+    /**
+     * @param points the points, one per row
+     */
+    public FlatKDTree(INDArray points) {
+        this(points, DEFAULT_LEAF_SIZE, 1);
+    }
+
+    /**
+     * @param points the points, one per row
+     * @param leafSize maximum number of points scanned linearly
+     * @param workers number of threads used to build the tree and to run batched queries
+     */
+    public FlatKDTree(INDArray points, int leafSize, int workers) {
+        if (points.rank() != 2)
+            throw new IllegalArgumentException("Points should be a matrix, got shape " + Arrays.toString(points.shape()));
+        if (leafSize < 1)
+            throw new IllegalArgumentException("Leaf size should be positive, got " + leafSize);
+
+        this.numPoints = points.rows();
+        this.dimensions = points.columns();
+        this.leafSize = leafSize;
+        this.workers = Math.max(1, workers);
+
+        double[] data = points.dup('c').data().asDouble();
+        this.ids = new int[numPoints];
+        for (int i = 0; i < numPoints; i++)
+            ids[i] = i;
+        this.splitDim = new int[numPoints];
+
+        if (this.workers > 1 && numPoints > PARALLEL_THRESHOLD) {
+            pool().invoke(new BuildTask(data, 0, numPoints, true));
+        } else {
+            new BuildTask(data, 0, numPoints, false).compute();
+        }
+
+        // move the points into tree order, so that leaf scans are sequential
+        this.coords = new double[data.length];
+        this.positions = new int[numPoints];
+        for (int p = 0; p < numPoints; p++) {
+            System.arraycopy(data, ids[p] * dimensions, coords, p * dimensions, dimensions);
+            positions[ids[p]] = p;
+        }
+    }
+
+    private ForkJoinPool pool() {
+        ForkJoinPool result = pool;
+        if (result == null) {
+            synchronized (this) {
+                result = pool;
+                if (result == null)
+                    pool = result = new ForkJoinPool(workers);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the subtree over rows [lo, hi) of ids
+     */
+    private class BuildTask extends RecursiveAction {
+        private final double[] data;
+        private final int lo;
+        private final int hi;
+        private final boolean parallel;
+
+        BuildTask(double[] data, int lo, int hi, boolean parallel) {
+            this.data = data;
+            this.lo = lo;
+            this.hi = hi;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= leafSize)
+                return;
+
+            // split along the dimension with the largest spread
+            int dim = 0;
+            double spread = -1;
+            for (int d = 0; d < dimensions; d++) {
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int i = lo; i < hi; i++) {
+                    double v = data[ids[i] * dimensions + d];
+                    if (v < min)
+                        min = v;
+                    if (v > max)
+                        max = v;
+                }
+                if (max - min > spread) {
+                    spread = max - min;
+                    dim = d;
+                }
+            }
+
+            int mid = (lo + hi) >>> 1;
+            select(data, dim, lo, hi - 1, mid);
+            splitDim[mid] = dim;
+
+            BuildTask left = new BuildTask(data, lo, mid, parallel);
+            BuildTask right = new BuildTask(data, mid + 1, hi, parallel);
+            if (parallel && hi - lo > PARALLEL_THRESHOLD)
+                invokeAll(left, right);
+            else {
+                left.compute();
+                right.compute();
+            }
+        }
+    }
+
+    /**
+     * Quickselect on ids[from..to] (inclusive) by coordinate dim, so that ids[n] ends up at its sorted position
+     */
+    private void select(double[] data, int dim, int from, int to, int n) {
+        while (to > from) {
+            int mid = (from + to) >>> 1;
+            // median of three pivot
+            if (key(data, mid, dim) < key(data, from, dim))
+                swap(mid, from);
+            if (key(data, to, dim) < key(data, from, dim))
+                swap(to, from);
+            if (key(data, to, dim) < key(data, mid, dim))
+                swap(to, mid);
+            double pivot = key(data, mid, dim);
+
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (key(data, i, dim) < pivot)
+                    i++;
+                while (key(data, j, dim) > pivot)
+                    j--;
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (n <= j)
+                to = j;
+            else if (n >= i)
+                from = i;
+            else
+                return;
+        }
+    }
+
+    private double key(double[] data, int row, int dim) {
+        return data[ids[row] * dimensions + dim];
+    }
+
+    private void swap(int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+
+    /**
+     * Search the k nearest neighbours of a single point
+     *
+     * @param query the point to search for
+     * @param k the number of neighbours
+     * @param indices output, indices of the neighbours (nearest first)
+     * @param distances output, the corresponding euclidean distances
+     * @return the number of neighbours found, min(k, number of points)
+     */
+    public int knn(double[] query, int k, int[] indices, double[] distances) {
+        if (query.length != dimensions)
+            throw new IllegalArgumentException("Query should have " + dimensions + " dimensions, got " + query.length);
+        k = Math.max(0, Math.min(k, numPoints));
+        return knn(query, 0, k, new BoundedHeap(k), indices, 0, distances, 0);
+    }
+
+    private int knn(double[] queries, int qOffset, int k, BoundedHeap heap, int[] indices, int iOffset,
+                    double[] distances, int dOffset) {
+        if (k <= 0)
+            return 0;
+        search(0, numPoints, queries, qOffset, heap);
+        int found = heap.size;
+        for (int n = found; n > 0; n--) {
+            indices[iOffset + n - 1] = ids[heap.rows[0]];
+            distances[dOffset + n - 1] = Math.sqrt(heap.keys[0]);
+            heap.pop();
+        }
+        return found;
+    }
+
+    private void search(int lo, int hi, double[] query, int qOffset, BoundedHeap heap) {
+        if (hi - lo <= leafSize) {
+            for (int p = lo; p < hi; p++) {
+                double d = squaredDistance(query, qOffset, p);
+                if (d < heap.bound())
+                    heap.add(p, d);
+            }
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        double d = squaredDistance(query, qOffset, mid);
+        if (d < heap.bound())
+            heap.add(mid, d);
+
+        int dim = splitDim[mid];
+        double diff = query[qOffset + dim] - coords[mid * dimensions + dim];
+        if (diff < 0) {
+            search(lo, mid, query, qOffset, heap);
+            if (diff * diff < heap.bound())
+                search(mid + 1, hi, query, qOffset, heap);
+        } else {
+            search(mid + 1, hi, query, qOffset, heap);
+            if (diff * diff < heap.bound())
+                search(lo, mid, query, qOffset, heap);
+        }
+    }
+
+    private double squaredDistance(double[] query, int qOffset, int row) {
+        int offset = row * dimensions;
+        double sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            double diff = query[qOffset + i] - coords[offset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * Search the k nearest neighbours of every row of the given matrix
+     *
+     * @param queries the points to search for, one per row
+     * @param k the number of neighbours per query
+     * @return the neighbours of all queries
+     */
+    public Neighbors knn(INDArray queries, int k) {
+        if (queries.isRowVector() && queries.rank() == 1)
+            queries = queries.reshape(1, queries.length());
+        if (queries.rank() != 2 || queries.columns() != dimensions)
+            throw new IllegalArgumentException("Queries should have shape [n, " + dimensions + "], got "
+                            + Arrays.toString(queries.shape()));
+        return knn(queries.dup('c').data().asDouble(), queries.rows(), k);
+    }
+
+    /**
+     * Search the k nearest neighbours of a batch of points
+     *
+     * @param queries the points to search for, row major
+     * @param numQueries the number of points in queries
+     * @param k the number of neighbours per query
+     * @return the neighbours of all queries
+     */
+    public Neighbors knn(final double[] queries, int numQueries, int k) {
+        if (queries.length != numQueries * dimensions)
+            throw new IllegalArgumentException("Expected " + numQueries + " queries of " + dimensions
+                            + " dimensions, got " + queries.length + " values");
+
+        final Neighbors neighbors = new Neighbors(numQueries, Math.max(0, Math.min(k, numPoints)));
+        if (workers > 1 && numQueries > PARALLEL_THRESHOLD) {
+            pool().invoke(new QueryTask(queries, neighbors, 0, numQueries));
+        } else {
+            new QueryTask(queries, neighbors, 0, numQueries).search();
+        }
+        return neighbors;
+    }
+
+    /**
+     * Searches queries [from, to) of a batch, splitting the range across the pool
+     */
+    private class QueryTask extends RecursiveAction {
+        private final double[] queries;
+        private final Neighbors neighbors;
+        private final int from;
+        private final int to;
+
+        QueryTask(double[] queries, Neighbors neighbors, int from, int to) {
+            this.queries = queries;
+            this.neighbors = neighbors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                search();
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new QueryTask(queries, neighbors, from, mid), new QueryTask(queries, neighbors, mid, to));
+            }
+        }
+
+        void search() {
+            int k = neighbors.k;
+            BoundedHeap heap = new BoundedHeap(k);
+            for (int q = from; q < to; q++)
+                knn(queries, q * dimensions, k, heap, neighbors.indices, q * k, neighbors.distances, q * k);
+        }
+    }
+
+    /**
+     * Nearest neighbour of a single point
+     *
+     * @param query the point to search for
+     * @return the index of the nearest point, or -1 if the tree is empty
+     */
+    public int nn(double[] query) {
+        int[] index = new int[1];
+        double[] distance = new double[1];
+        return knn(query, 1, index, distance) == 0 ? -1 : index[0];
+    }
+
+    /**
+     * @param index the original index of a point
+     * @param dimension the dimension
+     * @return the coordinate of the point
+     */
+    public double getCoordinate(int index, int dimension) {
+        return coords[positions[index] * dimensions + dimension];
+    }
+
+    /**
+     * @param index the original index of a point
+     * @return a copy of the point as a row vector
+     */
+    public INDArray getPoint(int index) {
+        int offset = positions[index] * dimensions;
+        return Nd4j.create(Arrays.copyOfRange(coords, offset, offset + dimensions));
+    }
+
+    /**
+     * The k nearest neighbours of a batch of queries, stored row major: the neighbours of query q are
+     * at [q * k, (q + 1) * k), nearest first. k is capped at the number of points in the tree.
+     */
+    public static class Neighbors implements Serializable {
+        @Getter
+        private final int numQueries;
+        @Getter
+        private final int k;
+        @Getter
+        private final int[] indices;
+        @Getter
+        private final double[] distances;
+
+        Neighbors(int numQueries, int k) {
+            this.numQueries = numQueries;
+            this.k = k;
+            this.indices = new int[numQueries * k];
+            this.distances = new double[numQueries * k];
+        }
+
+        public int getIndex(int query, int neighbor) {
+            return indices[query * k + neighbor];
+        }
+
+        public double getDistance(int query, int neighbor) {
+            return distances[query * k + neighbor];
+        }
+    }
+
+    /**
+     * Max heap of (squared distance, row) pairs with a fixed capacity
+     */
+    private static class BoundedHeap {
+        private final double[] keys;
+        private final int[] rows;
+        private int size;
+
+        BoundedHeap(int capacity) {
+            keys = new double[capacity];
+            rows = new int[capacity];
+        }
+
+        /**
+         * @return the squared distance a candidate must beat to enter the heap
+         */
+        double bound() {
+            return size < keys.length ? Double.POSITIVE_INFINITY : keys[0];
+        }
+
+        void add(int row, double key) {
+            if (size < keys.length) {
+                // sift up
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (keys[parent] >= key)
+                        break;
+                    keys[i] = keys[parent];
+                    rows[i] = rows[parent];
+                    i = parent;
+                }
+                keys[i] = key;
+                rows[i] = row;
+            } else {
+                siftDown(row, key, size);
+            }
+        }
+
+        // remove the root
+        void pop() {
+            size--;
+            if (size > 0)
+                siftDown(rows[size], keys[size], size);
+        }
+
+        // replace the root and restore the heap over the first n entries
+        private void siftDown(int row, double key, int n) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n)
+                    break;
+                if (child + 1 < n && keys[child + 1] > keys[child])
+                    child++;
+                if (keys[child] <= key)
+                    break;
+                keys[i] = keys[child];
+                rows[i] = rows[child];
+                i = child;
+            }
+            keys[i] = key;
+            rows[i] = row;
+        }
+    }
+}
@@ -0,0 +1,591 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.clustering.kmeans;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.clustering.algorithm.ClusteringAlgorithm;
+import org.deeplearning4j.clustering.cluster.Cluster;
+import org.deeplearning4j.clustering.cluster.ClusterSet;
+import org.deeplearning4j.clustering.cluster.Point;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Euclidean K-Means over the rows of a matrix.
+ *
+ * Unlike {@link KMeansClustering}, which classifies {@link Point} objects one at a time, this implementation
+ * works on whole matrices:
+ * <ul>
+ *     <li>point to center distances are computed block by block with a single GEMM,
+ *     using |x - c|^2 = |x|^2 - 2 x.c + |c|^2</li>
+ *     <li>centers are updated by scatter-adding every block into flat per-cluster sums</li>
+ *     <li>with a batch size, every iteration is a mini-batch update (Sculley, "Web-Scale K-Means Clustering"),
+ *     and {@link #partialFit(INDArray)} updates the centers from streaming batches</li>
+ *     <li>centers are seeded with k-means++ or with its parallel variant k-means|| (Bahmani et al.,
+ *     "Scalable K-Means++"), which oversamples candidates in a few passes over the data</li>
+ * </ul>
+ *
+ * Use the {@link Builder} to configure an instance, then call {@link #fit(INDArray)}.
+ */
+@Slf4j
+public class MatrixKMeans implements ClusteringAlgorithm, Serializable {
+
+    public enum Initialization {
+        /** k distinct random points */
+        RANDOM,
+        /** k-means++: every next center is sampled proportionally to the squared distance to the closest one */
+        KMEANS_PLUS_PLUS,
+        /** k-means||: oversampled k-means++ in a few rounds, reduced to k centers by weighted k-means++ */
+        KMEANS_PARALLEL
+    }
+
+    @Getter
+    private final int k;
+    @Getter
+    private final int maxIterations;
+    @Getter
+    private final double tolerance;
+    @Getter
+    private final int batchSize;
+    @Getter
+    private final int blockSize;
+    @Getter
+    private final Initialization initialization;
+    @Getter
+    private final int rounds;
+    @Getter
+    private final double oversampling;
+    private final Random random;
+
+    // cluster centers, one per row
+    private double[] centers;
+    // number of points every center has seen, for mini-batch learning rates
+    private long[] counts;
+    private int dimensions;
+
+    @Getter
+    private double inertia = Double.NaN;
+    @Getter
+    private int iterations;
+
+    protected MatrixKMeans(Builder builder) {
+        this.k = builder.k;
+        this.maxIterations = builder.maxIterations;
+        this.tolerance = builder.tolerance;
+        this.batchSize = builder.batchSize;
+        this.blockSize = builder.blockSize;
+        this.initialization = builder.initialization;
+        this.rounds = builder.rounds;
+        this.oversampling = builder.oversampling;
+        this.random = new Random(builder.seed);
+    }
+
+    /**
+     * @return the cluster centers, one per row
+     */
+    public INDArray getCenters() {
+        return centers == null ? null : Nd4j.create(centers, new int[] {k, dimensions}, 'c');
+    }
+
+    /**
+     * Cluster the rows of the given matrix. Without a batch size this runs Lloyd iterations over all points
+     * until the relative change of the inertia drops below the tolerance, otherwise every iteration
+     * updates the centers from a random mini-batch.
+     *
+     * @param points the points, one per row
+     * @return the cluster of every point
+     */
+    public int[] fit(INDArray points) {
+        centers = null;
+        checkPoints(points);
+        double[] norms = squaredNorms(points);
+        initialize(points, norms);
+
+        int n = points.rows();
+        int[] labels = new int[n];
+        double[] minDistances = new double[n];
+        iterations = 0;
+
+        if (batchSize > 0) {
+            for (iterations = 0; iterations < maxIterations; iterations++) {
+                int[] rows = new int[Math.min(batchSize, n)];
+                for (int i = 0; i < rows.length; i++)
+                    rows[i] = random.nextInt(n);
+                double shift = miniBatchStep(Nd4j.pullRows(points, 1, rows, 'c'));
+                if (shift <= tolerance) {
+                    iterations++;
+                    break;
+                }
+            }
+            inertia = assign(points, norms, getCenters(), labels, minDistances);
+        } else {
+            double previous = Double.POSITIVE_INFINITY;
+            Arrays.fill(labels, -1);
+            while (iterations < maxIterations) {
+                inertia = assign(points, norms, getCenters(), labels, minDistances);
+                iterations++;
+                updateCenters(points, labels, minDistances);
+                if (previous - inertia <= tolerance * inertia)
+                    break;
+                previous = inertia;
+            }
+            inertia = assign(points, norms, getCenters(), labels, minDistances);
+        }
+
+        log.debug("K-Means with {} clusters finished after {} iterations, inertia {}", k, iterations, inertia);
+        return labels;
+    }
+
+    /**
+     * Update the centers with one mini-batch. The first batch seeds the centers, it should contain at least
+     * k points.
+     *
+     * @param batch the points, one per row
+     */
+    public void partialFit(INDArray batch) {
+        checkPoints(batch);
+        if (centers == null)
+            initialize(batch, squaredNorms(batch));
+        miniBatchStep(batch);
+        iterations++;
+    }
+
+    /**
+     * @param points the points, one per row
+     * @return the index of the closest center for every point
+     */
+    public int[] predict(INDArray points) {
+        if (centers == null)
+            throw new IllegalStateException("K-Means has not been fitted yet");
+        checkPoints(points);
+        int[] labels = new int[points.rows()];
+        assign(points, squaredNorms(points), getCenters(), labels, new double[points.rows()]);
+        return labels;
+    }
+
+    /**
+     * Cluster the given points and return them grouped like {@link KMeansClustering} does
+     *
+     * @param points the points to cluster
+     * @return the clusters
+     */
+    @Override
+    public ClusterSet applyTo(List<Point> points) {
+        List<INDArray> rows = new ArrayList<>(points.size());
+        for (Point point : points)
+            rows.add(point.getArray());
+        int[] labels = fit(Nd4j.vstack(rows));
+
+        INDArray centerMatrix = getCenters();
+        ClusterSet clusterSet = new ClusterSet("euclidean", false);
+        for (int c = 0; c < k; c++)
+            clusterSet.getClusters().add(new Cluster(new Point(centerMatrix.getRow(c).dup()), "euclidean"));
+        for (int i = 0; i < labels.length; i++) {
+            Cluster cluster = clusterSet.getClusters().get(labels[i]);
+            cluster.addPoint(points.get(i), false);
+            clusterSet.getPointDistribution().put(points.get(i).getId(), cluster.getId());
+        }
+        return clusterSet;
+    }
+
+    private void checkPoints(INDArray points) {
+        if (points.rank() != 2)
+            throw new IllegalArgumentException("Points should be a matrix, got shape " + Arrays.toString(points.shape()));
+        if (centers != null && points.columns() != dimensions)
+            throw new IllegalArgumentException(
+                            "Points should have " + dimensions + " columns, got " + points.columns());
+    }
+
+    private static double[] squaredNorms(INDArray points) {
+        // norm2 reduces in place, squaring points first would copy the whole matrix
+        double[] norms = points.norm2(1).dup().data().asDouble();
+        for (int i = 0; i < norms.length; i++)
+            norms[i] *= norms[i];
+        return norms;
+    }
+
+    private static double[] rows(INDArray matrix) {
+        return matrix.dup('c').data().asDouble();
+    }
+
+    /**
+     * Assign every point to its closest center, one GEMM per block of rows
+     *
+     * @return the inertia, i.e. the sum of squared distances to the closest centers
+     */
+    private double assign(INDArray points, double[] norms, INDArray centerMatrix, int[] labels,
+                    double[] minDistances) {
+        INDArray centerNorms = centerMatrix.mul(centerMatrix).sum(1).reshape(1, centerMatrix.rows());
+        INDArray transposed = centerMatrix.transpose();
+        double inertia = 0;
+        int n = points.rows();
+        for (int start = 0; start < n; start += blockSize) {
+            int end = Math.min(n, start + blockSize);
+            INDArray block = points.get(NDArrayIndex.interval(start, end), NDArrayIndex.all());
+            // |c|^2 - 2 x.c, the |x|^2 term doesn't change the closest center
+            INDArray distances = block.mmul(transposed).muli(-2).addiRowVector(centerNorms);
+            double[] min = distances.min(1).dup().data().asDouble();
+            double[] argMin = Nd4j.argMax(distances.negi(), 1).dup().data().asDouble();
+            for (int i = 0; i < end - start; i++) {
+                labels[start + i] = (int) argMin[i];
+                // clamp rounding errors of the expansion
+                minDistances[start + i] = Math.max(0, min[i] + norms[start + i]);
+                inertia += minDistances[start + i];
+            }
+        }
+        return inertia;
+    }
+
+    /**
+     * Lloyd update: every center moves to the mean of its points. Empty clusters are moved to the points
+     * farthest from their centers.
+     */
+    private void updateCenters(INDArray points, int[] labels, double[] minDistances) {
+        double[] sums = new double[k * dimensions];
+        long[] sizes = new long[k];
+        int n = points.rows();
+        for (int start = 0; start < n; start += blockSize) {
+            int end = Math.min(n, start + blockSize);
+            double[] block = rows(points.get(NDArrayIndex.interval(start, end), NDArrayIndex.all()));
+            for (int i = 0; i < end - start; i++) {
+                int offset = labels[start + i] * dimensions;
+                for (int d = 0; d < dimensions; d++)
+                    sums[offset + d] += block[i * dimensions + d];
+                sizes[labels[start + i]]++;
+            }
+        }
+
+        boolean[] taken = null;
+        for (int c = 0; c < k; c++) {
+            if (sizes[c] > 0) {
+                for (int d = 0; d < dimensions; d++)
+                    centers[c * dimensions + d] = sums[c * dimensions + d] / sizes[c];
+            } else {
+                if (taken == null)
+                    taken = new boolean[n];
+                int farthest = -1;
+                for (int i = 0; i < n; i++)
+                    if (!taken[i] && (farthest < 0 || minDistances[i] > minDistances[farthest]))
+                        farthest = i;
+                taken[farthest] = true;
+                setCenter(c, rows(points.getRow(farthest)));
+                log.debug("Cluster {} is empty, moved it to point {}", c, farthest);
+            }
+        }
+        counts = sizes;
+    }
+
+    /**
+     * Sculley's update: every point moves its closest center towards it with a learning rate of
+     * 1 / (number of points the center has seen)
+     *
+     * @return the largest squared distance any center moved
+     */
+    private double miniBatchStep(INDArray batch) {
+        int n = batch.rows();
+        int[] labels = new int[n];
+        assign(batch, squaredNorms(batch), getCenters(), labels, new double[n]);
+
+        double[] previous = centers.clone();
+        double[] data = rows(batch);
+        for (int i = 0; i < n; i++) {
+            int c = labels[i];
+            double rate = 1.0 / ++counts[c];
+            int offset = c * dimensions;
+            for (int d = 0; d < dimensions; d++)
+                centers[offset + d] += rate * (data[i * dimensions + d] - centers[offset + d]);
+        }
+
+        double shift = 0;
+        for (int c = 0; c < k; c++) {
+            double moved = 0;
+            for (int d = 0; d < dimensions; d++) {
+                double diff = centers[c * dimensions + d] - previous[c * dimensions + d];
+                moved += diff * diff;
+            }
+            shift = Math.max(shift, moved);
+        }
+        return shift;
+    }
+
+    private void setCenter(int c, double[] point) {
+        System.arraycopy(point, 0, centers, c * dimensions, dimensions);
+    }
+
+    private void initialize(INDArray points, double[] norms) {
+        int n = points.rows();
+        if (n < k)
+            throw new IllegalArgumentException("Can't find " + k + " clusters in " + n + " points");
+        dimensions = points.columns();
+        centers = new double[k * dimensions];
+        counts = new long[k];
+
+        switch (initialization) {
+            case RANDOM:
+                int[] chosen = sample(n, k);
+                for (int c = 0; c < k; c++)
+                    setCenter(c, rows(points.getRow(chosen[c])));
+                break;
+            case KMEANS_PLUS_PLUS:
+                plusPlus(points, norms, null, centers);
+                break;
+            case KMEANS_PARALLEL:
+                parallelInit(points, norms);
+                break;
+            default:
+                throw new IllegalStateException("Unknown initialization " + initialization);
+        }
+    }
+
+    /**
+     * Choose k distinct numbers in [0, n)
+     */
+    private int[] sample(int n, int count) {
+        int[] ret = new int[count];
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            int candidate;
+            do {
+                candidate = random.nextInt(n);
+            } while (!seen.add(candidate));
+            ret[i] = candidate;
+        }
+        return ret;
+    }
+
+    /**
+     * (Weighted) k-means++ seeding of k centers from the rows of points. Distances to every new center
+     * are updated for all rows in blocks.
+     */
+    private void plusPlus(INDArray points, double[] norms, double[] weights, double[] out) {
+        int n = points.rows();
+        double[] minDistances = new double[n];
+        Arrays.fill(minDistances, Double.POSITIVE_INFINITY);
+
+        int next = weights == null ? random.nextInt(n) : sampleProportional(weights, null);
+        for (int c = 0; c < k; c++) {
+            double[] center = rows(points.getRow(next));
+            System.arraycopy(center, 0, out, c * dimensions, dimensions);
+            if (c == k - 1)
+                break;
+
+            updateMinDistances(points, norms, Nd4j.create(center, new int[] {1, dimensions}, 'c'), minDistances,
+                            null, 0);
+            next = sampleProportional(minDistances, weights);
+        }
+    }
+
+    /**
+     * Sample an index with probability proportional to values[i] * weights[i]
+     */
+    private int sampleProportional(double[] values, double[] weights) {
+        double total = 0;
+        for (int i = 0; i < values.length; i++)
+            total += weights == null ? values[i] : values[i] * weights[i];
+        if (total <= 0)
+            return random.nextInt(values.length);
+
+        double target = random.nextDouble() * total;
+        double sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += weights == null ? values[i] : values[i] * weights[i];
+            if (sum >= target)
+                return i;
+        }
+        return values.length - 1;
+    }
+
+    /**
+     * minDistances[i] = min(minDistances[i], squared distance from row i to any of the candidates);
+     * closest[i] is set to firstCandidate + the index of the candidate when it is closer
+     */
+    private void updateMinDistances(INDArray points, double[] norms, INDArray candidates, double[] minDistances,
+                    int[] closest, int firstCandidate) {
+        int[] labels = new int[points.rows()];
+        double[] distances = new double[points.rows()];
+        assign(points, norms, candidates, labels, distances);
+        for (int i = 0; i < distances.length; i++) {
+            if (distances[i] < minDistances[i]) {
+                minDistances[i] = distances[i];
+                if (closest != null)
+                    closest[i] = firstCandidate + labels[i];
+            }
+        }
+    }
+
+    /**
+     * k-means||: starting from one random point, every round samples each point independently with probability
+     * oversampling * k * d(x)^2 / cost. The candidates are weighted by the number of points closest to them
+     * and reduced to k centers by weighted k-means++.
+     */
+    private void parallelInit(INDArray points, double[] norms) {
+        int n = points.rows();
+        double[] minDistances = new double[n];
+        Arrays.fill(minDistances, Double.POSITIVE_INFINITY);
+        int[] closest = new int[n];
+
+        List<double[]> candidates = new ArrayList<>();
+        candidates.add(rows(points.getRow(random.nextInt(n))));
+        updateMinDistances(points, norms, Nd4j.create(candidates.get(0), new int[] {1, dimensions}, 'c'),
+                        minDistances, closest, 0);
+
+        double expected = oversampling * k;
+        for (int round = 0; round < rounds; round++) {
+            double cost = 0;
+            for (int i = 0; i < n; i++)
+                cost += minDistances[i];
+            if (cost <= 0)
+                break;
+
+            List<Integer> sampled = new ArrayList<>();
+            for (int i = 0; i < n; i++)
+                if (random.nextDouble() < expected * minDistances[i] / cost)
+                    sampled.add(i);
+            if (sampled.isEmpty())
+                continue;
+
+            int[] indexes = new int[sampled.size()];
+            for (int i = 0; i < indexes.length; i++)
+                indexes[i] = sampled.get(i);
+            INDArray newCandidates = Nd4j.pullRows(points, 1, indexes, 'c');
+            int first = candidates.size();
+            double[] data = rows(newCandidates);
+            for (int i = 0; i < indexes.length; i++)
+                candidates.add(Arrays.copyOfRange(data, i * dimensions, (i + 1) * dimensions));
+            updateMinDistances(points, norms, newCandidates, minDistances, closest, first);
+        }
+
+        // make sure there are at least k candidates
+        if (candidates.size() < k) {
+            for (int index : sample(n, k - candidates.size()))
+                candidates.add(rows(points.getRow(index)));
+        }
+
+        double[] weights = new double[candidates.size()];
+        for (int i = 0; i < n; i++)
+            weights[closest[i]]++;
+        // added candidates are nobody's closest yet, give them a small weight so they can still be chosen
+        for (int i = 0; i < weights.length; i++)
+            weights[i] = Math.max(weights[i], 1e-3);
+
+        double[] flat = new double[candidates.size() * dimensions];
+        for (int i = 0; i < candidates.size(); i++)
+            System.arraycopy(candidates.get(i), 0, flat, i * dimensions, dimensions);
+        INDArray candidateMatrix = Nd4j.create(flat, new int[] {candidates.size(), dimensions}, 'c');
+        log.debug("k-means|| reduces {} candidates to {} centers", candidates.size(), k);
+        plusPlus(candidateMatrix, squaredNorms(candidateMatrix), weights, centers);
+    }
+
+    public static class Builder {
+        private int k = 8;
+        private int maxIterations = 100;
+        private double tolerance = 1e-4;
+        private int batchSize = 0;
+        private int blockSize = 4096;
+        private Initialization initialization = Initialization.KMEANS_PARALLEL;
+        private int rounds = 5;
+        private double oversampling = 2.0;
+        private long seed = 12345;
+
+        /**
+         * @param k the number of clusters
+         */
+        public Builder k(int k) {
+            this.k = k;
+            return this;
+        }
+
+        /**
+         * @param maxIterations maximum number of Lloyd iterations or mini-batches
+         */
+        public Builder maxIterations(int maxIterations) {
+            this.maxIterations = maxIterations;
+            return this;
+        }
+
+        /**
+         * @param tolerance stop when the relative change of the inertia (full batch) or the largest squared
+         *                  center movement (mini-batch) is at most this
+         */
+        public Builder tolerance(double tolerance) {
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * @param batchSize number of points per mini-batch, 0 for full batch Lloyd iterations
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param blockSize number of rows per distance GEMM, bounds the temporary [blockSize, k] distance matrix
+         */
+        public Builder blockSize(int blockSize) {
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        public Builder initialization(Initialization initialization) {
+            this.initialization = initialization;
+            return this;
+        }
+
+        /**
+         * @param rounds number of sampling rounds of k-means||
+         */
+        public Builder rounds(int rounds) {
+            this.rounds = rounds;
+            return this;
+        }
+
+        /**
+         * @param oversampling expected number of candidates per round of k-means||, as a multiple of k
+         */
+        public Builder oversampling(double oversampling) {
+            this.oversampling = oversampling;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public MatrixKMeans build() {
+            if (k < 1)
+                throw new IllegalArgumentException("Number of clusters should be positive, got " + k);
+            if (blockSize < 1)
+                throw new IllegalArgumentException("Block size should be positive, got " + blockSize);
+            return new MatrixKMeans(this);
+        }
+    }
+}
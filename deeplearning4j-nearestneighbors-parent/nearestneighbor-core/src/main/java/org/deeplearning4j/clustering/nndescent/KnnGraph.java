@@ -0,0 +1,89 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.clustering.nndescent;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+
+/**
+ * The k nearest neighbours of every point of a data set, in row major primitive arrays:
+ * the neighbours of point i are at [i * k, (i + 1) * k), nearest first. A point is never its own neighbour.
+ */
+public class KnnGraph implements Serializable {
+    @Getter
+    private final int numPoints;
+    @Getter
+    private final int k;
+    @Getter
+    private final int[] indices;
+    @Getter
+    private final float[] distances;
+
+    public KnnGraph(int numPoints, int k, int[] indices, float[] distances) {
+        if (indices.length != numPoints * k || distances.length != numPoints * k)
+            throw new IllegalArgumentException("Expected " + numPoints * k + " neighbours, got " + indices.length
+                            + " indices and " + distances.length + " distances");
+        this.numPoints = numPoints;
+        this.k = k;
+        this.indices = indices;
+        this.distances = distances;
+    }
+
+    /**
+     * @param point the point
+     * @param neighbor the rank of the neighbour, 0 for the nearest one
+     * @return the index of the neighbour
+     */
+    public int getIndex(int point, int neighbor) {
+        return indices[point * k + neighbor];
+    }
+
+    /**
+     * @param point the point
+     * @param neighbor the rank of the neighbour, 0 for the nearest one
+     * @return the (possibly inverted) distance between the point and the neighbour
+     */
+    public float getDistance(int point, int neighbor) {
+        return distances[point * k + neighbor];
+    }
+
+    /**
+     * Fraction of the neighbours of this graph that are also neighbours in the given graph, usually
+     * the exact one
+     */
+    public double recall(KnnGraph exact) {
+        if (exact.numPoints != numPoints)
+            throw new IllegalArgumentException("Graphs have " + numPoints + " and " + exact.numPoints + " points");
+        int n = Math.min(k, exact.k);
+        long found = 0;
+        for (int i = 0; i < numPoints; i++) {
+            for (int a = 0; a < n; a++) {
+                int index = indices[i * k + a];
+                for (int b = 0; b < n; b++) {
+                    if (exact.indices[i * exact.k + b] == index) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+        }
+        return numPoints == 0 ? 1.0 : (double) found / ((long) numPoints * n);
+    }
+}
@@ -0,0 +1,471 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.clustering.nndescent;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.clustering.util.MultiThreadUtils.RangeBody;
+import org.deeplearning4j.clustering.vptree.FlatVPTree;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.deeplearning4j.clustering.util.MultiThreadUtils.parallelFor;
+
+/**
+ * Approximate k nearest neighbour graph of all points of a data set, built with NN-descent
+ * (Dong, Charikar and Li, "Efficient k-nearest neighbor graph construction for generic similarity measures", 2011).
+ *
+ * Starting from random neighbours, every iteration compares the neighbours (and reverse neighbours) of each point
+ * with each other, since a neighbour of a neighbour is likely to be a neighbour too. Only pairs involving at least
+ * one neighbour that is new since the last iteration are compared, sampling at most 2 * sampleRate * k new and
+ * as many old neighbours and reverse neighbours per point.
+ * The graph is done when an iteration improves fewer than delta * n * k neighbours.
+ *
+ * The points are kept in a flat float array and compared with a {@link FlatVPTree.DistanceKernel}; the neighbours
+ * of every point are kept in a bounded max heap inside shared primitive arrays, guarded by striped locks. The
+ * local joins run on workers threads.
+ *
+ * Use the {@link Builder} to configure an instance, then call {@link #build(INDArray)}.
+ */
+@Slf4j
+public class NNDescent {
+
+    // points per task of the parallel loops
+    private static final int GRAIN = 256;
+    // number of locks guarding the neighbour heaps, a power of 2
+    private static final int LOCK_STRIPES = 1 << 10;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    @Getter
+    private final int k;
+    @Getter
+    private final int maxIterations;
+    @Getter
+    private final double sampleRate;
+    @Getter
+    private final double delta;
+    @Getter
+    private final String similarityFunction;
+    @Getter
+    private final boolean invert;
+    @Getter
+    private final int workers;
+    @Getter
+    private final long seed;
+
+    private final FlatVPTree.DistanceKernel kernel;
+
+    protected NNDescent(Builder builder) {
+        this.k = builder.k;
+        this.maxIterations = builder.maxIterations;
+        this.sampleRate = builder.sampleRate;
+        this.delta = builder.delta;
+        this.similarityFunction = builder.similarityFunction;
+        this.invert = builder.invert;
+        this.workers = Math.max(1, builder.workers);
+        this.seed = builder.seed;
+        this.kernel = FlatVPTree.DistanceKernel.forName(similarityFunction);
+    }
+
+    /**
+     * @param points the points, one per row
+     * @return the approximate k nearest neighbours of every point
+     */
+    public KnnGraph build(INDArray points) {
+        if (points.rank() != 2)
+            throw new IllegalArgumentException("Points should be a matrix, got shape " + Arrays.toString(points.shape()));
+        return build(points.dup('c').data().asFloat(), points.rows(), points.columns());
+    }
+
+    /**
+     * @param data the points, row major
+     * @param numPoints number of points
+     * @param dimensions number of values per point
+     * @return the approximate k nearest neighbours of every point
+     */
+    public KnnGraph build(float[] data, int numPoints, int dimensions) {
+        if (numPoints <= k)
+            throw new IllegalArgumentException("Need more than k = " + k + " points, got " + numPoints);
+        if (data.length < numPoints * dimensions)
+            throw new IllegalArgumentException("Expected " + numPoints * dimensions + " values, got " + data.length);
+
+        ForkJoinPool pool = workers > 1 ? new ForkJoinPool(workers) : null;
+        try {
+            return new Run(data, numPoints, dimensions, pool).run();
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+    }
+
+    /**
+     * State of a single graph construction
+     */
+    private class Run {
+        private final float[] data;
+        private final int n;
+        private final int dimensions;
+        private final ForkJoinPool pool;
+
+        // max heap of the neighbours of point i at [i * k, (i + 1) * k), the farthest one at i * k
+        private final int[] heapIndices;
+        private final float[] heapDistances;
+        private final boolean[] heapNew;
+        private final Object[] locks;
+
+        // sampled candidates of every point, maxCandidates slots each
+        private final int maxCandidates;
+        private final int[] newCandidates;
+        private final int[] newCounts;
+        private final int[] newSeen;
+        private final int[] oldCandidates;
+        private final int[] oldCounts;
+        private final int[] oldSeen;
+
+        Run(float[] data, int n, int dimensions, ForkJoinPool pool) {
+            this.data = data;
+            this.n = n;
+            this.dimensions = dimensions;
+            this.pool = pool;
+
+            heapIndices = new int[n * k];
+            heapDistances = new float[n * k];
+            heapNew = new boolean[n * k];
+            Arrays.fill(heapIndices, -1);
+            Arrays.fill(heapDistances, Float.POSITIVE_INFINITY);
+            locks = new Object[LOCK_STRIPES];
+            for (int i = 0; i < locks.length; i++)
+                locks[i] = new Object();
+
+            // sampleRate * k neighbours and as many reverse neighbours
+            maxCandidates = 2 * Math.max(1, (int) Math.ceil(sampleRate * k));
+            newCandidates = new int[n * maxCandidates];
+            newCounts = new int[n];
+            newSeen = new int[n];
+            oldCandidates = new int[n * maxCandidates];
+            oldCounts = new int[n];
+            oldSeen = new int[n];
+        }
+
+        KnnGraph run() {
+            long start = System.currentTimeMillis();
+            initialize();
+
+            Random random = new Random(seed);
+            long threshold = (long) (delta * n * k);
+            for (int iteration = 0; iteration < maxIterations; iteration++) {
+                sampleCandidates(random);
+                long updates = localJoin();
+                log.debug("NN-descent iteration {}: {} updates", iteration, updates);
+                if (updates <= threshold)
+                    break;
+            }
+
+            int[] indices = new int[n * k];
+            float[] distances = new float[n * k];
+            sortHeaps(indices, distances);
+            log.debug("Built approximate {}-nn graph of {} points in {} ms", k, n, System.currentTimeMillis() - start);
+            return new KnnGraph(n, k, indices, distances);
+        }
+
+        /**
+         * Fills every heap with k distinct random points
+         */
+        private void initialize() {
+            parallelFor(pool, 0, n, GRAIN, new RangeBody() {
+                @Override
+                public void apply(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        long state = seed + i * GOLDEN_GAMMA;
+                        int found = 0;
+                        for (int attempt = 0; found < k && attempt < 4 * k; attempt++) {
+                            state += GOLDEN_GAMMA;
+                            int j = (int) ((mix(state) >>> 1) % n);
+                            if (j != i && push(i, j, distance(i, j), true))
+                                found++;
+                        }
+                        // only happens when k is close to n
+                        for (int j = 0; found < k && j < n; j++) {
+                            if (j != i && push(i, j, distance(i, j), true))
+                                found++;
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Samples up to maxCandidates new and old neighbours and reverse neighbours of every point,
+         * and marks the sampled new neighbours as old
+         */
+        private void sampleCandidates(Random random) {
+            Arrays.fill(newCounts, 0);
+            Arrays.fill(newSeen, 0);
+            Arrays.fill(oldCounts, 0);
+            Arrays.fill(oldSeen, 0);
+
+            // reverse neighbours make this a scatter, it's cheap compared to the local join and runs sequentially
+            for (int i = 0; i < n; i++) {
+                for (int m = i * k; m < (i + 1) * k; m++) {
+                    int j = heapIndices[m];
+                    if (j < 0)
+                        continue;
+                    if (heapNew[m]) {
+                        sample(newCandidates, newCounts, newSeen, i, j, random);
+                        sample(newCandidates, newCounts, newSeen, j, i, random);
+                    } else {
+                        sample(oldCandidates, oldCounts, oldSeen, i, j, random);
+                        sample(oldCandidates, oldCounts, oldSeen, j, i, random);
+                    }
+                }
+            }
+
+            parallelFor(pool, 0, n, GRAIN, new RangeBody() {
+                @Override
+                public void apply(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        for (int m = i * k; m < (i + 1) * k; m++) {
+                            if (heapNew[m] && contains(newCandidates, newCounts, i, heapIndices[m]))
+                                heapNew[m] = false;
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Reservoir sampling of candidate j into the list of point i
+         */
+        private void sample(int[] candidates, int[] counts, int[] seen, int i, int j, Random random) {
+            if (contains(candidates, counts, i, j))
+                return;
+            int offset = i * maxCandidates;
+            int seenBefore = seen[i]++;
+            if (counts[i] < maxCandidates) {
+                candidates[offset + counts[i]++] = j;
+            } else {
+                int slot = random.nextInt(seenBefore + 1);
+                if (slot < maxCandidates)
+                    candidates[offset + slot] = j;
+            }
+        }
+
+        private boolean contains(int[] candidates, int[] counts, int i, int j) {
+            int offset = i * maxCandidates;
+            for (int c = 0; c < counts[i]; c++) {
+                if (candidates[offset + c] == j)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Compares the new candidates of every point with each other and with the old ones
+         *
+         * @return the number of neighbours that were improved
+         */
+        private long localJoin() {
+            final AtomicLong updates = new AtomicLong();
+            parallelFor(pool, 0, n, GRAIN, new RangeBody() {
+                @Override
+                public void apply(int from, int to) {
+                    long local = 0;
+                    for (int i = from; i < to; i++) {
+                        int offset = i * maxCandidates;
+                        for (int a = 0; a < newCounts[i]; a++) {
+                            int u = newCandidates[offset + a];
+                            for (int b = a + 1; b < newCounts[i]; b++)
+                                local += update(u, newCandidates[offset + b]);
+                            for (int b = 0; b < oldCounts[i]; b++)
+                                local += update(u, oldCandidates[offset + b]);
+                        }
+                    }
+                    updates.addAndGet(local);
+                }
+            });
+            return updates.get();
+        }
+
+        private int update(int u, int v) {
+            if (u == v)
+                return 0;
+            float d = distance(u, v);
+            int updates = 0;
+            if (push(u, v, d, true))
+                updates++;
+            if (push(v, u, d, true))
+                updates++;
+            return updates;
+        }
+
+        /**
+         * Offers j as a neighbour of i
+         *
+         * @return whether j entered the heap of i
+         */
+        private boolean push(int i, int j, float d, boolean isNew) {
+            int base = i * k;
+            // the root only ever shrinks, so a stale read can only let a candidate through to the locked check
+            if (d >= heapDistances[base])
+                return false;
+            synchronized (locks[i & (LOCK_STRIPES - 1)]) {
+                if (d >= heapDistances[base])
+                    return false;
+                for (int m = base; m < base + k; m++) {
+                    if (heapIndices[m] == j)
+                        return false;
+                }
+                siftDown(base, k, 0, j, d, isNew);
+                return true;
+            }
+        }
+
+        /**
+         * Puts (j, d) at position pos of the heap at base with the given size and restores the heap order below it
+         */
+        private void siftDown(int base, int size, int pos, int j, float d, boolean isNew) {
+            while (true) {
+                int child = 2 * pos + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && heapDistances[base + child + 1] > heapDistances[base + child])
+                    child++;
+                if (heapDistances[base + child] <= d)
+                    break;
+                heapIndices[base + pos] = heapIndices[base + child];
+                heapDistances[base + pos] = heapDistances[base + child];
+                heapNew[base + pos] = heapNew[base + child];
+                pos = child;
+            }
+            heapIndices[base + pos] = j;
+            heapDistances[base + pos] = d;
+            heapNew[base + pos] = isNew;
+        }
+
+        /**
+         * Heap sorts every heap, writing the neighbours nearest first
+         */
+        private void sortHeaps(final int[] indices, final float[] distances) {
+            parallelFor(pool, 0, n, GRAIN, new RangeBody() {
+                @Override
+                public void apply(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        int base = i * k;
+                        for (int size = k; size > 0; size--) {
+                            indices[base + size - 1] = heapIndices[base];
+                            distances[base + size - 1] = heapDistances[base];
+                            int last = base + size - 1;
+                            siftDown(base, size - 1, 0, heapIndices[last], heapDistances[last], heapNew[last]);
+                        }
+                    }
+                }
+            });
+        }
+
+        private float distance(int i, int j) {
+            float d = kernel.distance(data, i * dimensions, data, j * dimensions, dimensions);
+            return invert ? -d : d;
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static class Builder {
+        private int k = 10;
+        private int maxIterations = 10;
+        private double sampleRate = 1.0;
+        private double delta = 0.001;
+        private String similarityFunction = "euclidean";
+        private boolean invert = false;
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private long seed = 42;
+
+        /**
+         * @param k number of neighbours per point
+         */
+        public Builder k(int k) {
+            this.k = k;
+            return this;
+        }
+
+        /**
+         * @param maxIterations maximum number of local join iterations
+         */
+        public Builder maxIterations(int maxIterations) {
+            this.maxIterations = maxIterations;
+            return this;
+        }
+
+        /**
+         * @param sampleRate fraction of k new and old candidates joined per point and iteration, lower values trade
+         *                   recall for time
+         */
+        public Builder sampleRate(double sampleRate) {
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        /**
+         * @param delta stop when fewer than delta * n * k neighbours change in an iteration
+         */
+        public Builder delta(double delta) {
+            this.delta = delta;
+            return this;
+        }
+
+        public Builder similarityFunction(String similarityFunction) {
+            this.similarityFunction = similarityFunction;
+            return this;
+        }
+
+        /**
+         * @param invert whether to invert the distance (similarity functions have different min/max objectives)
+         */
+        public Builder invertDistanceMetric(boolean invert) {
+            this.invert = invert;
+            return this;
+        }
+
+        public Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public NNDescent build() {
+            if (k < 1)
+                throw new IllegalArgumentException("Number of neighbours should be positive, got " + k);
+            if (sampleRate <= 0 || sampleRate > 1)
+                throw new IllegalArgumentException("Sample rate should be in (0, 1], got " + sampleRate);
+            return new NNDescent(this);
+        }
+    }
+}
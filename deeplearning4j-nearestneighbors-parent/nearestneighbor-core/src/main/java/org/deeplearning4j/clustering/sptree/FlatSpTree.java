@@ -0,0 +1,503 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.clustering.sptree;
+
+import org.deeplearning4j.clustering.util.MultiThreadUtils.RangeBody;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.deeplearning4j.clustering.util.MultiThreadUtils.parallelFor;
+
+/**
+ * Space partitioning tree (quad tree in 2d, oct tree in 3d, ...) over primitive arrays, for Barnes-Hut t-SNE.
+ *
+ * Unlike {@link SpTree}, which inserts the points one at a time into a graph of nodes holding INDArray
+ * cells, this tree:
+ * <ul>
+ *     <li>sorts the points by their Morton (z-order) code, so every cell covers a contiguous range of points</li>
+ *     <li>stores the cells in pre-order in primitive arrays, each with the index just past its subtree,
+ *     so the force traversal needs neither recursion nor a stack</li>
+ *     <li>computes the Morton codes and builds the large subtrees in parallel on a given {@link ForkJoinPool}</li>
+ *     <li>keeps all of its arrays between calls to {@link #build(double[], int, ForkJoinPool)}, so rebuilding it
+ *     every t-SNE iteration doesn't allocate once the arrays are large enough</li>
+ * </ul>
+ *
+ * A cell is split into 2^D children by one more bit of every coordinate until it holds at most
+ * {@link #DEFAULT_LEAF_SIZE} points. Leaves are always evaluated point by point.
+ */
+public class FlatSpTree implements Serializable {
+
+    public static final int DEFAULT_LEAF_SIZE = 1;
+
+    // subtrees with more points than this are built as separate tasks
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+    // points per task for the per point loops
+    private static final int GRAIN = 1 << 12;
+
+    private final int dimensions;
+    private final int leafSize;
+    // bits per dimension in the morton codes, i.e. the maximum depth of the tree
+    private final int bits;
+
+    private int numPoints;
+    // morton code of every point and the permutation sorting them, plus scratch space for the radix sort
+    private long[] codes = new long[0];
+    private long[] codesTmp = new long[0];
+    private int[] perm = new int[0];
+    private int[] permTmp = new int[0];
+    // coordinates in sorted order
+    private double[] sorted = new double[0];
+
+    // bounding box
+    private double[] min;
+    private double[] scale;
+    private double maxHalfWidth;
+
+    // cells in pre-order. Cell c holds the sorted points [cellStart[c], cellEnd[c]), its subtree ends right
+    // before cellSkip[c], it is a leaf if cellSkip[c] == c + 1
+    private int numCells;
+    private int[] cellStart = new int[0];
+    private int[] cellEnd = new int[0];
+    private int[] cellSkip = new int[0];
+    private int[] cellLevel = new int[0];
+    private double[] centerOfMass = new double[0];
+
+    /**
+     * @param dimensions the number of dimensions of the points
+     */
+    public FlatSpTree(int dimensions) {
+        this(dimensions, DEFAULT_LEAF_SIZE);
+    }
+
+    /**
+     * @param dimensions the number of dimensions of the points
+     * @param leafSize the maximum number of points in a leaf
+     */
+    public FlatSpTree(int dimensions, int leafSize) {
+        if (dimensions < 1 || dimensions > 31)
+            throw new IllegalArgumentException("Dimensions should be between 1 and 31, got " + dimensions);
+        if (leafSize < 1)
+            throw new IllegalArgumentException("Leaf size should be positive, got " + leafSize);
+        this.dimensions = dimensions;
+        this.leafSize = leafSize;
+        this.bits = Math.min(21, 62 / dimensions);
+        this.min = new double[dimensions];
+        this.scale = new double[dimensions];
+    }
+
+    /**
+     * (Re)build the tree over the given points
+     *
+     * @param data the row major coordinates of the points, at least n * D values
+     * @param n the number of points
+     * @param pool the pool to build on, or null to build on the calling thread
+     */
+    public void build(final double[] data, int n, ForkJoinPool pool) {
+        this.numPoints = n;
+        if (n == 0) {
+            numCells = 0;
+            return;
+        }
+        ensurePointCapacity(n);
+        computeBounds(data, n);
+
+        // morton codes
+        parallelFor(pool, 0, n, GRAIN, new RangeBody() {
+            @Override
+            public void apply(int from, int to) {
+                long[] cells = new long[dimensions];
+                for (int i = from; i < to; i++) {
+                    codes[i] = morton(data, i, cells);
+                    perm[i] = i;
+                }
+            }
+        });
+        radixSort(n);
+
+        parallelFor(pool, 0, n, GRAIN, new RangeBody() {
+            @Override
+            public void apply(int from, int to) {
+                for (int p = from; p < to; p++)
+                    System.arraycopy(data, perm[p] * dimensions, sorted, p * dimensions, dimensions);
+            }
+        });
+
+        // the top of the tree is laid out on this thread, the large subtrees below it are built in parallel:
+        // first counting their cells, then writing them at their final offsets
+        List<int[]> top = new ArrayList<>();
+        List<int[]> subtrees = new ArrayList<>();
+        int grain = pool == null ? Integer.MAX_VALUE : Math.max(PARALLEL_THRESHOLD, n / (8 * pool.getParallelism()));
+        split(0, n, 0, grain, top, subtrees);
+
+        final int[] sizes = new int[subtrees.size()];
+        final List<int[]> subtreeList = subtrees;
+        parallelFor(pool, 0, subtrees.size(), 1, new RangeBody() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    int[] s = subtreeList.get(i);
+                    sizes[i] = build(-1, s[0], s[1], s[2]);
+                }
+            }
+        });
+
+        int total = top.size();
+        for (int size : sizes)
+            total += size;
+        ensureCellCapacity(total);
+
+        // write the top cells and assign the offsets of the subtrees in pre-order
+        final int[] offsets = new int[subtrees.size()];
+        List<Integer> topCells = new ArrayList<>();
+        numCells = layoutTop(0, n, 0, grain, 0, sizes, offsets, new int[1], topCells);
+
+        parallelFor(pool, 0, subtrees.size(), 1, new RangeBody() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    int[] s = subtreeList.get(i);
+                    build(offsets[i], s[0], s[1], s[2]);
+                }
+            }
+        });
+
+        // summaries of the top cells, children first
+        for (int i = topCells.size() - 1; i >= 0; i--)
+            summarizeInner(topCells.get(i));
+    }
+
+    /**
+     * Build the tree on the calling thread
+     *
+     * @param data the row major coordinates of the points, at least n * D values
+     * @param n the number of points
+     */
+    public void build(double[] data, int n) {
+        build(data, n, null);
+    }
+
+    private void ensurePointCapacity(int n) {
+        if (codes.length < n) {
+            codes = new long[n];
+            codesTmp = new long[n];
+            perm = new int[n];
+            permTmp = new int[n];
+            sorted = new double[n * dimensions];
+        }
+    }
+
+    private void ensureCellCapacity(int cells) {
+        if (cellStart.length < cells) {
+            // some head room, the number of cells changes a little every iteration
+            int capacity = cells + cells / 4;
+            cellStart = new int[capacity];
+            cellEnd = new int[capacity];
+            cellSkip = new int[capacity];
+            cellLevel = new int[capacity];
+            centerOfMass = new double[capacity * dimensions];
+        }
+    }
+
+    private void computeBounds(double[] data, int n) {
+        double[] max = new double[dimensions];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < n; i++) {
+            for (int d = 0; d < dimensions; d++) {
+                double v = data[i * dimensions + d];
+                if (v < min[d])
+                    min[d] = v;
+                if (v > max[d])
+                    max[d] = v;
+            }
+        }
+
+        maxHalfWidth = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double width = max[d] - min[d];
+            // a little slack, so that the maximum maps into the last cell
+            width = width * (1 + 1e-9) + 1e-12;
+            scale[d] = (1L << bits) / width;
+            maxHalfWidth = Math.max(maxHalfWidth, width / 2);
+        }
+    }
+
+    private long morton(double[] data, int i, long[] cells) {
+        long code = 0;
+        long limit = (1L << bits) - 1;
+        for (int d = 0; d < dimensions; d++)
+            cells[d] = Math.max(0, Math.min(limit, (long) ((data[i * dimensions + d] - min[d]) * scale[d])));
+        for (int b = bits - 1; b >= 0; b--) {
+            for (int d = 0; d < dimensions; d++)
+                code = (code << 1) | ((cells[d] >>> b) & 1);
+        }
+        return code;
+    }
+
+    /**
+     * LSD radix sort of codes[0..n) by bytes, permuting perm along. Bytes that are equal in all codes are skipped.
+     */
+    private void radixSort(int n) {
+        int totalBits = bits * dimensions;
+        int[] counts = new int[257];
+        for (int shift = 0; shift < totalBits; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++)
+                counts[(int) ((codes[i] >>> shift) & 0xff) + 1]++;
+            if (counts[(int) ((codes[0] >>> shift) & 0xff) + 1] == n)
+                continue;
+            for (int b = 0; b < 256; b++)
+                counts[b + 1] += counts[b];
+            for (int i = 0; i < n; i++) {
+                int target = counts[(int) ((codes[i] >>> shift) & 0xff)]++;
+                codesTmp[target] = codes[i];
+                permTmp[target] = perm[i];
+            }
+            long[] c = codes;
+            codes = codesTmp;
+            codesTmp = c;
+            int[] p = perm;
+            perm = permTmp;
+            permTmp = p;
+        }
+    }
+
+    private boolean isLeafRange(int start, int end, int level) {
+        return end - start <= leafSize || level >= bits;
+    }
+
+    /**
+     * The child digit of a sorted point at the given level
+     */
+    private int digit(int p, int level) {
+        return (int) ((codes[p] >>> ((bits - 1 - level) * dimensions)) & ((1L << dimensions) - 1));
+    }
+
+    /**
+     * End of the run of points starting at p that fall in the same child at the given level
+     */
+    private int childEnd(int p, int end, int level) {
+        int digit = digit(p, level);
+        // codes are sorted, so the run can be found by binary search
+        int lo = p + 1;
+        int hi = end;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (digit(mid, level) == digit)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Collect the top cells (larger than grain) and the subtrees below them, in pre-order
+     */
+    private void split(int start, int end, int level, int grain, List<int[]> top, List<int[]> subtrees) {
+        if (end - start <= grain || isLeafRange(start, end, level)) {
+            subtrees.add(new int[] {start, end, level});
+            return;
+        }
+        top.add(new int[] {start, end, level});
+        for (int p = start; p < end;) {
+            int childEnd = childEnd(p, end, level);
+            split(p, childEnd, level + 1, grain, top, subtrees);
+            p = childEnd;
+        }
+    }
+
+    /**
+     * Write the top cells and assign the offsets of the subtrees, walking in the same order as split
+     *
+     * @return the index just past the subtree
+     */
+    private int layoutTop(int start, int end, int level, int grain, int cell, int[] sizes, int[] offsets,
+                    int[] nextSubtree, List<Integer> topCells) {
+        if (end - start <= grain || isLeafRange(start, end, level)) {
+            int subtree = nextSubtree[0]++;
+            offsets[subtree] = cell;
+            return cell + sizes[subtree];
+        }
+        topCells.add(cell);
+        cellStart[cell] = start;
+        cellEnd[cell] = end;
+        cellLevel[cell] = level;
+        int next = cell + 1;
+        for (int p = start; p < end;) {
+            int childEnd = childEnd(p, end, level);
+            next = layoutTop(p, childEnd, level + 1, grain, next, sizes, offsets, nextSubtree, topCells);
+            p = childEnd;
+        }
+        cellSkip[cell] = next;
+        return next;
+    }
+
+    /**
+     * Build the subtree over sorted points [start, end) at cell, or only count its cells if cell is negative
+     *
+     * @return the number of cells in the subtree
+     */
+    private int build(int cell, int start, int end, int level) {
+        boolean write = cell >= 0;
+        if (isLeafRange(start, end, level)) {
+            if (write) {
+                cellStart[cell] = start;
+                cellEnd[cell] = end;
+                cellLevel[cell] = level;
+                cellSkip[cell] = cell + 1;
+                summarizeLeaf(cell);
+            }
+            return 1;
+        }
+
+        int size = 1;
+        for (int p = start; p < end;) {
+            int childEnd = childEnd(p, end, level);
+            size += build(write ? cell + size : -1, p, childEnd, level + 1);
+            p = childEnd;
+        }
+        if (write) {
+            cellStart[cell] = start;
+            cellEnd[cell] = end;
+            cellLevel[cell] = level;
+            cellSkip[cell] = cell + size;
+            summarizeInner(cell);
+        }
+        return size;
+    }
+
+    private void summarizeLeaf(int cell) {
+        int offset = cell * dimensions;
+        int count = cellEnd[cell] - cellStart[cell];
+        Arrays.fill(centerOfMass, offset, offset + dimensions, 0.0);
+        for (int p = cellStart[cell]; p < cellEnd[cell]; p++)
+            for (int d = 0; d < dimensions; d++)
+                centerOfMass[offset + d] += sorted[p * dimensions + d];
+        for (int d = 0; d < dimensions; d++)
+            centerOfMass[offset + d] /= count;
+    }
+
+    private void summarizeInner(int cell) {
+        int offset = cell * dimensions;
+        int count = cellEnd[cell] - cellStart[cell];
+        Arrays.fill(centerOfMass, offset, offset + dimensions, 0.0);
+        for (int child = cell + 1; child < cellSkip[cell]; child = cellSkip[child]) {
+            int childCount = cellEnd[child] - cellStart[child];
+            for (int d = 0; d < dimensions; d++)
+                centerOfMass[offset + d] += childCount * centerOfMass[child * dimensions + d];
+        }
+        for (int d = 0; d < dimensions; d++)
+            centerOfMass[offset + d] /= count;
+    }
+
+    /**
+     * Compute the non edge forces on a single point using barnes hut, like {@link SpTree} does.
+     * Only reads the tree, so different points may be processed concurrently.
+     *
+     * @param pointIndex the index of the point
+     * @param theta the barnes hut accuracy/speed trade off
+     * @param data the row major coordinates of all points, the same the tree was built from
+     * @param negativeForce the negative force accumulator for this point, of length D
+     * @return the contribution of this point to the normalization term sumQ
+     */
+    public double computeNonEdgeForces(int pointIndex, double theta, double[] data, double[] negativeForce) {
+        int offset = pointIndex * dimensions;
+        double sumQ = 0.0;
+        int cell = 0;
+        while (cell < numCells) {
+            int skip = cellSkip[cell];
+            if (skip == cell + 1) {
+                // leaf: exact interactions with every point but this one
+                for (int p = cellStart[cell]; p < cellEnd[cell]; p++) {
+                    if (perm[p] == pointIndex)
+                        continue;
+                    double D = 0.0;
+                    for (int d = 0; d < dimensions; d++) {
+                        double diff = data[offset + d] - sorted[p * dimensions + d];
+                        D += diff * diff;
+                    }
+                    double Q = 1.0 / (1.0 + D);
+                    sumQ += Q;
+                    double mult = Q * Q;
+                    for (int d = 0; d < dimensions; d++)
+                        negativeForce[d] += mult * (data[offset + d] - sorted[p * dimensions + d]);
+                }
+                cell = skip;
+                continue;
+            }
+
+            // distance between point and center-of-mass
+            int comOffset = cell * dimensions;
+            double D = 0.0;
+            for (int d = 0; d < dimensions; d++) {
+                double diff = data[offset + d] - centerOfMass[comOffset + d];
+                D += diff * diff;
+            }
+
+            double maxWidth = Math.scalb(maxHalfWidth, -cellLevel[cell]);
+            if (maxWidth / Math.sqrt(D) < theta) {
+                // use the cell as a summary
+                double Q = 1.0 / (1.0 + D);
+                double mult = (cellEnd[cell] - cellStart[cell]) * Q;
+                sumQ += mult;
+                mult *= Q;
+                for (int d = 0; d < dimensions; d++)
+                    negativeForce[d] += mult * (data[offset + d] - centerOfMass[comOffset + d]);
+                cell = skip;
+            } else {
+                // descend into the first child
+                cell++;
+            }
+        }
+        return sumQ;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    public int getNumCells() {
+        return numCells;
+    }
+
+    /**
+     * @param cell a cell index, 0 is the root
+     * @return the number of points in the cell
+     */
+    public int getCumSize(int cell) {
+        return cellEnd[cell] - cellStart[cell];
+    }
+
+    /**
+     * @param cell a cell index, 0 is the root
+     * @return a copy of the center of mass of the cell
+     */
+    public double[] getCenterOfMass(int cell) {
+        return Arrays.copyOfRange(centerOfMass, cell * dimensions, (cell + 1) * dimensions);
+    }
+}
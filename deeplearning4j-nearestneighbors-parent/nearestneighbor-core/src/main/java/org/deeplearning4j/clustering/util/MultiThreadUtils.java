@@ -69,4 +69,55 @@ public class MultiThreadUtils {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Body of a parallel loop, applied to disjoint sub ranges of the iteration space
+     */
+    public interface RangeBody {
+        void apply(int from, int to);
+    }
+
+    /**
+     * Fork join action splitting [from, to) in halves until at most grain iterations are left
+     */
+    private static class RangeAction extends RecursiveAction {
+        private final RangeBody body;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        RangeAction(RangeBody body, int from, int to, int grain) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                body.apply(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RangeAction(body, from, mid, grain), new RangeAction(body, mid, to, grain));
+            }
+        }
+    }
+
+    /**
+     * Apply the body to [from, to), split into ranges of at most grain iterations run on the given pool.
+     * Runs on the calling thread if there's no pool or the range is small enough.
+     *
+     * @param pool the pool to run on, may be null
+     * @param from first index, inclusive
+     * @param to last index, exclusive
+     * @param grain the maximum number of iterations applied in a single task
+     * @param body the loop body
+     */
+    public static void parallelFor(ForkJoinPool pool, int from, int to, int grain, RangeBody body) {
+        if (pool == null || to - from <= grain)
+            body.apply(from, to);
+        else
+            pool.invoke(new RangeAction(body, from, to, grain));
+    }
 }
@@ -0,0 +1,950 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.clustering.vptree;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.clustering.sptree.DataPoint;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Vantage point tree over a flat, row major float array.
+ *
+ * Unlike {@link VPTree}, which keeps a graph of {@link VPTree.Node} objects holding INDArray rows
+ * and dispatches an ND4J op for every distance, this tree:
+ * <ul>
+ *     <li>stores all points contiguously, reordered so that every subtree covers a contiguous range</li>
+ *     <li>keeps the nodes in parallel primitive arrays</li>
+ *     <li>stops splitting at {@link #DEFAULT_LEAF_SIZE} points and scans leaf buckets linearly</li>
+ *     <li>resolves the similarity function once to a plain Java {@link DistanceKernel}</li>
+ *     <li>collects candidates in a primitive bounded heap</li>
+ * </ul>
+ *
+ * Searches don't modify the tree and can run concurrently. Results are ordered nearest first,
+ * i.e. by ascending (possibly inverted) distance. Subtrees are only pruned for metric distances
+ * ({@link DistanceKernel#isMetric()}, not inverted), other similarity functions visit every node
+ * so that results stay exact. Searches for the most similar points by cosine (cosinesimilarity inverted, or
+ * cosinedistance) run on L2 normalized points with the euclidean distance instead, which orders the points the same
+ * way and can be pruned: for unit vectors |a - b|^2 = 2 - 2 cos(a, b). Jaccard is only a metric for non negative
+ * points and queries, so it is pruned only then.
+ *
+ * A built tree can be written with {@link #save(File)} and loaded again with {@link #load(File)}, which
+ * maps the file instead of rebuilding the tree. The points of a loaded tree are searched directly from the
+ * mapping, in segments addressed by long offsets, so they take no heap and aren't limited to 2^31 values.
+ */
+@Slf4j
+public class FlatVPTree {
+
+    public static final int DEFAULT_LEAF_SIZE = 32;
+
+    // subtrees smaller than this are built on the current thread
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private static final int MAGIC = 0x56505431; // "VPT1"
+    private static final int VERSION = 2;
+    // maximum number of bytes mapped at once
+    private static final int MAP_CHUNK = 1 << 28;
+    // the points are kept in segments of 2^SEGMENT_SHIFT floats, i.e. MAP_CHUNK bytes
+    private static final int SEGMENT_SHIFT = 26;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    // maximum number of rows of a leaf bucket copied out of the segments at once
+    private static final int SCAN_BLOCK = 64;
+
+    @Getter
+    protected int numPoints;
+    @Getter
+    protected int dimensions;
+    @Getter
+    protected String similarityFunction;
+    @Getter
+    protected boolean invert;
+    @Getter
+    protected int leafSize;
+
+    // the kernel the tree is built and searched with, euclidean if the points are normalized
+    protected DistanceKernel kernel;
+    // whether the kernel distance is negated
+    protected boolean negate;
+    // whether the points are L2 normalized, see initKernel()
+    protected boolean normalized;
+    // whether all points are non negative, which makes jaccard a metric
+    protected boolean nonNegative;
+
+    // points in tree order: row p holds the original point ids[p], and value v of the flat array is at
+    // points[v >>> SEGMENT_SHIFT], offset v & (SEGMENT_SIZE - 1). Heap buffers when built, mapped when loaded
+    protected FloatBuffer[] points;
+    protected int[] ids;
+    // position of every original point in tree order
+    protected int[] positions;
+    // original L2 norms of the points in tree order, only kept if the points are normalized
+    protected float[] norms;
+
+    // node n covers rows [nodeStart[n], nodeEnd[n]). Inner nodes have their vantage point at nodeStart[n],
+    // points closer than nodeThreshold[n] in the left subtree and the others in the right one. Leaves have no children.
+    protected int numNodes;
+    protected int[] nodeStart;
+    protected int[] nodeEnd;
+    protected float[] nodeThreshold;
+    protected int[] nodeLeft;
+    protected int[] nodeRight;
+
+    protected FlatVPTree() {}
+
+    /**
+     * @param items the points, one per row
+     * @param similarityFunction the similarity function to use
+     * @param invert whether to invert the distance (similarity functions have different min/max objectives)
+     */
+    public FlatVPTree(INDArray items, String similarityFunction, boolean invert) {
+        this(items, similarityFunction, invert, DEFAULT_LEAF_SIZE, 1);
+    }
+
+    /**
+     * @param items the points, one per row
+     * @param similarityFunction the similarity function to use
+     * @param invert whether to invert the distance (similarity functions have different min/max objectives)
+     * @param leafSize maximum number of points in a leaf bucket
+     * @param workers number of threads used to build the tree
+     */
+    public FlatVPTree(INDArray items, String similarityFunction, boolean invert, int leafSize, int workers) {
+        if (items.rank() != 2)
+            throw new ND4JIllegalStateException("Points should be a matrix, got shape " + Arrays.toString(items.shape()));
+        if (leafSize < 1)
+            throw new ND4JIllegalStateException("Leaf size should be positive, got " + leafSize);
+
+        this.numPoints = items.rows();
+        this.dimensions = items.columns();
+        this.similarityFunction = similarityFunction;
+        this.invert = invert;
+        this.leafSize = leafSize;
+        initKernel();
+
+        float[] data = items.dup('c').data().asFloat();
+        this.nonNegative = true;
+        for (float value : data) {
+            if (value < 0) {
+                nonNegative = false;
+                break;
+            }
+        }
+        float[] originalNorms = normalized ? normalizeRows(data) : null;
+
+        this.ids = new int[numPoints];
+        for (int i = 0; i < numPoints; i++)
+            ids[i] = i;
+
+        build(data, workers);
+
+        // move the points into tree order, so that leaf scans are sequential
+        float[] ordered = new float[data.length];
+        this.positions = new int[numPoints];
+        this.norms = normalized ? new float[numPoints] : null;
+        for (int p = 0; p < numPoints; p++) {
+            System.arraycopy(data, ids[p] * dimensions, ordered, p * dimensions, dimensions);
+            positions[ids[p]] = p;
+            if (normalized)
+                norms[p] = originalNorms[ids[p]];
+        }
+        this.points = segments(ordered);
+    }
+
+    /**
+     * Wraps the values in heap buffers with the same segment layout as a mapped tree
+     */
+    private static FloatBuffer[] segments(float[] values) {
+        FloatBuffer[] segments = new FloatBuffer[(int) ((values.length + SEGMENT_SIZE - 1L) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            int from = i << SEGMENT_SHIFT;
+            segments[i] = FloatBuffer.wrap(values, from, Math.min(SEGMENT_SIZE, values.length - from)).slice();
+        }
+        return segments;
+    }
+
+    /**
+     * @param items the points, one per row
+     */
+    public FlatVPTree(INDArray items) {
+        this(items, VPTree.EUCLIDEAN, false);
+    }
+
+    /**
+     * Resolves the kernel the tree is built and searched with from the similarity function and invert flag
+     */
+    private void initKernel() {
+        DistanceKernel requested = DistanceKernel.forName(similarityFunction);
+        normalized = (requested == DistanceKernel.COSINE_SIMILARITY && invert)
+                        || (requested == DistanceKernel.COSINE_DISTANCE && !invert);
+        kernel = normalized ? DistanceKernel.EUCLIDEAN : requested;
+        negate = invert && !normalized;
+    }
+
+    /**
+     * L2 normalizes every row in place, zero rows are left as they are
+     *
+     * @return the original norms of the rows
+     */
+    private float[] normalizeRows(float[] data) {
+        float[] rowNorms = new float[numPoints];
+        for (int i = 0; i < numPoints; i++)
+            rowNorms[i] = normalize(data, i * dimensions, data, i * dimensions);
+        return rowNorms;
+    }
+
+    /**
+     * Writes the L2 normalized row of source to target
+     *
+     * @return the norm of the row
+     */
+    private float normalize(float[] source, int sourceOffset, float[] target, int targetOffset) {
+        float sum = 0.0f;
+        for (int i = 0; i < dimensions; i++)
+            sum += source[sourceOffset + i] * source[sourceOffset + i];
+        float norm = (float) Math.sqrt(sum);
+        float scale = norm > 0 ? 1.0f / norm : 0.0f;
+        for (int i = 0; i < dimensions; i++)
+            target[targetOffset + i] = source[sourceOffset + i] * scale;
+        return norm;
+    }
+
+    private void build(final float[] data, int workers) {
+        // every node holds at least one point exclusively
+        int maxNodes = Math.max(1, numPoints);
+        nodeStart = new int[maxNodes];
+        nodeEnd = new int[maxNodes];
+        nodeThreshold = new float[maxNodes];
+        nodeLeft = new int[maxNodes];
+        nodeRight = new int[maxNodes];
+
+        final AtomicInteger nodeCounter = new AtomicInteger();
+        final float[] distances = new float[numPoints];
+        if (numPoints > 0) {
+            if (workers > 1 && numPoints > PARALLEL_THRESHOLD) {
+                ForkJoinPool pool = new ForkJoinPool(workers);
+                try {
+                    pool.invoke(new BuildTask(data, distances, nodeCounter, 0, numPoints, true));
+                } finally {
+                    pool.shutdown();
+                }
+            } else {
+                new BuildTask(data, distances, nodeCounter, 0, numPoints, false).compute();
+            }
+        }
+
+        numNodes = nodeCounter.get();
+        nodeStart = Arrays.copyOf(nodeStart, numNodes);
+        nodeEnd = Arrays.copyOf(nodeEnd, numNodes);
+        nodeThreshold = Arrays.copyOf(nodeThreshold, numNodes);
+        nodeLeft = Arrays.copyOf(nodeLeft, numNodes);
+        nodeRight = Arrays.copyOf(nodeRight, numNodes);
+    }
+
+    /**
+     * Builds the subtree over rows [start, end) of ids and returns its node index
+     */
+    private class BuildTask extends RecursiveTask<Integer> {
+        private final float[] data;
+        private final float[] distances;
+        private final AtomicInteger nodeCounter;
+        private final int start;
+        private final int end;
+        private final boolean parallel;
+
+        BuildTask(float[] data, float[] distances, AtomicInteger nodeCounter, int start, int end, boolean parallel) {
+            this.data = data;
+            this.distances = distances;
+            this.nodeCounter = nodeCounter;
+            this.start = start;
+            this.end = end;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected Integer compute() {
+            int node = nodeCounter.getAndIncrement();
+            nodeStart[node] = start;
+            nodeEnd[node] = end;
+            nodeLeft[node] = -1;
+            nodeRight[node] = -1;
+
+            if (end - start <= leafSize)
+                return node;
+
+            // deterministic choice of the vantage point, independent of thread scheduling
+            int vantage = start + (int) ((mix(start * 31L + end) >>> 1) % (end - start));
+            swap(ids, null, start, vantage);
+
+            int vOffset = ids[start] * dimensions;
+            for (int i = start + 1; i < end; i++)
+                distances[i] = distance(data, vOffset, data, ids[i] * dimensions);
+
+            // left: [start + 1, median), right: [median, end)
+            int median = (start + 1 + end) >>> 1;
+            select(ids, distances, start + 1, end - 1, median);
+            nodeThreshold[node] = distances[median];
+
+            BuildTask left = median > start + 1
+                            ? new BuildTask(data, distances, nodeCounter, start + 1, median, parallel) : null;
+            BuildTask right = new BuildTask(data, distances, nodeCounter, median, end, parallel);
+
+            if (parallel && end - start > PARALLEL_THRESHOLD) {
+                if (left != null)
+                    left.fork();
+                nodeRight[node] = right.compute();
+                if (left != null)
+                    nodeLeft[node] = left.join();
+            } else {
+                if (left != null)
+                    nodeLeft[node] = left.compute();
+                nodeRight[node] = right.compute();
+            }
+            return node;
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Quickselect on keys[from..to] (inclusive), permuting ids along, so that keys[n] ends up at its sorted position
+     */
+    private static void select(int[] ids, float[] keys, int from, int to, int n) {
+        while (to > from) {
+            int mid = (from + to) >>> 1;
+            // median of three pivot
+            if (keys[mid] < keys[from])
+                swap(ids, keys, mid, from);
+            if (keys[to] < keys[from])
+                swap(ids, keys, to, from);
+            if (keys[to] < keys[mid])
+                swap(ids, keys, to, mid);
+            float pivot = keys[mid];
+
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (keys[i] < pivot)
+                    i++;
+                while (keys[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    swap(ids, keys, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (n <= j)
+                to = j;
+            else if (n >= i)
+                from = i;
+            else
+                return;
+        }
+    }
+
+    private static void swap(int[] ids, float[] keys, int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        if (keys != null) {
+            float key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+    }
+
+    protected float distance(float[] a, int aOffset, float[] b, int bOffset) {
+        float d = kernel.distance(a, aOffset, b, bOffset, dimensions);
+        return negate ? -d : d;
+    }
+
+    /**
+     * Search the k nearest neighbours of the given point
+     *
+     * @param target the point to search for
+     * @param k the number of neighbours
+     * @param indices output, indices of the neighbours (nearest first)
+     * @param distances output, the corresponding distances
+     * @return the number of neighbours found, min(k, number of points)
+     */
+    public int search(float[] target, int k, int[] indices, float[] distances) {
+        if (target.length != dimensions)
+            throw new ND4JIllegalStateException(
+                            "Target for search should have " + dimensions + " columns but got " + target.length);
+
+        k = Math.min(k, numPoints);
+        if (k <= 0)
+            return 0;
+
+        if (normalized) {
+            float[] query = new float[dimensions];
+            // like the cosine kernel, which is NaN for a zero vector, a zero query has no neighbours
+            if (normalize(target, 0, query, 0) == 0)
+                return 0;
+            target = query;
+        }
+
+        boolean prune = kernel.isMetric() && !negate;
+        if (kernel == DistanceKernel.JACCARD) {
+            prune &= nonNegative;
+            for (int i = 0; prune && i < dimensions; i++)
+                prune = target[i] >= 0;
+        }
+
+        BoundedHeap heap = new BoundedHeap(k);
+        search(0, target, new PointReader(Math.min(leafSize, SCAN_BLOCK)), heap, prune);
+        int found = heap.drainSorted(ids, indices, distances);
+        if (normalized) {
+            // back from euclidean to cosine: cosine distance 1 - cos = |a - b|^2 / 2, inverted similarity -cos
+            for (int i = 0; i < found; i++)
+                distances[i] = distances[i] * distances[i] / 2 - (invert ? 1.0f : 0.0f);
+        }
+        return found;
+    }
+
+    /**
+     * Search the k nearest neighbours of the given point, with the same signature as
+     * {@link VPTree#search(INDArray, int, List, List)}. Results are ordered nearest first.
+     *
+     * @param target the point to search for
+     * @param k the number of neighbours
+     * @param results output, the neighbours
+     * @param distances output, the corresponding distances
+     */
+    public void search(INDArray target, int k, List<DataPoint> results, List<Double> distances) {
+        if (!target.isVector() || target.length() != dimensions || target.rows() > 1)
+            throw new ND4JIllegalStateException("Target for search should have shape of [" + 1 + ", " + dimensions
+                            + "] but got " + Arrays.toString(target.shape()) + " instead");
+
+        results.clear();
+        distances.clear();
+
+        int[] idx = new int[Math.min(k, numPoints)];
+        float[] dist = new float[idx.length];
+        int found = search(target.dup().data().asFloat(), k, idx, dist);
+        for (int i = 0; i < found; i++) {
+            results.add(new DataPoint(idx[i], getPoint(idx[i])));
+            distances.add((double) dist[i]);
+        }
+    }
+
+    private void search(int node, float[] target, PointReader reader, BoundedHeap heap, boolean prune) {
+        int start = nodeStart[node];
+        int end = nodeEnd[node];
+
+        if (nodeLeft[node] < 0 && nodeRight[node] < 0) {
+            // leaf bucket (or inner node without children): plain scan, one block of rows at a time
+            for (int from = start; from < end; from += reader.blockRows) {
+                int to = Math.min(end, from + reader.blockRows);
+                reader.read(from, to);
+                for (int p = from; p < to; p++) {
+                    float d = distance(target, 0, reader.rows, (p - from) * dimensions);
+                    if (d < heap.bound() && hasDirection(p))
+                        heap.add(p, d);
+                }
+            }
+            return;
+        }
+
+        reader.read(start, start + 1);
+        float d = distance(target, 0, reader.rows, 0);
+        if (d < heap.bound() && hasDirection(start))
+            heap.add(start, d);
+
+        float threshold = nodeThreshold[node];
+        int left = nodeLeft[node];
+        int right = nodeRight[node];
+        if (!prune) {
+            // no triangle inequality, so no bound on the distances inside the children
+            if (left >= 0)
+                search(left, target, reader, heap, false);
+            if (right >= 0)
+                search(right, target, reader, heap, false);
+        } else if (d < threshold) {
+            // if there can still be neighbors inside the ball, recursively search left child first
+            if (left >= 0 && d - heap.bound() <= threshold)
+                search(left, target, reader, heap, true);
+            if (right >= 0 && d + heap.bound() >= threshold)
+                search(right, target, reader, heap, true);
+        } else {
+            if (right >= 0 && d + heap.bound() >= threshold)
+                search(right, target, reader, heap, true);
+            if (left >= 0 && d - heap.bound() <= threshold)
+                search(left, target, reader, heap, true);
+        }
+    }
+
+    /**
+     * Copies rows of the points out of their segments. Bulk reads move the position of a buffer, so every search
+     * reads through its own duplicates of the segments.
+     */
+    private class PointReader {
+        private final FloatBuffer[] views = new FloatBuffer[points.length];
+        // maximum number of rows read at once
+        private final int blockRows;
+        private final float[] rows;
+
+        PointReader(int blockRows) {
+            this.blockRows = Math.max(1, blockRows);
+            this.rows = new float[this.blockRows * dimensions];
+        }
+
+        /**
+         * Copy rows [from, to), at most blockRows of them, to the start of rows
+         */
+        void read(int from, int to) {
+            long value = (long) from * dimensions;
+            int remaining = (to - from) * dimensions;
+            int copied = 0;
+            while (remaining > 0) {
+                int segment = (int) (value >>> SEGMENT_SHIFT);
+                int offset = (int) (value & (SEGMENT_SIZE - 1));
+                FloatBuffer view = views[segment];
+                if (view == null) {
+                    view = points[segment].duplicate();
+                    views[segment] = view;
+                }
+                // rows may span two segments
+                int length = Math.min(remaining, view.limit() - offset);
+                view.position(offset);
+                view.get(rows, copied, length);
+                value += length;
+                copied += length;
+                remaining -= length;
+            }
+        }
+    }
+
+    /**
+     * Zero points stay in a normalized tree but, like with the cosine kernel, are never a neighbour
+     */
+    private boolean hasDirection(int row) {
+        return norms == null || norms[row] > 0;
+    }
+
+    /**
+     * @param index the original index of a point
+     * @return a copy of the point as a row vector
+     */
+    public INDArray getPoint(int index) {
+        PointReader reader = new PointReader(1);
+        reader.read(positions[index], positions[index] + 1);
+        float[] point = reader.rows;
+        if (normalized) {
+            float norm = norms[positions[index]];
+            for (int i = 0; i < dimensions; i++)
+                point[i] *= norm;
+        }
+        return Nd4j.create(point);
+    }
+
+    /**
+     * Write the tree, including the points, to the given file.
+     *
+     * Layout (big endian): magic, version, number of points, dimensions, leaf size, invert flag,
+     * length of the similarity function name and its UTF-8 bytes, non negative flag, number of nodes, followed by
+     * the arrays ids, node starts, node ends, node thresholds, left and right children, the points in tree order
+     * and, if the points are normalized for cosine searches, their original norms.
+     *
+     * @param file the file to write to
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        byte[] name = similarityFunction == null ? new byte[0] : similarityFunction.getBytes(StandardCharsets.UTF_8);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.writeInt(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeInt(numPoints);
+            raf.writeInt(dimensions);
+            raf.writeInt(leafSize);
+            raf.writeInt(invert ? 1 : 0);
+            raf.writeInt(name.length);
+            raf.write(name);
+            raf.writeInt(nonNegative ? 1 : 0);
+            raf.writeInt(numNodes);
+
+            FileChannel channel = raf.getChannel();
+            long position = raf.getFilePointer();
+            position = write(channel, position, ids);
+            position = write(channel, position, nodeStart);
+            position = write(channel, position, nodeEnd);
+            position = write(channel, position, nodeThreshold);
+            position = write(channel, position, nodeLeft);
+            position = write(channel, position, nodeRight);
+            position = write(channel, position, points);
+            if (normalized)
+                write(channel, position, norms);
+        }
+    }
+
+    /**
+     * Load a tree written by {@link #save(File)}, which is much faster than building the tree again. The file is
+     * memory mapped: the node arrays are copied in bulk, the points stay in the mapping.
+     *
+     * @param file the file to read
+     * @return the tree
+     * @throws IOException
+     */
+    public static FlatVPTree load(File file) throws IOException {
+        FlatVPTree tree = new FlatVPTree();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.readInt() != MAGIC)
+                throw new IOException("Not a vantage point tree index: " + file);
+            int version = raf.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported vantage point tree index version " + version + ": " + file);
+            tree.numPoints = raf.readInt();
+            tree.dimensions = raf.readInt();
+            tree.leafSize = raf.readInt();
+            tree.invert = raf.readInt() != 0;
+            byte[] name = new byte[raf.readInt()];
+            raf.readFully(name);
+            tree.similarityFunction = new String(name, StandardCharsets.UTF_8);
+            tree.initKernel();
+            tree.nonNegative = raf.readInt() != 0;
+            tree.numNodes = raf.readInt();
+
+            FileChannel channel = raf.getChannel();
+            long position = raf.getFilePointer();
+            long expected = position + 4L * (tree.numPoints + 5L * tree.numNodes
+                            + (long) tree.numPoints * tree.dimensions + (tree.normalized ? tree.numPoints : 0));
+            if (channel.size() != expected)
+                throw new EOFException("Expected " + expected + " bytes in " + file + " but found " + channel.size());
+
+            tree.ids = new int[tree.numPoints];
+            tree.nodeStart = new int[tree.numNodes];
+            tree.nodeEnd = new int[tree.numNodes];
+            tree.nodeThreshold = new float[tree.numNodes];
+            tree.nodeLeft = new int[tree.numNodes];
+            tree.nodeRight = new int[tree.numNodes];
+
+            position = read(channel, position, tree.ids);
+            position = read(channel, position, tree.nodeStart);
+            position = read(channel, position, tree.nodeEnd);
+            position = read(channel, position, tree.nodeThreshold);
+            position = read(channel, position, tree.nodeLeft);
+            position = read(channel, position, tree.nodeRight);
+            long numValues = (long) tree.numPoints * tree.dimensions;
+            tree.points = new FloatBuffer[(int) ((numValues + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < tree.points.length; i++) {
+                long from = (long) i << SEGMENT_SHIFT;
+                int length = (int) Math.min(SEGMENT_SIZE, numValues - from);
+                // the mapping stays valid after the channel is closed
+                tree.points[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + 4L * from, 4L * length)
+                                .order(ByteOrder.BIG_ENDIAN).asFloatBuffer();
+            }
+            position += 4L * numValues;
+            if (tree.normalized) {
+                tree.norms = new float[tree.numPoints];
+                read(channel, position, tree.norms);
+            }
+        }
+
+        tree.positions = new int[tree.numPoints];
+        for (int p = 0; p < tree.numPoints; p++)
+            tree.positions[tree.ids[p]] = p;
+        return tree;
+    }
+
+    private static long write(FileChannel channel, long position, int[] values) throws IOException {
+        int perChunk = MAP_CHUNK / 4;
+        for (int from = 0; from < values.length; from += perChunk) {
+            int length = Math.min(perChunk, values.length - from);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, 4L * length);
+            buffer.order(ByteOrder.BIG_ENDIAN).asIntBuffer().put(values, from, length);
+            position += 4L * length;
+        }
+        return position;
+    }
+
+    private static long write(FileChannel channel, long position, float[] values) throws IOException {
+        int perChunk = MAP_CHUNK / 4;
+        for (int from = 0; from < values.length; from += perChunk) {
+            int length = Math.min(perChunk, values.length - from);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, 4L * length);
+            buffer.order(ByteOrder.BIG_ENDIAN).asFloatBuffer().put(values, from, length);
+            position += 4L * length;
+        }
+        return position;
+    }
+
+    private static long write(FileChannel channel, long position, FloatBuffer[] segments) throws IOException {
+        for (FloatBuffer segment : segments) {
+            FloatBuffer values = segment.duplicate();
+            values.rewind();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, 4L * values.remaining());
+            buffer.order(ByteOrder.BIG_ENDIAN).asFloatBuffer().put(values);
+            position += 4L * segment.limit();
+        }
+        return position;
+    }
+
+    private static long read(FileChannel channel, long position, int[] values) throws IOException {
+        int perChunk = MAP_CHUNK / 4;
+        for (int from = 0; from < values.length; from += perChunk) {
+            int length = Math.min(perChunk, values.length - from);
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * length);
+            buffer.order(ByteOrder.BIG_ENDIAN).asIntBuffer().get(values, from, length);
+            position += 4L * length;
+        }
+        return position;
+    }
+
+    private static long read(FileChannel channel, long position, float[] values) throws IOException {
+        int perChunk = MAP_CHUNK / 4;
+        for (int from = 0; from < values.length; from += perChunk) {
+            int length = Math.min(perChunk, values.length - from);
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * length);
+            buffer.order(ByteOrder.BIG_ENDIAN).asFloatBuffer().get(values, from, length);
+            position += 4L * length;
+        }
+        return position;
+    }
+
+    /**
+     * Max heap of (distance, row) pairs with a fixed capacity
+     */
+    private static class BoundedHeap {
+        private final float[] keys;
+        private final int[] rows;
+        private int size;
+
+        BoundedHeap(int capacity) {
+            keys = new float[capacity];
+            rows = new int[capacity];
+        }
+
+        /**
+         * @return the distance a candidate must beat to enter the heap
+         */
+        float bound() {
+            return size < keys.length ? Float.POSITIVE_INFINITY : keys[0];
+        }
+
+        void add(int row, float key) {
+            if (size < keys.length) {
+                // sift up
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (keys[parent] >= key)
+                        break;
+                    keys[i] = keys[parent];
+                    rows[i] = rows[parent];
+                    i = parent;
+                }
+                keys[i] = key;
+                rows[i] = row;
+            } else {
+                siftDown(row, key, size);
+            }
+        }
+
+        // replace the root and restore the heap over the first n entries
+        private void siftDown(int row, float key, int n) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n)
+                    break;
+                if (child + 1 < n && keys[child + 1] > keys[child])
+                    child++;
+                if (keys[child] <= key)
+                    break;
+                keys[i] = keys[child];
+                rows[i] = rows[child];
+                i = child;
+            }
+            keys[i] = key;
+            rows[i] = row;
+        }
+
+        int drainSorted(int[] ids, int[] indices, float[] distances) {
+            int found = size;
+            for (int n = size; n > 0; n--) {
+                indices[n - 1] = ids[rows[0]];
+                distances[n - 1] = keys[0];
+                siftDown(rows[n - 1], keys[n - 1], n - 1);
+            }
+            size = 0;
+            return found;
+        }
+    }
+
+    /**
+     * Distance between two rows of flat arrays, written as simple counted loops the JIT can unroll and vectorize
+     */
+    public static abstract class DistanceKernel {
+
+        public abstract float distance(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+        /**
+         * @return whether the distance satisfies the triangle inequality, which searches rely on to prune subtrees
+         */
+        public boolean isMetric() {
+            return false;
+        }
+
+        public static DistanceKernel forName(String similarityFunction) {
+            if (similarityFunction == null)
+                return EUCLIDEAN;
+            switch (similarityFunction) {
+                case "euclidean":
+                    return EUCLIDEAN;
+                case "manhattan":
+                    return MANHATTAN;
+                case "cosinesimilarity":
+                    return COSINE_SIMILARITY;
+                case "cosinedistance":
+                    return COSINE_DISTANCE;
+                case "dot":
+                    return DOT;
+                case "jaccard":
+                    return JACCARD;
+                case "hamming":
+                    return HAMMING;
+                default:
+                    return EUCLIDEAN;
+            }
+        }
+
+        public static final DistanceKernel EUCLIDEAN = new DistanceKernel() {
+            @Override
+            public boolean isMetric() {
+                return true;
+            }
+
+            @Override
+            public float distance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+                float sum = 0.0f;
+                for (int i = 0; i < length; i++) {
+                    float diff = a[aOffset + i] - b[bOffset + i];
+                    sum += diff * diff;
+                }
+                return (float) Math.sqrt(sum);
+            }
+        };
+
+        public static final DistanceKernel MANHATTAN = new DistanceKernel() {
+            @Override
+            public boolean isMetric() {
+                return true;
+            }
+
+            @Override
+            public float distance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+                float sum = 0.0f;
+                for (int i = 0; i < length; i++)
+                    sum += Math.abs(a[aOffset + i] - b[bOffset + i]);
+                return sum;
+            }
+        };
+
+        public static final DistanceKernel DOT = new DistanceKernel() {
+            @Override
+            public float distance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+                float sum = 0.0f;
+                for (int i = 0; i < length; i++)
+                    sum += a[aOffset + i] * b[bOffset + i];
+                return sum;
+            }
+        };
+
+        public static final DistanceKernel COSINE_SIMILARITY = new DistanceKernel() {
+            @Override
+            public float distance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+                float dot = 0.0f;
+                float normA = 0.0f;
+                float normB = 0.0f;
+                for (int i = 0; i < length; i++) {
+                    float x = a[aOffset + i];
+                    float y = b[bOffset + i];
+                    dot += x * y;
+                    normA += x * x;
+                    normB += y * y;
+                }
+                return (float) (dot / (Math.sqrt(normA) * Math.sqrt(normB)));
+            }
+        };
+
+        public static final DistanceKernel COSINE_DISTANCE = new DistanceKernel() {
+            @Override
+            public float distance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+                return 1.0f - COSINE_SIMILARITY.distance(a, aOffset, b, bOffset, length);
+            }
+        };
+
+        public static final DistanceKernel JACCARD = new DistanceKernel() {
+            @Override
+            public boolean isMetric() {
+                // for non negative vectors only, trees check their points and queries before pruning
+                return true;
+            }
+
+            @Override
+            public float distance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+                float min = 0.0f;
+                float max = 0.0f;
+                for (int i = 0; i < length; i++) {
+                    float x = a[aOffset + i];
+                    float y = b[bOffset + i];
+                    min += Math.min(x, y);
+                    max += Math.max(x, y);
+                }
+                return 1.0f - min / max;
+            }
+        };
+
+        public static final DistanceKernel HAMMING = new DistanceKernel() {
+            @Override
+            public boolean isMetric() {
+                return true;
+            }
+
+            @Override
+            public float distance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+                int different = 0;
+                for (int i = 0; i < length; i++) {
+                    if (a[aOffset + i] != b[bOffset + i])
+                        different++;
+                }
+                return (float) different / length;
+            }
+        };
+    }
+}
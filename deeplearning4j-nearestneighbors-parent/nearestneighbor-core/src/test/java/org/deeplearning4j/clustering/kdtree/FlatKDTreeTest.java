@@ -0,0 +1,131 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.clustering.kdtree;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class FlatKDTreeTest {
+
+    @Test
+    public void testMatchesBruteForce() {
+        Nd4j.getRandom().setSeed(12345);
+        for (int dims : new int[] {1, 2, 3}) {
+            INDArray points = Nd4j.randn(3000, dims);
+            INDArray queries = Nd4j.randn(200, dims);
+            double[] data = points.dup('c').data().asDouble();
+            double[] query = queries.dup('c').data().asDouble();
+
+            for (int leafSize : new int[] {1, FlatKDTree.DEFAULT_LEAF_SIZE}) {
+                FlatKDTree tree = new FlatKDTree(points, leafSize, 2);
+                FlatKDTree.Neighbors neighbors = tree.knn(queries, 10);
+                assertEquals(200, neighbors.getNumQueries());
+                assertEquals(10, neighbors.getK());
+
+                for (int q = 0; q < queries.rows(); q++) {
+                    double[] distances = new double[points.rows()];
+                    for (int p = 0; p < distances.length; p++) {
+                        double sum = 0;
+                        for (int d = 0; d < dims; d++) {
+                            double diff = query[q * dims + d] - data[p * dims + d];
+                            sum += diff * diff;
+                        }
+                        distances[p] = Math.sqrt(sum);
+                    }
+                    Arrays.sort(distances);
+                    for (int i = 0; i < 10; i++)
+                        assertEquals(distances[i], neighbors.getDistance(q, i), 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelBuildAndQueries() {
+        //Large enough for both the build and the query batch to be split across the pool
+        Nd4j.getRandom().setSeed(12345);
+        int dims = 3;
+        INDArray points = Nd4j.randn(20000, dims);
+        INDArray queries = Nd4j.randn(10000, dims);
+        double[] data = points.dup('c').data().asDouble();
+        double[] query = queries.dup('c').data().asDouble();
+
+        FlatKDTree parallel = new FlatKDTree(points, FlatKDTree.DEFAULT_LEAF_SIZE, 4);
+        FlatKDTree serial = new FlatKDTree(points, FlatKDTree.DEFAULT_LEAF_SIZE, 1);
+        for (int run = 0; run < 2; run++) {
+            //The second run reuses the pool of the first one
+            FlatKDTree.Neighbors expected = serial.knn(queries, 5);
+            FlatKDTree.Neighbors actual = parallel.knn(queries, 5);
+            for (int q = 0; q < queries.rows(); q++) {
+                for (int i = 0; i < 5; i++) {
+                    assertEquals(expected.getIndex(q, i), actual.getIndex(q, i));
+                    assertEquals(expected.getDistance(q, i), actual.getDistance(q, i), 0.0);
+                }
+            }
+
+            for (int q = 0; q < queries.rows(); q += 50) {
+                double[] distances = new double[points.rows()];
+                for (int p = 0; p < distances.length; p++) {
+                    double sum = 0;
+                    for (int d = 0; d < dims; d++) {
+                        double diff = query[q * dims + d] - data[p * dims + d];
+                        sum += diff * diff;
+                    }
+                    distances[p] = Math.sqrt(sum);
+                }
+                Arrays.sort(distances);
+                for (int i = 0; i < 5; i++)
+                    assertEquals(distances[i], actual.getDistance(q, i), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testSelfIsNearest() {
+        Nd4j.getRandom().setSeed(7);
+        INDArray points = Nd4j.rand(1000, 2);
+        FlatKDTree tree = new FlatKDTree(points);
+
+        int[] indices = new int[2];
+        double[] distances = new double[2];
+        for (int i = 0; i < points.rows(); i++) {
+            double[] query = new double[] {tree.getCoordinate(i, 0), tree.getCoordinate(i, 1)};
+            assertEquals(2, tree.knn(query, 2, indices, distances));
+            assertEquals(i, indices[0]);
+            assertEquals(0.0, distances[0], 0.0);
+            assertEquals(i, tree.nn(query));
+        }
+        assertEquals(points.getRow(3).getDouble(1), tree.getPoint(3).getDouble(1), 1e-6);
+    }
+
+    @Test
+    public void testKLargerThanPoints() {
+        FlatKDTree tree = new FlatKDTree(Nd4j.create(new double[][] {{0, 0}, {1, 1}, {2, 2}}));
+        FlatKDTree.Neighbors neighbors = tree.knn(Nd4j.create(new double[][] {{0.9, 0.9}}), 5);
+        assertEquals(3, neighbors.getK());
+        assertEquals(1, neighbors.getIndex(0, 0));
+        assertEquals(0, neighbors.getIndex(0, 1));
+        assertEquals(2, neighbors.getIndex(0, 2));
+    }
+}
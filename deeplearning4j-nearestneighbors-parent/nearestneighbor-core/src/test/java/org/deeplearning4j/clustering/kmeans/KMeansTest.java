@@ -1,14 +1,20 @@
 package org.deeplearning4j.clustering.kmeans;
 
+import org.deeplearning4j.clustering.cluster.Cluster;
 import org.deeplearning4j.clustering.cluster.ClusterSet;
 import org.deeplearning4j.clustering.cluster.Point;
 import org.deeplearning4j.clustering.cluster.PointClassification;
 import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by agibsonccc on 7/2/17.
@@ -46,4 +52,82 @@ public class KMeansTest {
                         pointClassificationEuclidean.getCluster().getPoints().get(0));
     }
 
+    private static INDArray blobs(int numBlobs, int perBlob, int dims) {
+        INDArray points = Nd4j.randn(numBlobs * perBlob, dims).muli(0.1);
+        for (int b = 0; b < numBlobs; b++)
+            points.get(NDArrayIndex.interval(b * perBlob, (b + 1) * perBlob), NDArrayIndex.all()).addi(10 * b);
+        return points;
+    }
+
+    private static void assertBlobsSeparated(int[] labels, int numBlobs, int perBlob) {
+        Set<Integer> seen = new HashSet<>();
+        for (int b = 0; b < numBlobs; b++) {
+            int label = labels[b * perBlob];
+            for (int i = 0; i < perBlob; i++)
+                assertEquals(label, labels[b * perBlob + i]);
+            assertTrue(seen.add(label));
+        }
+    }
+
+    @Test
+    public void testMatrixKMeans() {
+        Nd4j.getRandom().setSeed(7);
+        INDArray points = blobs(5, 200, 8);
+        for (MatrixKMeans.Initialization initialization : MatrixKMeans.Initialization.values()) {
+            // RANDOM may seed two centers in the same blob and converge to a local minimum, so it can't be
+            // expected to separate the blobs, see testMatrixKMeansRandomInitialization
+            if (initialization == MatrixKMeans.Initialization.RANDOM)
+                continue;
+            MatrixKMeans kMeans = new MatrixKMeans.Builder().k(5).blockSize(128).initialization(initialization)
+                            .build();
+            int[] labels = kMeans.fit(points);
+            assertBlobsSeparated(labels, 5, 200);
+            assertEquals(5, kMeans.getCenters().rows());
+            assertTrue(kMeans.getInertia() < 1000 * 8 * 0.02);
+            assertEquals(labels[0], kMeans.predict(points.getRow(0))[0]);
+        }
+    }
+
+    @Test
+    public void testMatrixKMeansRandomInitialization() {
+        Nd4j.getRandom().setSeed(7);
+        // with as many centers as points, random initialization picks every point exactly once
+        INDArray points = blobs(6, 1, 3);
+        MatrixKMeans kMeans = new MatrixKMeans.Builder().k(6).initialization(MatrixKMeans.Initialization.RANDOM)
+                        .build();
+        int[] labels = kMeans.fit(points);
+        Set<Integer> seen = new HashSet<>();
+        for (int label : labels)
+            assertTrue(seen.add(label));
+        // loose tolerance: the GEMM expansion of the distances loses precision for points far from the origin
+        assertEquals(0, kMeans.getInertia(), 1e-2);
+        assertEquals(points.getRow(3), kMeans.getCenters().getRow(labels[3]));
+    }
+
+    @Test
+    public void testMatrixKMeansMiniBatch() {
+        Nd4j.getRandom().setSeed(7);
+        INDArray points = blobs(4, 250, 4);
+        MatrixKMeans kMeans = new MatrixKMeans.Builder().k(4).batchSize(100).maxIterations(50).tolerance(0).build();
+        assertBlobsSeparated(kMeans.fit(points), 4, 250);
+
+        MatrixKMeans streaming = new MatrixKMeans.Builder().k(4)
+                        .initialization(MatrixKMeans.Initialization.KMEANS_PLUS_PLUS).build();
+        for (int i = 0; i < 5; i++)
+            streaming.partialFit(points);
+        assertBlobsSeparated(streaming.predict(points), 4, 250);
+    }
+
+    @Test
+    public void testMatrixKMeansClusterSet() {
+        Nd4j.getRandom().setSeed(7);
+        List<Point> points = Point.toPoints(blobs(3, 50, 2));
+        ClusterSet clusterSet = new MatrixKMeans.Builder().k(3).build().applyTo(points);
+        assertEquals(3, clusterSet.getClusterCount());
+        for (Cluster cluster : clusterSet.getClusters())
+            assertEquals(50, cluster.getPoints().size());
+        assertEquals(clusterSet.getPointDistribution().get(points.get(0).getId()),
+                        clusterSet.nearestCluster(points.get(0)).getKey().getId());
+    }
+
 }
@@ -0,0 +1,125 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.clustering.nndescent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.clustering.sptree.DataPoint;
+import org.deeplearning4j.clustering.vptree.FlatVPTree;
+import org.deeplearning4j.clustering.vptree.VPTree;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@Slf4j
+public class NNDescentTest {
+
+    /**
+     * Exact graph from one VPTree search per point, dropping the point itself
+     */
+    private static KnnGraph exactGraph(INDArray points, int k) {
+        int n = points.rows();
+        VPTree tree = new VPTree(points, "euclidean", 1, false);
+        int[] indices = new int[n * k];
+        float[] distances = new float[n * k];
+        List<DataPoint> results = new ArrayList<>();
+        List<Double> found = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            tree.search(points.getRow(i), k + 1, results, found);
+            int m = 0;
+            for (int r = 0; r < results.size() && m < k; r++) {
+                if (results.get(r).getIndex() != i) {
+                    indices[i * k + m] = results.get(r).getIndex();
+                    distances[i * k + m] = found.get(r).floatValue();
+                    m++;
+                }
+            }
+        }
+        return new KnnGraph(n, k, indices, distances);
+    }
+
+    @Test
+    public void testGraphStructure() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray points = Nd4j.randn(200, 5);
+        int k = 8;
+
+        KnnGraph graph = new NNDescent.Builder().k(k).workers(2).build().build(points);
+        assertEquals(200, graph.getNumPoints());
+        assertEquals(k, graph.getK());
+
+        FlatVPTree.DistanceKernel kernel = FlatVPTree.DistanceKernel.EUCLIDEAN;
+        float[] data = points.dup('c').data().asFloat();
+        for (int i = 0; i < graph.getNumPoints(); i++) {
+            for (int m = 0; m < k; m++) {
+                int j = graph.getIndex(i, m);
+                assertNotEquals(i, j);
+                assertEquals(kernel.distance(data, i * 5, data, j * 5, 5), graph.getDistance(i, m), 1e-5);
+                if (m > 0)
+                    assertTrue(graph.getDistance(i, m - 1) <= graph.getDistance(i, m));
+                for (int other = 0; other < m; other++)
+                    assertNotEquals(j, graph.getIndex(i, other));
+            }
+        }
+
+        assertTrue(graph.recall(exactGraph(points, k)) > 0.99);
+    }
+
+    @Test
+    public void testNearlyAllPoints() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray points = Nd4j.randn(12, 3);
+
+        KnnGraph graph = new NNDescent.Builder().k(11).build().build(points);
+        assertEquals(1.0, graph.recall(exactGraph(points, 11)), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooFewPoints() {
+        new NNDescent.Builder().k(10).build().build(Nd4j.randn(10, 3));
+    }
+
+    @Test
+    public void testRecallAgainstVPTree() {
+        Nd4j.getRandom().setSeed(42);
+        INDArray points = Nd4j.randn(5000, 20);
+        int k = 10;
+
+        long start = System.nanoTime();
+        KnnGraph exact = exactGraph(points, k);
+        long exactTime = System.nanoTime() - start;
+
+        for (double sampleRate : new double[] {0.5, 1.0}) {
+            start = System.nanoTime();
+            KnnGraph graph = new NNDescent.Builder().k(k).sampleRate(sampleRate).build().build(points);
+            long time = System.nanoTime() - start;
+            double recall = graph.recall(exact);
+
+            log.info("Sample rate {}: recall {} in {} ms, exact VPTree search {} ms", sampleRate, recall,
+                            time / 1000000, exactTime / 1000000);
+            assertTrue(recall > (sampleRate < 1.0 ? 0.7 : 0.85));
+        }
+    }
+}
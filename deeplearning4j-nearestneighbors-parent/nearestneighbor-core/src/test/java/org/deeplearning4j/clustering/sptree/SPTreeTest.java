@@ -26,6 +26,10 @@ import org.nd4j.linalg.api.buffer.util.DataTypeUtil;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -59,4 +63,65 @@ public class SPTreeTest {
         SpTree tree = new SpTree(arr);
     }
 
+    @Test
+    public void testFlatStructure() {
+        FlatSpTree tree = new FlatSpTree(3);
+        tree.build(new double[] {1, 2, 3, 4, 5, 6}, 2);
+        assertArrayEquals(new double[] {2.5, 3.5, 4.5}, tree.getCenterOfMass(0), 1e-12);
+        assertEquals(2, tree.getCumSize(0));
+        assertEquals(3, tree.getNumCells());
+    }
+
+    private static double exactNonEdgeForces(double[] y, int n, int D, int i, double[] negativeForce) {
+        double sumQ = 0;
+        for (int j = 0; j < n; j++) {
+            if (j == i)
+                continue;
+            double dist = 0;
+            for (int d = 0; d < D; d++)
+                dist += (y[i * D + d] - y[j * D + d]) * (y[i * D + d] - y[j * D + d]);
+            double q = 1.0 / (1.0 + dist);
+            sumQ += q;
+            for (int d = 0; d < D; d++)
+                negativeForce[d] += q * q * (y[i * D + d] - y[j * D + d]);
+        }
+        return sumQ;
+    }
+
+    @Test
+    public void testFlatNonEdgeForces() {
+        Random random = new Random(12345);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int D : new int[] {2, 3}) {
+                int n = 20000;
+                double[] y = new double[n * D];
+                for (int i = 0; i < y.length; i++)
+                    y[i] = i % 11 == 0 ? 1.0 : 10 * random.nextGaussian();
+
+                FlatSpTree tree = new FlatSpTree(D);
+                // built twice to make sure the reused arrays are rebuilt correctly, the second time in parallel
+                tree.build(y, n / 2);
+                tree.build(y, n, pool);
+                assertEquals(n, tree.getCumSize(0));
+
+                for (int i = 0; i < n; i += 997) {
+                    double[] expected = new double[D];
+                    double expectedSumQ = exactNonEdgeForces(y, n, D, i, expected);
+
+                    // theta = 0 never summarizes, so it has to match the exact computation
+                    double[] exact = new double[D];
+                    assertEquals(expectedSumQ, tree.computeNonEdgeForces(i, 0.0, y, exact), 1e-8 * expectedSumQ);
+                    assertArrayEquals(expected, exact, 1e-8);
+
+                    double[] approximate = new double[D];
+                    double sumQ = tree.computeNonEdgeForces(i, 0.5, y, approximate);
+                    assertEquals(expectedSumQ, sumQ, 0.15 * expectedSumQ);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
 }
@@ -0,0 +1,246 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.clustering.vptree;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.clustering.sptree.DataPoint;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Slf4j
+public class FlatVPTreeTest {
+
+    private static double[] bruteForce(INDArray points, INDArray target, String similarityFunction, boolean invert,
+                    int k) {
+        FlatVPTree.DistanceKernel kernel = FlatVPTree.DistanceKernel.forName(similarityFunction);
+        float[] data = points.dup('c').data().asFloat();
+        float[] query = target.dup().data().asFloat();
+        double[] distances = new double[points.rows()];
+        for (int i = 0; i < distances.length; i++) {
+            float d = kernel.distance(query, 0, data, i * query.length, query.length);
+            distances[i] = invert ? -d : d;
+        }
+        Arrays.sort(distances);
+        return Arrays.copyOf(distances, k);
+    }
+
+    private static void assertMatchesBruteForce(FlatVPTree tree, INDArray points, INDArray target, int k) {
+        List<DataPoint> results = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+        tree.search(target, k, results, distances);
+
+        double[] expected = bruteForce(points, target, tree.getSimilarityFunction(), tree.isInvert(), k);
+        double[] actual = new double[distances.size()];
+        for (int i = 0; i < actual.length; i++)
+            actual[i] = distances.get(i);
+        assertArrayEquals(tree.getSimilarityFunction(), expected, actual, 1e-4);
+        assertEquals(points.getRow(results.get(0).getIndex()), results.get(0).getPoint());
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray gaussian = Nd4j.randn(2000, 50);
+        //Jaccard is a metric for non negative vectors only, hamming needs repeated values
+        INDArray positive = Nd4j.rand(2000, 50);
+        INDArray discrete = Transforms.floor(Nd4j.rand(2000, 50).muli(3));
+
+        String[] similarityFunctions = {"euclidean", "manhattan", "cosinesimilarity", "cosinedistance", "dot",
+                        "jaccard", "hamming"};
+        for (String similarityFunction : similarityFunctions) {
+            INDArray points = similarityFunction.equals("jaccard") ? positive
+                            : similarityFunction.equals("hamming") ? discrete : gaussian;
+            for (boolean invert : new boolean[] {false, true}) {
+                for (int leafSize : new int[] {1, 8, FlatVPTree.DEFAULT_LEAF_SIZE}) {
+                    FlatVPTree tree = new FlatVPTree(points, similarityFunction, invert, leafSize, 2);
+                    for (int q = 0; q < 20; q++) {
+                        INDArray target = q % 2 == 0 ? points.getRow(q) : points.getRow(q).add(0.5);
+                        assertMatchesBruteForce(tree, points, target, 10);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelBuild() {
+        //Large enough for subtrees to be built concurrently
+        Nd4j.getRandom().setSeed(12345);
+        INDArray points = Nd4j.randn(40000, 8);
+        FlatVPTree serial = new FlatVPTree(points, "euclidean", false, 8, 1);
+        FlatVPTree parallel = new FlatVPTree(points, "euclidean", false, 8, 4);
+
+        for (int q = 0; q < 20; q++) {
+            INDArray target = Nd4j.randn(1, 8);
+            assertMatchesBruteForce(parallel, points, target, 10);
+
+            //The vantage points are chosen deterministically, so both trees are the same
+            int[] serialIndices = new int[10];
+            float[] serialDistances = new float[10];
+            serial.search(target.dup().data().asFloat(), 10, serialIndices, serialDistances);
+            int[] parallelIndices = new int[10];
+            float[] parallelDistances = new float[10];
+            parallel.search(target.dup().data().asFloat(), 10, parallelIndices, parallelDistances);
+            assertArrayEquals(serialIndices, parallelIndices);
+            assertArrayEquals(serialDistances, parallelDistances, 0.0f);
+        }
+    }
+
+    @Test
+    public void testSelfIsNearest() {
+        Nd4j.getRandom().setSeed(7);
+        INDArray points = Nd4j.rand(500, 20);
+        FlatVPTree tree = new FlatVPTree(points);
+
+        int[] indices = new int[3];
+        float[] distances = new float[3];
+        for (int i = 0; i < points.rows(); i++) {
+            int found = tree.search(points.getRow(i).dup().data().asFloat(), 3, indices, distances);
+            assertEquals(3, found);
+            assertEquals(i, indices[0]);
+            assertEquals(0.0f, distances[0], 1e-6f);
+        }
+    }
+
+    @Test
+    public void testKLargerThanPoints() {
+        INDArray points = Nd4j.randn(5, 3);
+        FlatVPTree tree = new FlatVPTree(points);
+        List<DataPoint> results = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+        tree.search(points.getRow(0), 10, results, distances);
+        assertEquals(5, results.size());
+        assertEquals(5, distances.size());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        Nd4j.getRandom().setSeed(3);
+        INDArray points = Nd4j.randn(1000, 16);
+        //Cosine similarity, inverted, is searched on normalized points
+        FlatVPTree[] trees = {new FlatVPTree(points, "manhattan", false, 8, 2),
+                        new FlatVPTree(points, "cosinesimilarity", true, 8, 2)};
+        for (FlatVPTree tree : trees) {
+            File file = File.createTempFile("flatvptree", ".bin");
+            file.deleteOnExit();
+            tree.save(file);
+            FlatVPTree loaded = FlatVPTree.load(file);
+
+            assertEquals(tree.getNumPoints(), loaded.getNumPoints());
+            assertEquals(tree.getDimensions(), loaded.getDimensions());
+            assertEquals(tree.getSimilarityFunction(), loaded.getSimilarityFunction());
+            assertEquals(tree.isInvert(), loaded.isInvert());
+            assertEquals(tree.getLeafSize(), loaded.getLeafSize());
+            assertEquals(points.getRow(42), loaded.getPoint(42));
+
+            for (int q = 0; q < 20; q++) {
+                INDArray target = Nd4j.randn(1, 16);
+                List<DataPoint> expected = new ArrayList<>();
+                List<Double> expectedDistances = new ArrayList<>();
+                tree.search(target, 5, expected, expectedDistances);
+                List<DataPoint> actual = new ArrayList<>();
+                List<Double> actualDistances = new ArrayList<>();
+                loaded.search(target, 5, actual, actualDistances);
+
+                assertEquals(expectedDistances, actualDistances);
+                for (int i = 0; i < expected.size(); i++)
+                    assertEquals(expected.get(i).getIndex(), actual.get(i).getIndex());
+            }
+        }
+    }
+
+    @Test
+    public void testCosineZeroVectors() {
+        Nd4j.getRandom().setSeed(5);
+        INDArray points = Nd4j.randn(300, 10);
+        points.getRow(7).assign(0);
+        for (String similarityFunction : new String[] {"cosinesimilarity", "cosinedistance"}) {
+            boolean invert = similarityFunction.equals("cosinesimilarity");
+            FlatVPTree tree = new FlatVPTree(points, similarityFunction, invert, 4, 1);
+            assertEquals(points.getRow(7), tree.getPoint(7));
+            assertEquals(points.getRow(8), tree.getPoint(8));
+
+            //Zero vectors have no direction: never a neighbour, and a zero query has no neighbours
+            int[] indices = new int[points.rows()];
+            float[] distances = new float[points.rows()];
+            int found = tree.search(points.getRow(8).dup().data().asFloat(), points.rows(), indices, distances);
+            assertEquals(points.rows() - 1, found);
+            for (int i = 0; i < found; i++)
+                assertTrue(indices[i] != 7);
+            assertEquals(invert ? -1.0f : 0.0f, distances[0], 1e-5f);
+            assertEquals(0, tree.search(new float[10], 5, indices, distances));
+        }
+    }
+
+    @Test
+    public void testJaccardWithNegativeValues() {
+        //Jaccard isn't a metric for negative values, searches must not prune then
+        Nd4j.getRandom().setSeed(11);
+        INDArray points = Nd4j.randn(1000, 20).addi(0.5);
+        INDArray positive = Nd4j.rand(1000, 20);
+        for (boolean invert : new boolean[] {false, true}) {
+            FlatVPTree tree = new FlatVPTree(points, "jaccard", invert, 8, 1);
+            FlatVPTree positiveTree = new FlatVPTree(positive, "jaccard", invert, 8, 1);
+            for (int q = 0; q < 20; q++) {
+                assertMatchesBruteForce(tree, points, points.getRow(q), 10);
+                //Negative queries against non negative points
+                assertMatchesBruteForce(positiveTree, positive, positive.getRow(q).sub(0.5), 10);
+            }
+        }
+    }
+
+    @Test
+    @Ignore //Benchmark, should be run manually
+    public void testThroughputAgainstVPTree() {
+        Nd4j.getRandom().setSeed(42);
+        INDArray points = Nd4j.randn(5000, 100);
+        INDArray queries = Nd4j.randn(200, 100);
+        int k = 10;
+
+        VPTree vpTree = new VPTree(points, "euclidean", 1, false);
+        FlatVPTree flatTree = new FlatVPTree(points, "euclidean", false);
+
+        List<DataPoint> results = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < queries.rows(); i++)
+            vpTree.search(queries.getRow(i), k, results, distances);
+        long vpTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < queries.rows(); i++)
+            flatTree.search(queries.getRow(i), k, results, distances);
+        long flatTime = System.nanoTime() - start;
+
+        log.info("VPTree: {} queries/sec, FlatVPTree: {} queries/sec", queries.rows() * 1e9 / vpTime,
+                        queries.rows() * 1e9 / flatTime);
+    }
+}
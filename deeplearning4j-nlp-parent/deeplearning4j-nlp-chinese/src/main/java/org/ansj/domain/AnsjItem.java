@@ -32,6 +32,10 @@ public class AnsjItem extends Item implements Serializable {
      */
     public TermNatures termNatures = null;
 
+    /**
+     * 不再填充, 词与词之间的关联见 {@link org.ansj.library.NgramLibrary#getTable()}
+     */
+    @Deprecated
     public Map<Integer, Integer> bigramEntryMap = null;
 
     @Override
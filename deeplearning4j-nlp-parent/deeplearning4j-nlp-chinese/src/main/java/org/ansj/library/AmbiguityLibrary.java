@@ -164,7 +164,7 @@ public class AmbiguityLibrary {
 
     public static void put(String key, String path, Forest value) {
         AMBIGUITY.put(key, KV.with(path, value));
-        MyStaticValue.ENV.put(key, path);
+        MyStaticValue.putEnv(key, path);
     }
 
     /**
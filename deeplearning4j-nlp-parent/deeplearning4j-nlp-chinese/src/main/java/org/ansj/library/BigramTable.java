@@ -0,0 +1,214 @@
+package org.ansj.library;
+
+import org.ansj.exception.LibraryException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * 词与词之间关联频率的不可变快照.
+ *
+ * 以压缩行(CSR)方式存储: 每个起始词的下标对应 toIndex/freq 中的一段, 段内按目标词下标排序. 全部数据为基本类型数组, 构建后不再修改,
+ * 因此可以被所有分词线程无锁共享, 并可通过 {@link NgramLibrary#reload(BigramTable)} 原子替换.
+ *
+ * 可以通过 {@link #write(OutputStream)} 预编译为二进制镜像, 启动时用 {@link #read(InputStream)} 直接加载, 省去文本解析.
+ *
+ * @author ansj
+ */
+public final class BigramTable {
+
+    private static final int MAGIC = 0x414e4247; // "ANBG"
+
+    private static final int VERSION = 1;
+
+    public static final BigramTable EMPTY = new BigramTable(new int[] {0}, new int[0], new int[0]);
+
+    /**
+     * rowStart[from] 到 rowStart[from + 1] 为起始词 from 的所有关联
+     */
+    private final int[] rowStart;
+
+    private final int[] toIndex;
+
+    private final int[] freq;
+
+    private BigramTable(int[] rowStart, int[] toIndex, int[] freq) {
+        this.rowStart = rowStart;
+        this.toIndex = toIndex;
+        this.freq = freq;
+    }
+
+    /**
+     * 查找两个词之间的频率
+     *
+     * @param from 起始词下标
+     * @param to 目标词下标
+     * @return 频率, 不存在时为0
+     */
+    public int get(int from, int to) {
+        if (from < 0 || from >= rowStart.length - 1) {
+            return 0;
+        }
+        int idx = Arrays.binarySearch(toIndex, rowStart[from], rowStart[from + 1], to);
+        return idx < 0 ? 0 : freq[idx];
+    }
+
+    /**
+     * @return 关联的个数
+     */
+    public int size() {
+        return toIndex.length;
+    }
+
+    /**
+     * 写出二进制镜像
+     *
+     * @param os
+     * @throws IOException
+     */
+    public void write(OutputStream os) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(rowStart.length);
+        dos.writeInt(toIndex.length);
+        writeInts(dos, rowStart);
+        writeInts(dos, toIndex);
+        writeInts(dos, freq);
+        dos.flush();
+    }
+
+    /**
+     * 读取 {@link #write(OutputStream)} 写出的二进制镜像
+     *
+     * @param is
+     * @return
+     * @throws IOException
+     */
+    public static BigramTable read(InputStream is) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(is));
+        if (dis.readInt() != MAGIC) {
+            throw new LibraryException("not a bigram table image");
+        }
+        int version = dis.readInt();
+        if (version != VERSION) {
+            throw new LibraryException("unsupported bigram table image version " + version);
+        }
+        int rows = dis.readInt();
+        int size = dis.readInt();
+        int[] rowStart = readInts(dis, rows);
+        int[] toIndex = readInts(dis, size);
+        int[] freq = readInts(dis, size);
+        return new BigramTable(rowStart, toIndex, freq);
+    }
+
+    private static void writeInts(DataOutputStream dos, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        buffer.asIntBuffer().put(values);
+        dos.write(buffer.array());
+    }
+
+    private static int[] readInts(DataInputStream dis, int length) throws IOException {
+        byte[] bytes = new byte[length * 4];
+        dis.readFully(bytes);
+        IntBuffer buffer = ByteBuffer.wrap(bytes).asIntBuffer();
+        int[] values = new int[length];
+        buffer.get(values);
+        return values;
+    }
+
+    /**
+     * 构建 {@link BigramTable}, 相同的一对词以最后一次加入的频率为准. 非线程安全.
+     */
+    public static class Builder {
+
+        private int[] from = new int[1024];
+
+        private int[] to = new int[1024];
+
+        private int[] freq = new int[1024];
+
+        private int size = 0;
+
+        private int maxFrom = -1;
+
+        public Builder add(int fromIndex, int toIndex, int frequency) {
+            if (fromIndex < 0) {
+                throw new IllegalArgumentException("from index must be non-negative: " + fromIndex);
+            }
+            if (size == from.length) {
+                int newLength = size * 2;
+                from = Arrays.copyOf(from, newLength);
+                to = Arrays.copyOf(to, newLength);
+                freq = Arrays.copyOf(freq, newLength);
+            }
+            from[size] = fromIndex;
+            to[size] = toIndex;
+            freq[size] = frequency;
+            size++;
+            maxFrom = Math.max(maxFrom, fromIndex);
+            return this;
+        }
+
+        public BigramTable build() {
+            int rows = maxFrom + 1;
+
+            // 按起始词分桶
+            int[] rowStart = new int[rows + 1];
+            for (int i = 0; i < size; i++) {
+                rowStart[from[i] + 1]++;
+            }
+            for (int i = 0; i < rows; i++) {
+                rowStart[i + 1] += rowStart[i];
+            }
+
+            // 桶内的键为 (目标词, 加入顺序), 排序后相同目标词按加入顺序排列
+            int[] cursor = Arrays.copyOf(rowStart, rows);
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[cursor[from[i]]++] = (long) to[i] << 32 | i;
+            }
+
+            int[] compactStart = new int[rows + 1];
+            int[] sortedTo = new int[size];
+            int[] sortedFreq = new int[size];
+            int out = 0;
+            for (int r = 0; r < rows; r++) {
+                compactStart[r] = out;
+                int start = rowStart[r];
+                int end = rowStart[r + 1];
+                Arrays.sort(keys, start, end);
+                for (int i = start; i < end; i++) {
+                    if (i + 1 < end && (keys[i + 1] >> 32) == (keys[i] >> 32)) {
+                        continue; // 后加入的覆盖先加入的
+                    }
+                    int origin = (int) keys[i];
+                    sortedTo[out] = to[origin];
+                    sortedFreq[out] = freq[origin];
+                    out++;
+                }
+            }
+            compactStart[rows] = out;
+
+            return new BigramTable(compactStart, Arrays.copyOf(sortedTo, out), Arrays.copyOf(sortedFreq, out));
+        }
+    }
+
+    /**
+     * 将 classpath 中的 bigramdict.dic 预编译为二进制镜像
+     *
+     * @param args 输出文件路径
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: BigramTable <output file>");
+            return;
+        }
+        try (OutputStream os = new FileOutputStream(args[0])) {
+            NgramLibrary.getTable().write(os);
+        }
+    }
+}
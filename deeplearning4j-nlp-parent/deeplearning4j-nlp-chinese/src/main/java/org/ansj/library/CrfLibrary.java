@@ -102,7 +102,7 @@ public class CrfLibrary {
 
     public static void put(String key, String path, SplitWord sw) {
         CRF.put(key, KV.with(path, sw));
-        MyStaticValue.ENV.put(key, path);
+        MyStaticValue.putEnv(key, path);
     }
 
     /**
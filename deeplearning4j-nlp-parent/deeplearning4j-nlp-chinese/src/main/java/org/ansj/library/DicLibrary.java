@@ -213,7 +213,7 @@ public class DicLibrary {
      */
     public static void put(String key, String path, Forest forest) {
         DIC.put(key, KV.with(path, forest));
-        MyStaticValue.ENV.put(key, path);
+        MyStaticValue.putEnv(key, path);
     }
 
     /**
@@ -1,9 +1,14 @@
 package org.ansj.library;
 
+import org.ansj.dic.PathToStream;
+import org.ansj.domain.AnsjItem;
 import org.ansj.domain.Term;
 import org.ansj.util.MyStaticValue;
+import org.nlpcn.commons.lang.util.logging.Log;
 import org.nlpcn.commons.lang.util.logging.LogFactory;
 
+import java.io.InputStream;
+
 /**
  * 两个词之间的关联
  * 
@@ -11,10 +16,35 @@ import org.nlpcn.commons.lang.util.logging.LogFactory;
  * 
  */
 public class NgramLibrary {
-    static {
+
+    private static final Log LOG = LogFactory.getLog(NgramLibrary.class);
+
+    /**
+     * 预编译的二进制镜像路径的配置项, 见 {@link BigramTable#write(java.io.OutputStream)}
+     */
+    public static final String BIGRAM_IMAGE = "bigramImage";
+
+    /**
+     * 当前生效的快照, 所有分词线程共享读取, 重新加载时整体替换
+     */
+    private static volatile BigramTable table = load();
+
+    private static BigramTable load() {
         long start = System.currentTimeMillis();
-        MyStaticValue.initBigramTables();
-        LogFactory.getLog(NgramLibrary.class).info("init ngram ok use time :" + (System.currentTimeMillis() - start));
+        BigramTable loaded = null;
+        String image = MyStaticValue.ENV.get(BIGRAM_IMAGE);
+        if (image != null) {
+            try (InputStream is = PathToStream.stream(image)) {
+                loaded = BigramTable.read(is);
+            } catch (Exception e) {
+                LOG.warn("load bigram image " + image + " err, fall back to bigramdict.dic", e);
+            }
+        }
+        if (loaded == null) {
+            loaded = MyStaticValue.initBigramTables();
+        }
+        LOG.info("init ngram ok use time :" + (System.currentTimeMillis() - start));
+        return loaded;
     }
 
     /**
@@ -25,15 +55,38 @@ public class NgramLibrary {
      * @return
      */
     public static int getTwoWordFreq(Term from, Term to) {
-        if (from.item().bigramEntryMap == null) {
+        AnsjItem fromItem = from.item();
+        // 补录的人名单字没有词典下标, 不能与 BEGIN 混淆
+        if (fromItem.getIndex() <= 0 && fromItem != AnsjItem.BEGIN) {
             return 0;
         }
-        Integer freq = from.item().bigramEntryMap.get(to.item().getIndex());
-        if (freq == null) {
-            return 0;
-        } else {
-            return freq;
+        return table.get(fromItem.getIndex(), to.item().getIndex());
+    }
+
+    /**
+     * @return 当前生效的快照
+     */
+    public static BigramTable getTable() {
+        return table;
+    }
+
+    /**
+     * 重新加载词典并原子替换, 加载期间正在进行的分词继续使用旧的快照
+     */
+    public static void reload() {
+        table = load();
+    }
+
+    /**
+     * 原子替换为指定的快照
+     * 
+     * @param newTable
+     */
+    public static void reload(BigramTable newTable) {
+        if (newTable == null) {
+            throw new NullPointerException("bigram table must not be null");
         }
+        table = newTable;
     }
 
 }
@@ -176,7 +176,7 @@ public class StopLibrary {
      */
     public static void put(String key, String path, StopRecognition stopRecognition) {
         STOP.put(key, KV.with(path, stopRecognition));
-        MyStaticValue.ENV.put(key, path);
+        MyStaticValue.putEnv(key, path);
     }
 
     /**
@@ -129,7 +129,7 @@ public class SynonymsLibrary {
 
     public static void put(String key, String path, SmartForest<List<String>> value) {
         SYNONYMS.put(key, KV.with(path, value));
-        MyStaticValue.ENV.put(key, path);
+        MyStaticValue.putEnv(key, path);
     }
 
     /**
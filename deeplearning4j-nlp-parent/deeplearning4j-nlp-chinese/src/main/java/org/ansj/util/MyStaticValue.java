@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 这个类储存一些公用变量.
@@ -50,7 +51,7 @@ public class MyStaticValue {
      */
     public static boolean isSkipUserDefine = false;
 
-    public static final Map<String, String> ENV = new HashMap<>();
+    public static final Map<String, String> ENV = new ConcurrentHashMap<>();
 
     static {
         /**
@@ -224,10 +225,16 @@ public class MyStaticValue {
     /**
      * 词与词之间的关联表数据
      * 
-     * @return
+     * @return 不可变的关联表, 词典不存在时为空表
      */
-    public static void initBigramTables() {
-        try (BufferedReader reader = IOUtil.getReader(DicReader.getInputStream("bigramdict.dic"), "UTF-8")) {
+    public static BigramTable initBigramTables() {
+        BigramTable.Builder builder = new BigramTable.Builder();
+        InputStream is = DicReader.getInputStream("bigramdict.dic");
+        if (is == null) {
+            LOG.warn("not find bigramdict.dic in classpath, bigram table is empty");
+            return BigramTable.EMPTY;
+        }
+        try (BufferedReader reader = IOUtil.getReader(is, "UTF-8")) {
             String temp = null;
             String[] strs = null;
             int freq = 0;
@@ -254,11 +261,11 @@ public class MyStaticValue {
                     continue;
                 }
 
-                if (fromItem.bigramEntryMap == null) {
-                    fromItem.bigramEntryMap = new HashMap<Integer, Integer>();
+                if (fromItem.getIndex() <= 0 && fromItem != AnsjItem.BEGIN) {
+                    continue;
                 }
 
-                fromItem.bigramEntryMap.put(toItem.getIndex(), freq);
+                builder.add(fromItem.getIndex(), toItem.getIndex(), freq);
 
             }
         } catch (NumberFormatException e) {
@@ -268,6 +275,7 @@ public class MyStaticValue {
         } catch (IOException e) {
             LOG.warn("IO异常", e);
         }
+        return builder.build();
     }
 
     /*
@@ -298,7 +306,7 @@ public class MyStaticValue {
         } else {
             throw new LibraryException(key + " type err must start with dic,stop,ambiguity,synonyms");
         }
-        ENV.put(key, path);
+        putEnv(key, path);
     }
 
     /**
@@ -321,7 +329,22 @@ public class MyStaticValue {
         } else {
             throw new LibraryException(key + " type err must start with dic,stop,ambiguity,synonyms");
         }
-        ENV.put(key, path);
+        putEnv(key, path);
+    }
+
+    /**
+     * 记录词典路径. ENV 是 ConcurrentHashMap, 不允许 null 值, 所以 path 为 null 时(如内存中构建的词典)
+     * 视为没有可重新加载的路径, 从 ENV 中删除该 key
+     * 
+     * @param key
+     * @param path
+     */
+    public static void putEnv(String key, String path) {
+        if (path == null) {
+            ENV.remove(key);
+        } else {
+            ENV.put(key, path);
+        }
     }
 
     /**
@@ -0,0 +1,43 @@
+package org.ansj.library;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class BigramTableTest {
+
+    @Test
+    public void testLookup() {
+        BigramTable table = new BigramTable.Builder().add(3, 7, 10).add(3, -1, 4).add(0, 3, 2).add(3, 7, 11)
+                        .add(5, 1, 1).build();
+
+        assertEquals(4, table.size());
+        assertEquals(11, table.get(3, 7));
+        assertEquals(4, table.get(3, -1));
+        assertEquals(2, table.get(0, 3));
+        assertEquals(1, table.get(5, 1));
+        assertEquals(0, table.get(3, 1));
+        assertEquals(0, table.get(4, 7));
+        assertEquals(0, table.get(42, 7));
+        assertEquals(0, table.get(-1, 7));
+    }
+
+    @Test
+    public void testBinaryImage() throws IOException {
+        BigramTable table = new BigramTable.Builder().add(1, 2, 3).add(1, 5, 6).add(4, 2, 9).build();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        table.write(bos);
+        BigramTable read = BigramTable.read(new ByteArrayInputStream(bos.toByteArray()));
+
+        assertEquals(table.size(), read.size());
+        assertEquals(3, read.get(1, 2));
+        assertEquals(6, read.get(1, 5));
+        assertEquals(9, read.get(4, 2));
+        assertEquals(0, read.get(4, 5));
+    }
+}
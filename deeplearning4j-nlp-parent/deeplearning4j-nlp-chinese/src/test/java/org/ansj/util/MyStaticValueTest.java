@@ -0,0 +1,29 @@
+package org.ansj.util;
+
+import org.ansj.library.DicLibrary;
+import org.junit.Test;
+import org.nlpcn.commons.lang.tire.domain.Forest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+public class MyStaticValueTest {
+
+    @Test
+    public void testNullPathRemovesEnvEntry() {
+        String key = DicLibrary.DEFAULT + "_env_test";
+        try {
+            MyStaticValue.putEnv(key, "some/path");
+            assertEquals("some/path", MyStaticValue.ENV.get(key));
+
+            //in-memory dictionaries have no path: must not throw, and must not leave a stale path behind
+            DicLibrary.put(key, null, new Forest());
+            assertFalse(MyStaticValue.ENV.containsKey(key));
+            assertNotNull(DicLibrary.get(key));
+        } finally {
+            DicLibrary.remove(key);
+        }
+        assertFalse(MyStaticValue.ENV.containsKey(key));
+    }
+}
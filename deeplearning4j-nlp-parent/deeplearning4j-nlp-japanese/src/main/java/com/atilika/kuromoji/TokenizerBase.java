@@ -69,7 +69,7 @@ public abstract class TokenizerBase {
         this.insertedDictionary = builder.insertedDictionary;
 
         this.viterbiBuilder = new ViterbiBuilder(builder.doubleArrayTrie, tokenInfoDictionary, unknownDictionary,
-                        userDictionary, builder.mode);
+                        userDictionary, builder.mode, builder.reuseLattice);
 
         this.viterbiSearcher = new ViterbiSearcher(builder.mode, builder.connectionCosts, unknownDictionary,
                         builder.penalties);
@@ -241,6 +241,9 @@ public abstract class TokenizerBase {
         protected boolean split = true;
         protected List<Integer> penalties = Collections.emptyList();
 
+        protected boolean memoryMapped = false;
+        protected boolean reuseLattice = false;
+
         protected int totalFeatures = -1;
         protected int readingFeature = -1;
         protected int partOfSpeechFeature = -1;
@@ -251,9 +254,7 @@ public abstract class TokenizerBase {
 
         protected void loadDictionaries() {
             try {
-                doubleArrayTrie = DoubleArrayTrie.newInstance(resolver);
-                connectionCosts = ConnectionCosts.newInstance(resolver);
-                tokenInfoDictionary = TokenInfoDictionary.newInstance(resolver);
+                loadSharedDictionaries();
                 characterDefinitions = CharacterDefinitions.newInstance(resolver);
                 unknownDictionary = UnknownDictionary.newInstance(resolver, characterDefinitions, totalFeatures);
                 insertedDictionary = new InsertedDictionary(totalFeatures);
@@ -262,6 +263,24 @@ public abstract class TokenizerBase {
             }
         }
 
+        /**
+         * Loads the double array trie, connection costs and token info dictionary, either read onto the heap through
+         * the resolver or, if {@link #memoryMapped} is set, as read-only mappings shared by all tokenizers
+         *
+         * @throws IOException if an error occurs when reading or mapping the dictionaries
+         */
+        protected void loadSharedDictionaries() throws IOException {
+            if (memoryMapped) {
+                doubleArrayTrie = MappedDictionaries.getDoubleArrayTrie(resolver);
+                connectionCosts = MappedDictionaries.getConnectionCosts(resolver);
+                tokenInfoDictionary = MappedDictionaries.getTokenInfoDictionary(resolver);
+            } else {
+                doubleArrayTrie = DoubleArrayTrie.newInstance(resolver);
+                connectionCosts = ConnectionCosts.newInstance(resolver);
+                tokenInfoDictionary = TokenInfoDictionary.newInstance(resolver);
+            }
+        }
+
         /**
          * Creates a Tokenizer instance defined by this Builder
          *
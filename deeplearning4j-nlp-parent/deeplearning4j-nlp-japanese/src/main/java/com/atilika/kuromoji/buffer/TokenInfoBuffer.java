@@ -36,7 +36,16 @@ public class TokenInfoBuffer {
     private final int entrySize;
 
     public TokenInfoBuffer(InputStream is) throws IOException {
-        buffer = ByteBufferIO.read(is);
+        this(ByteBufferIO.read(is));
+    }
+
+    /**
+     * Creates a token info buffer on top of an existing buffer, for example a read-only mapped one
+     *
+     * @param buffer  buffer holding the token info entries, accessed with absolute gets only
+     */
+    public TokenInfoBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
         tokenInfoCount = getTokenInfoCount();
         posInfoCount = getPosInfoCount();
         featureCount = getFeatureCount();
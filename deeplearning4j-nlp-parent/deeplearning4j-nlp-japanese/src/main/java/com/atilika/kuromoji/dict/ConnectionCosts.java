@@ -22,8 +22,10 @@ import com.atilika.kuromoji.util.ResourceResolver;
 
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
 
@@ -50,6 +52,24 @@ public class ConnectionCosts {
         return read(resolver.resolve(CONNECTION_COSTS_FILENAME));
     }
 
+    /**
+     * Maps the connection costs matrix read-only into memory instead of copying it onto the heap
+     *
+     * @param file  compiled connection costs file
+     * @return connection costs backed by the mapped file, not null
+     * @throws IOException if an I/O error occurs when mapping the file
+     */
+    public static ConnectionCosts map(File file) throws IOException {
+        int size;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            size = randomAccessFile.readInt();
+        }
+
+        ShortBuffer costs = ByteBufferIO.map(file, Integer.SIZE / Byte.SIZE).asShortBuffer();
+
+        return new ConnectionCosts(size, costs);
+    }
+
     private static ConnectionCosts read(InputStream input) throws IOException {
         DataInputStream dataInput = new DataInputStream(new BufferedInputStream(input));
 
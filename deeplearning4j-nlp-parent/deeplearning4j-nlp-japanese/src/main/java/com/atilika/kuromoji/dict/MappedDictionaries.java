@@ -0,0 +1,86 @@
+/*-*
+ * Copyright © 2010-2015 Atilika Inc. and contributors (see CONTRIBUTORS.md)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  A copy of the
+ * License is distributed with this work in the LICENSE.md file.  You may
+ * also obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atilika.kuromoji.dict;
+
+import com.atilika.kuromoji.trie.DoubleArrayTrie;
+import com.atilika.kuromoji.util.FileResourceResolver;
+import com.atilika.kuromoji.util.ResourceResolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide holder for the memory-mapped, read-only dictionaries
+ * <p>
+ * The double array trie, the connection costs and the token info dictionary are never modified after loading, so a
+ * single mapped instance of each is shared by every tokenizer created with
+ * {@link com.atilika.kuromoji.ipadic.Tokenizer.Builder#memoryMapped(boolean)}. The mapped pages live in the OS page
+ * cache instead of the Java heap and are only loaded once per JVM.
+ * <p>
+ * The files are resolved through the builder's resolver, which must be a {@link FileResourceResolver} since only
+ * files can be mapped. Instances are shared per resolved file.
+ */
+public final class MappedDictionaries {
+
+    private static final Map<String, DoubleArrayTrie> doubleArrayTries = new HashMap<>();
+    private static final Map<String, ConnectionCosts> connectionCosts = new HashMap<>();
+    private static final Map<String, TokenInfoDictionary> tokenInfoDictionaries = new HashMap<>();
+
+    private MappedDictionaries() {}
+
+    public static synchronized DoubleArrayTrie getDoubleArrayTrie(ResourceResolver resolver) throws IOException {
+        File file = toFileResolver(resolver).resolveFile(DoubleArrayTrie.DOUBLE_ARRAY_TRIE_FILENAME);
+        DoubleArrayTrie trie = doubleArrayTries.get(file.getAbsolutePath());
+        if (trie == null) {
+            trie = DoubleArrayTrie.map(file);
+            doubleArrayTries.put(file.getAbsolutePath(), trie);
+        }
+        return trie;
+    }
+
+    public static synchronized ConnectionCosts getConnectionCosts(ResourceResolver resolver) throws IOException {
+        File file = toFileResolver(resolver).resolveFile(ConnectionCosts.CONNECTION_COSTS_FILENAME);
+        ConnectionCosts costs = connectionCosts.get(file.getAbsolutePath());
+        if (costs == null) {
+            costs = ConnectionCosts.map(file);
+            connectionCosts.put(file.getAbsolutePath(), costs);
+        }
+        return costs;
+    }
+
+    public static synchronized TokenInfoDictionary getTokenInfoDictionary(ResourceResolver resolver)
+                    throws IOException {
+        FileResourceResolver fileResolver = toFileResolver(resolver);
+        String key = fileResolver.resolveFile(TokenInfoDictionary.TOKEN_INFO_DICTIONARY_FILENAME).getAbsolutePath();
+        TokenInfoDictionary dictionary = tokenInfoDictionaries.get(key);
+        if (dictionary == null) {
+            dictionary = TokenInfoDictionary.newMappedInstance(fileResolver);
+            tokenInfoDictionaries.put(key, dictionary);
+        }
+        return dictionary;
+    }
+
+    private static FileResourceResolver toFileResolver(ResourceResolver resolver) throws IOException {
+        if (!(resolver instanceof FileResourceResolver)) {
+            throw new IOException("Memory-mapped dictionaries need a FileResourceResolver, got "
+                            + (resolver == null ? null : resolver.getClass().getName()));
+        }
+        return (FileResourceResolver) resolver;
+    }
+}
@@ -20,7 +20,9 @@ import com.atilika.kuromoji.buffer.BufferEntry;
 import com.atilika.kuromoji.buffer.StringValueMapBuffer;
 import com.atilika.kuromoji.buffer.TokenInfoBuffer;
 import com.atilika.kuromoji.buffer.WordIdMap;
+import com.atilika.kuromoji.io.ByteBufferIO;
 import com.atilika.kuromoji.util.DictionaryEntryLineParser;
+import com.atilika.kuromoji.util.FileResourceResolver;
 import com.atilika.kuromoji.util.KuromojiBinFilesFetcher;
 import com.atilika.kuromoji.util.ResourceResolver;
 import com.atilika.kuromoji.util.StringUtils;
@@ -167,8 +169,28 @@ public class TokenInfoDictionary implements Dictionary {
         return dictionary;
     }
 
+    /**
+     * Creates a dictionary whose token info entries are mapped read-only from {@link #TOKEN_INFO_DICTIONARY_FILENAME}
+     * rather than loaded onto the heap. The remaining (small) maps are read through the resolver as usual.
+     *
+     * @param resolver  resolver for the token info file and the feature, part of speech and target maps
+     * @return token info dictionary, not null
+     * @throws IOException if an I/O error occurs when mapping or reading the dictionary
+     */
+    public static TokenInfoDictionary newMappedInstance(FileResourceResolver resolver) throws IOException {
+        TokenInfoDictionary dictionary = new TokenInfoDictionary();
+        dictionary.tokenInfoBuffer =
+                        new TokenInfoBuffer(ByteBufferIO.map(resolver.resolveFile(TOKEN_INFO_DICTIONARY_FILENAME), 0));
+        dictionary.setupMaps(resolver);
+        return dictionary;
+    }
+
     private void setup(ResourceResolver resolver) throws IOException {
         tokenInfoBuffer = new TokenInfoBuffer(resolver.resolve(TOKEN_INFO_DICTIONARY_FILENAME));
+        setupMaps(resolver);
+    }
+
+    private void setupMaps(ResourceResolver resolver) throws IOException {
         stringValues = new StringValueMapBuffer(resolver.resolve(FEATURE_MAP_FILENAME));
         posValues = new StringValueMapBuffer(resolver.resolve(POS_MAP_FILENAME));
         wordIdMap = new WordIdMap(resolver.resolve(TARGETMAP_FILENAME));
@@ -18,12 +18,16 @@ package com.atilika.kuromoji.io;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 
 public class ByteBufferIO {
 
+    private static final int INTEGER_BYTES = Integer.SIZE / Byte.SIZE;
+
     public static ByteBuffer read(InputStream input) throws IOException {
         DataInputStream dataInput = new DataInputStream(new BufferedInputStream(input));
 
@@ -37,6 +41,50 @@ public class ByteBufferIO {
         return buffer;
     }
 
+    /**
+     * Maps a buffer previously written using {@link #write(OutputStream, ByteBuffer)} read-only into memory
+     * <p>
+     * Unlike {@link #read(InputStream)}, the contents are not copied onto the Java heap. The mapping stays valid after
+     * this method returns and can safely be shared between threads as long as only absolute get methods are used.
+     *
+     * @param file  file containing the buffer
+     * @param offset  offset of the buffer's size header within the file
+     * @return read-only buffer positioned at zero, not null
+     * @throws IOException if an I/O error occurs when mapping the file
+     */
+    public static ByteBuffer map(File file, long offset) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(INTEGER_BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header, offset + header.position()) < 0) {
+                    throw new EOFException("Unexpected end of file reading buffer size from " + file);
+                }
+            }
+            int size = header.getInt(0);
+
+            return map(channel, offset + INTEGER_BYTES, size);
+        }
+    }
+
+    /**
+     * Maps a region of an open file channel read-only into memory
+     *
+     * @param channel  channel to map
+     * @param position  start of the region
+     * @param size  size of the region in bytes
+     * @return read-only buffer positioned at zero, not null
+     * @throws IOException if an I/O error occurs when mapping the channel
+     */
+    public static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (position + size > channel.size()) {
+            throw new EOFException("Region [" + position + ", " + (position + size) + ") exceeds file size "
+                            + channel.size());
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
     public static void write(OutputStream output, ByteBuffer buffer) throws IOException {
         DataOutputStream dataOutput = new DataOutputStream(new BufferedOutputStream(output));
 
@@ -19,7 +19,6 @@ package com.atilika.kuromoji.ipadic;
 import com.atilika.kuromoji.TokenizerBase;
 import com.atilika.kuromoji.dict.*;
 import com.atilika.kuromoji.ipadic.compile.DictionaryEntry;
-import com.atilika.kuromoji.trie.DoubleArrayTrie;
 import com.atilika.kuromoji.util.FileResourceResolver;
 import com.atilika.kuromoji.viterbi.TokenFactory;
 import com.atilika.kuromoji.viterbi.ViterbiNode;
@@ -185,6 +184,37 @@ public class Tokenizer extends TokenizerBase {
             return this;
         }
 
+        /**
+         * Predicate that memory-maps the double array trie, connection costs and token info dictionary
+         * <p>
+         * Mapped dictionaries are read-only, live outside the Java heap and are shared by all tokenizers built with
+         * this option, so creating additional tokenizers becomes cheap.
+         * This feature is off by default.
+         *
+         * @param memoryMapped  predicate to indicate memory-mapped dictionaries
+         * @return this builder, not null
+         */
+        public Builder memoryMapped(boolean memoryMapped) {
+            this.memoryMapped = memoryMapped;
+            return this;
+        }
+
+        /**
+         * Predicate that reuses a per-thread Viterbi lattice and node arena across calls to tokenize
+         * <p>
+         * This avoids allocating a lattice and a node per candidate token for every input sentence, which helps
+         * high-volume tokenization. Tokens are unaffected, but lattices built internally are only valid until the
+         * next call on the same thread.
+         * This feature is off by default.
+         *
+         * @param reuseLattice  predicate to indicate lattice reuse
+         * @return this builder, not null
+         */
+        public Builder reuseLattice(boolean reuseLattice) {
+            this.reuseLattice = reuseLattice;
+            return this;
+        }
+
         /**
          * Creates the custom tokenizer instance
          *
@@ -207,9 +237,7 @@ public class Tokenizer extends TokenizerBase {
             resolver = new FileResourceResolver();
 
             try {
-                doubleArrayTrie = DoubleArrayTrie.newInstance(resolver);
-                connectionCosts = ConnectionCosts.newInstance(resolver);
-                tokenInfoDictionary = TokenInfoDictionary.newInstance(resolver);
+                loadSharedDictionaries();
                 characterDefinitions = CharacterDefinitions.newInstance(resolver);
 
                 if (nakaguroSplit) {
@@ -17,6 +17,7 @@
 package com.atilika.kuromoji.trie;
 
 import com.atilika.kuromoji.compile.ProgressLog;
+import com.atilika.kuromoji.io.ByteBufferIO;
 import com.atilika.kuromoji.util.KuromojiBinFilesFetcher;
 import com.atilika.kuromoji.util.ResourceResolver;
 
@@ -25,6 +26,7 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.IntBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.List;
@@ -136,6 +138,38 @@ public class DoubleArrayTrie {
         return trie;
     }
 
+    /**
+     * Map stored data read-only into memory
+     * <p>
+     * The base, check and tail arrays are backed by the file rather than copied onto the heap, so the returned trie
+     * is cheap to load and can be shared between any number of tokenizers and threads.
+     *
+     * @param file  file written by {@link #write(OutputStream)}
+     * @return double array trie, not null
+     * @throws IOException if an IO error occured during mapping the double array trie
+     */
+    public static DoubleArrayTrie map(File file) throws IOException {
+        DoubleArrayTrie trie = new DoubleArrayTrie();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            trie.compact = randomAccessFile.readBoolean();
+            int baseCheckSize = randomAccessFile.readInt();
+            int tailSize = randomAccessFile.readInt();
+
+            FileChannel channel = randomAccessFile.getChannel();
+            long position = randomAccessFile.getFilePointer();
+
+            trie.baseBuffer = ByteBufferIO.map(channel, position, baseCheckSize * 4L).asIntBuffer();
+            position += baseCheckSize * 4L;
+
+            trie.checkBuffer = ByteBufferIO.map(channel, position, baseCheckSize * 4L).asIntBuffer();
+            position += baseCheckSize * 4L;
+
+            trie.tailBuffer = ByteBufferIO.map(channel, position, tailSize * 2L).asCharBuffer();
+        }
+        return trie;
+    }
+
     /**
      * Construct double array trie which is equivalent to input trie
      *
@@ -41,9 +41,19 @@ public class FileResourceResolver implements ResourceResolver {
 
     public FileResourceResolver() {}
 
+    /**
+     * Resolve the resource name to the file it is read from. Memory-mapped dictionaries are mapped from this file.
+     *
+     * @param fileName resource to resolve
+     * @return resolved file
+     */
+    public File resolveFile(String fileName) {
+        return new File(fileName);
+    }
+
     @Override
     public InputStream resolve(String fileName) throws IOException {
-        InputStream input = new FileInputStream(new File(fileName));
+        InputStream input = new FileInputStream(resolveFile(fileName));
         if (input == null) {
             throw new IOException("Classpath resource not found: " + fileName);
         }
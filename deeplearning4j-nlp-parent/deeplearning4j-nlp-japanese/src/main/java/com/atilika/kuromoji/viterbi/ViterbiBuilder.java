@@ -28,6 +28,9 @@ import java.util.List;
 
 public class ViterbiBuilder {
 
+    private static final int INITIAL_REUSABLE_DIMENSION = 256;
+    private static final int MAX_REUSABLE_DIMENSION = 1 << 16;
+
     private final DoubleArrayTrie trie;
     private final TokenInfoDictionary dictionary;
     private final UnknownDictionary unknownDictionary;
@@ -36,6 +39,11 @@ public class ViterbiBuilder {
     private final boolean useUserDictionary;
     private boolean searchMode;
 
+    /**
+     * Per-thread lattice (and node arena) reused across calls to {@link #build(String)}, null if disabled
+     */
+    private final ThreadLocal<ViterbiLattice> reusableLattice;
+
     /**
      * Constructor
      *
@@ -47,6 +55,26 @@ public class ViterbiBuilder {
      */
     public ViterbiBuilder(DoubleArrayTrie trie, TokenInfoDictionary dictionary, UnknownDictionary unknownDictionary,
                     UserDictionary userDictionary, Mode mode) {
+        this(trie, dictionary, unknownDictionary, userDictionary, mode, false);
+    }
+
+    /**
+     * Constructor
+     * <p>
+     * If lattice reuse is enabled, every thread calling {@link #build(String)} gets its own lattice and node arena
+     * which are recycled by the next call on the same thread, instead of allocating a new lattice and a new
+     * {@link ViterbiNode} per candidate. The lattice returned by {@link #build(String)} is then only valid until the
+     * next call on that thread.
+     *
+     * @param trie  trie with surface forms
+     * @param dictionary  token info dictionary
+     * @param unknownDictionary  unknown word dictionary
+     * @param userDictionary  user dictionary
+     * @param mode  tokenization {@link Mode mode}
+     * @param reuseLattice  whether to reuse a per-thread lattice between calls to {@link #build(String)}
+     */
+    public ViterbiBuilder(DoubleArrayTrie trie, TokenInfoDictionary dictionary, UnknownDictionary unknownDictionary,
+                    UserDictionary userDictionary, Mode mode, boolean reuseLattice) {
         this.trie = trie;
         this.dictionary = dictionary;
         this.unknownDictionary = unknownDictionary;
@@ -58,6 +86,17 @@ public class ViterbiBuilder {
             searchMode = true;
         }
         this.characterDefinitions = unknownDictionary.getCharacterDefinition();
+
+        if (reuseLattice) {
+            reusableLattice = new ThreadLocal<ViterbiLattice>() {
+                @Override
+                protected ViterbiLattice initialValue() {
+                    return new ViterbiLattice(INITIAL_REUSABLE_DIMENSION, new ViterbiNodePool());
+                }
+            };
+        } else {
+            reusableLattice = null;
+        }
     }
 
 
@@ -69,7 +108,7 @@ public class ViterbiBuilder {
      */
     public ViterbiLattice build(String text) {
         int textLength = text.length();
-        ViterbiLattice lattice = new ViterbiLattice(textLength + 2);
+        ViterbiLattice lattice = newLattice(textLength + 2);
 
         lattice.addBos();
 
@@ -105,6 +144,17 @@ public class ViterbiBuilder {
         return lattice;
     }
 
+    private ViterbiLattice newLattice(int dimension) {
+        // Very long inputs get a throwaway lattice so that a single outlier doesn't stay pinned to the thread
+        if (reusableLattice == null || dimension > MAX_REUSABLE_DIMENSION) {
+            return new ViterbiLattice(dimension);
+        }
+
+        ViterbiLattice lattice = reusableLattice.get();
+        lattice.reset(dimension);
+        return lattice;
+    }
+
     private boolean processIndex(ViterbiLattice lattice, int startIndex, String suffix) {
         boolean found = false;
         for (int endIndex = 1; endIndex < suffix.length() + 1; endIndex++) {
@@ -114,7 +164,7 @@ public class ViterbiBuilder {
             if (result > 0) { // Found match in double array trie
                 found = true; // Don't produce unknown word starting from this index
                 for (int wordId : dictionary.lookupWordIds(result)) {
-                    ViterbiNode node = new ViterbiNode(wordId, prefix, dictionary, startIndex, ViterbiNode.Type.KNOWN);
+                    ViterbiNode node = lattice.createNode(wordId, prefix, dictionary, startIndex, ViterbiNode.Type.KNOWN);
                     lattice.addNode(node, startIndex + 1, startIndex + 1 + endIndex);
                 }
             } else if (result < 0) { // If result is less than zero, continue to next position
@@ -157,7 +207,7 @@ public class ViterbiBuilder {
             int[] wordIds = unknownDictionary.lookupWordIds(category); // characters in input text are supposed to be the same
 
             for (int wordId : wordIds) {
-                ViterbiNode node = new ViterbiNode(wordId, unkWord, unknownDictionary, startIndex,
+                ViterbiNode node = lattice.createNode(wordId, unkWord, unknownDictionary, startIndex,
                                 ViterbiNode.Type.UNKNOWN);
                 lattice.addNode(node, startIndex + 1, startIndex + 1 + unknownWordLength);
             }
@@ -183,7 +233,7 @@ public class ViterbiBuilder {
 
             String word = text.substring(index, index + length);
 
-            ViterbiNode node = new ViterbiNode(wordId, word, userDictionary, index, ViterbiNode.Type.USER);
+            ViterbiNode node = lattice.createNode(wordId, word, userDictionary, index, ViterbiNode.Type.USER);
             int nodeStartIndex = index + 1;
             int nodeEndIndex = nodeStartIndex + length;
 
@@ -208,9 +258,7 @@ public class ViterbiBuilder {
      * @return whether the lattice has a node that ends at nodeIndex
      */
     private boolean isLatticeBrokenBefore(int nodeIndex, ViterbiLattice lattice) {
-        ViterbiNode[][] nodeEndIndices = lattice.getEndIndexArr();
-
-        return nodeEndIndices[nodeIndex] == null;
+        return !lattice.hasNodesEndingAt(nodeIndex);
     }
 
     /**
@@ -222,9 +270,7 @@ public class ViterbiBuilder {
      * @return whether the lattice has a node that starts at endIndex
      */
     private boolean isLatticeBrokenAfter(int endIndex, ViterbiLattice lattice) {
-        ViterbiNode[][] nodeStartIndices = lattice.getStartIndexArr();
-
-        return nodeStartIndices[endIndex] == null;
+        return !lattice.hasNodesStartingAt(endIndex);
     }
 
     /**
@@ -238,12 +284,12 @@ public class ViterbiBuilder {
         ViterbiNode[][] nodeStartIndices = lattice.getStartIndexArr();
 
         for (int startIndex = index; startIndex > 0; startIndex--) {
-            if (nodeStartIndices[startIndex] != null) {
+            if (lattice.hasNodesStartingAt(startIndex)) {
                 ViterbiNode glueBase = findGlueNodeCandidate(index, nodeStartIndices[startIndex], startIndex);
                 if (glueBase != null) {
                     int length = index + 1 - startIndex;
                     String surface = glueBase.getSurface().substring(0, length);
-                    ViterbiNode glueNode = createGlueNode(startIndex, glueBase, surface);
+                    ViterbiNode glueNode = createGlueNode(lattice, startIndex, glueBase, surface);
                     lattice.addNode(glueNode, startIndex, startIndex + glueNode.getSurface().length());
                     return;
                 }
@@ -261,13 +307,13 @@ public class ViterbiBuilder {
         ViterbiNode[][] nodeEndIndices = lattice.getEndIndexArr();
 
         for (int endIndex = nodeEndIndex + 1; endIndex < nodeEndIndices.length; endIndex++) {
-            if (nodeEndIndices[endIndex] != null) {
+            if (lattice.hasNodesEndingAt(endIndex)) {
                 ViterbiNode glueBase = findGlueNodeCandidate(nodeEndIndex, nodeEndIndices[endIndex], endIndex);
                 if (glueBase != null) {
                     int delta = endIndex - nodeEndIndex;
                     String glueBaseSurface = glueBase.getSurface();
                     String surface = glueBaseSurface.substring(glueBaseSurface.length() - delta);
-                    ViterbiNode glueNode = createGlueNode(nodeEndIndex, glueBase, surface);
+                    ViterbiNode glueNode = createGlueNode(lattice, nodeEndIndex, glueBase, surface);
                     lattice.addNode(glueNode, nodeEndIndex, nodeEndIndex + glueNode.getSurface().length());
                     return;
                 }
@@ -326,13 +372,14 @@ public class ViterbiBuilder {
      * The new node takes the same parameters as the node it is based on, but the word is truncated to match the
      * hole in the lattice caused by the new user entry
      *
+     * @param lattice
      * @param startIndex
      * @param glueBase
      * @param surface
      * @return new ViterbiNode to be inserted as glue into the lattice
      */
-    private ViterbiNode createGlueNode(int startIndex, ViterbiNode glueBase, String surface) {
-        return new ViterbiNode(glueBase.getWordId(), surface, glueBase.getLeftId(), glueBase.getRightId(),
+    private ViterbiNode createGlueNode(ViterbiLattice lattice, int startIndex, ViterbiNode glueBase, String surface) {
+        return lattice.createNode(glueBase.getWordId(), surface, glueBase.getLeftId(), glueBase.getRightId(),
                         glueBase.getWordCost(), startIndex, ViterbiNode.Type.INSERTED);
     }
 }
@@ -16,18 +16,40 @@
  */
 package com.atilika.kuromoji.viterbi;
 
+import com.atilika.kuromoji.dict.Dictionary;
+
+import java.util.Arrays;
+
 public class ViterbiLattice {
 
     private static final String BOS = "BOS";
     private static final String EOS = "EOS";
 
-    private final int dimension;
-    private final ViterbiNode[][] startIndexArr;
-    private final ViterbiNode[][] endIndexArr;
-    private final int[] startSizeArr;
-    private final int[] endSizeArr;
+    private int dimension;
+    private ViterbiNode[][] startIndexArr;
+    private ViterbiNode[][] endIndexArr;
+    private int[] startSizeArr;
+    private int[] endSizeArr;
+
+    private final ViterbiNodePool nodePool;
 
     public ViterbiLattice(int dimension) {
+        this(dimension, null);
+    }
+
+    /**
+     * Creates a lattice that takes its nodes from a pool, so that it can be {@link #reset(int) reset} and reused
+     * without allocating new nodes for every input
+     *
+     * @param dimension  initial dimension
+     * @param nodePool  pool to take nodes from, or null to allocate new nodes
+     */
+    ViterbiLattice(int dimension, ViterbiNodePool nodePool) {
+        this.nodePool = nodePool;
+        allocate(dimension);
+    }
+
+    private void allocate(int dimension) {
         this.dimension = dimension;
         startIndexArr = new ViterbiNode[dimension][];
         endIndexArr = new ViterbiNode[dimension][];
@@ -35,6 +57,38 @@ public class ViterbiLattice {
         endSizeArr = new int[dimension];
     }
 
+    /**
+     * Clears this lattice for reuse with a new input, keeping the already allocated node arrays and recycling pooled
+     * nodes. Nodes obtained from this lattice before the reset must no longer be used.
+     * <p>
+     * The arrays returned by {@link #getStartIndexArr()} and {@link #getEndIndexArr()} may be longer than the
+     * dimension after a reset. Unused slots are either null or contain no nodes.
+     *
+     * @param dimension  dimension of the new input
+     */
+    void reset(int dimension) {
+        if (startIndexArr.length < dimension) {
+            allocate(dimension);
+        } else {
+            clear(startIndexArr, startSizeArr);
+            clear(endIndexArr, endSizeArr);
+            this.dimension = dimension;
+        }
+
+        if (nodePool != null) {
+            nodePool.reset();
+        }
+    }
+
+    private void clear(ViterbiNode[][] arr, int[] sizes) {
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] > 0) {
+                Arrays.fill(arr[i], 0, sizes[i], null);
+                sizes[i] = 0;
+            }
+        }
+    }
+
     public ViterbiNode[][] getStartIndexArr() {
         return startIndexArr;
     }
@@ -52,15 +106,30 @@ public class ViterbiLattice {
     }
 
     public void addBos() {
-        ViterbiNode bosNode = new ViterbiNode(-1, BOS, 0, 0, 0, -1, ViterbiNode.Type.KNOWN);
+        ViterbiNode bosNode = createNode(-1, BOS, 0, 0, 0, -1, ViterbiNode.Type.KNOWN);
         addNode(bosNode, 0, 1);
     }
 
     public void addEos() {
-        ViterbiNode eosNode = new ViterbiNode(-1, EOS, 0, 0, 0, dimension - 1, ViterbiNode.Type.KNOWN);
+        ViterbiNode eosNode = createNode(-1, EOS, 0, 0, 0, dimension - 1, ViterbiNode.Type.KNOWN);
         addNode(eosNode, dimension - 1, 0);
     }
 
+    ViterbiNode createNode(int wordId, String surface, int leftId, int rightId, int wordCost, int startIndex,
+                    ViterbiNode.Type type) {
+        if (nodePool == null) {
+            return new ViterbiNode(wordId, surface, leftId, rightId, wordCost, startIndex, type);
+        }
+        return nodePool.get(wordId, surface, leftId, rightId, wordCost, startIndex, type);
+    }
+
+    ViterbiNode createNode(int wordId, String surface, Dictionary dictionary, int startIndex, ViterbiNode.Type type) {
+        if (nodePool == null) {
+            return new ViterbiNode(wordId, surface, dictionary, startIndex, type);
+        }
+        return nodePool.get(wordId, surface, dictionary, startIndex, type);
+    }
+
     void addNode(ViterbiNode node, int start, int end) {
         addNodeToArray(node, start, getStartIndexArr(), getStartSizeArr());
         addNodeToArray(node, end, getEndIndexArr(), getEndSizeArr());
@@ -76,7 +145,7 @@ public class ViterbiLattice {
     }
 
     private void expandIfNeeded(final int index, ViterbiNode[][] arr, final int count) {
-        if (count == 0) {
+        if (arr[index] == null) {
             arr[index] = new ViterbiNode[10];
         }
 
@@ -94,4 +163,12 @@ public class ViterbiLattice {
     boolean tokenEndsWhereCurrentTokenStarts(int startIndex) {
         return getEndSizeArr()[startIndex + 1] != 0;
     }
+
+    boolean hasNodesStartingAt(int index) {
+        return getStartSizeArr()[index] != 0;
+    }
+
+    boolean hasNodesEndingAt(int index) {
+        return getEndSizeArr()[index] != 0;
+    }
 }
@@ -24,25 +24,37 @@ public class ViterbiNode {
         KNOWN, UNKNOWN, USER, INSERTED
     }
 
-    private final int wordId;
-    private final String surface;
-    private final int leftId;
-    private final int rightId;
+    private int wordId;
+    private String surface;
+    private int leftId;
+    private int rightId;
 
     /**
      * word cost for this node
      */
-    private final int wordCost;
+    private int wordCost;
 
     /**
      * minimum path cost found thus far
      */
     private int pathCost;
     private ViterbiNode leftNode;
-    private final Type type;
-    private final int startIndex;
+    private Type type;
+    private int startIndex;
 
     public ViterbiNode(int wordId, String surface, int leftId, int rightId, int wordCost, int startIndex, Type type) {
+        reset(wordId, surface, leftId, rightId, wordCost, startIndex, type);
+    }
+
+    public ViterbiNode(int wordId, String word, Dictionary dictionary, int startIndex, Type type) {
+        this(wordId, word, dictionary.getLeftId(wordId), dictionary.getRightId(wordId), dictionary.getWordCost(wordId),
+                        startIndex, type);
+    }
+
+    /**
+     * Reinitializes this node so that it can be reused by a {@link ViterbiNodePool}
+     */
+    void reset(int wordId, String surface, int leftId, int rightId, int wordCost, int startIndex, Type type) {
         this.wordId = wordId;
         this.surface = surface;
         this.leftId = leftId;
@@ -50,11 +62,8 @@ public class ViterbiNode {
         this.wordCost = wordCost;
         this.startIndex = startIndex;
         this.type = type;
-    }
-
-    public ViterbiNode(int wordId, String word, Dictionary dictionary, int startIndex, Type type) {
-        this(wordId, word, dictionary.getLeftId(wordId), dictionary.getRightId(wordId), dictionary.getWordCost(wordId),
-                        startIndex, type);
+        this.pathCost = 0;
+        this.leftNode = null;
     }
 
     /**
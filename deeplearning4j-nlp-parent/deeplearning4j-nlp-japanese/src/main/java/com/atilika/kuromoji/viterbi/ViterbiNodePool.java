@@ -0,0 +1,68 @@
+/*-*
+ * Copyright © 2010-2015 Atilika Inc. and contributors (see CONTRIBUTORS.md)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  A copy of the
+ * License is distributed with this work in the LICENSE.md file.  You may
+ * also obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atilika.kuromoji.viterbi;
+
+import com.atilika.kuromoji.dict.Dictionary;
+
+/**
+ * Arena of reusable {@link ViterbiNode}s
+ * <p>
+ * Nodes handed out by the pool stay valid until the next {@link #reset()}, which recycles all of them at once. A pool
+ * is owned by a single {@link ViterbiLattice} and is not thread safe.
+ */
+class ViterbiNodePool {
+
+    private ViterbiNode[] nodes = new ViterbiNode[256];
+
+    private int used;
+
+    ViterbiNode get(int wordId, String surface, int leftId, int rightId, int wordCost, int startIndex,
+                    ViterbiNode.Type type) {
+        if (used == nodes.length) {
+            ViterbiNode[] newNodes = new ViterbiNode[nodes.length * 2];
+            System.arraycopy(nodes, 0, newNodes, 0, nodes.length);
+            nodes = newNodes;
+        }
+
+        ViterbiNode node = nodes[used];
+        if (node == null) {
+            node = new ViterbiNode(wordId, surface, leftId, rightId, wordCost, startIndex, type);
+            nodes[used] = node;
+        } else {
+            node.reset(wordId, surface, leftId, rightId, wordCost, startIndex, type);
+        }
+        used++;
+
+        return node;
+    }
+
+    ViterbiNode get(int wordId, String surface, Dictionary dictionary, int startIndex, ViterbiNode.Type type) {
+        return get(wordId, surface, dictionary.getLeftId(wordId), dictionary.getRightId(wordId),
+                        dictionary.getWordCost(wordId), startIndex, type);
+    }
+
+    /**
+     * Recycles all nodes handed out since the previous reset. Surfaces are released so that input text is not
+     * retained by the pool.
+     */
+    void reset() {
+        for (int i = 0; i < used; i++) {
+            nodes[i].reset(-1, null, 0, 0, 0, -1, null);
+        }
+        used = 0;
+    }
+}
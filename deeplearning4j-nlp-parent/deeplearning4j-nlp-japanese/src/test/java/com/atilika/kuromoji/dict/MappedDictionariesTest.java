@@ -0,0 +1,66 @@
+/*-*
+ * Copyright © 2010-2015 Atilika Inc. and contributors (see CONTRIBUTORS.md)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.  A copy of the
+ * License is distributed with this work in the LICENSE.md file.  You may
+ * also obtain a copy of the License from
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atilika.kuromoji.dict;
+
+import com.atilika.kuromoji.trie.DoubleArrayTrie;
+import com.atilika.kuromoji.util.FileResourceResolver;
+import com.atilika.kuromoji.util.SimpleResourceResolver;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MappedDictionariesTest {
+
+    private static class RecordingResolver extends FileResourceResolver {
+        private final Set<String> resolved = new HashSet<>();
+
+        @Override
+        public File resolveFile(String fileName) {
+            resolved.add(fileName);
+            return super.resolveFile(fileName);
+        }
+    }
+
+    @Test
+    public void testFilesAreResolvedThroughResolver() throws IOException {
+        RecordingResolver resolver = new RecordingResolver();
+        DoubleArrayTrie trie = MappedDictionaries.getDoubleArrayTrie(resolver);
+        ConnectionCosts costs = MappedDictionaries.getConnectionCosts(resolver);
+        TokenInfoDictionary dictionary = MappedDictionaries.getTokenInfoDictionary(resolver);
+
+        assertTrue(resolver.resolved.contains(DoubleArrayTrie.DOUBLE_ARRAY_TRIE_FILENAME));
+        assertTrue(resolver.resolved.contains(ConnectionCosts.CONNECTION_COSTS_FILENAME));
+        assertTrue(resolver.resolved.contains(TokenInfoDictionary.TOKEN_INFO_DICTIONARY_FILENAME));
+
+        // same files, same mapped instances
+        FileResourceResolver other = new FileResourceResolver();
+        assertSame(trie, MappedDictionaries.getDoubleArrayTrie(other));
+        assertSame(costs, MappedDictionaries.getConnectionCosts(other));
+        assertSame(dictionary, MappedDictionaries.getTokenInfoDictionary(other));
+    }
+
+    @Test(expected = IOException.class)
+    public void testClasspathResolverCannotBeMapped() throws IOException {
+        MappedDictionaries.getDoubleArrayTrie(new SimpleResourceResolver(getClass()));
+    }
+}
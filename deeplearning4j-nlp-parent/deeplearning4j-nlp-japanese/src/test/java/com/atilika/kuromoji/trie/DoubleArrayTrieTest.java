@@ -55,6 +55,27 @@ public class DoubleArrayTrieTest {
         assertTrue(doubleArrayTrie.lookup("xyz") < 0);
     }
 
+    @Test
+    public void testMappedTrie() throws IOException {
+        File trieFile = File.createTempFile("kuromoji-doublearraytrie-", ".bin");
+        trieFile.deleteOnExit();
+
+        DoubleArrayTrie doubleArrayTrie = new DoubleArrayTrie(false);
+        doubleArrayTrie.build(makeTrie());
+
+        OutputStream output = new FileOutputStream(trieFile);
+        doubleArrayTrie.write(output);
+        output.close();
+
+        DoubleArrayTrie read = DoubleArrayTrie.read(new FileInputStream(trieFile));
+        DoubleArrayTrie mapped = DoubleArrayTrie.map(trieFile);
+
+        for (String key : new String[] {"a", "ab", "abc", "abd", "abcd", "あああ", "あいう", "あ", "xyz"}) {
+            assertEquals(read.lookup(key), mapped.lookup(key));
+        }
+        assertTrue(mapped.lookup("abc") > 0);
+    }
+
     private Trie makeTrie() {
         Trie trie = new Trie();
         trie.add("abc");
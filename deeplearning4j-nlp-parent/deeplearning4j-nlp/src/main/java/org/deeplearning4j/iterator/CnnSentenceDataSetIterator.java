@@ -38,6 +38,10 @@ import java.util.*;
  * Sentences and labels are provided by a {@link LabeledSentenceProvider} - different implementations of this provide different
  * ways of loading sentences/documents with labels - for example, from files, etc.
  * <p>
+ * The features can be built in one of three ways, see {@link Vectorization}: by copying the vector of every word
+ * separately (default), by gathering all word vectors of a minibatch from the lookup table with a single pullRows op,
+ * or as word indices (shape [minibatchSize, 1, maxSentenceLength]) for use with an EmbeddingLayer.
+ * <p>
  * <b>Note</b>: With regard to labels to class index assignment, they are sorted alphabetically. To get the assigment/mapping,
  * use {@link #getLabels()} or {@link #getLabelClassMap()}
  *
@@ -49,6 +53,17 @@ public class CnnSentenceDataSetIterator implements DataSetIterator {
         RemoveWord, UseUnknownVector
     }
 
+    /**
+     * How the features are built from the words of a minibatch.<br>
+     * PerWord: look up and copy the vector of each word separately<br>
+     * Gather: map the words to lookup table indices and pull all vectors of the minibatch with a single op<br>
+     * Indices: output the lookup table indices themselves, with shape [minibatchSize, 1, maxSentenceLength], to be used
+     * with an EmbeddingLayer initialized from the same lookup table. The index of padding positions is 0 (masked).
+     */
+    public enum Vectorization {
+        PerWord, Gather, Indices
+    }
+
     private static final String UNKNOWN_WORD_SENTINEL = "UNKNOWN_WORD_SENTINEL";
 
     private LabeledSentenceProvider sentenceProvider = null;
@@ -60,11 +75,15 @@ public class CnnSentenceDataSetIterator implements DataSetIterator {
     private int maxSentenceLength;
     private boolean sentencesAlongHeight;
     private DataSetPreProcessor dataSetPreProcessor;
+    private Vectorization vectorization;
 
     private int wordVectorSize;
     private int numClasses;
     private Map<String, Integer> labelClassMap;
     private INDArray unknown;
+    private int unknownIndex = -1;
+    //Lookup table rows for Gather vectorization, normalized once if useNormalizedWordVectors is set
+    private INDArray table;
 
     private int cursor = 0;
 
@@ -80,6 +99,7 @@ public class CnnSentenceDataSetIterator implements DataSetIterator {
         this.maxSentenceLength = builder.maxSentenceLength;
         this.sentencesAlongHeight = builder.sentencesAlongHeight;
         this.dataSetPreProcessor = builder.dataSetPreProcessor;
+        this.vectorization = builder.vectorization;
 
 
         this.numClasses = this.sentenceProvider.numLabelClasses();
@@ -94,13 +114,28 @@ public class CnnSentenceDataSetIterator implements DataSetIterator {
         }
         if (unknownWordHandling == UnknownWordHandling.UseUnknownVector) {
             if (useNormalizedWordVectors) {
-                wordVectors.getWordVectorMatrixNormalized(wordVectors.getUNK());
+                unknown = wordVectors.getWordVectorMatrixNormalized(wordVectors.getUNK());
             } else {
-                wordVectors.getWordVectorMatrix(wordVectors.getUNK());
+                unknown = wordVectors.getWordVectorMatrix(wordVectors.getUNK());
+            }
+            if (vectorization != Vectorization.PerWord) {
+                if (!wordVectors.hasWord(wordVectors.getUNK()))
+                    throw new IllegalStateException("Cannot use " + vectorization + " vectorization with "
+                                    + "UseUnknownVector: unknown word \"" + wordVectors.getUNK()
+                                    + "\" is not present in the vocabulary");
+                unknownIndex = wordVectors.vocab().indexOf(wordVectors.getUNK());
             }
         }
 
         this.wordVectorSize = wordVectors.getWordVector(wordVectors.vocab().wordAtIndex(0)).length;
+
+        if (vectorization == Vectorization.Gather) {
+            table = wordVectors.lookupTable().getWeights();
+            if (useNormalizedWordVectors) {
+                INDArray norms = table.norm2(1);
+                table = table.divColumnVector(norms);
+            }
+        }
     }
 
     /**
@@ -108,6 +143,10 @@ public class CnnSentenceDataSetIterator implements DataSetIterator {
      */
     public INDArray loadSingleSentence(String sentence) {
         List<String> tokens = tokenizeSentence(sentence);
+        if (vectorization != Vectorization.PerWord) {
+            int length = maxSentenceLength > 0 ? Math.min(maxSentenceLength, tokens.size()) : tokens.size();
+            return gatherFeatures(Collections.singletonList(tokens), length, null);
+        }
 
         int[] featuresShape = new int[] {1, 1, 0, 0};
         if (sentencesAlongHeight) {
@@ -154,6 +193,53 @@ public class CnnSentenceDataSetIterator implements DataSetIterator {
         return vector;
     }
 
+    private int indexOf(String word) {
+        if (word == UNKNOWN_WORD_SENTINEL) { //Sentinel String: compare with ==, as in getVector
+            return unknownIndex;
+        }
+        return wordVectors.vocab().indexOf(word);
+    }
+
+    /**
+     * Build the features of a minibatch from the lookup table indices of its words: either as indices, or by pulling all
+     * word vectors from the lookup table with a single op, zeroing padding positions with the mask afterwards
+     *
+     * @param sentences tokenized sentences of the minibatch
+     * @param length    number of time steps of the features (sentences are truncated to this length)
+     * @param mask      features mask, shape [minibatchSize, length] - or null if no sentence is padded
+     */
+    private INDArray gatherFeatures(List<List<String>> sentences, int length, INDArray mask) {
+        int currMinibatchSize = sentences.size();
+        int[] indexes = new int[currMinibatchSize * length];
+        for (int i = 0; i < currMinibatchSize; i++) {
+            List<String> currSentence = sentences.get(i);
+            int n = Math.min(currSentence.size(), length);
+            for (int j = 0; j < n; j++) {
+                indexes[i * length + j] = indexOf(currSentence.get(j));
+            }
+        }
+
+        if (vectorization == Vectorization.Indices) {
+            INDArray features = Nd4j.create(currMinibatchSize, 1, length);
+            for (int i = 0; i < indexes.length; i++) {
+                features.putScalar(i, indexes[i]);
+            }
+            return features;
+        }
+
+        //Rows of the result are (example, time step), in c order
+        INDArray vectors = Nd4j.pullRows(table, 1, indexes, 'c');
+        if (mask != null) {
+            vectors.muliColumnVector(mask.reshape('c', indexes.length, 1));
+        }
+
+        INDArray features = vectors.reshape('c', currMinibatchSize, 1, length, wordVectorSize);
+        if (!sentencesAlongHeight) {
+            features = features.permute(0, 1, 3, 2).dup('c');
+        }
+        return features;
+    }
+
     private List<String> tokenizeSentence(String sentence) {
         Tokenizer t = tokenizerFactory.create(sentence);
 
@@ -272,40 +358,6 @@ public class CnnSentenceDataSetIterator implements DataSetIterator {
             labels.putScalar(i, labelIdx, 1.0);
         }
 
-        int[] featuresShape = new int[4];
-        featuresShape[0] = currMinibatchSize;
-        featuresShape[1] = 1;
-        if (sentencesAlongHeight) {
-            featuresShape[2] = maxLength;
-            featuresShape[3] = wordVectorSize;
-        } else {
-            featuresShape[2] = wordVectorSize;
-            featuresShape[3] = maxLength;
-        }
-
-        INDArray features = Nd4j.create(featuresShape);
-        for (int i = 0; i < currMinibatchSize; i++) {
-            List<String> currSentence = tokenizedSentences.get(i).getFirst();
-
-            for (int j = 0; j < currSentence.size() && j < maxSentenceLength; j++) {
-                INDArray vector = getVector(currSentence.get(j));
-
-                INDArrayIndex[] indices = new INDArrayIndex[4];
-                //TODO REUSE
-                indices[0] = NDArrayIndex.point(i);
-                indices[1] = NDArrayIndex.point(0);
-                if (sentencesAlongHeight) {
-                    indices[2] = NDArrayIndex.point(j);
-                    indices[3] = NDArrayIndex.all();
-                } else {
-                    indices[2] = NDArrayIndex.all();
-                    indices[3] = NDArrayIndex.point(j);
-                }
-
-                features.put(indices, vector);
-            }
-        }
-
         INDArray featuresMask = null;
         if (minLength != maxLength) {
             featuresMask = Nd4j.create(currMinibatchSize, maxLength);
@@ -320,6 +372,49 @@ public class CnnSentenceDataSetIterator implements DataSetIterator {
             }
         }
 
+        INDArray features;
+        if (vectorization == Vectorization.PerWord) {
+            int[] featuresShape = new int[4];
+            featuresShape[0] = currMinibatchSize;
+            featuresShape[1] = 1;
+            if (sentencesAlongHeight) {
+                featuresShape[2] = maxLength;
+                featuresShape[3] = wordVectorSize;
+            } else {
+                featuresShape[2] = wordVectorSize;
+                featuresShape[3] = maxLength;
+            }
+
+            features = Nd4j.create(featuresShape);
+            for (int i = 0; i < currMinibatchSize; i++) {
+                List<String> currSentence = tokenizedSentences.get(i).getFirst();
+
+                for (int j = 0; j < currSentence.size() && j < maxSentenceLength; j++) {
+                    INDArray vector = getVector(currSentence.get(j));
+
+                    INDArrayIndex[] indices = new INDArrayIndex[4];
+                    //TODO REUSE
+                    indices[0] = NDArrayIndex.point(i);
+                    indices[1] = NDArrayIndex.point(0);
+                    if (sentencesAlongHeight) {
+                        indices[2] = NDArrayIndex.point(j);
+                        indices[3] = NDArrayIndex.all();
+                    } else {
+                        indices[2] = NDArrayIndex.all();
+                        indices[3] = NDArrayIndex.point(j);
+                    }
+
+                    features.put(indices, vector);
+                }
+            }
+        } else {
+            List<List<String>> sentences = new ArrayList<>(currMinibatchSize);
+            for (Pair<List<String>, String> p : tokenizedSentences) {
+                sentences.add(p.getFirst());
+            }
+            features = gatherFeatures(sentences, maxLength, featuresMask);
+        }
+
         DataSet ds = new DataSet(features, labels, featuresMask, null);
 
         if (dataSetPreProcessor != null) {
@@ -337,6 +432,9 @@ public class CnnSentenceDataSetIterator implements DataSetIterator {
 
     @Override
     public int inputColumns() {
+        if (vectorization == Vectorization.Indices) {
+            return 1;
+        }
         return wordVectorSize;
     }
 
@@ -402,6 +500,7 @@ public class CnnSentenceDataSetIterator implements DataSetIterator {
         private int minibatchSize = 32;
         private boolean sentencesAlongHeight = true;
         private DataSetPreProcessor dataSetPreProcessor;
+        private Vectorization vectorization = Vectorization.PerWord;
 
         /**
          * Specify how the (labelled) sentences / documents should be provided
@@ -503,6 +602,16 @@ public class CnnSentenceDataSetIterator implements DataSetIterator {
             return this;
         }
 
+        /**
+         * How the features are built from the words, see {@link Vectorization}. Default: PerWord.<br>
+         * Gather is usually much faster for larger minibatches, and Indices avoids materializing the word vectors
+         * altogether when the network starts with an EmbeddingLayer.
+         */
+        public Builder vectorization(Vectorization vectorization) {
+            this.vectorization = vectorization;
+            return this;
+        }
+
         public CnnSentenceDataSetIterator build() {
             if (wordVectors == null) {
                 throw new IllegalStateException(
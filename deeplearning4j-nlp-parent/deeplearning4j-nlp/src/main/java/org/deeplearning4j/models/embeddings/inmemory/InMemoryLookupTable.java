@@ -27,6 +27,7 @@ import org.deeplearning4j.models.embeddings.WeightLookupTable;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.word2vec.Word2Vec;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.HashedVocabCache;
 import org.deeplearning4j.plot.BarnesHutTsne;
 import org.deeplearning4j.ui.UiConnectionInfo;
 import org.nd4j.linalg.api.buffer.DataBuffer;
@@ -279,7 +280,14 @@ public class InMemoryLookupTable<T extends SequenceElement> implements WeightLoo
     public synchronized void initNegative() {
         if (negative > 0 && syn1Neg == null) {
             syn1Neg = Nd4j.zeros(syn0.shape());
-            makeTable(Math.max(expTable.length, 100000), 0.75);
+
+            // every observed element takes at least one table slot, so table has to be a few times bigger than
+            // the number of non-empty hashed buckets, or the last buckets would never be sampled
+            int tableSize = Math.max(expTable.length, 100000);
+            if (vocab instanceof HashedVocabCache)
+                tableSize = Math.max(tableSize, vocab.words().size() * 4);
+
+            makeTable(tableSize, 0.75);
         }
     }
 
@@ -446,6 +454,11 @@ public class InMemoryLookupTable<T extends SequenceElement> implements WeightLoo
 
 
     protected void makeTable(int tableSize, double power) {
+        if (vocab instanceof HashedVocabCache) {
+            makeHashedTable(tableSize, power);
+            return;
+        }
+
         int vocabSize = syn0.rows();
         table = Nd4j.create(tableSize);
         double trainWordsPow = 0.0;
@@ -471,6 +484,46 @@ public class InMemoryLookupTable<T extends SequenceElement> implements WeightLoo
         }
     }
 
+    /**
+     * Unigram table over non-empty buckets only: empty buckets were never seen in training,
+     * so they shouldn't be drawn as negative samples
+     */
+    protected void makeHashedTable(int tableSize, double power) {
+        table = Nd4j.create(tableSize);
+
+        int numBuckets = vocab.numWords();
+        int[] buckets = new int[numBuckets];
+        double[] weights = new double[numBuckets];
+        int numObserved = 0;
+        double trainWordsPow = 0.0;
+        for (int i = 0; i < numBuckets; i++) {
+            String label = vocab.wordAtIndex(i);
+            if (label == null)
+                continue;
+            double weight = Math.pow(vocab.wordFrequency(label), power);
+            if (weight <= 0)
+                continue;
+            buckets[numObserved] = i;
+            weights[numObserved] = weight;
+            trainWordsPow += weight;
+            numObserved++;
+        }
+
+        if (numObserved == 0)
+            return;
+
+        int idx = 0;
+        double d1 = weights[0] / trainWordsPow;
+        for (int i = 0; i < tableSize; i++) {
+            table.putScalar(i, buckets[idx]);
+            double mul = i * 1.0 / (double) tableSize;
+            if (mul > d1 && idx < numObserved - 1) {
+                idx++;
+                d1 += weights[idx] / trainWordsPow;
+            }
+        }
+    }
+
     /**
      * Inserts a word vector
      *
@@ -512,6 +565,11 @@ public class InMemoryLookupTable<T extends SequenceElement> implements WeightLoo
     public INDArray vector(String word) {
         if (word == null)
             return null;
+
+        // hashed elements are represented by the average of their own row and rows of their n-grams
+        if (vocab instanceof HashedVocabCache)
+            return syn0.getRows(((HashedVocabCache) vocab).subwordIndexes(word)).mean(0);
+
         int idx = vocab.indexOf(word);
         if (idx < 0) {
             idx = vocab.indexOf(Word2Vec.DEFAULT_UNK);
@@ -0,0 +1,27 @@
+package org.deeplearning4j.models.embeddings.learning;
+
+import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.List;
+
+/**
+ * Sequence learning algorithm able to infer vectors for a batch of sequences at once, faster than
+ * calling {@link #inferSequence} for each of them.
+ *
+ * @see org.deeplearning4j.models.paragraphvectors.ParagraphVectors#inferSequenceVectors
+ */
+public interface BatchSequenceLearningAlgorithm<T extends SequenceElement> extends SequenceLearningAlgorithm<T> {
+
+    /**
+     * This method does training on a batch of previously unseen paragraphs at once, and returns their inferred vectors
+     *
+     * @param sequences non-empty paragraphs
+     * @param nextRandom
+     * @param learningRate
+     * @return matrix with the inferred vector of every paragraph as a row, in the same order
+     */
+    INDArray inferSequences(List<Sequence<T>> sequences, long nextRandom, double learningRate, double minLearningRate,
+                    int iterations);
+}
@@ -11,6 +11,7 @@ import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
 import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.HashedVocabCache;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.aggregates.Aggregate;
 import org.nd4j.linalg.api.ops.aggregates.impl.AggregateCBOW;
@@ -134,6 +135,44 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
 
     public void iterateSample(T currentWord, int[] windowWords, AtomicLong nextRandom, double alpha,
                     boolean isInference, int numLabels, boolean trainWords, INDArray inferenceVector) {
+        if (batches.get() == null)
+            batches.set(new ArrayList<Aggregate>());
+
+        Aggregate cbow = buildSample(currentWord, windowWords, nextRandom, alpha, numLabels, trainWords,
+                        inferenceVector);
+
+        if (!isInference && fitsBatch(cbow)) {
+            batches.get().add(cbow);
+            if (batches.get().size() > 4096) {
+                Nd4j.getExecutioner().exec(batches.get());
+                batches.get().clear();
+            }
+        } else
+            Nd4j.getExecutioner().exec(cbow);
+
+    }
+
+    /**
+     * Batched aggregates have limited room for int arrays, so ops with longer windows, i.e. with n-grams of
+     * hashed elements, have to be executed on their own
+     */
+    static boolean fitsBatch(Aggregate op) {
+        for (int[] array : op.getIntArrayArguments()) {
+            if (array != null && array.length > op.maxIntArraySize())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * This method builds the aggregate op for a single sample without executing it,
+     * so inference steps of many documents can be executed as one batch
+     *
+     * @param inferenceVector vector updated instead of the labels in syn0, or null for training
+     * @return
+     */
+    public Aggregate buildSample(T currentWord, int[] windowWords, AtomicLong nextRandom, double alpha, int numLabels,
+                    boolean trainWords, INDArray inferenceVector) {
         int[] idxSyn1 = null;
         int[] codes = null;
 
@@ -160,24 +199,13 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
             }
         }
 
-        if (batches.get() == null)
-            batches.set(new ArrayList<Aggregate>());
-
         AggregateCBOW cbow = new AggregateCBOW(syn0.get(), syn1.get(), syn1Neg.get(), expTable.get(), table.get(),
                         currentWord.getIndex(), windowWords, idxSyn1, codes, (int) negative, currentWord.getIndex(),
                         lookupTable.layerSize(), alpha, nextRandom.get(), vocabCache.numWords(), numLabels, trainWords,
                         inferenceVector);
         nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
 
-        if (!isInference) {
-            batches.get().add(cbow);
-            if (batches.get().size() > 4096) {
-                Nd4j.getExecutioner().exec(batches.get());
-                batches.get().clear();
-            }
-        } else
-            Nd4j.getExecutioner().exec(cbow);
-
+        return cbow;
     }
 
     public void cbow(int i, List<T> sentence, int b, AtomicLong nextRandom, double alpha, int currentWindow) {
@@ -192,7 +220,12 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
                 if (c >= 0 && c < sentence.size()) {
                     T lastWord = sentence.get(c);
 
-                    intsList.add(lastWord.getIndex());
+                    if (vocabCache instanceof HashedVocabCache) {
+                        // hashed elements are represented by their own bucket and buckets of their n-grams
+                        for (int index : ((HashedVocabCache) vocabCache).subwordIndexes(lastWord.getLabel()))
+                            intsList.add(index);
+                    } else
+                        intsList.add(lastWord.getIndex());
                 }
             }
         }
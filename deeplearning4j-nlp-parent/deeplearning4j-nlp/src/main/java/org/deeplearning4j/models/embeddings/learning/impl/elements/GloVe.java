@@ -6,6 +6,7 @@ import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.learning.ElementsLearningAlgorithm;
 import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
 import org.deeplearning4j.models.glove.AbstractCoOccurrences;
+import org.deeplearning4j.models.glove.GloveBlockTrainer;
 import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
 import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
@@ -49,6 +50,8 @@ public class GloVe<T extends SequenceElement> implements ElementsLearningAlgorit
     protected double learningRate = 0.0d;
     protected int maxmemory = 0;
     protected int batchSize = 1000;
+    protected boolean blockTraining = false;
+    protected boolean externalMerge = false;
 
     private AdaGrad weightAdaGrad;
     private AdaGrad biasAdaGrad;
@@ -108,7 +111,8 @@ public class GloVe<T extends SequenceElement> implements ElementsLearningAlgorit
         coOccurrences = new AbstractCoOccurrences.Builder<T>()
                         // TODO: symmetric should be handled via VectorsConfiguration
                         .symmetric(this.symmetric).windowSize(configuration.getWindow()).iterate(iterator)
-                        .workers(workers).vocabCache(vocabCache).maxMemory(maxmemory).build();
+                        .workers(workers).vocabCache(vocabCache).maxMemory(maxmemory).externalMerge(externalMerge)
+                        .build();
 
         coOccurrences.fit();
     }
@@ -131,6 +135,15 @@ public class GloVe<T extends SequenceElement> implements ElementsLearningAlgorit
         if (isTerminate.get())
             return 0;
 
+        if (blockTraining) {
+            new GloveBlockTrainer.Builder().xMax(xMax).alpha(alpha).learningRate(this.learningRate).workers(workers)
+                            .shuffle(shuffle).seed(configuration.getSeed()).build()
+                            .fit(coOccurrences.iterator(), syn0, bias, configuration.getEpochs());
+
+            isTerminate.set(true);
+            return 0;
+        }
+
         final AtomicLong pairsCount = new AtomicLong(0);
         final Counter<Integer> errorCounter = new Counter<>();
 
@@ -304,6 +317,8 @@ public class GloVe<T extends SequenceElement> implements ElementsLearningAlgorit
         protected int maxmemory = 0;
 
         protected int batchSize = 1000;
+        protected boolean blockTraining = false;
+        protected boolean externalMerge = false;
 
         public Builder() {
 
@@ -390,6 +405,31 @@ public class GloVe<T extends SequenceElement> implements ElementsLearningAlgorit
             return this;
         }
 
+        /**
+         * Enables training with GloveBlockTrainer: cooccurrences are stored as binary triples in a memory-mapped
+         * file, and processed in blocks by lock-free threads over plain float arrays. Default value: FALSE
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder<T> blockTraining(boolean reallyUse) {
+            this.blockTraining = reallyUse;
+            return this;
+        }
+
+        /**
+         * Enables external memory cooccurrence counting: pairs are counted in fixed size buffers, spilled to disk
+         * as sorted runs and merged afterwards, so the whole cooccurrence map is never kept in memory.
+         * Default value: FALSE
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder<T> externalMerge(boolean reallyUse) {
+            this.externalMerge = reallyUse;
+            return this;
+        }
+
         public GloVe<T> build() {
             GloVe<T> ret = new GloVe<>();
             ret.symmetric = this.symmetric;
@@ -399,6 +439,8 @@ public class GloVe<T extends SequenceElement> implements ElementsLearningAlgorit
             ret.learningRate = this.learningRate;
             ret.maxmemory = this.maxmemory;
             ret.batchSize = this.batchSize;
+            ret.blockTraining = this.blockTraining;
+            ret.externalMerge = this.externalMerge;
 
             return ret;
         }
@@ -12,8 +12,10 @@ import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
 import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.HashedVocabCache;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.aggregates.Aggregate;
+import org.nd4j.linalg.api.ops.aggregates.impl.AggregateCBOW;
 import org.nd4j.linalg.api.ops.aggregates.impl.AggregateSkipGram;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.util.DeviceLocalNDArray;
@@ -223,16 +225,42 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
 
     public double iterateSample(T w1, T lastWord, AtomicLong nextRandom, double alpha, boolean isInference,
                     INDArray inferenceVector) {
+        Aggregate sg = buildSample(w1, lastWord, nextRandom, alpha, isInference, inferenceVector);
+        if (sg == null)
+            return 0.0;
+
+        if (batches.get() == null) {
+            batches.set(new ArrayList<Aggregate>());
+        }
+
+        if (!isInference && CBOW.fitsBatch(sg)) {
+            batches.get().add(sg);
+            if (batches.get().size() > 4096) {
+                Nd4j.getExecutioner().exec(batches.get());
+                batches.get().clear();
+            }
+        } else
+            Nd4j.getExecutioner().exec(sg);
+
+        return 0.0;
+    }
+
+    /**
+     * This method builds the aggregate op for a single pair of elements without executing it,
+     * so inference steps of many documents can be executed as one batch
+     *
+     * @param inferenceVector vector updated instead of lastWord's row of syn0, or null for training
+     * @return the op, or null if the pair is skipped
+     */
+    public Aggregate buildSample(T w1, T lastWord, AtomicLong nextRandom, double alpha, boolean isInference,
+                    INDArray inferenceVector) {
         if (w1 == null || lastWord == null || (lastWord.getIndex() < 0 && !isInference)
                         || w1.getIndex() == lastWord.getIndex() || w1.getLabel().equals("STOP")
                         || lastWord.getLabel().equals("STOP") || w1.getLabel().equals("UNK")
                         || lastWord.getLabel().equals("UNK")) {
-            return 0.0;
+            return null;
         }
 
-
-        double score = 0.0;
-
         int[] idxSyn1 = null;
         int[] codes = null;
         if (configuration.isUseHierarchicSoftmax()) {
@@ -262,26 +290,25 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
             }
         }
 
-        if (batches.get() == null) {
-            batches.set(new ArrayList<Aggregate>());
-        }
-
         //log.info("VocabWords: {}; lastWordIndex: {}; syn1neg: {}", vocabCache.numWords(), lastWord.getIndex(), syn1Neg.get().rows());
 
+        if (vocabCache instanceof HashedVocabCache) {
+            // input vector of hashed element is the average of its own row and rows of its n-grams,
+            // and that's what CBOW op does with its window
+            int[] subwords = ((HashedVocabCache) vocabCache).subwordIndexes(lastWord.getLabel());
+            AggregateCBOW cbow = new AggregateCBOW(syn0.get(), syn1.get(), syn1Neg.get(), expTable.get(),
+                            table.get(), target, subwords, idxSyn1, codes, (int) negative, target, vectorLength,
+                            alpha, nextRandom.get(), vocabCache.numWords(), 0, true, inferenceVector);
+            nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
+
+            return cbow;
+        }
+
         AggregateSkipGram sg = new AggregateSkipGram(syn0.get(), syn1.get(), syn1Neg.get(), expTable.get(), table.get(),
                         lastWord.getIndex(), idxSyn1, codes, (int) negative, target, vectorLength, alpha,
                         nextRandom.get(), vocabCache.numWords(), inferenceVector);
         nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
 
-        if (!isInference) {
-            batches.get().add(sg);
-            if (batches.get().size() > 4096) {
-                Nd4j.getExecutioner().exec(batches.get());
-                batches.get().clear();
-            }
-        } else
-            Nd4j.getExecutioner().exec(sg);
-
-        return score;
+        return sg;
     }
 }
@@ -3,7 +3,7 @@ package org.deeplearning4j.models.embeddings.learning.impl.sequence;
 import lombok.NonNull;
 import org.deeplearning4j.models.embeddings.WeightLookupTable;
 import org.deeplearning4j.models.embeddings.learning.ElementsLearningAlgorithm;
-import org.deeplearning4j.models.embeddings.learning.SequenceLearningAlgorithm;
+import org.deeplearning4j.models.embeddings.learning.BatchSequenceLearningAlgorithm;
 import org.deeplearning4j.models.embeddings.learning.impl.elements.SkipGram;
 import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
 import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
@@ -11,6 +11,7 @@ import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.aggregates.Aggregate;
 import org.nd4j.linalg.api.rng.Random;
 import org.nd4j.linalg.factory.Nd4j;
 import org.slf4j.Logger;
@@ -23,7 +24,7 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * @author raver119@gmail.com
  */
-public class DBOW<T extends SequenceElement> implements SequenceLearningAlgorithm<T> {
+public class DBOW<T extends SequenceElement> implements BatchSequenceLearningAlgorithm<T> {
     protected VocabCache<T> vocabCache;
     protected WeightLookupTable<T> lookupTable;
     protected VectorsConfiguration configuration;
@@ -163,6 +164,85 @@ public class DBOW<T extends SequenceElement> implements SequenceLearningAlgorith
 
         return ret;
     }
+    /**
+     * This method does training on a batch of previously unseen paragraphs, and returns their inferred vectors.
+     *
+     * Paragraphs advance in lockstep: every step builds one op per paragraph that still has elements left, and all
+     * of them are executed as a single batch. Every paragraph has its own vector, so ops within a batch never
+     * update the same vector.
+     *
+     * @param sequences
+     * @param nextRandom
+     * @param learningRate
+     * @return
+     */
+    @Override
+    public INDArray inferSequences(List<Sequence<T>> sequences, long nextRandom, double learningRate,
+                    double minLearningRate, int iterations) {
+        int numSequences = sequences.size();
+        if (numSequences == 0)
+            return null;
+
+        for (Sequence<T> sequence : sequences) {
+            if (sequence.isEmpty())
+                throw new IllegalStateException("Impossible to apply inference to empty sequence");
+            if (sequence.getSequenceLabel() == null)
+                throw new IllegalStateException("Sequence label is required for inference");
+        }
+
+        Random random = Nd4j.getRandomFactory().getNewRandomInstance(configuration.getSeed());
+        INDArray init = Nd4j.rand(new int[] {numSequences, lookupTable.layerSize()}, random).subi(0.5)
+                        .divi(lookupTable.layerSize());
+
+        INDArray[] vectors = new INDArray[numSequences];
+        AtomicLong[] nextRandoms = new AtomicLong[numSequences];
+        for (int s = 0; s < numSequences; s++) {
+            vectors[s] = init.getRow(s).dup();
+            nextRandoms[s] = new AtomicLong(nextRandom);
+        }
+
+        List<List<T>> sentences = new ArrayList<>(numSequences);
+        List<Aggregate> batch = new ArrayList<>();
+        for (int iter = 0; iter < iterations; iter++) {
+            sentences.clear();
+            int maxLength = 0;
+            for (int s = 0; s < numSequences; s++) {
+                AtomicLong nr = nextRandoms[s];
+                nr.set(Math.abs(nr.get() * 25214903917L + 11));
+                List<T> sentence = skipGram.applySubsampling(sequences.get(s), nr).getElements();
+                sentences.add(sentence);
+                maxLength = Math.max(maxLength, sentence.size());
+            }
+
+            for (int i = 0; i < maxLength; i++) {
+                for (int s = 0; s < numSequences; s++) {
+                    List<T> sentence = sentences.get(s);
+                    if (i >= sentence.size())
+                        continue;
+
+                    // the inference vector is trained in place of the label's syn0 row
+                    Aggregate op = skipGram.buildSample(sentence.get(i), sequences.get(s).getSequenceLabel(),
+                                    nextRandoms[s], learningRate, true, vectors[s]);
+                    if (op != null)
+                        batch.add(op);
+
+                    if (batch.size() >= configuration.getBatchSize()) {
+                        Nd4j.getExecutioner().exec(batch);
+                        batch.clear();
+                    }
+                }
+
+                // next step of every paragraph depends on this one
+                if (!batch.isEmpty()) {
+                    Nd4j.getExecutioner().exec(batch);
+                    batch.clear();
+                }
+            }
+            learningRate = ((learningRate - minLearningRate) / (iterations - iter)) + minLearningRate;
+        }
+
+        return Nd4j.vstack(vectors);
+    }
 
     @Override
     public void finish() {
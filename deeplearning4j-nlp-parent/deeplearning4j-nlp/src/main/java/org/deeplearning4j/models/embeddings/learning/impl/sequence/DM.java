@@ -5,7 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.models.embeddings.WeightLookupTable;
 import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.learning.ElementsLearningAlgorithm;
-import org.deeplearning4j.models.embeddings.learning.SequenceLearningAlgorithm;
+import org.deeplearning4j.models.embeddings.learning.BatchSequenceLearningAlgorithm;
 import org.deeplearning4j.models.embeddings.learning.impl.elements.CBOW;
 import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
 import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
@@ -13,6 +13,7 @@ import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.aggregates.Aggregate;
 import org.nd4j.linalg.api.rng.Random;
 import org.nd4j.linalg.factory.Nd4j;
 
@@ -26,7 +27,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * @author raver119@gmail.com
  */
 @Slf4j
-public class DM<T extends SequenceElement> implements SequenceLearningAlgorithm<T> {
+public class DM<T extends SequenceElement> implements BatchSequenceLearningAlgorithm<T> {
     private VocabCache<T> vocabCache;
     private WeightLookupTable<T> lookupTable;
     private VectorsConfiguration configuration;
@@ -104,9 +105,24 @@ public class DM<T extends SequenceElement> implements SequenceLearningAlgorithm<
 
     public void dm(int i, Sequence<T> sequence, int b, AtomicLong nextRandom, double alpha, List<T> labels,
                     boolean isInference, INDArray inferenceVector) {
-        int end = window * 2 + 1 - b;
-
         T currentWord = sequence.getElementByIndex(i);
+        int[] windowWords = windowWords(i, sequence, b, labels);
+
+        // pass for underlying
+        cbow.iterateSample(currentWord, windowWords, nextRandom, alpha, isInference, labels == null ? 0 : labels.size(),
+                        configuration.isTrainElementsVectors(), inferenceVector);
+
+        if (cbow.getBatch() != null && cbow.getBatch().size() >= configuration.getBatchSize()) {
+            Nd4j.getExecutioner().exec(cbow.getBatch());
+            cbow.getBatch().clear();
+        }
+    }
+
+    /**
+     * Indexes of the context elements around position i, followed by the labels
+     */
+    protected int[] windowWords(int i, Sequence<T> sequence, int b, List<T> labels) {
+        int end = window * 2 + 1 - b;
 
         List<Integer> intsList = new ArrayList<>();
         for (int a = b; a < end; a++) {
@@ -131,14 +147,7 @@ public class DM<T extends SequenceElement> implements SequenceLearningAlgorithm<
             windowWords[x] = intsList.get(x);
         }
 
-        // pass for underlying
-        cbow.iterateSample(currentWord, windowWords, nextRandom, alpha, isInference, labels == null ? 0 : labels.size(),
-                        configuration.isTrainElementsVectors(), inferenceVector);
-
-        if (cbow.getBatch() != null && cbow.getBatch().size() >= configuration.getBatchSize()) {
-            Nd4j.getExecutioner().exec(cbow.getBatch());
-            cbow.getBatch().clear();
-        }
+        return windowWords;
     }
 
     @Override
@@ -184,6 +193,75 @@ public class DM<T extends SequenceElement> implements SequenceLearningAlgorithm<
         return ret;
     }
 
+    /**
+     * This method does training on a batch of previously unseen paragraphs, and returns their inferred vectors.
+     *
+     * Paragraphs advance in lockstep: every step builds one op per paragraph that still has elements left, and all
+     * of them are executed as a single batch. Every paragraph has its own vector, so ops within a batch never
+     * update the same vector.
+     *
+     * @param sequences
+     * @param nr
+     * @param learningRate
+     * @return
+     */
+    @Override
+    public INDArray inferSequences(List<Sequence<T>> sequences, long nr, double learningRate, double minLearningRate,
+                    int iterations) {
+        int numSequences = sequences.size();
+        if (numSequences == 0)
+            return null;
+
+        int maxLength = 0;
+        for (Sequence<T> sequence : sequences) {
+            if (sequence.isEmpty())
+                throw new IllegalStateException("Impossible to apply inference to empty sequence");
+            maxLength = Math.max(maxLength, sequence.size());
+        }
+
+        Random random = Nd4j.getRandomFactory().getNewRandomInstance(configuration.getSeed());
+        INDArray init = Nd4j.rand(new int[] {numSequences, lookupTable.layerSize()}, random).subi(0.5)
+                        .divi(lookupTable.layerSize());
+
+        INDArray[] vectors = new INDArray[numSequences];
+        AtomicLong[] nextRandoms = new AtomicLong[numSequences];
+        for (int s = 0; s < numSequences; s++) {
+            vectors[s] = init.getRow(s).dup();
+            nextRandoms[s] = new AtomicLong(nr);
+        }
+
+        List<Aggregate> batch = new ArrayList<>();
+        for (int iter = 0; iter < iterations; iter++) {
+            for (int i = 0; i < maxLength; i++) {
+                for (int s = 0; s < numSequences; s++) {
+                    Sequence<T> sequence = sequences.get(s);
+                    if (i >= sequence.size())
+                        continue;
+
+                    AtomicLong nextRandom = nextRandoms[s];
+                    nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
+                    int[] windowWords = windowWords(i, sequence, (int) nextRandom.get() % window, null);
+                    // word vectors stay frozen, many paragraphs share them within a batch
+                    batch.add(cbow.buildSample(sequence.getElementByIndex(i), windowWords, nextRandom, learningRate, 0,
+                                    false, vectors[s]));
+
+                    if (batch.size() >= configuration.getBatchSize()) {
+                        Nd4j.getExecutioner().exec(batch);
+                        batch.clear();
+                    }
+                }
+
+                // next step of every paragraph depends on this one
+                if (!batch.isEmpty()) {
+                    Nd4j.getExecutioner().exec(batch);
+                    batch.clear();
+                }
+            }
+            learningRate = ((learningRate - minLearningRate) / (iterations - iter)) + minLearningRate;
+        }
+
+        return Nd4j.vstack(vectors);
+    }
 
     @Override
     public void finish() {
@@ -10,6 +10,7 @@ import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.reader.ModelUtils;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.HashedVocabCache;
 import org.deeplearning4j.util.MathUtils;
 import org.deeplearning4j.util.SetUtils;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -36,6 +37,10 @@ public class BasicModelUtils<T extends SequenceElement> implements ModelUtils<T>
 
     protected volatile boolean normalized = false;
 
+    // unit vectors of hashed vocabulary elements, composed of their n-gram rows, and labels of these vectors
+    protected INDArray hashedVectors;
+    protected List<String> hashedLabels;
+
 
     public BasicModelUtils() {
 
@@ -48,6 +53,8 @@ public class BasicModelUtils<T extends SequenceElement> implements ModelUtils<T>
 
         // reset normalization trigger on init call
         this.normalized = false;
+        this.hashedVectors = null;
+        this.hashedLabels = null;
     }
 
     /**
@@ -224,6 +231,9 @@ public class BasicModelUtils<T extends SequenceElement> implements ModelUtils<T>
      */
     @Override
     public Collection<String> wordsNearest(INDArray words, int top) {
+        if (vocabCache instanceof HashedVocabCache)
+            return hashedWordsNearest(words, top);
+
         if (lookupTable instanceof InMemoryLookupTable) {
             InMemoryLookupTable l = (InMemoryLookupTable) lookupTable;
 
@@ -274,6 +284,35 @@ public class BasicModelUtils<T extends SequenceElement> implements ModelUtils<T>
 
     }
 
+    /**
+     * Rows of hashed lookup table are shared by n-grams of many elements, so elements are ranked by the same
+     * composed vectors {@link WeightLookupTable#vector(String)} returns, rather than by raw rows
+     */
+    protected Collection<String> hashedWordsNearest(INDArray words, int top) {
+        INDArray vectors = checkHashedVectors();
+        INDArray similarity = Transforms.unitVec(words).mmul(vectors.transpose());
+
+        List<String> result = new ArrayList<>();
+        for (Double index : getTopN(similarity, top + 2)) {
+            String word = hashedLabels.get(index.intValue());
+            if (!word.equals("UNK") && !word.equals("STOP") && result.size() < top)
+                result.add(word);
+        }
+        return result;
+    }
+
+    private synchronized INDArray checkHashedVectors() {
+        if (hashedVectors == null) {
+            List<String> labels = new ArrayList<>(vocabCache.words());
+            INDArray vectors = Nd4j.create(labels.size(), lookupTable.layerSize());
+            for (int i = 0; i < labels.size(); i++)
+                vectors.putRow(i, Transforms.unitVec(lookupTable.vector(labels.get(i))));
+            hashedLabels = labels;
+            hashedVectors = vectors;
+        }
+        return hashedVectors;
+    }
+
     /**
      * Get top N elements
      *
@@ -315,7 +354,8 @@ public class BasicModelUtils<T extends SequenceElement> implements ModelUtils<T>
     @Override
     public Collection<String> wordsNearestSum(INDArray words, int top) {
 
-        if (lookupTable instanceof InMemoryLookupTable) {
+        // raw rows of hashed lookup table aren't element vectors, see hashedWordsNearest()
+        if (lookupTable instanceof InMemoryLookupTable && !(vocabCache instanceof HashedVocabCache)) {
             InMemoryLookupTable l = (InMemoryLookupTable) lookupTable;
             INDArray syn0 = l.getSyn0();
             INDArray weights = syn0.norm2(0).rdivi(1).muli(words);
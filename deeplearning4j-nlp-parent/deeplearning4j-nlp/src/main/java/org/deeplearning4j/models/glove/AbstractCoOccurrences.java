@@ -51,7 +51,10 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
 
     protected long memory_threshold = 0;
 
+    protected boolean externalMerge = false;
+
     private ShadowCopyThread shadowThread;
+    private ExternalCoOccurrenceCounter<T> externalCounter;
 
     //    private Counter<Integer> sentenceOccurrences = Util.parallelCounter();
     //private CounterMap<T, T> coOccurrenceCounts = Util.parallelCounterMap();
@@ -99,9 +102,21 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
         return memory_threshold / 2L;
     }
 
+    /**
+     * Returns external counter used by the last fit() call, so its progress can be tracked.
+     * Returns null, unless external merge is enabled.
+     */
+    public ExternalCoOccurrenceCounter<T> getExternalCounter() {
+        return externalCounter;
+    }
+
     public void fit() {
-        shadowThread = new ShadowCopyThread();
-        shadowThread.start();
+        if (externalMerge) {
+            externalCounter = new ExternalCoOccurrenceCounter<>(vocabCache, getMemoryThreshold(), workers);
+        } else {
+            shadowThread = new ShadowCopyThread();
+            shadowThread.start();
+        }
 
         // we should reset iterator before counting cooccurrences
         sequenceIterator.reset();
@@ -121,7 +136,14 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
             }
         }
 
-        shadowThread.finish();
+        if (externalMerge) {
+            CoOccurrenceWriter<T> writer = new ASCIICoOccurrenceWriter<>(targetFile);
+            externalCounter.merge(writer);
+            writer.finish();
+        } else {
+            shadowThread.finish();
+        }
+
         logger.info("CoOccurrences map was built.");
     }
 
@@ -182,6 +204,7 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
         protected int workers = Runtime.getRuntime().availableProcessors();
         protected File target;
         protected long maxmemory = Runtime.getRuntime().maxMemory();
+        protected boolean externalMerge = false;
 
         public Builder() {
 
@@ -253,6 +276,19 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
             return this;
         }
 
+        /**
+         * This method enables external memory counting: threads count pairs in fixed size buffers, which are
+         * spilled to disk as sorted runs, and merged once all sequences are processed.
+         * Buffers share half of maxMemory.
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder<T> externalMerge(boolean reallyUse) {
+            this.externalMerge = reallyUse;
+            return this;
+        }
+
         public AbstractCoOccurrences<T> build() {
             AbstractCoOccurrences<T> ret = new AbstractCoOccurrences<>();
             ret.sequenceIterator = this.sequenceIterator;
@@ -260,6 +296,7 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
             ret.vocabCache = this.vocabCache;
             ret.symmetric = this.symmetric;
             ret.workers = this.workers;
+            ret.externalMerge = this.externalMerge;
 
             if (this.maxmemory < 1) {
                 this.maxmemory = Runtime.getRuntime().maxMemory();
@@ -289,6 +326,7 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
 
         private final SequenceIterator<T> iterator;
         private final AtomicLong sequenceCounter;
+        private final ExternalCoOccurrenceCounter<T>.RunBuffer runBuffer;
         private int threadId;
 
         public CoOccurrencesCalculatorThread(int threadId, @NonNull SequenceIterator<T> iterator,
@@ -296,6 +334,7 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
             this.iterator = iterator;
             this.sequenceCounter = sequenceCounter;
             this.threadId = threadId;
+            this.runBuffer = externalCounter != null ? externalCounter.newBuffer() : null;
 
             this.setName("CoOccurrencesCalculatorThread " + threadId);
         }
@@ -332,6 +371,14 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
                         }
 
 
+                        if (runBuffer != null) {
+                            double weight = 1.0 / (j - x + Nd4j.EPS_THRESHOLD);
+                            runBuffer.add(Math.min(wordIdx, otherWord), Math.max(wordIdx, otherWord), weight);
+                            if (symmetric)
+                                runBuffer.add(Math.max(wordIdx, otherWord), Math.min(wordIdx, otherWord), weight);
+                            continue;
+                        }
+
                         T tokenX = vocabCache.wordFor(tokens.get(x));
                         T tokenJ = vocabCache.wordFor(tokens.get(j));
                         double nWeight = 1.0 / (j - x + Nd4j.EPS_THRESHOLD);
@@ -382,6 +429,9 @@ public class AbstractCoOccurrences<T extends SequenceElement> implements Seriali
 
                 sequenceCounter.incrementAndGet();
             }
+
+            if (runBuffer != null)
+                runBuffer.flush();
         }
     }
 
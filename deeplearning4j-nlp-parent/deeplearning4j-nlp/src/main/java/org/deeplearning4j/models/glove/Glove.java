@@ -39,6 +39,8 @@ public class Glove extends SequenceVectors<VocabWord> {
         private boolean shuffle;
         private boolean symmetric;
         protected double alpha = 0.75d;
+        private boolean blockTraining = false;
+        private boolean externalMerge = false;
         private int maxmemory = (int) (Runtime.getRuntime().totalMemory() / 1024 / 1024 / 1024);
 
         protected TokenizerFactory tokenFactory;
@@ -287,6 +289,29 @@ public class Glove extends SequenceVectors<VocabWord> {
             return this;
         }
 
+        /**
+         * Enables training over cooccurrence blocks in plain float arrays, with lock-free threads. Default value: FALSE
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder blockTraining(boolean reallyUse) {
+            this.blockTraining = reallyUse;
+            return this;
+        }
+
+        /**
+         * Enables external memory cooccurrence counting, with sorted runs spilled to disk and merged afterwards.
+         * Default value: FALSE
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder externalMerge(boolean reallyUse) {
+            this.externalMerge = reallyUse;
+            return this;
+        }
+
         public Builder iterate(@NonNull SentenceIterator iterator) {
             this.sentenceIterator = iterator;
             return this;
@@ -421,7 +446,7 @@ public class Glove extends SequenceVectors<VocabWord> {
 
             ret.elementsLearningAlgorithm = new GloVe.Builder<VocabWord>().learningRate(this.learningRate)
                             .shuffle(this.shuffle).symmetric(this.symmetric).xMax(this.xMax).alpha(this.alpha)
-                            .maxMemory(maxmemory).build();
+                            .maxMemory(maxmemory).blockTraining(blockTraining).externalMerge(externalMerge).build();
 
             return ret;
         }
@@ -0,0 +1,381 @@
+package org.deeplearning4j.models.glove;
+
+import lombok.NonNull;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * GloVe trainer working over plain arrays, as the reference C implementation does.
+ *
+ * CoOccurrence pairs are written once into a binary file of (index, index, weight) triples, which is
+ * memory-mapped and split into blocks. Every epoch blocks are taken in random order by worker threads, which
+ * update shared float[] weights, biases and AdaGrad histories without locks (Hogwild). Weights are copied
+ * from syn0 before training and written back after the last epoch.
+ *
+ * Both elements of a pair use the same syn0 row, as GloVe ElementsLearningAlgorithm does.
+ */
+public class GloveBlockTrainer {
+    private static final Logger log = LoggerFactory.getLogger(GloveBlockTrainer.class);
+
+    // int, int, float
+    private static final int TRIPLE_BYTES = 12;
+
+    // triples per mapped segment, so file size isn't limited by the 2GB mapping limit
+    private static final int SEGMENT_TRIPLES = 1 << 26;
+
+    private double xMax;
+    private double alpha;
+    private double learningRate;
+    private int workers;
+    private int blockSize;
+    private boolean shuffle;
+    private long seed;
+
+    private int vectorLength;
+    private float[] weights;
+    private float[] biases;
+    private float[] weightsHistory;
+    private float[] biasesHistory;
+
+    private GloveBlockTrainer() {}
+
+    /**
+     * Trains syn0 and bias over given cooccurrences for specified number of epochs
+     *
+     * @param pairs cooccurrence pairs with their weights, as returned by AbstractCoOccurrences.iterator()
+     * @param syn0 element vectors, updated in place
+     * @param bias element biases, updated in place
+     * @param epochs
+     */
+    public <T extends SequenceElement> void fit(@NonNull Iterator<Pair<Pair<T, T>, Double>> pairs,
+                    @NonNull INDArray syn0, @NonNull INDArray bias, int epochs) {
+        int numRows = syn0.rows();
+        this.vectorLength = syn0.columns();
+
+        File file = null;
+        try {
+            file = File.createTempFile("glove", "triples");
+            file.deleteOnExit();
+
+            long numTriples = writeTriples(pairs, file, numRows);
+            log.info("Training GloVe over [{}] cooccurrences with {} threads", numTriples, workers);
+
+            weights = syn0.dup('c').data().asFloat();
+            biases = bias.dup('c').data().asFloat();
+            weightsHistory = new float[weights.length];
+            biasesHistory = new float[biases.length];
+            Arrays.fill(weightsHistory, 1.0f);
+            Arrays.fill(biasesHistory, 1.0f);
+
+            List<ByteBuffer> blocks = mapBlocks(file, numTriples);
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                double cost = trainEpoch(blocks, new Random(seed + epoch));
+                log.info("Epoch [{}] cost: [{}]", epoch, numTriples > 0 ? cost / numTriples : 0.0);
+            }
+
+            syn0.assign(Nd4j.create(weights, syn0.shape(), 'c'));
+            bias.assign(Nd4j.create(biases, bias.shape(), 'c'));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            weights = null;
+            biases = null;
+            weightsHistory = null;
+            biasesHistory = null;
+
+            if (file != null && file.exists() && !file.delete())
+                log.warn("Unable to delete cooccurrences file [{}]", file.getAbsolutePath());
+        }
+    }
+
+    private <T extends SequenceElement> long writeTriples(Iterator<Pair<Pair<T, T>, Double>> pairs, File file,
+                    int numRows) throws IOException {
+        long numTriples = 0;
+        try (DataOutputStream output =
+                        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20))) {
+            while (pairs.hasNext()) {
+                Pair<Pair<T, T>, Double> pair = pairs.next();
+                double weight = pair.getSecond();
+                if (weight <= 0)
+                    continue;
+
+                int index1 = pair.getFirst().getFirst().getIndex();
+                int index2 = pair.getFirst().getSecond().getIndex();
+                if (index1 < 0 || index1 >= numRows)
+                    throw new IllegalArgumentException(
+                                    "Illegal index for word " + pair.getFirst().getFirst().getLabel());
+                if (index2 < 0 || index2 >= numRows)
+                    throw new IllegalArgumentException(
+                                    "Illegal index for word " + pair.getFirst().getSecond().getLabel());
+
+                output.writeInt(index1);
+                output.writeInt(index2);
+                output.writeFloat((float) weight);
+                numTriples++;
+            }
+        }
+        return numTriples;
+    }
+
+    /**
+     * Maps the file and slices it into blocks of blockSize triples. Blocks don't cross segment boundaries.
+     */
+    private List<ByteBuffer> mapBlocks(File file, long numTriples) throws IOException {
+        List<ByteBuffer> blocks = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            for (long start = 0; start < numTriples; start += SEGMENT_TRIPLES) {
+                int segmentTriples = (int) Math.min(SEGMENT_TRIPLES, numTriples - start);
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start * TRIPLE_BYTES,
+                                (long) segmentTriples * TRIPLE_BYTES);
+
+                for (int offset = 0; offset < segmentTriples; offset += blockSize) {
+                    int length = Math.min(blockSize, segmentTriples - offset);
+                    ByteBuffer block = segment.duplicate();
+                    block.position(offset * TRIPLE_BYTES);
+                    block.limit((offset + length) * TRIPLE_BYTES);
+
+                    // DataOutputStream writes big endian values
+                    blocks.add(block.slice().order(ByteOrder.BIG_ENDIAN));
+                }
+            }
+        }
+        return blocks;
+    }
+
+    private double trainEpoch(final List<ByteBuffer> blocks, Random random) {
+        // blocks are processed in random order every epoch
+        final int[] order = new int[blocks.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        if (shuffle)
+            shuffle(order, order.length, random);
+
+        final AtomicInteger nextBlock = new AtomicInteger(0);
+        final double[] costs = new double[workers];
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int x = 0; x < workers; x++) {
+            final int threadId = x;
+            final long threadSeed = random.nextLong();
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        costs[threadId] = trainBlocks(blocks, order, nextBlock, new Random(threadSeed));
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    }
+                }
+            }, "GloveBlockTrainer t." + x);
+            threads.add(thread);
+            thread.start();
+        }
+
+        double cost = 0;
+        for (int x = 0; x < workers; x++) {
+            try {
+                threads.get(x).join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            cost += costs[x];
+        }
+
+        if (error.get() != null)
+            throw new RuntimeException(error.get());
+
+        return cost;
+    }
+
+    private double trainBlocks(List<ByteBuffer> blocks, int[] order, AtomicInteger nextBlock, Random random) {
+        int[] index1 = new int[blockSize];
+        int[] index2 = new int[blockSize];
+        float[] values = new float[blockSize];
+        int[] positions = new int[blockSize];
+
+        double cost = 0;
+        int b;
+        while ((b = nextBlock.getAndIncrement()) < order.length) {
+            ByteBuffer block = blocks.get(order[b]).duplicate().order(ByteOrder.BIG_ENDIAN);
+            int length = block.remaining() / TRIPLE_BYTES;
+            for (int i = 0; i < length; i++) {
+                index1[i] = block.getInt();
+                index2[i] = block.getInt();
+                values[i] = block.getFloat();
+                positions[i] = i;
+            }
+
+            if (shuffle)
+                shuffle(positions, length, random);
+
+            for (int i = 0; i < length; i++) {
+                int p = positions[i];
+                cost += iterateSample(index1[p], index2[p], values[p]);
+            }
+        }
+        return cost;
+    }
+
+    private double iterateSample(int index1, int index2, float value) {
+        int l1 = index1 * vectorLength;
+        int l2 = index2 * vectorLength;
+
+        double diff = 0;
+        for (int k = 0; k < vectorLength; k++)
+            diff += weights[l1 + k] * weights[l2 + k];
+        diff += biases[index1] + biases[index2] - Math.log(value);
+
+        double fDiff = value > xMax ? diff : Math.pow(value / xMax, alpha) * diff;
+        if (Double.isNaN(fDiff) || Double.isInfinite(fDiff))
+            return 0;
+
+        double cost = 0.5 * fDiff * diff;
+        float gradient = (float) (fDiff * learningRate);
+
+        for (int k = 0; k < vectorLength; k++) {
+            float g1 = gradient * weights[l2 + k];
+            float g2 = gradient * weights[l1 + k];
+            weights[l1 + k] -= g1 / (float) Math.sqrt(weightsHistory[l1 + k]);
+            weights[l2 + k] -= g2 / (float) Math.sqrt(weightsHistory[l2 + k]);
+            weightsHistory[l1 + k] += g1 * g1;
+            weightsHistory[l2 + k] += g2 * g2;
+        }
+
+        biases[index1] -= gradient / (float) Math.sqrt(biasesHistory[index1]);
+        biases[index2] -= gradient / (float) Math.sqrt(biasesHistory[index2]);
+        biasesHistory[index1] += gradient * gradient;
+        biasesHistory[index2] += gradient * gradient;
+
+        return cost;
+    }
+
+    private static void shuffle(int[] array, int length, Random random) {
+        for (int i = length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+
+    public static class Builder {
+        protected double xMax = 100.0d;
+        protected double alpha = 0.75d;
+        protected double learningRate = 0.05d;
+        protected int workers = Runtime.getRuntime().availableProcessors();
+        protected int blockSize = 100000;
+        protected boolean shuffle = true;
+        protected long seed = 0;
+
+        public Builder() {
+
+        }
+
+        /**
+         * Parameter specifying cutoff in weighting function; default 100.0
+         *
+         * @param xMax
+         * @return
+         */
+        public Builder xMax(double xMax) {
+            this.xMax = xMax;
+            return this;
+        }
+
+        /**
+         * Parameter in exponent of weighting function; default 0.75
+         *
+         * @param alpha
+         * @return
+         */
+        public Builder alpha(double alpha) {
+            this.alpha = alpha;
+            return this;
+        }
+
+        /**
+         * Initial learning rate; default 0.05
+         *
+         * @param learningRate
+         * @return
+         */
+        public Builder learningRate(double learningRate) {
+            this.learningRate = learningRate;
+            return this;
+        }
+
+        /**
+         * Number of training threads; default: number of available processors
+         *
+         * @param workers
+         * @return
+         */
+        public Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Number of cooccurrences in a block, taken by a thread at once; default 100000
+         *
+         * @param blockSize
+         * @return
+         */
+        public Builder blockSize(int blockSize) {
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * Parameter specifying, if blocks and cooccurrences within blocks should be shuffled every epoch; default TRUE
+         *
+         * @param reallyShuffle
+         * @return
+         */
+        public Builder shuffle(boolean reallyShuffle) {
+            this.shuffle = reallyShuffle;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public GloveBlockTrainer build() {
+            if (workers < 1)
+                throw new IllegalArgumentException("Number of workers should be positive");
+            if (blockSize < 1)
+                throw new IllegalArgumentException("Block size should be positive");
+
+            GloveBlockTrainer ret = new GloveBlockTrainer();
+            ret.xMax = this.xMax;
+            ret.alpha = this.alpha;
+            ret.learningRate = this.learningRate;
+            ret.workers = this.workers;
+            ret.blockSize = this.blockSize;
+            ret.shuffle = this.shuffle;
+            ret.seed = this.seed;
+
+            return ret;
+        }
+    }
+}
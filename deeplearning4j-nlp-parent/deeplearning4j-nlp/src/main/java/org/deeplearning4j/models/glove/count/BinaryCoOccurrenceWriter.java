@@ -20,11 +20,18 @@ public class BinaryCoOccurrenceWriter<T extends SequenceElement> implements CoOc
     private static final Logger log = LoggerFactory.getLogger(BinaryCoOccurrenceWriter.class);
 
     public BinaryCoOccurrenceWriter(@NonNull File file) {
+        this(file, 100 * 1024 * 1024);
+    }
+
+    /**
+     * @param file
+     * @param bufferSize size of output buffer, in bytes
+     */
+    public BinaryCoOccurrenceWriter(@NonNull File file, int bufferSize) {
         this.file = file;
 
         try {
-            outputStream = new DataOutputStream(
-                            new BufferedOutputStream(new FileOutputStream(file), 100 * 1024 * 1024));
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), bufferSize));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
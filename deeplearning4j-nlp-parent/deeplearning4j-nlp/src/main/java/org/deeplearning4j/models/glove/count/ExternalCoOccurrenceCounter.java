@@ -0,0 +1,402 @@
+package org.deeplearning4j.models.glove.count;
+
+import lombok.NonNull;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * External memory cooccurrence counter: the whole cooccurrence map is never kept in memory.
+ *
+ * Every counting thread gets its own RunBuffer of fixed size. Once a buffer is full, its pairs are sorted and
+ * duplicates are summed; if that doesn't free at least half of the buffer, its content is spilled to disk as a
+ * sorted run, via BinaryCoOccurrenceWriter. After counting, all runs are k-way merged into the target writer,
+ * summing weights of equal pairs, so the output is sorted by element indexes.
+ *
+ * Memory used by all buffers together is bounded by the memory budget, 16 bytes per buffered pair.
+ *
+ * @param <T>
+ */
+public class ExternalCoOccurrenceCounter<T extends SequenceElement> {
+    private static final Logger log = LoggerFactory.getLogger(ExternalCoOccurrenceCounter.class);
+
+    // long key + double weight
+    private static final int ENTRY_BYTES = 16;
+    private static final int MIN_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 28;
+
+    // max number of runs opened at once during merge
+    private static final int MERGE_WIDTH = 64;
+
+    // output buffer of run writers
+    private static final int WRITER_BUFFER = 1024 * 1024;
+
+    private final VocabCache<T> vocabCache;
+    private final int bufferCapacity;
+    private final List<File> runs = new ArrayList<>();
+
+    private final AtomicLong pairsEmitted = new AtomicLong(0);
+    private final AtomicLong pairsSpilled = new AtomicLong(0);
+    private final AtomicLong bytesSpilled = new AtomicLong(0);
+    private long pairsMerged;
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * @param vocabCache vocabulary, used to resolve element indexes
+     * @param memoryBudget memory available for all buffers, in bytes
+     * @param workers number of buffers expected to be used at once
+     */
+    public ExternalCoOccurrenceCounter(@NonNull VocabCache<T> vocabCache, long memoryBudget, int workers) {
+        this.vocabCache = vocabCache;
+        long capacity = memoryBudget / ENTRY_BYTES / Math.max(workers, 1);
+        this.bufferCapacity = (int) Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY, capacity));
+
+        log.info("External cooccurrence counter: [{}] pairs per buffer, [{}] buffers", bufferCapacity, workers);
+    }
+
+    /**
+     * Returns new buffer. Buffers aren't thread safe, so each counting thread should use its own one.
+     */
+    public RunBuffer newBuffer() {
+        return new RunBuffer(bufferCapacity);
+    }
+
+    /**
+     * Returns number of pairs added to all buffers so far. Buffers report their pairs once they're combined.
+     */
+    public long getPairsEmitted() {
+        return pairsEmitted.get();
+    }
+
+    /**
+     * Returns number of pairs written to runs so far, after in-memory combining
+     */
+    public long getPairsSpilled() {
+        return pairsSpilled.get();
+    }
+
+    /**
+     * Returns number of bytes written to runs so far
+     */
+    public long getBytesSpilled() {
+        return bytesSpilled.get();
+    }
+
+    /**
+     * Returns number of runs waiting for merge
+     */
+    public synchronized int getNumberOfRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Returns number of distinct pairs written by merge()
+     */
+    public long getPairsMerged() {
+        return pairsMerged;
+    }
+
+    /**
+     * Returns number of pairs added to buffers per second, since this counter was created
+     */
+    public double getThroughput() {
+        long time = Math.max(System.currentTimeMillis() - startTime, 1);
+        return pairsEmitted.get() * 1000.0 / time;
+    }
+
+    private synchronized void addRun(File run) {
+        runs.add(run);
+    }
+
+    /**
+     * Merges all spilled runs into the target writer, summing weights of equal pairs. All buffers should be
+     * flushed before this call. Target writer isn't finished here.
+     *
+     * @param target
+     * @return number of distinct pairs written
+     */
+    public synchronized long merge(@NonNull CoOccurrenceWriter<T> target) {
+        try {
+            // too many runs are merged in several passes, so number of open files stays limited
+            while (runs.size() > MERGE_WIDTH) {
+                List<File> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += MERGE_WIDTH) {
+                    List<File> group = runs.subList(i, Math.min(i + MERGE_WIDTH, runs.size()));
+                    File run = createRunFile();
+                    BinaryCoOccurrenceWriter<T> writer = new BinaryCoOccurrenceWriter<>(run, WRITER_BUFFER);
+                    mergeRuns(group, writer);
+                    writer.finish();
+                    merged.add(run);
+                }
+                runs.clear();
+                runs.addAll(merged);
+            }
+
+            pairsMerged = mergeRuns(runs, target);
+            runs.clear();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        log.info("Cooccurrences merged: [{}] pairs emitted, [{}] pairs spilled, [{}] MB spilled, [{}] distinct pairs",
+                        pairsEmitted.get(), pairsSpilled.get(), bytesSpilled.get() / (1024 * 1024), pairsMerged);
+        return pairsMerged;
+    }
+
+    /**
+     * Merges given runs into writer, and deletes them
+     */
+    private long mergeRuns(List<File> files, CoOccurrenceWriter<T> writer) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(files.size(), 1));
+        List<RunReader> readers = new ArrayList<>();
+        long written = 0;
+        try {
+            for (File file : files) {
+                RunReader reader = new RunReader(file);
+                readers.add(reader);
+                if (reader.advance())
+                    queue.add(reader);
+            }
+
+            CoOccurrenceWeight<T> object = new CoOccurrenceWeight<>();
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                long key = reader.key;
+                double weight = reader.weight;
+                if (reader.advance())
+                    queue.add(reader);
+
+                // equal pairs of all runs are summed up
+                while (!queue.isEmpty() && queue.peek().key == key) {
+                    RunReader other = queue.poll();
+                    weight += other.weight;
+                    if (other.advance())
+                        queue.add(other);
+                }
+
+                write(writer, object, key, weight);
+                written++;
+            }
+        } finally {
+            for (RunReader reader : readers)
+                reader.close();
+
+            for (File file : files) {
+                if (file.exists() && !file.delete())
+                    log.warn("Unable to delete cooccurrences run [{}]", file.getAbsolutePath());
+            }
+        }
+        return written;
+    }
+
+    private void write(CoOccurrenceWriter<T> writer, CoOccurrenceWeight<T> object, long key, double weight) {
+        // writers don't keep objects, so single object is reused
+        object.setElement1(vocabCache.elementAtIndex((int) (key >>> 32)));
+        object.setElement2(vocabCache.elementAtIndex((int) key));
+        object.setWeight(weight);
+        writer.writeObject(object);
+    }
+
+    private static File createRunFile() throws IOException {
+        File file = File.createTempFile("aco", "run");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Fixed size buffer of (element, element, weight) triples, spilled to disk as a sorted run once it's full
+     */
+    public class RunBuffer {
+        private final long[] keys;
+        private final double[] weights;
+        private int size;
+        private int emitted;
+
+        private RunBuffer(int capacity) {
+            this.keys = new long[capacity];
+            this.weights = new double[capacity];
+        }
+
+        /**
+         * Adds weight of the pair of elements with specified indexes
+         */
+        public void add(int index1, int index2, double weight) {
+            keys[size] = ((long) index1 << 32) | (index2 & 0xFFFFFFFFL);
+            weights[size] = weight;
+            size++;
+            emitted++;
+
+            if (size == keys.length) {
+                combine();
+
+                // combining didn't help much, so the content goes to disk
+                if (size > keys.length / 2)
+                    spill();
+            }
+        }
+
+        /**
+         * Spills everything left in this buffer
+         */
+        public void flush() {
+            combine();
+            if (size > 0)
+                spill();
+        }
+
+        /**
+         * Sorts buffered pairs, and sums weights of equal pairs
+         */
+        private void combine() {
+            pairsEmitted.addAndGet(emitted);
+            emitted = 0;
+
+            sort(keys, weights, 0, size - 1);
+
+            int last = -1;
+            for (int i = 0; i < size; i++) {
+                if (last >= 0 && keys[last] == keys[i]) {
+                    weights[last] += weights[i];
+                } else {
+                    last++;
+                    keys[last] = keys[i];
+                    weights[last] = weights[i];
+                }
+            }
+            size = last + 1;
+        }
+
+        private void spill() {
+            try {
+                File run = createRunFile();
+                BinaryCoOccurrenceWriter<T> writer = new BinaryCoOccurrenceWriter<>(run, WRITER_BUFFER);
+                CoOccurrenceWeight<T> object = new CoOccurrenceWeight<>();
+                for (int i = 0; i < size; i++)
+                    write(writer, object, keys[i], weights[i]);
+                writer.finish();
+
+                addRun(run);
+                pairsSpilled.addAndGet(size);
+                bytesSpilled.addAndGet((long) size * ENTRY_BYTES);
+
+                log.debug("Run spilled: [{}] pairs, [{}] pairs/sec so far", size, (long) getThroughput());
+                size = 0;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Sorts keys in range [left, right], moving weights along
+     */
+    static void sort(long[] keys, double[] weights, int left, int right) {
+        while (right - left > 16) {
+            int middle = (left + right) >>> 1;
+
+            // median of three
+            if (keys[middle] < keys[left])
+                swap(keys, weights, middle, left);
+            if (keys[right] < keys[left])
+                swap(keys, weights, right, left);
+            if (keys[right] < keys[middle])
+                swap(keys, weights, right, middle);
+
+            long pivot = keys[middle];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (keys[i] < pivot)
+                    i++;
+                while (keys[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    swap(keys, weights, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            // recursion goes into smaller part, so stack depth stays logarithmic
+            if (j - left < right - i) {
+                sort(keys, weights, left, j);
+                left = i;
+            } else {
+                sort(keys, weights, i, right);
+                right = j;
+            }
+        }
+
+        for (int i = left + 1; i <= right; i++) {
+            long key = keys[i];
+            double weight = weights[i];
+            int j = i - 1;
+            while (j >= left && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                weights[j + 1] = weights[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            weights[j + 1] = weight;
+        }
+    }
+
+    private static void swap(long[] keys, double[] weights, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+
+        double weight = weights[i];
+        weights[i] = weights[j];
+        weights[j] = weight;
+    }
+
+    /**
+     * Sequential reader of a run, written by BinaryCoOccurrenceWriter
+     */
+    private static class RunReader implements Comparable<RunReader>, Closeable {
+        private final DataInputStream stream;
+        private long key;
+        private double weight;
+
+        private RunReader(File file) throws IOException {
+            this.stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024 * 1024));
+        }
+
+        /**
+         * Reads next pair, returns false at the end of run
+         */
+        private boolean advance() throws IOException {
+            try {
+                int index1 = stream.readInt();
+                int index2 = stream.readInt();
+                key = ((long) index1 << 32) | (index2 & 0xFFFFFFFFL);
+                weight = stream.readDouble();
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            return Long.compare(key, other.key);
+        }
+
+        @Override
+        public void close() {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // nothing to do here
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import lombok.NonNull;
 import lombok.Setter;
 import org.deeplearning4j.models.embeddings.WeightLookupTable;
 import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.embeddings.learning.BatchSequenceLearningAlgorithm;
 import org.deeplearning4j.models.embeddings.learning.ElementsLearningAlgorithm;
 import org.deeplearning4j.models.embeddings.learning.SequenceLearningAlgorithm;
 import org.deeplearning4j.models.embeddings.learning.impl.sequence.DM;
@@ -17,6 +18,7 @@ import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
 import org.deeplearning4j.models.sequencevectors.interfaces.VectorsListener;
 import org.deeplearning4j.models.sequencevectors.iterators.AbstractSequenceIterator;
 import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.sequencevectors.transformers.impl.SentenceTransformer;
 import org.deeplearning4j.models.word2vec.VocabWord;
 import org.deeplearning4j.models.word2vec.Word2Vec;
@@ -281,6 +283,116 @@ public class ParagraphVectors extends Word2Vec {
                         this.numEpochs * this.numIterations);
     }
 
+    /**
+     * This method calculates inferred vectors for a batch of texts in one pass: vectors of all texts are trained
+     * together, and every training step of the batch is executed as one aggregated op call
+     *
+     * @param texts
+     * @return matrix with one row per text, in the same order as input texts
+     */
+    public INDArray inferVectors(@NonNull List<String> texts, double learningRate, double minLearningRate,
+                    int iterations) {
+        if (tokenizerFactory == null)
+            throw new IllegalStateException("TokenizerFactory should be defined, prior to predict() call");
+
+        if (this.vocab == null || this.vocab.numWords() == 0)
+            reassignExistingModel();
+
+        List<List<VocabWord>> documents = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            List<String> tokens = tokenizerFactory.create(texts.get(i)).getTokens();
+            List<VocabWord> document = new ArrayList<>(tokens.size());
+            for (String token : tokens) {
+                if (vocab.containsWord(token)) {
+                    document.add(vocab.wordFor(token));
+                }
+            }
+
+            if (document.isEmpty())
+                throw new ND4JIllegalStateException(
+                                "Text " + i + " passed for inference has no matches in model vocabulary.");
+
+            documents.add(document);
+        }
+
+        return inferSequenceVectors(documents, learningRate, minLearningRate, iterations);
+    }
+
+    /**
+     * This method calculates inferred vectors for a batch of texts in one pass, with default parameters for
+     * learning rate and iterations
+     *
+     * @param texts
+     * @return matrix with one row per text, in the same order as input texts
+     */
+    public INDArray inferVectors(@NonNull List<String> texts) {
+        return inferVectors(texts, this.learningRate.get(), this.minLearningRate,
+                        this.numEpochs * this.numIterations);
+    }
+
+    /**
+     * This method calculates inferred vectors for a batch of documents in one pass: vectors of all documents are
+     * trained together, and every training step of the batch is executed as one aggregated op call
+     *
+     * @param documents
+     * @return matrix with one row per document, in the same order as input documents
+     */
+    public INDArray inferSequenceVectors(@NonNull List<List<VocabWord>> documents, double learningRate,
+                    double minLearningRate, int iterations) {
+
+        if (this.vocab == null || this.vocab.numWords() == 0)
+            reassignExistingModel();
+
+        SequenceLearningAlgorithm<VocabWord> learner;
+
+        synchronized (this) {
+            if (sequenceLearningAlgorithm == null) {
+                log.info("Creating new PV-DM learner...");
+                learner = new DM<VocabWord>();
+                learner.configure(vocab, lookupTable, configuration);
+                sequenceLearningAlgorithm = learner;
+            } else {
+                learner = sequenceLearningAlgorithm;
+            }
+        }
+
+        Random random = new Random();
+        List<Sequence<VocabWord>> sequences = new ArrayList<>(documents.size());
+        for (List<VocabWord> document : documents) {
+            if (document.isEmpty())
+                throw new ND4JIllegalStateException("Impossible to apply inference to empty list of words");
+
+            Sequence<VocabWord> sequence = new Sequence<>();
+            sequence.addElements(document);
+            sequence.setSequenceLabel(new VocabWord(1.0, String.valueOf(random.nextInt())));
+            sequences.add(sequence);
+        }
+
+        initLearners();
+
+        return inferSequences(learner, sequences, seed, learningRate, minLearningRate, iterations);
+    }
+
+    /**
+     * This method infers vectors for a batch of sequences in one pass if the learning algorithm supports it, and
+     * one sequence at a time otherwise
+     *
+     * @return matrix with one row per sequence, in the same order as input sequences
+     */
+    protected static <T extends SequenceElement> INDArray inferSequences(SequenceLearningAlgorithm<T> learner,
+                    List<Sequence<T>> sequences, long nextRandom, double learningRate, double minLearningRate,
+                    int iterations) {
+        if (learner instanceof BatchSequenceLearningAlgorithm)
+            return ((BatchSequenceLearningAlgorithm<T>) learner).inferSequences(sequences, nextRandom, learningRate,
+                            minLearningRate, iterations);
+
+        INDArray[] vectors = new INDArray[sequences.size()];
+        for (int i = 0; i < vectors.length; i++)
+            vectors[i] = learner.inferSequence(sequences.get(i), nextRandom, learningRate, minLearningRate,
+                            iterations);
+        return Nd4j.vstack(vectors);
+    }
+
     /**
      * This method implements batched inference, based on Java Future parallelism model.
      *
@@ -886,6 +998,21 @@ public class ParagraphVectors extends Word2Vec {
             return this;
         }
 
+        /**
+         * If set to true, corpus is digitized during the first epoch, and the following epochs read cached
+         * sequences of vocabulary indexes instead of the original iterator.
+         *
+         * Default value: FALSE
+         *
+         * @param reallyUse
+         * @return
+         */
+        @Override
+        public Builder useCorpusCache(boolean reallyUse) {
+            super.useCorpusCache(reallyUse);
+            return this;
+        }
+
         @Override
         public ParagraphVectors build() {
             presetTables();
@@ -957,6 +1084,7 @@ public class ParagraphVectors extends Word2Vec {
             ret.unknownElement = this.unknownElement;
             ret.seed = this.seed;
             ret.enableScavenger = this.enableScavenger;
+            ret.useCorpusCache = this.useCorpusCache;
             ret.vocabLimit = this.vocabLimit;
 
             ret.trainElementsVectors = this.trainElementsVectors;
@@ -21,12 +21,14 @@ import org.deeplearning4j.models.embeddings.wordvectors.WordVectorsImpl;
 import org.deeplearning4j.models.sequencevectors.enums.ListenerEvent;
 import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
 import org.deeplearning4j.models.sequencevectors.interfaces.VectorsListener;
+import org.deeplearning4j.models.sequencevectors.iterators.DigitizedCorpusCache;
 import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.word2vec.VocabWord;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
 import org.deeplearning4j.models.word2vec.wordstore.VocabConstructor;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.HashedVocabCache;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.rng.Random;
 import org.nd4j.linalg.factory.Nd4j;
@@ -37,7 +39,6 @@ import java.util.*;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -69,6 +70,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
 
     protected boolean enableScavenger = false;
     protected int vocabLimit = 0;
+    protected boolean useCorpusCache = false;
 
 
     @Setter
@@ -106,7 +108,10 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
      * Builds vocabulary from provided SequenceIterator instance
      */
     public void buildVocab() {
-
+        if (vocab instanceof HashedVocabCache) {
+            buildHashedVocab();
+            return;
+        }
 
         VocabConstructor<T> constructor = new VocabConstructor.Builder<T>().addSource(iterator, minWordFrequency)
                         .setTargetVocabCache(vocab).fetchLabels(trainSequenceVectors).setStopWords(stopWords)
@@ -160,6 +165,29 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
     }
 
 
+    /**
+     * Hashed vocabulary has fixed size, so it's built in one streaming pass over the iterator,
+     * without sorting, truncation or Huffman tree
+     */
+    protected void buildHashedVocab() {
+        log.info("Starting hashed vocabulary building...");
+        Set<String> stopList = stopWords == null ? new HashSet<String>() : new HashSet<>(stopWords);
+
+        iterator.reset();
+        while (iterator.hasMoreSequences()) {
+            Sequence<T> sequence = iterator.nextSequence();
+            for (T element : sequence.getElements()) {
+                if (!stopList.contains(element.getLabel()))
+                    vocab.incrementWordCount(element.getLabel());
+            }
+            vocab.incrementTotalDocCount();
+        }
+        iterator.reset();
+
+        log.info("Hashed vocabulary built: [{}] elements observed in [{}] sequences",
+                        vocab.totalWordOccurrences(), vocab.totalNumberOfDocs());
+    }
+
     protected synchronized void initLearners() {
         if (!configured) {
             log.info("Building learning algorithms:");
@@ -207,6 +235,17 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         if (iterator == null)
             throw new IllegalStateException("You can't fit() data without SequenceIterator defined");
 
+        if (vocab instanceof HashedVocabCache) {
+            if (trainSequenceVectors)
+                throw new DL4JInvalidConfigException("Hashed vocabulary can be used for elements training only");
+            if (configuration.isUseHierarchicSoftmax() || configuration.getNegative() <= 0)
+                throw new DL4JInvalidConfigException(
+                                "Hashed vocabulary has no Huffman tree: please disable hierarchic softmax and use negative sampling");
+            if (useCorpusCache)
+                throw new DL4JInvalidConfigException(
+                                "Corpus cache can't be used with hashed vocabulary, since elements can't be restored from buckets");
+        }
+
         if (resetModel || (lookupTable != null && vocab != null && vocab.numWords() == 0)) {
             // build vocabulary from scratches
             buildVocab();
@@ -280,12 +319,22 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         if (this.stopWords == null)
             this.stopWords = new ArrayList<>();
 
+        // corpus gets digitized during the first epoch, and the following epochs read cached sequences
+        DigitizedCorpusCache<T> corpusCache = null;
+        if (useCorpusCache && numEpochs > 1)
+            corpusCache = new DigitizedCorpusCache<>(vocab);
+
         final AtomicLong wordsCounter = new AtomicLong(0);
         for (int currentEpoch = 1; currentEpoch <= numEpochs; currentEpoch++) {
             final AtomicLong linesCounter = new AtomicLong(0);
 
+            // previous epoch could stop before the cache was finished, so it's rebuilt from scratch
+            if (corpusCache != null && !corpusCache.isComplete())
+                corpusCache.begin();
 
-            AsyncSequencer sequencer = new AsyncSequencer(this.iterator, this.stopWords);
+            AsyncSequencer sequencer = corpusCache != null && corpusCache.isComplete()
+                            ? new AsyncSequencer(corpusCache, this.stopWords, corpusCache)
+                            : new AsyncSequencer(this.iterator, this.stopWords, corpusCache);
             sequencer.start();
 
 
@@ -335,6 +384,9 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             }
         }
 
+        if (corpusCache != null)
+            corpusCache.close();
+
         log.info("Time spent on training: {} ms", System.currentTimeMillis() - timeSpent.get());
     }
 
@@ -407,6 +459,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
 
         protected boolean enableScavenger = false;
         protected int vocabLimit;
+        protected boolean useCorpusCache = false;
 
         // defaults values for learning algorithms are set here
         protected ElementsLearningAlgorithm<T> elementsLearningAlgorithm = new SkipGram<>();
@@ -935,6 +988,23 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             return this;
         }
 
+        /**
+         * If set to true, corpus is digitized during the first epoch into a memory-mapped cache of vocabulary indexes,
+         * and the following epochs read sequences from this cache instead of the SequenceIterator, so there's no
+         * repeated tokenization or vocabulary lookups. Cache file is removed once training is finished.
+         *
+         * PLEASE NOTE: it has no effect for single epoch, and can't be used with HashedVocabCache.
+         *
+         * Default value: FALSE
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder<T> useCorpusCache(boolean reallyUse) {
+            this.useCorpusCache = reallyUse;
+            return this;
+        }
+
         /**
          * Build SequenceVectors instance with defined settings/options
          * @return
@@ -983,6 +1053,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
 
             vectors.existingModel = this.existingVectors;
             vectors.enableScavenger = this.enableScavenger;
+            vectors.useCorpusCache = this.useCorpusCache;
 
             this.configuration.setLearningRate(this.learningRate);
             this.configuration.setLayersSize(layerSize);
@@ -1023,13 +1094,20 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         private final LinkedBlockingQueue<Sequence<T>> buffer;
         //     private final AtomicLong linesCounter;
         private final int limitUpper;
-        private final int limitLower;
         private AtomicBoolean isRunning = new AtomicBoolean(true);
         private AtomicLong nextRandom;
         private Collection<String> stopList;
 
-        public AsyncSequencer(SequenceIterator<T> iterator, @NonNull Collection<String> stopList) {
+        // queued after the last sequence, and put back by whoever takes it, so every worker sees it
+        private final Sequence<T> endOfStream = new Sequence<>();
+
+        // digitized sequences are appended here, unless they are read from it
+        private final DigitizedCorpusCache<T> corpusCache;
+
+        public AsyncSequencer(SequenceIterator<T> iterator, @NonNull Collection<String> stopList,
+                        DigitizedCorpusCache<T> corpusCache) {
             this.iterator = iterator;
+            this.corpusCache = corpusCache;
             //            this.linesCounter = linesCounter;
             this.setName("AsyncSequencer thread");
             this.nextRandom = new AtomicLong(workers + 1);
@@ -1037,7 +1115,6 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             this.stopList = stopList;
             this.setDaemon(true);
 
-            limitLower = workers * batchSize;
             limitUpper = workers * batchSize * 2;
 
             this.buffer = new LinkedBlockingQueue<>(limitUpper);
@@ -1046,73 +1123,127 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         @Override
         public void run() {
             isRunning.set(true);
-            while (this.iterator.hasMoreSequences()) {
-
-                // if buffered level is below limitLower, we're going to fetch limitUpper number of strings from fetcher
-                if (buffer.size() < limitLower) {
-                    update();
-                    AtomicInteger linesLoaded = new AtomicInteger(0);
-                    while (linesLoaded.getAndIncrement() < limitUpper && this.iterator.hasMoreSequences()) {
-                        Sequence<T> document = this.iterator.nextSequence();
-
-                        /*
-                            We can't hope/assume that underlying iterator contains synchronized elements
-                            That's why we're going to rebuild sequence from vocabulary
-                          */
-                        Sequence<T> newSequence = new Sequence<>();
-
-                        if (document.getSequenceLabel() != null) {
-                            T newLabel = vocab.wordFor(document.getSequenceLabel().getLabel());
-                            if (newLabel != null)
-                                newSequence.setSequenceLabel(newLabel);
-                        }
+            update();
+            try {
+                // buffer.put() blocks while workers are behind, so there's no need to poll buffer level here
+                while (this.iterator.hasMoreSequences()) {
+                    Sequence<T> document = this.iterator.nextSequence();
 
-                        for (T element : document.getElements()) {
-                            if (stopList.contains(element.getLabel()))
-                                continue;
-                            T realElement = vocab.wordFor(element.getLabel());
+                    // cached sequences are synchronized with vocabulary already
+                    if (corpusCache != null && this.iterator == corpusCache) {
+                        buffer.put(document);
+                        continue;
+                    }
 
-                            // please note: this serquence element CAN be absent in vocab, due to minFreq or stopWord or whatever else
-                            if (realElement != null) {
-                                newSequence.addElement(realElement);
-                            } else if (useUnknown && unknownElement != null) {
-                                newSequence.addElement(unknownElement);
-                            }
+                    /*
+                        We can't hope/assume that underlying iterator contains synchronized elements
+                        That's why we're going to rebuild sequence from vocabulary
+                      */
+                    Sequence<T> newSequence = new Sequence<>();
+
+                    if (document.getSequenceLabel() != null) {
+                        T newLabel = vocab.wordFor(document.getSequenceLabel().getLabel());
+                        if (newLabel != null)
+                            newSequence.setSequenceLabel(newLabel);
+                    }
+
+                    for (T element : document.getElements()) {
+                        if (stopList.contains(element.getLabel()))
+                            continue;
+                        T realElement = vocab.wordFor(element.getLabel());
+
+                        // please note: this serquence element CAN be absent in vocab, due to minFreq or stopWord or whatever else
+                        if (realElement != null) {
+                            newSequence.addElement(realElement);
+                        } else if (useUnknown && unknownElement != null) {
+                            newSequence.addElement(unknownElement);
                         }
+                    }
 
-                        // due to subsampling and null words, new sequence size CAN be 0, so there's no need to insert empty sequence into processing chain
-                        if (!newSequence.getElements().isEmpty())
-                            try {
-                                buffer.put(newSequence);
-                            } catch (InterruptedException e) {
-                                //
-                            }
+                    // due to subsampling and null words, new sequence size CAN be 0, so there's no need to insert empty sequence into processing chain
+                    if (!newSequence.getElements().isEmpty()) {
+                        if (corpusCache != null)
+                            corpusCache.append(newSequence);
 
-                        linesLoaded.incrementAndGet();
+                        buffer.put(newSequence);
                     }
-                } else {
+                }
+
+                if (corpusCache != null)
+                    corpusCache.finish();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                isRunning.set(false);
+                // workers wait for end of stream, so it's queued even if this thread was interrupted:
+                // the interrupt flag is cleared for put(), and restored afterwards
+                boolean interrupted = Thread.interrupted();
+                while (true) {
                     try {
-                        Thread.sleep(50);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                        buffer.put(endOfStream);
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
                     }
                 }
+                if (interrupted)
+                    Thread.currentThread().interrupt();
             }
-            isRunning.set(false);
         }
 
         public boolean hasMoreLines() {
             // statement order does matter here, since there's possible race condition
-            return !buffer.isEmpty() || isRunning.get();
+            Sequence<T> head = buffer.peek();
+            return (head != null && head != endOfStream) || isRunning.get();
         }
 
         public Sequence<T> nextSentence() {
             try {
-                return buffer.poll(3L, TimeUnit.SECONDS);
+                Sequence<T> sequence = buffer.poll(3L, TimeUnit.SECONDS);
+                if (sequence == endOfStream) {
+                    buffer.offer(endOfStream);
+                    return null;
+                }
+                return sequence;
             } catch (Exception e) {
                 return null;
             }
         }
+
+        /**
+         * This method blocks until at least one sequence is available, and then moves up to max sequences to target
+         *
+         * @param target list to be filled, it's cleared first
+         * @param max
+         * @return false if there are no more sequences
+         */
+        public boolean nextSequences(List<Sequence<T>> target, int max) {
+            target.clear();
+
+            Sequence<T> first;
+            try {
+                first = buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            if (first == endOfStream) {
+                buffer.offer(endOfStream);
+                return false;
+            }
+
+            target.add(first);
+            buffer.drainTo(target, max - 1);
+
+            // end of stream is always the last element, and the buffer is empty once it's taken
+            int last = target.size() - 1;
+            if (target.get(last) == endOfStream) {
+                target.remove(last);
+                buffer.offer(endOfStream);
+            }
+            return true;
+        }
     }
 
     /**
@@ -1122,6 +1253,9 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
      * Please note, they do not iterate the sentences over and over, each sentence processed only once.
      * Training corpus iteration is implemented in fit() method.
      *
+     * Words and lines processed are counted locally, and added to shared counters once per batch, so workers
+     * don't contend on them for every sequence. Learning rate decay uses the shared count as of the last batch,
+     * plus the words processed locally since then.
      */
     private class VectorCalculationsThread extends Thread implements Runnable {
         private final int threadId;
@@ -1136,6 +1270,11 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         private final long startTime;
         private final int totalEpochs;
 
+        // shared counters as of the last publish(), and local counts since then
+        private long wordsSeen;
+        private long localWords;
+        private long localLines;
+
         /*
                 Long constructors suck, so this should be reduced to something reasonable later
          */
@@ -1157,24 +1296,11 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         @Override
         public void run() {
             Nd4j.getAffinityManager().getDeviceForCurrentThread();
-            while (digitizer.hasMoreLines()) {
+            wordsSeen = wordsCounter.get();
+            double alpha = 0.025;
+            List<Sequence<T>> sequences = new ArrayList<>(batchSize);
+            while (digitizer.nextSequences(sequences, batchSize)) {
                 try {
-                    // get current sentence as list of VocabularyWords
-                    List<Sequence<T>> sequences = new ArrayList<>();
-                    for (int x = 0; x < batchSize; x++) {
-                        if (digitizer.hasMoreLines()) {
-                            Sequence<T> sequence = digitizer.nextSentence();
-                            if (sequence != null) {
-                                sequences.add(sequence);
-                            }
-                        }
-                    }
-                    double alpha = 0.025;
-
-                    if (sequences.isEmpty()) {
-                        continue;
-                    }
-
                     // getting back number of iterations
                     for (int i = 0; i < numIterations; i++) {
 
@@ -1182,40 +1308,16 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                         for (int x = 0; x < sequences.size(); x++) {
                             Sequence<T> sequence = sequences.get(x);
 
-                            //log.info("LR before: {}; wordsCounter: {}; totalWordsCount: {}", learningRate.get(), this.wordsCounter.get(), this.totalWordsCount);
                             alpha = Math.max(minLearningRate,
-                                            learningRate.get() * (1 - (1.0 * this.wordsCounter.get()
+                                            learningRate.get() * (1 - (1.0 * (wordsSeen + localWords)
                                                             / ((double) this.totalWordsCount) / (numIterations
                                                                             * totalEpochs))));
 
                             trainSequence(sequence, nextRandom, alpha);
 
                             // increment processed word count, please note: this affects learningRate decay
-                            totalLines.incrementAndGet();
-                            this.wordsCounter.addAndGet(sequence.getElements().size());
-
-                            if (totalLines.get() % 100000 == 0) {
-                                long currentTime = System.currentTimeMillis();
-                                long timeSpent = currentTime - timer.get();
-
-                                timer.set(currentTime);
-                                long totalTimeSpent = currentTime - startTime;
-
-                                double seqSec = (100000.0 / ((double) timeSpent / 1000.0));
-                                double wordsSecTotal = this.wordsCounter.get() / ((double) totalTimeSpent / 1000.0);
-
-                                log.info("Epoch: [{}]; Words vectorized so far: [{}];  Lines vectorized so far: [{}]; Seq/sec: [{}]; Words/sec: [{}]; learningRate: [{}]",
-                                                this.epochNumber, this.wordsCounter.get(), this.totalLines.get(),
-                                                String.format("%.2f", seqSec), String.format("%.2f", wordsSecTotal),
-                                                alpha);
-                            }
-                            if (eventListeners != null && !eventListeners.isEmpty()) {
-                                for (VectorsListener listener : eventListeners) {
-                                    if (listener.validateEvent(ListenerEvent.LINE, totalLines.get()))
-                                        listener.processEvent(ListenerEvent.LINE, SequenceVectors.this,
-                                                        totalLines.get());
-                                }
-                            }
+                            localLines++;
+                            localWords += sequence.getElements().size();
                         }
 
                         if (eventListeners != null && eventListeners.size() > 0) {
@@ -1226,7 +1328,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                         }
                     }
 
-
+                    publish(alpha);
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
@@ -1240,5 +1342,44 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                 sequenceLearningAlgorithm.finish();
             }
         }
+
+        /**
+         * Adds local counts to shared counters, and fires line-based logging and events for every line number
+         * passed since the previous call of any worker
+         */
+        private void publish(double alpha) {
+            if (localLines == 0)
+                return;
+
+            long lines = totalLines.addAndGet(localLines);
+            long words = wordsCounter.addAndGet(localWords);
+            long previousLines = lines - localLines;
+
+            wordsSeen = words;
+            localWords = 0;
+            localLines = 0;
+
+            if (previousLines / 100000 != lines / 100000) {
+                long currentTime = System.currentTimeMillis();
+                long timeSpent = currentTime - timer.getAndSet(currentTime);
+                long totalTimeSpent = currentTime - startTime;
+
+                double seqSec = (100000.0 / ((double) timeSpent / 1000.0));
+                double wordsSecTotal = words / ((double) totalTimeSpent / 1000.0);
+
+                log.info("Epoch: [{}]; Words vectorized so far: [{}];  Lines vectorized so far: [{}]; Seq/sec: [{}]; Words/sec: [{}]; learningRate: [{}]",
+                                this.epochNumber, words, lines, String.format("%.2f", seqSec),
+                                String.format("%.2f", wordsSecTotal), alpha);
+            }
+
+            if (eventListeners != null && !eventListeners.isEmpty()) {
+                for (long line = previousLines + 1; line <= lines; line++) {
+                    for (VectorsListener listener : eventListeners) {
+                        if (listener.validateEvent(ListenerEvent.LINE, line))
+                            listener.processEvent(ListenerEvent.LINE, SequenceVectors.this, line);
+                    }
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,264 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.models.sequencevectors.iterators;
+
+import lombok.NonNull;
+import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
+import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * Corpus cache holding sequences as vocabulary indexes in a memory-mapped file.
+ *
+ * Sequences are appended once, during the first pass over the original SequenceIterator, after they were
+ * synchronized with the vocabulary. After finish() this class works as SequenceIterator over the cached
+ * sequences: elements are taken from an index-to-element array, so there's no tokenization and no vocabulary
+ * lookup involved.
+ *
+ * Each sequence is stored as the number of labels, the number of elements, then label indexes and element
+ * indexes. Vocabulary indexes must stay the same while the cache is used. Subsampling isn't applied here,
+ * learning algorithms apply it on the fly, so every epoch gets its own sample.
+ *
+ * Not thread safe: sequences should be appended and read by a single thread.
+ */
+public class DigitizedCorpusCache<T extends SequenceElement> implements SequenceIterator<T>, Closeable {
+    protected static final Logger log = LoggerFactory.getLogger(DigitizedCorpusCache.class);
+
+    // every mapped segment holds 2^SEGMENT_SHIFT ints, so file size isn't limited by the 2GB mapping limit
+    private static final int SEGMENT_SHIFT = 26;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private final VocabCache<T> vocabCache;
+    private final File file;
+    private DataOutputStream output;
+
+    private long length;
+    private long sequences;
+    private boolean complete = false;
+
+    private IntBuffer[] segments;
+    private Object[] elements;
+    private long position;
+    private int sequenceId;
+
+    /**
+     * Creates new cache, backed by a temporary file, which is removed by close()
+     *
+     * @param vocabCache vocabulary the cached sequences are synchronized with
+     */
+    public DigitizedCorpusCache(@NonNull VocabCache<T> vocabCache) {
+        this(vocabCache, createTempFile());
+    }
+
+    /**
+     * Creates new cache, backed by specified file, which is removed by close()
+     *
+     * @param vocabCache vocabulary the cached sequences are synchronized with
+     * @param file
+     */
+    public DigitizedCorpusCache(@NonNull VocabCache<T> vocabCache, @NonNull File file) {
+        this.vocabCache = vocabCache;
+        this.file = file;
+        begin();
+    }
+
+    /**
+     * Starts appending sequences from scratch. Sequences appended before, without finish(), are discarded, so a
+     * pass over the original iterator that was stopped halfway can be repeated.
+     */
+    public void begin() {
+        if (complete)
+            throw new IllegalStateException("Cache is complete already, sequences can't be appended after finish()");
+
+        try {
+            if (output != null)
+                output.close();
+            // FileOutputStream truncates the file
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        length = 0;
+        sequences = 0;
+    }
+
+    private static File createTempFile() {
+        try {
+            File file = File.createTempFile("corpus", ".bin");
+            file.deleteOnExit();
+            return file;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Appends sequence to the cache. All elements and labels are expected to be present in the vocabulary.
+     *
+     * @param sequence
+     */
+    public void append(@NonNull Sequence<T> sequence) {
+        if (complete)
+            throw new IllegalStateException("Sequences can't be appended after finish()");
+
+        try {
+            int numLabels = sequence.getSequenceLabels() == null ? 0 : sequence.getSequenceLabels().size();
+            int numElements = sequence.getElements().size();
+
+            output.writeInt(numLabels);
+            output.writeInt(numElements);
+            for (int i = 0; i < numLabels; i++)
+                output.writeInt(sequence.getSequenceLabels().get(i).getIndex());
+            for (T element : sequence.getElements())
+                output.writeInt(element.getIndex());
+
+            length += 2 + numLabels + numElements;
+            sequences++;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Completes the cache: after this call no more sequences can be appended, and cached sequences can be read
+     */
+    public void finish() {
+        if (complete)
+            return;
+
+        int numWords = vocabCache.numWords();
+        elements = new Object[numWords];
+        for (T element : vocabCache.vocabWords()) {
+            if (element.getIndex() >= 0 && element.getIndex() < numWords)
+                elements[element.getIndex()] = element;
+        }
+
+        try {
+            output.close();
+            output = null;
+
+            int numSegments = (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            segments = new IntBuffer[numSegments];
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                for (int s = 0; s < numSegments; s++) {
+                    long offset = (long) s << SEGMENT_SHIFT;
+                    long size = Math.min(SEGMENT_MASK + 1L, length - offset);
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset * 4, size * 4);
+
+                    // DataOutputStream writes big endian ints
+                    segments[s] = buffer.order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        complete = true;
+        log.info("Corpus cache built: [{}] sequences, [{}] MB", sequences, (length * 4) / (1024 * 1024));
+    }
+
+    /**
+     * Returns true if finish() was called, so cached sequences can be read
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns number of cached sequences
+     */
+    public long numSequences() {
+        return sequences;
+    }
+
+    private int intAt(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T elementAt(long index) {
+        int idx = intAt(index);
+        T element = idx >= 0 && idx < elements.length ? (T) elements[idx] : null;
+        if (element == null)
+            throw new IllegalStateException("Element with index [" + idx + "] isn't present in vocabulary");
+        return element;
+    }
+
+    @Override
+    public boolean hasMoreSequences() {
+        if (!complete)
+            throw new IllegalStateException("Cached sequences can't be read before finish()");
+        return position < length;
+    }
+
+    @Override
+    public Sequence<T> nextSequence() {
+        if (!hasMoreSequences())
+            throw new NoSuchElementException();
+
+        int numLabels = intAt(position);
+        int numElements = intAt(position + 1);
+        position += 2;
+
+        Sequence<T> sequence = new Sequence<>();
+        sequence.setSequenceId(sequenceId++);
+        for (int i = 0; i < numLabels; i++)
+            sequence.addSequenceLabel(elementAt(position++));
+        for (int i = 0; i < numElements; i++)
+            sequence.addElement(elementAt(position++));
+
+        return sequence;
+    }
+
+    @Override
+    public void reset() {
+        position = 0;
+        sequenceId = 0;
+    }
+
+    /**
+     * Releases the cache and removes its file
+     */
+    @Override
+    public void close() {
+        try {
+            if (output != null)
+                output.close();
+        } catch (IOException e) {
+            // we're removing this file anyway
+        }
+        output = null;
+        segments = null;
+        elements = null;
+        complete = false;
+
+        if (file.exists() && !file.delete())
+            log.warn("Unable to delete corpus cache file [{}]", file.getAbsolutePath());
+    }
+}
@@ -534,6 +534,21 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
             return this;
         }
 
+        /**
+         * If set to true, corpus is digitized during the first epoch, and the following epochs read cached
+         * sequences of vocabulary indexes instead of the original iterator.
+         *
+         * Default value: FALSE
+         *
+         * @param reallyUse
+         * @return
+         */
+        @Override
+        public Builder useCorpusCache(boolean reallyUse) {
+            super.useCorpusCache(reallyUse);
+            return this;
+        }
+
         public Word2Vec build() {
             presetTables();
 
@@ -580,6 +595,7 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
             ret.variableWindows = this.variableWindows;
             ret.seed = this.seed;
             ret.enableScavenger = this.enableScavenger;
+            ret.useCorpusCache = this.useCorpusCache;
             ret.vocabLimit = this.vocabLimit;
 
 
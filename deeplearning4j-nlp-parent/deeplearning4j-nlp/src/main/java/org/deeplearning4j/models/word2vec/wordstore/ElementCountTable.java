@@ -0,0 +1,254 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.models.word2vec.wordstore;
+
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+
+/**
+ * Open addressing label-to-count table over primitive arrays, used by VocabConstructor: every thread counts
+ * into its own tables, and tables of the same shard are merged afterwards, so there's no shared state while
+ * scanning the corpus.
+ *
+ * For every label it keeps the number of occurrences, the number of sequences it was seen in, and the first
+ * element seen with this label, which becomes the vocabulary element.
+ *
+ * Not thread safe.
+ */
+class ElementCountTable<T extends SequenceElement> {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private String[] keys;
+    private long[] counts;
+    private long[] sequences;
+    // id of the last sequence that updated the entry, so sequences are counted once
+    private long[] lastSequence;
+    private Object[] elements;
+    private int size;
+    private int mask;
+
+    ElementCountTable() {
+        this(16);
+    }
+
+    ElementCountTable(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        counts = new long[capacity];
+        sequences = new long[capacity];
+        lastSequence = new long[capacity];
+        elements = new Object[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    /**
+     * Murmur3 finalizer, so slots don't depend on the same hash bits as shards
+     */
+    static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Returns shard of specified label, out of numShards
+     */
+    static int shardOf(String label, int numShards) {
+        return (label.hashCode() & 0x7FFFFFFF) % numShards;
+    }
+
+    /**
+     * Returns slot of specified label, inserting it with zero counts if it's absent
+     */
+    private int slot(String label, T element) {
+        int i = mix(label.hashCode()) & mask;
+        while (keys[i] != null) {
+            if (keys[i].equals(label))
+                return i;
+            i = (i + 1) & mask;
+        }
+
+        if (size + 1 > keys.length * LOAD_FACTOR) {
+            grow();
+            return slot(label, element);
+        }
+
+        keys[i] = label;
+        elements[i] = element;
+        size++;
+        return i;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        long[] oldCounts = counts;
+        long[] oldSequences = sequences;
+        long[] oldLastSequence = lastSequence;
+        Object[] oldElements = elements;
+
+        allocate(oldKeys.length * 2);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null)
+                put(oldKeys[j], oldElements[j], oldCounts[j], oldSequences[j], oldLastSequence[j]);
+        }
+    }
+
+    private void put(String label, Object element, long count, long sequencesCount, long last) {
+        int i = mix(label.hashCode()) & mask;
+        while (keys[i] != null)
+            i = (i + 1) & mask;
+
+        keys[i] = label;
+        elements[i] = element;
+        counts[i] = count;
+        sequences[i] = sequencesCount;
+        lastSequence[i] = last;
+        size++;
+    }
+
+    /**
+     * Counts one occurrence of the element within the sequence with specified id. Ids should be positive.
+     */
+    void increment(String label, T element, long sequenceId) {
+        int i = slot(label, element);
+        counts[i]++;
+        if (lastSequence[i] != sequenceId) {
+            lastSequence[i] = sequenceId;
+            sequences[i]++;
+        }
+    }
+
+    /**
+     * Adds sequence label with frequency 1, unless it's already here
+     */
+    void putLabel(String label, T element) {
+        int i = slot(label, element);
+        if (counts[i] == 0) {
+            counts[i] = 1;
+            sequences[i] = 1;
+        }
+    }
+
+    /**
+     * Adds counts of all entries of another table, sequence labels keep frequency 1
+     */
+    @SuppressWarnings("unchecked")
+    void merge(ElementCountTable<T> other) {
+        for (int j = 0; j < other.keys.length; j++) {
+            if (other.keys[j] == null)
+                continue;
+
+            int i = slot(other.keys[j], (T) other.elements[j]);
+            if (((T) elements[i]).isLabel()) {
+                counts[i] = 1;
+                sequences[i] = 1;
+            } else {
+                counts[i] += other.counts[j];
+                sequences[i] += other.sequences[j];
+            }
+        }
+    }
+
+    /**
+     * Removes entries with frequency below minFrequency, except special elements and labels
+     *
+     * @return number of entries removed
+     */
+    @SuppressWarnings("unchecked")
+    int filter(long minFrequency) {
+        int before = size;
+
+        String[] oldKeys = keys;
+        long[] oldCounts = counts;
+        long[] oldSequences = sequences;
+        long[] oldLastSequence = lastSequence;
+        Object[] oldElements = elements;
+
+        int remaining = 0;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null && keep((T) oldElements[j], oldCounts[j], minFrequency))
+                remaining++;
+        }
+
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < remaining)
+            capacity <<= 1;
+        allocate(capacity);
+
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null && keep((T) oldElements[j], oldCounts[j], minFrequency))
+                put(oldKeys[j], oldElements[j], oldCounts[j], oldSequences[j], oldLastSequence[j]);
+        }
+
+        return before - size;
+    }
+
+    private static boolean keep(SequenceElement element, long count, long minFrequency) {
+        return count >= minFrequency || element.isSpecial() || element.isLabel();
+    }
+
+    int size() {
+        return size;
+    }
+
+    long count(String label) {
+        int i = indexOf(label);
+        return i < 0 ? 0 : counts[i];
+    }
+
+    long sequencesCount(String label) {
+        int i = indexOf(label);
+        return i < 0 ? 0 : sequences[i];
+    }
+
+    private int indexOf(String label) {
+        int i = mix(label.hashCode()) & mask;
+        while (keys[i] != null) {
+            if (keys[i].equals(label))
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Transfers all entries into the cache: stored elements get frequency and sequences count of their entries
+     */
+    @SuppressWarnings("unchecked")
+    void exportTo(VocabCache<T> cache) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null)
+                continue;
+
+            T element = (T) elements[i];
+            element.setElementFrequency(counts[i]);
+            element.setSequencesCount(sequences[i]);
+            cache.addToken(element);
+        }
+    }
+}
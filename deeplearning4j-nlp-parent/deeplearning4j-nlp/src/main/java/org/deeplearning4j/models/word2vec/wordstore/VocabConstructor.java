@@ -16,7 +16,6 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.LockSupport;
 
 /**
  *
@@ -29,6 +28,8 @@ import java.util.concurrent.locks.LockSupport;
  * @author raver119@gmail.com
  */
 public class VocabConstructor<T extends SequenceElement> {
+    private static final int BATCH_SIZE = 128;
+
     private List<VocabSource<T>> sources = new ArrayList<>();
     private VocabCache<T> cache;
     private Collection<String> stopWords;
@@ -177,133 +178,145 @@ public class VocabConstructor<T extends SequenceElement> {
         if (cache == null)
             cache = new AbstractCache.Builder<T>().build();
         log.debug("Target vocab size before building: [" + cache.numWords() + "]");
-        final AtomicLong loopCounter = new AtomicLong(0);
 
         AbstractCache<T> topHolder = new AbstractCache.Builder<T>().minElementFrequency(0).build();
 
         int cnt = 0;
         int numProc = Runtime.getRuntime().availableProcessors();
-        int numThreads = Math.max(numProc / 2, 2);
-        ExecutorService executorService = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
-                        new LinkedTransferQueue<Runnable>());
-        final AtomicLong execCounter = new AtomicLong(0);
-        final AtomicLong finCounter = new AtomicLong(0);
-
-        for (VocabSource<T> source : sources) {
-            SequenceIterator<T> iterator = source.getIterator();
-            iterator.reset();
-
-            log.debug("Trying source iterator: [" + cnt + "]");
-            log.debug("Target vocab size before building: [" + cache.numWords() + "]");
-            cnt++;
-
-            AbstractCache<T> tempHolder = new AbstractCache.Builder<T>().build();
-
-
-
-            List<Long> timesHasNext = new ArrayList<>();
-            List<Long> timesNext = new ArrayList<>();
-            int sequences = 0;
-            long time3 = 0;
-            while (iterator.hasMoreSequences()) {
-                Sequence<T> document = iterator.nextSequence();
-
-                seqCount.incrementAndGet();
-                parsedCount.addAndGet(document.size());
-                tempHolder.incrementTotalDocCount();
-                execCounter.incrementAndGet();
-                VocabRunnable runnable = new VocabRunnable(tempHolder, document, finCounter, loopCounter);
+        final int numThreads = allowParallelBuilder ? Math.max(numProc, 2) : 1;
+        final int numShards = numThreads * 2;
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "VocabConstructor thread");
+                t.setDaemon(true);
+                return t;
+            }
+        });
 
-                executorService.execute(runnable);
+        final Set<String> stopList = stopWords == null ? new HashSet<String>() : new HashSet<>(stopWords);
 
-                // if we're not in parallel mode - wait till this runnable finishes
-                if (!allowParallelBuilder) {
-                    while (execCounter.get() != finCounter.get())
-                        LockSupport.parkNanos(1000);
-                }
+        try {
+            for (VocabSource<T> source : sources) {
+                SequenceIterator<T> iterator = source.getIterator();
+                iterator.reset();
 
-                // as we see in profiler, this lock isn't really happen too often
-                // we don't want too much left in tail
+                log.debug("Trying source iterator: [" + cnt + "]");
+                log.debug("Target vocab size before building: [" + cache.numWords() + "]");
+                cnt++;
 
-                while (execCounter.get() - finCounter.get() > numProc) {
-                    try {
-                        Thread.sleep(1);
-                    } catch (Exception e) {
-                    }
+                /*
+                    map: every thread counts sequences into its own tables, one per shard
+                 */
+                final BlockingQueue<List<Sequence<T>>> queue = new LinkedBlockingQueue<>(numThreads * 4);
+                List<Future<ElementCountTable<T>[]>> counters = new ArrayList<>();
+                for (int t = 0; t < numThreads; t++) {
+                    counters.add(executorService.submit(new CountingCallable(queue, stopList, numShards)));
                 }
 
+                long sequences = 0;
+                boolean produced = false;
+                try {
+                    List<Sequence<T>> batch = new ArrayList<>(BATCH_SIZE);
+                    while (iterator.hasMoreSequences()) {
+                        Sequence<T> document = iterator.nextSequence();
 
+                        seqCount.incrementAndGet();
+                        parsedCount.addAndGet(document.size());
+                        sequences++;
 
-                sequences++;
-                if (seqCount.get() % 100000 == 0) {
-                    long currentTime = System.currentTimeMillis();
-                    long currentSequences = seqCount.get();
-                    long currentElements = parsedCount.get();
-
-                    double seconds = (currentTime - lastTime) / (double) 1000;
+                        // every document is added to the index once, not once per element
+                        if (index != null) {
+                            if (document.getSequenceLabel() != null) {
+                                index.addWordsToDoc(index.numDocuments(), document.getElements(),
+                                                document.getSequenceLabel());
+                            } else {
+                                index.addWordsToDoc(index.numDocuments(), document.getElements());
+                            }
+                        }
 
-                    //                    Collections.sort(timesHasNext);
-                    //                    Collections.sort(timesNext);
+                        batch.add(document);
+                        if (batch.size() >= BATCH_SIZE) {
+                            offer(queue, batch, counters);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
 
-                    double seqPerSec = (currentSequences - lastSequences) / seconds;
-                    double elPerSec = (currentElements - lastElements) / seconds;
-                    //                    log.info("Document time: {} us; hasNext time: {} us", timesNext.get(timesNext.size() / 2), timesHasNext.get(timesHasNext.size() / 2));
-                    log.info("Sequences checked: [{}]; Current vocabulary size: [{}]; Sequences/sec: {}; Words/sec: {};",
-                                    seqCount.get(), tempHolder.numWords(), String.format("%.2f", seqPerSec),
-                                    String.format("%.2f", elPerSec));
-                    lastTime = currentTime;
-                    lastElements = currentElements;
-                    lastSequences = currentSequences;
+                        if (seqCount.get() % 100000 == 0) {
+                            long currentTime = System.currentTimeMillis();
+                            long currentSequences = seqCount.get();
+                            long currentElements = parsedCount.get();
 
-                    //                    timesHasNext.clear();
-                    //                    timesNext.clear();
-                }
+                            double seconds = (currentTime - lastTime) / (double) 1000;
 
-                /**
-                 * Firing scavenger loop
-                 */
-                if (enableScavenger && loopCounter.get() >= 2000000 && tempHolder.numWords() > 10000000) {
-                    log.info("Starting scavenger...");
-                    while (execCounter.get() != finCounter.get()) {
-                        try {
-                            Thread.sleep(2);
-                        } catch (Exception e) {
+                            double seqPerSec = (currentSequences - lastSequences) / seconds;
+                            double elPerSec = (currentElements - lastElements) / seconds;
+                            log.info("Sequences checked: [{}]; Sequences/sec: {}; Words/sec: {};", seqCount.get(),
+                                            String.format("%.2f", seqPerSec), String.format("%.2f", elPerSec));
+                            lastTime = currentTime;
+                            lastElements = currentElements;
+                            lastSequences = currentSequences;
                         }
                     }
 
-                    filterVocab(tempHolder, Math.max(1, source.getMinWordFrequency() / 2));
-                    loopCounter.set(0);
+                    if (!batch.isEmpty())
+                        offer(queue, batch, counters);
+
+                    // one end-of-source marker per counting thread
+                    for (int t = 0; t < numThreads; t++)
+                        offer(queue, Collections.<Sequence<T>>emptyList(), counters);
+                    produced = true;
+                } finally {
+                    if (!produced) {
+                        // the source failed: let counting threads finish instead of waiting for batches forever
+                        queue.clear();
+                        for (int t = 0; t < numThreads; t++)
+                            queue.offer(Collections.<Sequence<T>>emptyList());
+                    }
                 }
 
-                //                timesNext.add((time2 - time1) / 1000L);
-                //                timesHasNext.add((time1 - time3) / 1000L);
+                final List<ElementCountTable<T>[]> tables = new ArrayList<>();
+                for (Future<ElementCountTable<T>[]> counter : counters)
+                    tables.add(get(counter));
 
-                //                time3 = System.nanoTime();
-            }
+                /*
+                    reduce: shards are merged and truncated in parallel, since every label belongs to exactly one shard
+                 */
+                final int minWordFrequency = source.getMinWordFrequency();
+                List<Future<ElementCountTable<T>>> merges = new ArrayList<>();
+                for (int s = 0; s < numShards; s++) {
+                    final int shard = s;
+                    merges.add(executorService.submit(new Callable<ElementCountTable<T>>() {
+                        @Override
+                        public ElementCountTable<T> call() throws Exception {
+                            ElementCountTable<T> merged = new ElementCountTable<>(tables.get(0)[shard].size());
+                            for (ElementCountTable<T>[] threadTables : tables) {
+                                merged.merge(threadTables[shard]);
+                                threadTables[shard] = null;
+                            }
 
-            // block untill all threads are finished
-            log.debug("Waiting till all processes stop...");
-            while (execCounter.get() != finCounter.get()) {
-                try {
-                    Thread.sleep(2);
-                } catch (Exception e) {
+                            // apply minWordFrequency set for this source
+                            if (minWordFrequency > 0)
+                                merged.filter(minWordFrequency);
+
+                            return merged;
+                        }
+                    }));
                 }
-            }
 
+                int vocabSize = 0;
+                for (Future<ElementCountTable<T>> merge : merges) {
+                    ElementCountTable<T> merged = get(merge);
+                    vocabSize += merged.size();
+                    merged.exportTo(topHolder);
+                }
+                topHolder.incrementTotalDocCount(sequences);
 
-            // apply minWordFrequency set for this source
-            log.debug("Vocab size before truncation: [" + tempHolder.numWords() + "],  NumWords: ["
-                            + tempHolder.totalWordOccurrences() + "], sequences parsed: [" + seqCount.get()
-                            + "], counter: [" + parsedCount.get() + "]");
-            if (source.getMinWordFrequency() > 0) {
-                filterVocab(tempHolder, source.getMinWordFrequency());
+                log.debug("Vocab size after truncation: [" + vocabSize + "], sequences parsed: [" + seqCount.get()
+                                + "], counter: [" + parsedCount.get() + "]");
             }
-
-            log.debug("Vocab size after truncation: [" + tempHolder.numWords() + "],  NumWords: ["
-                            + tempHolder.totalWordOccurrences() + "], sequences parsed: [" + seqCount.get()
-                            + "], counter: [" + parsedCount.get() + "]");
-            // at this moment we're ready to transfer
-            topHolder.importVocabulary(tempHolder);
+        } finally {
+            // also stops counting threads left waiting for batches if a source failed
+            executorService.shutdownNow();
         }
 
         // at this moment, we have vocabulary full of words, and we have to reset counters before transfer everything back to VocabCache
@@ -349,8 +362,6 @@ public class VocabConstructor<T extends SequenceElement> {
             }
         }
 
-        executorService.shutdown();
-
         System.gc();
 
         long endSequences = seqCount.get();
@@ -485,6 +496,10 @@ public class VocabConstructor<T extends SequenceElement> {
             return this;
         }
 
+        /**
+         * Counting threads only hold partial counts, and a word rare in each of them may be frequent overall,
+         * so elements are only filtered by frequency once counts are merged. This option has no effect anymore.
+         */
         public Builder<T> enableScavenger(boolean reallyEnable) {
             this.enableScavenger = reallyEnable;
             return this;
@@ -520,79 +535,86 @@ public class VocabConstructor<T extends SequenceElement> {
         private int minWordFrequency;
     }
 
+    /**
+     * Puts the batch to the queue, unless counting threads have failed
+     */
+    private void offer(BlockingQueue<List<Sequence<T>>> queue, List<Sequence<T>> batch,
+                    List<? extends Future<?>> counters) {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                for (Future<?> counter : counters) {
+                    if (counter.isDone())
+                        get(counter);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
 
-    protected class VocabRunnable implements Runnable {
-        private final AtomicLong finalCounter;
-        private final Sequence<T> document;
-        private final AbstractCache<T> targetVocab;
-        private final AtomicLong loopCounter;
+    private static <V> V get(Future<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
 
-        public VocabRunnable(@NonNull AbstractCache<T> targetVocab, @NonNull Sequence<T> sequence,
-                        @NonNull AtomicLong finalCounter, @NonNull AtomicLong loopCounter) {
-            this.finalCounter = finalCounter;
-            this.document = sequence;
-            this.targetVocab = targetVocab;
-            this.loopCounter = loopCounter;
+    /**
+     * Counts elements of sequences taken from the queue into its own tables, one per shard, until it gets
+     * an empty batch
+     */
+    protected class CountingCallable implements Callable<ElementCountTable<T>[]> {
+        private final BlockingQueue<List<Sequence<T>>> queue;
+        private final Set<String> stopList;
+        private final int numShards;
+
+        public CountingCallable(@NonNull BlockingQueue<List<Sequence<T>>> queue, @NonNull Set<String> stopList,
+                        int numShards) {
+            this.queue = queue;
+            this.stopList = stopList;
+            this.numShards = numShards;
         }
 
         @Override
-        public void run() {
-            try {
-                Map<String, AtomicLong> seqMap = new HashMap<>();
-                //  log.info("Sequence length: ["+ document.getElements().size()+"]");
-
-                if (fetchLabels && document.getSequenceLabels() != null) {
-                    for (T labelWord : document.getSequenceLabels()) {
-                        if (!targetVocab.hasToken(labelWord.getLabel())) {
+        @SuppressWarnings("unchecked")
+        public ElementCountTable<T>[] call() throws Exception {
+            ElementCountTable<T>[] tables = new ElementCountTable[numShards];
+            for (int s = 0; s < numShards; s++)
+                tables[s] = new ElementCountTable<>();
+
+            long sequenceId = 0;
+            while (true) {
+                List<Sequence<T>> batch = queue.take();
+                if (batch.isEmpty())
+                    return tables;
+
+                for (Sequence<T> document : batch) {
+                    sequenceId++;
+
+                    if (fetchLabels && document.getSequenceLabels() != null) {
+                        for (T labelWord : document.getSequenceLabels()) {
                             labelWord.setSpecial(true);
                             labelWord.markAsLabel(true);
                             labelWord.setElementFrequency(1);
 
-                            targetVocab.addToken(labelWord);
+                            tables[ElementCountTable.shardOf(labelWord.getLabel(), numShards)]
+                                            .putLabel(labelWord.getLabel(), labelWord);
                         }
                     }
-                }
 
-                List<String> tokens = document.asLabels();
-                for (String token : tokens) {
-                    if (stopWords != null && stopWords.contains(token))
-                        continue;
-                    if (token == null || token.isEmpty())
-                        continue;
-
-                    if (!targetVocab.containsWord(token)) {
-                        T element = document.getElementByLabel(token);
-                        element.setElementFrequency(1);
-                        element.setSequencesCount(1);
-                        targetVocab.addToken(element);
-                        //                    elementsCounter.incrementAndGet();
-                        loopCounter.incrementAndGet();
-
-                        // if there's no such element in tempHolder, it's safe to set seqCount to 1
-                        seqMap.put(token, new AtomicLong(0));
-                    } else {
-                        targetVocab.incrementWordCount(token);
-
-                        // if element exists in tempHolder, we should update it seqCount, but only once per sequence
-                        if (!seqMap.containsKey(token)) {
-                            seqMap.put(token, new AtomicLong(1));
-                            T element = targetVocab.wordFor(token);
-                            element.incrementSequencesCount();
-                        }
+                    for (T element : document.getElements()) {
+                        String token = element.getLabel();
+                        if (token == null || token.isEmpty() || stopList.contains(token))
+                            continue;
 
-                        if (index != null) {
-                            if (document.getSequenceLabel() != null) {
-                                index.addWordsToDoc(index.numDocuments(), document.getElements(), document.getSequenceLabel());
-                            } else {
-                                index.addWordsToDoc(index.numDocuments(), document.getElements());
-                            }
-                        }
+                        tables[ElementCountTable.shardOf(token, numShards)].increment(token, element, sequenceId);
                     }
                 }
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            } finally {
-                finalCounter.incrementAndGet();
             }
         }
     }
@@ -0,0 +1,392 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.models.word2vec.wordstore.inmemory;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.exception.DL4JInvalidConfigException;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * VocabCache with fixed number of elements: labels are hashed into buckets, fastText-style, and every bucket is
+ * one row of the lookup table. Memory use doesn't depend on corpus size, and vocabulary is built in one streaming
+ * pass, since there's nothing to sort or truncate.
+ *
+ * Besides the bucket of the element itself, every element has buckets of its character n-grams, taken from the
+ * label with '<' and '>' added at its boundaries. Learning algorithms use average of all these rows as element
+ * input vector, and row of the element bucket as output vector. Elements never seen in training still get
+ * vectors from their n-grams.
+ *
+ * Please note: elements sharing a bucket share frequency and output vector, and there's no Huffman tree,
+ * so only negative sampling can be used with this cache. words() returns the first label seen for every
+ * non-empty bucket.
+ */
+@Slf4j
+public class HashedVocabCache implements VocabCache<VocabWord> {
+    private static final char BOW = '<';
+    private static final char EOW = '>';
+
+    @Getter
+    private final int numBuckets;
+    @Getter
+    private final int minN;
+    @Getter
+    private final int maxN;
+
+    private final AtomicLongArray counts;
+    private final AtomicLongArray sequencesCounts;
+    private final AtomicReferenceArray<String> labels;
+
+    private AtomicLong totalWordCount = new AtomicLong(0);
+    private AtomicLong documentsCounter = new AtomicLong(0);
+
+    protected HashedVocabCache(int numBuckets, int minN, int maxN) {
+        this.numBuckets = numBuckets;
+        this.minN = minN;
+        this.maxN = maxN;
+
+        this.counts = new AtomicLongArray(numBuckets);
+        this.sequencesCounts = new AtomicLongArray(numBuckets);
+        this.labels = new AtomicReferenceArray<>(numBuckets);
+    }
+
+    /**
+     * Returns bucket of the element with specified label
+     */
+    public int bucketOf(@NonNull String label) {
+        return bucket(BOW + label + EOW, 0, label.length() + 2);
+    }
+
+    /**
+     * Returns buckets of the element with specified label and of its character n-grams, the element bucket first
+     */
+    public int[] subwordIndexes(@NonNull String label) {
+        String word = BOW + label + EOW;
+        int length = word.length();
+
+        int numGrams = 0;
+        for (int n = Math.max(minN, 1); n <= maxN && n < length; n++)
+            numGrams += length - n + 1;
+
+        int[] result = new int[numGrams + 1];
+        result[0] = bucket(word, 0, length);
+
+        int cnt = 1;
+        for (int n = Math.max(minN, 1); n <= maxN && n < length; n++) {
+            for (int i = 0; i + n <= length; i++)
+                result[cnt++] = bucket(word, i, i + n);
+        }
+        return result;
+    }
+
+    /**
+     * 32 bit FNV-1a hash of the chars in [from, to), folded into [0, numBuckets)
+     */
+    private int bucket(String string, int from, int to) {
+        int hash = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            hash ^= string.charAt(i);
+            hash *= 0x01000193;
+        }
+        return (int) ((hash & 0xFFFFFFFFL) % numBuckets);
+    }
+
+    @Override
+    public void loadVocab() {
+        // no-op
+    }
+
+    @Override
+    public boolean vocabExists() {
+        return totalWordCount.get() > 0;
+    }
+
+    @Override
+    public void saveVocab() {
+        // no-op
+    }
+
+    /**
+     * Returns the first label observed for every non-empty bucket
+     */
+    @Override
+    public Collection<String> words() {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < numBuckets; i++) {
+            String label = labels.get(i);
+            if (label != null)
+                result.add(label);
+        }
+        return result;
+    }
+
+    @Override
+    public void incrementWordCount(String word) {
+        incrementWordCount(word, 1);
+    }
+
+    @Override
+    public void incrementWordCount(@NonNull String word, int increment) {
+        int bucket = bucketOf(word);
+        counts.addAndGet(bucket, increment);
+        labels.compareAndSet(bucket, null, word);
+        totalWordCount.addAndGet(increment);
+    }
+
+    /**
+     * Returns frequency of the bucket specified label belongs to
+     */
+    @Override
+    public int wordFrequency(String word) {
+        if (word == null)
+            return 0;
+        return (int) Math.min(counts.get(bucketOf(word)), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Checks, if the bucket of specified label was observed
+     */
+    @Override
+    public boolean containsWord(String word) {
+        return word != null && counts.get(bucketOf(word)) > 0;
+    }
+
+    @Override
+    public String wordAtIndex(int index) {
+        if (index < 0 || index >= numBuckets)
+            return null;
+        return labels.get(index);
+    }
+
+    @Override
+    public VocabWord elementAtIndex(int index) {
+        String label = wordAtIndex(index);
+        return label == null ? null : wordFor(label);
+    }
+
+    /**
+     * Returns bucket of specified label, or -2 if this bucket wasn't observed
+     */
+    @Override
+    public int indexOf(String label) {
+        if (containsWord(label))
+            return bucketOf(label);
+        return -2;
+    }
+
+    @Override
+    public Collection<VocabWord> vocabWords() {
+        List<VocabWord> result = new ArrayList<>();
+        for (String label : words())
+            result.add(wordFor(label));
+        return result;
+    }
+
+    @Override
+    public long totalWordOccurrences() {
+        return totalWordCount.get();
+    }
+
+    /**
+     * Returns new VocabWord with specified label, having index and frequency of its bucket,
+     * or null if this bucket wasn't observed
+     */
+    @Override
+    public VocabWord wordFor(@NonNull String label) {
+        int bucket = bucketOf(label);
+        long count = counts.get(bucket);
+        if (count == 0)
+            return null;
+
+        VocabWord word = new VocabWord(count, label);
+        word.setIndex(bucket);
+        word.setSequencesCount(sequencesCounts.get(bucket));
+        return word;
+    }
+
+    /**
+     * Elements aren't stored, so they can't be found by id
+     */
+    @Override
+    public VocabWord wordFor(long id) {
+        return null;
+    }
+
+    @Override
+    public void addWordToIndex(int index, String word) {
+        // no-op: index is defined by hash
+    }
+
+    @Override
+    public void addWordToIndex(int index, long elementId) {
+        // no-op: index is defined by hash
+    }
+
+    @Override
+    @Deprecated
+    public void putVocabWord(String word) {
+        // no-op
+    }
+
+    /**
+     * Returns number of buckets, which is the number of lookup table rows
+     */
+    @Override
+    public int numWords() {
+        return numBuckets;
+    }
+
+    @Override
+    public int docAppearedIn(String word) {
+        if (!containsWord(word))
+            return -1;
+        return (int) sequencesCounts.get(bucketOf(word));
+    }
+
+    @Override
+    public void incrementDocCount(String word, long howMuch) {
+        sequencesCounts.addAndGet(bucketOf(word), howMuch);
+    }
+
+    @Override
+    public void setCountForDoc(String word, long count) {
+        sequencesCounts.set(bucketOf(word), count);
+    }
+
+    @Override
+    public long totalNumberOfDocs() {
+        return documentsCounter.get();
+    }
+
+    @Override
+    public void incrementTotalDocCount() {
+        documentsCounter.incrementAndGet();
+    }
+
+    @Override
+    public void incrementTotalDocCount(long by) {
+        documentsCounter.addAndGet(by);
+    }
+
+    @Override
+    public Collection<VocabWord> tokens() {
+        return vocabWords();
+    }
+
+    @Override
+    public void addToken(VocabWord element) {
+        incrementWordCount(element.getLabel(), (int) element.getElementFrequency());
+        incrementDocCount(element.getLabel(), element.getSequencesCount());
+    }
+
+    @Override
+    public VocabWord tokenFor(String label) {
+        return wordFor(label);
+    }
+
+    @Override
+    public VocabWord tokenFor(long id) {
+        return wordFor(id);
+    }
+
+    @Override
+    public boolean hasToken(String token) {
+        return containsWord(token);
+    }
+
+    @Override
+    public void importVocabulary(@NonNull VocabCache<VocabWord> vocabCache) {
+        for (VocabWord element : vocabCache.vocabWords()) {
+            addToken(element);
+        }
+        this.documentsCounter.addAndGet(vocabCache.totalNumberOfDocs());
+    }
+
+    @Override
+    public void updateWordsOccurencies() {
+        long total = 0;
+        for (int i = 0; i < numBuckets; i++)
+            total += counts.get(i);
+        totalWordCount.set(total);
+        log.info("Updated counter: [" + totalWordCount.get() + "]");
+    }
+
+    @Override
+    public void removeElement(String label) {
+        throw new UnsupportedOperationException("Elements can't be removed from hashed vocabulary");
+    }
+
+    @Override
+    public void removeElement(VocabWord element) {
+        removeElement(element.getLabel());
+    }
+
+    public static class Builder {
+        protected int numBuckets = 2000000;
+        protected int minN = 3;
+        protected int maxN = 6;
+
+        /**
+         * Number of buckets, i.e. number of lookup table rows
+         *
+         * Default value: 2000000
+         *
+         * @param numBuckets
+         * @return
+         */
+        public Builder numBuckets(int numBuckets) {
+            this.numBuckets = numBuckets;
+            return this;
+        }
+
+        /**
+         * Range of character n-gram lengths. Use 0 for both values to hash whole elements only.
+         *
+         * Default values: 3 and 6
+         *
+         * @param minN
+         * @param maxN
+         * @return
+         */
+        public Builder nGrams(int minN, int maxN) {
+            this.minN = minN;
+            this.maxN = maxN;
+            return this;
+        }
+
+        public HashedVocabCache build() {
+            if (numBuckets <= 0)
+                throw new DL4JInvalidConfigException("Number of buckets should be positive");
+            if (minN < 0 || maxN < minN || (minN == 0 && maxN > 0))
+                throw new DL4JInvalidConfigException(
+                                "Invalid n-gram range: [" + minN + ", " + maxN + "], should be 0 < minN <= maxN");
+
+            return new HashedVocabCache(numBuckets, minN, maxN);
+        }
+    }
+}
@@ -116,6 +116,52 @@ public class TestCnnSentenceDataSetIterator {
     }
 
 
+    @Test
+    public void testGatherAndIndicesVectorization() throws Exception {
+        WordVectors w2v = WordVectorSerializer
+                        .readWord2VecModel(new ClassPathResource("word2vec/googleload/sample_vec.bin").getFile());
+
+        List<String> sentences = Arrays.asList("these balance Database model", "into same THISWORDDOESNTEXIST are");
+        List<String> labelsForSentences = Arrays.asList("Positive", "Negative");
+
+        for (boolean alongHeight : new boolean[] {true, false}) {
+            LabeledSentenceProvider p = new CollectionLabeledSentenceProvider(sentences, labelsForSentences, null);
+            CnnSentenceDataSetIterator perWord = new CnnSentenceDataSetIterator.Builder().sentenceProvider(p)
+                            .wordVectors(w2v).maxSentenceLength(256).sentencesAlongHeight(alongHeight).build();
+            DataSet expected = perWord.next();
+
+            p = new CollectionLabeledSentenceProvider(sentences, labelsForSentences, null);
+            CnnSentenceDataSetIterator gather = new CnnSentenceDataSetIterator.Builder().sentenceProvider(p)
+                            .wordVectors(w2v).maxSentenceLength(256).sentencesAlongHeight(alongHeight)
+                            .vectorization(CnnSentenceDataSetIterator.Vectorization.Gather).build();
+            DataSet ds = gather.next();
+
+            assertArrayEquals(expected.getFeatures().shape(), ds.getFeatures().shape());
+            assertTrue(expected.getFeatures().equalsWithEps(ds.getFeatures(), 1e-5));
+            assertEquals(expected.getLabels(), ds.getLabels());
+            assertEquals(expected.getFeaturesMaskArray(), ds.getFeaturesMaskArray());
+            assertTrue(perWord.loadSingleSentence(sentences.get(1))
+                            .equalsWithEps(gather.loadSingleSentence(sentences.get(1)), 1e-5));
+        }
+
+        LabeledSentenceProvider p = new CollectionLabeledSentenceProvider(sentences, labelsForSentences, null);
+        CnnSentenceDataSetIterator indices = new CnnSentenceDataSetIterator.Builder().sentenceProvider(p)
+                        .wordVectors(w2v).maxSentenceLength(256)
+                        .vectorization(CnnSentenceDataSetIterator.Vectorization.Indices).build();
+        DataSet ds = indices.next();
+
+        INDArray expectedIndices = Nd4j.create(2, 1, 4);
+        String[][] words = {{"these", "balance", "Database", "model"}, {"into", "same", "are"}};
+        for (int i = 0; i < words.length; i++) {
+            for (int j = 0; j < words[i].length; j++) {
+                expectedIndices.putScalar(new int[] {i, 0, j}, w2v.vocab().indexOf(words[i][j]));
+            }
+        }
+        assertEquals(expectedIndices, ds.getFeatures());
+        assertEquals(Nd4j.create(new double[][] {{1, 1, 1, 1}, {1, 1, 1, 0}}), ds.getFeaturesMaskArray());
+        assertEquals(1, indices.inputColumns());
+    }
+
     @Test
     public void testCnnSentenceDataSetIteratorNoTokensEdgeCase() throws Exception {
 
@@ -18,8 +18,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
@@ -81,4 +83,53 @@ public class AbstractCoOccurrencesTest {
         assertEquals(16, list.size());
         assertEquals(16, cnt);
     }
+
+    @Test
+    public void testFitExternalMerge() throws Exception {
+        File file = new ClassPathResource("other/oneline.txt").getFile();
+
+        AbstractCache<VocabWord> vocabCache = new AbstractCache.Builder<VocabWord>().build();
+
+        TokenizerFactory t = new DefaultTokenizerFactory();
+        t.setTokenPreProcessor(new CommonPreprocessor());
+
+        SentenceTransformer transformer = new SentenceTransformer.Builder().iterator(new BasicLineIterator(file))
+                        .tokenizerFactory(t).build();
+
+        AbstractSequenceIterator<VocabWord> sequenceIterator =
+                        new AbstractSequenceIterator.Builder<>(transformer).build();
+
+        VocabConstructor<VocabWord> constructor = new VocabConstructor.Builder<VocabWord>()
+                        .addSource(sequenceIterator, 1).setTargetVocabCache(vocabCache).build();
+
+        constructor.buildJointVocabulary(false, true);
+
+        AbstractCoOccurrences<VocabWord> expected = new AbstractCoOccurrences.Builder<VocabWord>()
+                        .iterate(sequenceIterator).vocabCache(vocabCache).symmetric(false).windowSize(15).build();
+        expected.fit();
+
+        AbstractCoOccurrences<VocabWord> coOccurrences = new AbstractCoOccurrences.Builder<VocabWord>()
+                        .iterate(sequenceIterator).vocabCache(vocabCache).symmetric(false).windowSize(15)
+                        .externalMerge(true).build();
+        coOccurrences.fit();
+
+        Map<Pair<VocabWord, VocabWord>, Double> weights = new HashMap<>();
+        Iterator<Pair<Pair<VocabWord, VocabWord>, Double>> iterator = expected.iterator();
+        while (iterator.hasNext()) {
+            Pair<Pair<VocabWord, VocabWord>, Double> pair = iterator.next();
+            weights.put(pair.getFirst(), pair.getSecond());
+        }
+
+        int cnt = 0;
+        iterator = coOccurrences.iterator();
+        while (iterator.hasNext()) {
+            Pair<Pair<VocabWord, VocabWord>, Double> pair = iterator.next();
+            assertEquals(weights.get(pair.getFirst()), pair.getSecond(), 1e-5);
+            cnt++;
+        }
+
+        assertEquals(16, cnt);
+        assertEquals(16, coOccurrences.getExternalCounter().getPairsMerged());
+        assertEquals(0, coOccurrences.getExternalCounter().getNumberOfRuns());
+    }
 }
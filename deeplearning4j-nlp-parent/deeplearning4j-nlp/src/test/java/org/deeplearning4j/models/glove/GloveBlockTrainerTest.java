@@ -0,0 +1,49 @@
+package org.deeplearning4j.models.glove;
+
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class GloveBlockTrainerTest {
+
+    private static VocabWord word(String label, int index) {
+        VocabWord word = new VocabWord(1.0, label);
+        word.setIndex(index);
+        return word;
+    }
+
+    @Test
+    public void testFitsCoOccurrences() throws Exception {
+        VocabWord day = word("day", 0);
+        VocabWord night = word("night", 1);
+        VocabWord police = word("police", 2);
+
+        List<Pair<Pair<VocabWord, VocabWord>, Double>> pairs = new ArrayList<>();
+        pairs.add(new Pair<>(new Pair<>(day, night), 50.0));
+        pairs.add(new Pair<>(new Pair<>(day, police), 2.0));
+        pairs.add(new Pair<>(new Pair<>(night, police), 0.0));
+
+        Nd4j.getRandom().setSeed(119);
+        INDArray syn0 = Nd4j.rand(3, 10).subi(0.5).divi(10);
+        INDArray bias = Nd4j.create(3);
+
+        GloveBlockTrainer trainer = new GloveBlockTrainer.Builder().learningRate(0.05).workers(2).blockSize(1)
+                        .seed(42).build();
+        trainer.fit(pairs.iterator(), syn0, bias, 500);
+
+        double dayNight = Nd4j.getBlasWrapper().dot(syn0.getRow(0), syn0.getRow(1)) + bias.getDouble(0)
+                        + bias.getDouble(1);
+        double dayPolice = Nd4j.getBlasWrapper().dot(syn0.getRow(0), syn0.getRow(2)) + bias.getDouble(0)
+                        + bias.getDouble(2);
+
+        assertEquals(Math.log(50.0), dayNight, 0.1);
+        assertEquals(Math.log(2.0), dayPolice, 0.1);
+    }
+}
@@ -0,0 +1,91 @@
+package org.deeplearning4j.models.glove.count;
+
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExternalCoOccurrenceCounterTest {
+
+    @Test
+    public void testSort() throws Exception {
+        Random random = new Random(119);
+        long[] keys = new long[10000];
+        double[] weights = new double[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt(500);
+            weights[i] = keys[i] * 2;
+        }
+
+        ExternalCoOccurrenceCounter.sort(keys, weights, 0, keys.length - 1);
+
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0)
+                assertTrue(keys[i - 1] <= keys[i]);
+            assertEquals(keys[i] * 2, weights[i], 1e-10);
+        }
+    }
+
+    @Test
+    public void testMergeRuns() throws Exception {
+        final int numWords = 300;
+        AbstractCache<VocabWord> vocabCache = new AbstractCache.Builder<VocabWord>().build();
+        for (int i = 0; i < numWords; i++) {
+            VocabWord word = new VocabWord(1.0, "word" + i);
+            vocabCache.addToken(word);
+            vocabCache.addWordToIndex(i, word.getLabel());
+        }
+
+        // minimal buffers, so there are more runs than can be merged at once
+        ExternalCoOccurrenceCounter<VocabWord> counter = new ExternalCoOccurrenceCounter<>(vocabCache, 0, 2);
+        ExternalCoOccurrenceCounter<VocabWord>.RunBuffer buffer1 = counter.newBuffer();
+        ExternalCoOccurrenceCounter<VocabWord>.RunBuffer buffer2 = counter.newBuffer();
+
+        for (int i = 0; i < numWords; i++) {
+            for (int j = 0; j < numWords; j++) {
+                buffer1.add(i, j, 1.0);
+                buffer2.add(j, i, 0.5);
+            }
+        }
+        buffer1.flush();
+        buffer2.flush();
+
+        assertTrue(counter.getNumberOfRuns() > 64);
+        assertEquals(2L * numWords * numWords, counter.getPairsEmitted());
+
+        final double[][] merged = new double[numWords][numWords];
+        final long[] previous = new long[] {-1};
+        long distinct = counter.merge(new CoOccurrenceWriter<VocabWord>() {
+            @Override
+            public void writeObject(CoOccurrenceWeight<VocabWord> object) {
+                int index1 = object.getElement1().getIndex();
+                int index2 = object.getElement2().getIndex();
+
+                // merged output is sorted, and every pair is written once
+                long key = (long) index1 * numWords + index2;
+                assertTrue(key > previous[0]);
+                previous[0] = key;
+
+                merged[index1][index2] = object.getWeight();
+            }
+
+            @Override
+            public void queueObject(CoOccurrenceWeight<VocabWord> object) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void finish() {}
+        });
+
+        assertEquals(numWords * numWords, distinct);
+        assertEquals(0, counter.getNumberOfRuns());
+        for (int i = 0; i < numWords; i++)
+            for (int j = 0; j < numWords; j++)
+                assertEquals(1.5, merged[i][j], 1e-10);
+    }
+}
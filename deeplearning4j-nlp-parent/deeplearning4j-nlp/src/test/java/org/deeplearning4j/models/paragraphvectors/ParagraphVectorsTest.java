@@ -23,6 +23,7 @@ import lombok.NonNull;
 import org.datavec.api.util.ClassPathResource;
 import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.learning.impl.elements.SkipGram;
+import org.deeplearning4j.models.embeddings.learning.SequenceLearningAlgorithm;
 import org.deeplearning4j.models.embeddings.learning.impl.sequence.DBOW;
 import org.deeplearning4j.models.embeddings.learning.impl.sequence.DM;
 import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
@@ -482,6 +483,70 @@ public class ParagraphVectorsTest {
 
     }
 
+    @Test
+    public void testBatchedInferenceDBOW() throws Exception {
+        checkBatchedInference(new DBOW<VocabWord>());
+    }
+
+    @Test
+    public void testBatchedInferenceDM() throws Exception {
+        checkBatchedInference(new DM<VocabWord>());
+    }
+
+    private static void checkBatchedInference(SequenceLearningAlgorithm<VocabWord> algorithm) throws Exception {
+        ClassPathResource resource = new ClassPathResource("/big/raw_sentences.txt");
+        File file = resource.getFile();
+        SentenceIterator iter = new BasicLineIterator(file);
+
+        TokenizerFactory t = new DefaultTokenizerFactory();
+        t.setTokenPreProcessor(new CommonPreprocessor());
+
+        LabelsSource source = new LabelsSource("DOC_");
+
+        ParagraphVectors vec = new ParagraphVectors.Builder().minWordFrequency(1).iterations(1).seed(119).epochs(1)
+                        .layerSize(100).learningRate(0.025).labelsSource(source).windowSize(5).iterate(iter)
+                        .trainWordVectors(true).tokenizerFactory(t).negativeSample(0).useHierarchicSoftmax(true)
+                        .sampling(0).workers(2).sequenceLearningAlgorithm(algorithm).build();
+
+        vec.fit();
+
+        List<String> texts = new ArrayList<>();
+        iter.reset();
+        while (iter.hasNext() && texts.size() < 200) {
+            String text = iter.nextSentence();
+            boolean known = false;
+            for (String token : t.create(text).getTokens())
+                known |= vec.hasWord(token);
+            if (known)
+                texts.add(text);
+        }
+
+        int iterations = 20;
+        long time1 = System.currentTimeMillis();
+        List<INDArray> single = new ArrayList<>();
+        for (String text : texts)
+            single.add(vec.inferVector(text, 0.025, 0.001, iterations));
+        long time2 = System.currentTimeMillis();
+        INDArray batched = vec.inferVectors(texts, 0.025, 0.001, iterations);
+        long time3 = System.currentTimeMillis();
+
+        log.info("{}: per-document inference: {} ms; batched inference: {} ms", algorithm.getCodeName(),
+                        time2 - time1, time3 - time2);
+
+        assertArrayEquals(new int[] {texts.size(), 100}, batched.shape());
+
+        //Both start from different random vectors, but should converge to similar vectors for the same text
+        double similarity = 0.0;
+        for (int i = 0; i < texts.size(); i++) {
+            INDArray row = batched.getRow(i).dup();
+            assertFalse(Double.isNaN(row.sumNumber().doubleValue()));
+            similarity += Transforms.cosineSim(row, single.get(i).dup());
+        }
+        similarity /= texts.size();
+        log.info("{}: mean batched/per-document similarity: {}", algorithm.getCodeName(), similarity);
+        assertTrue("Mean similarity " + similarity, similarity > 0.6);
+    }
+
     @Test
     public void testParagraphVectorsWithWordVectorsModelling1() throws Exception {
         ClassPathResource resource = new ClassPathResource("/big/raw_sentences.txt");
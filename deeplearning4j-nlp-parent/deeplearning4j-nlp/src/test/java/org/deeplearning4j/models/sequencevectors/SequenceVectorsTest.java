@@ -14,6 +14,7 @@ import org.deeplearning4j.models.embeddings.learning.impl.elements.SkipGram;
 import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
 import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
 import org.deeplearning4j.models.embeddings.reader.impl.FlatModelUtils;
+import org.deeplearning4j.models.paragraphvectors.ParagraphVectors;
 import org.deeplearning4j.models.sequencevectors.graph.enums.NoEdgeHandling;
 import org.deeplearning4j.models.sequencevectors.graph.enums.PopularityMode;
 import org.deeplearning4j.models.sequencevectors.graph.enums.SpreadSpectrum;
@@ -29,8 +30,10 @@ import org.deeplearning4j.models.sequencevectors.serialization.AbstractElementFa
 import org.deeplearning4j.models.sequencevectors.transformers.impl.GraphTransformer;
 import org.deeplearning4j.models.sequencevectors.transformers.impl.SentenceTransformer;
 import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.Word2Vec;
 import org.deeplearning4j.models.word2vec.wordstore.VocabConstructor;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.deeplearning4j.text.documentiterator.LabelsSource;
 import org.deeplearning4j.text.sentenceiterator.BasicLineIterator;
 import org.deeplearning4j.text.tokenization.tokenizer.preprocessor.CommonPreprocessor;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory;
@@ -252,6 +255,42 @@ public class SequenceVectorsTest {
                                         .epochs(1).resetModel(false).trainElementsRepresentation(false).build();
     }
 
+    /**
+     * Benchmark: words/sec of Word2Vec and ParagraphVectors fit(), vocab construction included, vs number of workers
+     */
+    @Ignore
+    @Test
+    public void testWorkersScaling() throws Exception {
+        File file = new ClassPathResource("big/raw_sentences.txt").getFile();
+
+        TokenizerFactory t = new DefaultTokenizerFactory();
+        t.setTokenPreProcessor(new CommonPreprocessor());
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int workers = 1; workers <= cores; workers *= 2) {
+            Word2Vec w2v = new Word2Vec.Builder().minWordFrequency(5).iterations(1).epochs(1).layerSize(100)
+                            .seed(42).windowSize(5).iterate(new BasicLineIterator(file)).tokenizerFactory(t)
+                            .workers(workers).build();
+
+            long time1 = System.currentTimeMillis();
+            w2v.fit();
+            long time2 = System.currentTimeMillis();
+
+            ParagraphVectors pv = new ParagraphVectors.Builder().minWordFrequency(5).iterations(1).epochs(1)
+                            .layerSize(100).seed(42).windowSize(5).iterate(new BasicLineIterator(file))
+                            .labelsSource(new LabelsSource("DOC_")).tokenizerFactory(t).trainWordVectors(true)
+                            .workers(workers).build();
+
+            long time3 = System.currentTimeMillis();
+            pv.fit();
+            long time4 = System.currentTimeMillis();
+
+            logger.info("Workers: [{}]; Word2Vec words/sec: [{}]; ParagraphVectors words/sec: [{}]", workers,
+                            String.format("%.2f", w2v.vocab().totalWordOccurrences() * 1000.0 / (time2 - time1)),
+                            String.format("%.2f", pv.vocab().totalWordOccurrences() * 1000.0 / (time4 - time3)));
+        }
+    }
+
     @Ignore
     @Test
     public void testGlove1() throws Exception {
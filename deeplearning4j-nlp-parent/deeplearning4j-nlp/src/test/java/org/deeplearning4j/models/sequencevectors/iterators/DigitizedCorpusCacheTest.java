@@ -0,0 +1,112 @@
+package org.deeplearning4j.models.sequencevectors.iterators;
+
+import org.datavec.api.util.ClassPathResource;
+import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.Word2Vec;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.deeplearning4j.text.sentenceiterator.BasicLineIterator;
+import org.deeplearning4j.text.tokenization.tokenizer.preprocessor.CommonPreprocessor;
+import org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory;
+import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class DigitizedCorpusCacheTest {
+    private static final Logger log = LoggerFactory.getLogger(DigitizedCorpusCacheTest.class);
+
+    private static VocabWord word(VocabCache<VocabWord> cache, String label, int index) {
+        VocabWord word = new VocabWord(1.0, label);
+        word.setIndex(index);
+        cache.addToken(word);
+        cache.addWordToIndex(index, label);
+        return word;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        VocabCache<VocabWord> vocab = new AbstractCache.Builder<VocabWord>().build();
+        VocabWord day = word(vocab, "day", 0);
+        VocabWord night = word(vocab, "night", 1);
+        VocabWord doc = word(vocab, "DOC_0", 2);
+
+        Sequence<VocabWord> first = new Sequence<>(Arrays.asList(day, night, day));
+        first.setSequenceLabel(doc);
+        Sequence<VocabWord> second = new Sequence<>(Arrays.asList(night));
+
+        File file = File.createTempFile("corpus", ".bin");
+        DigitizedCorpusCache<VocabWord> cache = new DigitizedCorpusCache<>(vocab, file);
+        cache.append(first);
+        cache.append(second);
+        cache.finish();
+
+        assertTrue(cache.isComplete());
+        assertEquals(2, cache.numSequences());
+
+        for (int epoch = 0; epoch < 2; epoch++) {
+            cache.reset();
+
+            assertTrue(cache.hasMoreSequences());
+            Sequence<VocabWord> restored = cache.nextSequence();
+            assertEquals(Arrays.asList("day", "night", "day"), restored.asLabels());
+            assertEquals("DOC_0", restored.getSequenceLabel().getLabel());
+            assertSame(day, restored.getElements().get(0));
+
+            restored = cache.nextSequence();
+            assertEquals(Arrays.asList("night"), restored.asLabels());
+            assertNull(restored.getSequenceLabel());
+
+            assertFalse(cache.hasMoreSequences());
+        }
+
+        cache.close();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testBeginDiscardsUnfinishedSequences() throws Exception {
+        VocabCache<VocabWord> vocab = new AbstractCache.Builder<VocabWord>().build();
+        VocabWord day = word(vocab, "day", 0);
+        VocabWord night = word(vocab, "night", 1);
+
+        DigitizedCorpusCache<VocabWord> cache = new DigitizedCorpusCache<>(vocab);
+        // first pass stopped before finish()
+        cache.append(new Sequence<>(Arrays.asList(day, day)));
+
+        cache.begin();
+        cache.append(new Sequence<>(Arrays.asList(night)));
+        cache.finish();
+
+        assertEquals(1, cache.numSequences());
+        cache.reset();
+        assertEquals(Arrays.asList("night"), cache.nextSequence().asLabels());
+        assertFalse(cache.hasMoreSequences());
+
+        cache.close();
+    }
+
+    @Test
+    public void testWord2VecWithCorpusCache() throws Exception {
+        File inputFile = new ClassPathResource("big/raw_sentences.txt").getFile();
+
+        TokenizerFactory t = new DefaultTokenizerFactory();
+        t.setTokenPreProcessor(new CommonPreprocessor());
+
+        Word2Vec vec = new Word2Vec.Builder().minWordFrequency(1).iterations(1).epochs(3).layerSize(100).seed(42)
+                        .windowSize(5).iterate(new BasicLineIterator(inputFile)).tokenizerFactory(t)
+                        .useCorpusCache(true).build();
+
+        vec.fit();
+
+        double sim = vec.similarity("day", "night");
+        log.info("Day/night similarity: " + sim);
+        assertTrue(sim > 0.6);
+    }
+}
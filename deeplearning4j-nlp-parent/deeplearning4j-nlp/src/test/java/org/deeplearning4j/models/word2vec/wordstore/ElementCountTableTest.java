@@ -0,0 +1,75 @@
+package org.deeplearning4j.models.word2vec.wordstore;
+
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ElementCountTableTest {
+
+    @Test
+    public void testCounts() throws Exception {
+        ElementCountTable<VocabWord> table = new ElementCountTable<>();
+
+        table.increment("day", new VocabWord(1.0, "day"), 1);
+        table.increment("day", new VocabWord(1.0, "day"), 1);
+        table.increment("day", new VocabWord(1.0, "day"), 2);
+        table.increment("night", new VocabWord(1.0, "night"), 2);
+
+        assertEquals(2, table.size());
+        assertEquals(3, table.count("day"));
+        assertEquals(2, table.sequencesCount("day"));
+        assertEquals(1, table.sequencesCount("night"));
+        assertEquals(0, table.count("evening"));
+    }
+
+    @Test
+    public void testGrowth() throws Exception {
+        ElementCountTable<VocabWord> table = new ElementCountTable<>();
+
+        for (int i = 0; i < 10000; i++) {
+            String label = "word" + (i % 1000);
+            table.increment(label, new VocabWord(1.0, label), i);
+        }
+
+        assertEquals(1000, table.size());
+        for (int i = 0; i < 1000; i++)
+            assertEquals(10, table.count("word" + i));
+    }
+
+    @Test
+    public void testMergeAndFilter() throws Exception {
+        ElementCountTable<VocabWord> first = new ElementCountTable<>();
+        ElementCountTable<VocabWord> second = new ElementCountTable<>();
+
+        first.increment("day", new VocabWord(1.0, "day"), 1);
+        first.increment("night", new VocabWord(1.0, "night"), 1);
+        second.increment("day", new VocabWord(1.0, "day"), 1);
+
+        VocabWord label = new VocabWord(1.0, "DOC_1");
+        label.markAsLabel(true);
+        first.putLabel("DOC_1", label);
+        second.putLabel("DOC_1", label);
+
+        first.merge(second);
+
+        assertEquals(2, first.count("day"));
+        assertEquals(2, first.sequencesCount("day"));
+        assertEquals(1, first.count("DOC_1"));
+
+        assertEquals(1, first.filter(2));
+        assertEquals(0, first.count("night"));
+        assertEquals(2, first.count("day"));
+        assertEquals(1, first.count("DOC_1"));
+
+        VocabCache<VocabWord> cache = new AbstractCache.Builder<VocabWord>().build();
+        first.exportTo(cache);
+
+        assertEquals(2, cache.numWords());
+        assertTrue(cache.hasToken("day"));
+        assertEquals(2, cache.wordFrequency("day"));
+        assertEquals(2, cache.docAppearedIn("day"));
+    }
+}
@@ -312,4 +312,68 @@ public class VocabConstructorTest {
         assertTrue(cacheTarget.indexOf("Zscience") > sourceSize - 1);
         assertTrue(cacheTarget.indexOf("Zhealth") > sourceSize - 1);
     }
+
+    @Test
+    public void testParallelBuilderMatchesSequential() throws Exception {
+        File inputFile = new ClassPathResource("big/raw_sentences.txt").getFile();
+
+        VocabCache<VocabWord> parallelCache = new AbstractCache.Builder<VocabWord>().build();
+        VocabCache<VocabWord> sequentialCache = new AbstractCache.Builder<VocabWord>().build();
+
+        SentenceTransformer transformer = new SentenceTransformer.Builder()
+                        .iterator(new BasicLineIterator(inputFile)).tokenizerFactory(t).build();
+        AbstractSequenceIterator<VocabWord> sequenceIterator =
+                        new AbstractSequenceIterator.Builder<>(transformer).build();
+
+        new VocabConstructor.Builder<VocabWord>().addSource(sequenceIterator, 5).setTargetVocabCache(parallelCache)
+                        .allowParallelTokenization(true).build().buildJointVocabulary(false, true);
+
+        new VocabConstructor.Builder<VocabWord>().addSource(sequenceIterator, 5)
+                        .setTargetVocabCache(sequentialCache).allowParallelTokenization(false).build()
+                        .buildJointVocabulary(false, true);
+
+        assertEquals(sequentialCache.numWords(), parallelCache.numWords());
+        assertEquals(sequentialCache.totalWordOccurrences(), parallelCache.totalWordOccurrences());
+        assertEquals(sequentialCache.totalNumberOfDocs(), parallelCache.totalNumberOfDocs());
+
+        for (VocabWord word : sequentialCache.vocabWords()) {
+            VocabWord other = parallelCache.tokenFor(word.getLabel());
+            assertEquals(word.getElementFrequency(), other.getElementFrequency(), 1e-5);
+            assertEquals(word.getSequencesCount(), other.getSequencesCount());
+        }
+    }
+
+    @Test(timeout = 60000L, expected = IllegalStateException.class)
+    public void testFailingSourceDoesNotHang() throws Exception {
+        File inputFile = new ClassPathResource("big/raw_sentences.txt").getFile();
+        SentenceTransformer transformer = new SentenceTransformer.Builder()
+                        .iterator(new BasicLineIterator(inputFile)).tokenizerFactory(t).build();
+        final AbstractSequenceIterator<VocabWord> sequenceIterator =
+                        new AbstractSequenceIterator.Builder<>(transformer).build();
+
+        SequenceIterator<VocabWord> failing = new SequenceIterator<VocabWord>() {
+            private int count = 0;
+
+            @Override
+            public boolean hasMoreSequences() {
+                return sequenceIterator.hasMoreSequences();
+            }
+
+            @Override
+            public Sequence<VocabWord> nextSequence() {
+                if (++count > 5000)
+                    throw new IllegalStateException("Source failed");
+                return sequenceIterator.nextSequence();
+            }
+
+            @Override
+            public void reset() {
+                count = 0;
+                sequenceIterator.reset();
+            }
+        };
+
+        new VocabConstructor.Builder<VocabWord>().addSource(failing, 1).allowParallelTokenization(true).build()
+                        .buildJointVocabulary(false, true);
+    }
 }
@@ -0,0 +1,122 @@
+package org.deeplearning4j.models.word2vec.wordstore.inmemory;
+
+import org.datavec.api.util.ClassPathResource;
+import org.deeplearning4j.exception.DL4JInvalidConfigException;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.Word2Vec;
+import org.deeplearning4j.text.sentenceiterator.BasicLineIterator;
+import org.deeplearning4j.text.tokenization.tokenizer.preprocessor.CommonPreprocessor;
+import org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory;
+import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+public class HashedVocabCacheTest {
+    private static final Logger log = LoggerFactory.getLogger(HashedVocabCacheTest.class);
+
+    @Test
+    public void testSubwordIndexes() throws Exception {
+        HashedVocabCache cache = new HashedVocabCache.Builder().numBuckets(1000).nGrams(3, 4).build();
+
+        int[] indexes = cache.subwordIndexes("day");
+
+        // <day> has 3 trigrams and 2 fourgrams
+        assertEquals(6, indexes.length);
+        assertEquals(cache.bucketOf("day"), indexes[0]);
+        assertArrayEquals(indexes, cache.subwordIndexes("day"));
+        for (int index : indexes)
+            assertTrue(index >= 0 && index < 1000);
+
+        HashedVocabCache plain = new HashedVocabCache.Builder().numBuckets(1000).nGrams(0, 0).build();
+        assertArrayEquals(new int[] {plain.bucketOf("day")}, plain.subwordIndexes("day"));
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+        HashedVocabCache cache = new HashedVocabCache.Builder().numBuckets(1000).build();
+
+        cache.incrementWordCount("day");
+        cache.incrementWordCount("day");
+        cache.incrementWordCount("night");
+
+        assertEquals(1000, cache.numWords());
+        assertEquals(3, cache.totalWordOccurrences());
+        assertEquals(2, cache.wordFrequency("day"));
+        assertTrue(cache.containsWord("night"));
+        assertEquals(cache.bucketOf("night"), cache.indexOf("night"));
+        assertEquals("day", cache.wordAtIndex(cache.bucketOf("day")));
+
+        VocabWord word = cache.wordFor("day");
+        assertEquals("day", word.getLabel());
+        assertEquals(cache.bucketOf("day"), word.getIndex());
+        assertEquals(2, (int) word.getElementFrequency());
+
+        if (cache.bucketOf("evening") != cache.bucketOf("day") && cache.bucketOf("evening") != cache.bucketOf("night")) {
+            assertFalse(cache.containsWord("evening"));
+            assertNull(cache.wordFor("evening"));
+        }
+    }
+
+    @Test(expected = DL4JInvalidConfigException.class)
+    public void testInvalidNGrams() throws Exception {
+        new HashedVocabCache.Builder().nGrams(5, 3).build();
+    }
+
+    @Test
+    public void testWord2VecTraining() throws Exception {
+        File file = new ClassPathResource("big/raw_sentences.txt").getFile();
+
+        TokenizerFactory t = new DefaultTokenizerFactory();
+        t.setTokenPreProcessor(new CommonPreprocessor());
+
+        HashedVocabCache cache = new HashedVocabCache.Builder().numBuckets(100000).build();
+
+        Word2Vec vec = new Word2Vec.Builder().minWordFrequency(1).iterations(1).epochs(1).layerSize(100).seed(42)
+                        .windowSize(5).iterate(new BasicLineIterator(file)).tokenizerFactory(t).vocabCache(cache)
+                        .useHierarchicSoftmax(false).negativeSample(5).build();
+
+        vec.fit();
+
+        assertEquals(100000, vec.lookupTable().getWeights().rows());
+
+        double sim = vec.similarity("day", "night");
+        log.info("Day/night similarity: " + sim);
+        assertTrue(sim > 0.4);
+
+        // elements never seen in training still get vectors from their n-grams
+        INDArray unseen = vec.getWordVectorMatrix("overnighters");
+        assertNotNull(unseen);
+        assertEquals(100, unseen.length());
+
+        // negative samples are drawn from observed buckets only
+        INDArray table = ((InMemoryLookupTable<VocabWord>) vec.lookupTable()).getTable();
+        for (int i = 0; i < table.length(); i++)
+            assertNotNull(cache.wordAtIndex(table.getInt(i)));
+
+        // nearest elements are ranked by composed vectors, same as similarity()
+        Collection<String> nearest = vec.wordsNearest("day", 5);
+        assertEquals(5, nearest.size());
+        String expected = null;
+        double best = -Double.MAX_VALUE;
+        INDArray day = vec.getWordVectorMatrix("day");
+        for (String word : cache.words()) {
+            if (word.equals("day"))
+                continue;
+            double s = Transforms.cosineSim(day, vec.getWordVectorMatrix(word));
+            if (s > best) {
+                best = s;
+                expected = word;
+            }
+        }
+        assertEquals(expected, nearest.iterator().next());
+    }
+}
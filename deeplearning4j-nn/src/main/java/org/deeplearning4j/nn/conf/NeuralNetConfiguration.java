@@ -40,6 +40,7 @@ import org.deeplearning4j.nn.conf.stepfunctions.StepFunction;
 import org.deeplearning4j.nn.conf.weightnoise.IWeightNoise;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.deeplearning4j.util.reflections.DL4JSubTypesScanner;
+import org.deeplearning4j.util.reflections.DL4JSubtypesIndex;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.activations.IActivation;
 import org.nd4j.linalg.activations.impl.ActivationSigmoid;
@@ -80,13 +81,22 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
 
     /**
      * System property for custom layers, preprocessors, graph vertices etc. Enabled by default.
-     * Run JVM with "-Dorg.deeplearning4j.config.custom.enabled=false" to disable classpath scanning for
-     * Overriding the default (i.e., disabling) this is only useful if (a) no custom layers/preprocessors etc will be
-     * used, and (b) minimizing startup/initialization time for new JVMs is very important.
+     * Custom classes are found via subtype index files (see {@link DL4JSubtypesIndex}), and optionally via classpath
+     * scanning (see {@link #CUSTOM_FUNCTIONALITY_SCAN}).
+     * Run JVM with "-Dorg.deeplearning4j.config.custom.enabled=false" to disable both.
+     * Overriding the default (i.e., disabling) this is only useful if no custom layers/preprocessors etc will be used.
      * Results are cached, so there is no cost to custom layers after the first network has been constructed.
      */
     public static final String CUSTOM_FUNCTIONALITY = "org.deeplearning4j.config.custom.enabled";
 
+    /**
+     * System property for classpath scanning for custom layers, preprocessors, graph vertices etc. Disabled by
+     * default, as scanning can take seconds on startup of new JVMs.
+     * Run JVM with "-Dorg.deeplearning4j.config.custom.scan=true" to find custom classes, which aren't listed in any
+     * subtype index file.
+     */
+    public static final String CUSTOM_FUNCTIONALITY_SCAN = "org.deeplearning4j.config.custom.scan";
+
     protected Layer layer;
     //batch size: primarily used for conv nets. Will be reinforced if set.
     protected boolean miniBatch = true;
@@ -470,7 +480,7 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
         for (Class<?> c : classes)
             classNames.add(c.getName());
 
-        // First: scan the classpath and find all instances of the 'baseClasses' classes
+        // First: find all subtypes of the 'baseClasses' classes, listed in index files or found on the classpath
         if (subtypesClassCache == null) {
 
             //Check system property:
@@ -480,35 +490,28 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
                 subtypesClassCache = Collections.emptySet();
             } else {
 
-                List<Class<?>> interfaces = Arrays.<Class<?>>asList(InputPreProcessor.class, ILossFunction.class,
-                                IActivation.class, ReconstructionDistribution.class);
-                List<Class<?>> classesList = Arrays.<Class<?>>asList(Layer.class, GraphVertex.class);
+                Set<Class<?>> subtypeClasses = new HashSet<>();
+                for (Class<?> c : DL4JSubtypesIndex.load()) {
+                    boolean isSubtype = false;
+                    for (Class<?> baseClass : classes) {
+                        if (baseClass.isAssignableFrom(c)) {
+                            isSubtype = true;
+                            break;
+                        }
+                    }
 
-                Collection<URL> urls = ClasspathHelper.forClassLoader();
-                List<URL> scanUrls = new ArrayList<>();
-                for (URL u : urls) {
-                    String path = u.getPath();
-                    if (!path.matches(".*/jre/lib/.*jar")) { //Skip JRE/JDK JARs
-                        scanUrls.add(u);
+                    if (isSubtype) {
+                        subtypeClasses.add(c);
+                    } else {
+                        log.warn("Skipping class {} listed in subtype index: not a subtype of {}", c.getName(),
+                                        classNames);
                     }
                 }
 
-                Reflections reflections = new Reflections(new ConfigurationBuilder().filterInputsBy(new FilterBuilder()
-                                .exclude("^(?!.*\\.class$).*$") //Consider only .class files (to avoid debug messages etc. on .dlls, etc
-                                //Exclude the following: the assumption here is that no custom functionality will ever be present
-                                // under these package name prefixes. These are all common dependencies for DL4J
-                                .exclude("^org.nd4j.*").exclude("^org.datavec.*").exclude("^org.bytedeco.*") //JavaCPP
-                                .exclude("^com.fasterxml.*")//Jackson
-                                .exclude("^org.apache.*") //Apache commons, Spark, log4j etc
-                                .exclude("^org.projectlombok.*").exclude("^com.twelvemonkeys.*").exclude("^org.joda.*")
-                                .exclude("^org.slf4j.*").exclude("^com.google.*").exclude("^org.reflections.*")
-                                .exclude("^ch.qos.*") //Logback
-                ).addUrls(scanUrls).setScanners(new DL4JSubTypesScanner(interfaces, classesList)));
-                org.reflections.Store store = reflections.getStore();
-
-                Iterable<String> subtypesByName = store.getAll(DL4JSubTypesScanner.class.getSimpleName(), classNames);
-
-                Set<? extends Class<?>> subtypeClasses = Sets.newHashSet(ReflectionUtils.forNames(subtypesByName));
+                if (Boolean.parseBoolean(System.getProperty(CUSTOM_FUNCTIONALITY_SCAN))) {
+                    subtypeClasses.addAll(scanClasspath(classNames));
+                }
+
                 subtypesClassCache = new HashSet<>();
                 for (Class<?> c : subtypeClasses) {
                     if (Modifier.isAbstract(c.getModifiers()) || Modifier.isInterface(c.getModifiers())) {
@@ -566,6 +569,45 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
         mapper.registerSubtypes(toRegister.toArray(new NamedType[toRegister.size()]));
     }
 
+    /**
+     * Scans the classpath for subtypes of the specified classes
+     */
+    private static Set<? extends Class<?>> scanClasspath(List<String> classNames) {
+        long start = System.currentTimeMillis();
+
+        List<Class<?>> interfaces = Arrays.<Class<?>>asList(InputPreProcessor.class, ILossFunction.class,
+                        IActivation.class, ReconstructionDistribution.class);
+        List<Class<?>> classesList = Arrays.<Class<?>>asList(Layer.class, GraphVertex.class);
+
+        Collection<URL> urls = ClasspathHelper.forClassLoader();
+        List<URL> scanUrls = new ArrayList<>();
+        for (URL u : urls) {
+            String path = u.getPath();
+            if (!path.matches(".*/jre/lib/.*jar")) { //Skip JRE/JDK JARs
+                scanUrls.add(u);
+            }
+        }
+
+        Reflections reflections = new Reflections(new ConfigurationBuilder().filterInputsBy(new FilterBuilder()
+                        .exclude("^(?!.*\\.class$).*$") //Consider only .class files (to avoid debug messages etc. on .dlls, etc
+                        //Exclude the following: the assumption here is that no custom functionality will ever be present
+                        // under these package name prefixes. These are all common dependencies for DL4J
+                        .exclude("^org.nd4j.*").exclude("^org.datavec.*").exclude("^org.bytedeco.*") //JavaCPP
+                        .exclude("^com.fasterxml.*")//Jackson
+                        .exclude("^org.apache.*") //Apache commons, Spark, log4j etc
+                        .exclude("^org.projectlombok.*").exclude("^com.twelvemonkeys.*").exclude("^org.joda.*")
+                        .exclude("^org.slf4j.*").exclude("^com.google.*").exclude("^org.reflections.*")
+                        .exclude("^ch.qos.*") //Logback
+        ).addUrls(scanUrls).setScanners(new DL4JSubTypesScanner(interfaces, classesList)));
+        org.reflections.Store store = reflections.getStore();
+
+        Iterable<String> subtypesByName = store.getAll(DL4JSubTypesScanner.class.getSimpleName(), classNames);
+
+        Set<? extends Class<?>> subtypeClasses = Sets.newHashSet(ReflectionUtils.forNames(subtypesByName));
+        log.info("Classpath scanning for custom subtypes took {} ms", System.currentTimeMillis() - start);
+        return subtypeClasses;
+    }
+
     @Data
     public static class Builder implements Cloneable {
         protected IActivation activationFn = new ActivationSigmoid();
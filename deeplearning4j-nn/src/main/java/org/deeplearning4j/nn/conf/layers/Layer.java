@@ -28,6 +28,7 @@ import org.deeplearning4j.nn.conf.dropout.Dropout;
 import org.deeplearning4j.nn.conf.dropout.IDropout;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.layers.misc.FrozenLayer;
+import org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer;
 import org.deeplearning4j.nn.conf.layers.objdetect.Yolo2OutputLayer;
 import org.deeplearning4j.nn.conf.layers.variational.VariationalAutoencoder;
 import org.deeplearning4j.nn.conf.memory.LayerMemoryReport;
@@ -69,6 +70,7 @@ import java.util.*;
                 @JsonSubTypes.Type(value = ZeroPaddingLayer.class, name = "zeroPadding"),
                 @JsonSubTypes.Type(value = ZeroPadding1DLayer.class, name = "zeroPadding1d"),
                 @JsonSubTypes.Type(value = FrozenLayer.class, name = "FrozenLayer"),
+                @JsonSubTypes.Type(value = QuantizedLayer.class, name = "QuantizedLayer"),
                 @JsonSubTypes.Type(value = Upsampling2D.class, name = "Upsampling2D"),
                 @JsonSubTypes.Type(value = Yolo2OutputLayer.class, name = "Yolo2OutputLayer")
 })
@@ -0,0 +1,188 @@
+package org.deeplearning4j.nn.conf.layers.misc;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.deeplearning4j.nn.api.ParamInitializer;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.FeedForwardLayer;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.memory.LayerMemoryReport;
+import org.deeplearning4j.nn.conf.memory.MemoryReport;
+import org.deeplearning4j.nn.params.QuantizedLayerParamInitializer;
+import org.deeplearning4j.optimize.api.IterationListener;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.learning.config.IUpdater;
+import org.nd4j.linalg.learning.config.NoOp;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Inference-only version of a DenseLayer or ConvolutionLayer, with int8 weights.
+ *
+ * Weights are network parameters (see {@link QuantizedLayerParamInitializer}), row by row: one row of fanIn values
+ * per output, where fanIn is nIn for dense layers and nIn*kH*kW for convolution layers. Each row has its own
+ * scale: float weight = int8 weight * weightScale.
+ *
+ * Layer input is quantized to int8 as well, either with the calibrated inputScale, or (if inputScale is 0) with
+ * a scale computed for each example. See {@link org.deeplearning4j.nn.transferlearning.PostTrainingQuantizer}.
+ */
+@Data
+@NoArgsConstructor
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+public class QuantizedLayer extends Layer {
+
+    protected Layer layer;
+    protected double inputScale;
+
+    private QuantizedLayer(Builder builder) {
+        super(builder);
+        this.layer = builder.layer;
+        this.inputScale = builder.inputScale;
+    }
+
+    /**
+     * Returns number of weights per output
+     */
+    public int fanIn() {
+        FeedForwardLayer ffl = (FeedForwardLayer) layer;
+        if (layer instanceof ConvolutionLayer) {
+            int[] kernel = ((ConvolutionLayer) layer).getKernelSize();
+            return ffl.getNIn() * kernel[0] * kernel[1];
+        }
+        return ffl.getNIn();
+    }
+
+    /**
+     * Returns number of outputs (channels, for convolution layers)
+     */
+    public int nOut() {
+        return ((FeedForwardLayer) layer).getNOut();
+    }
+
+    @Override
+    public Layer clone() {
+        QuantizedLayer l = (QuantizedLayer) super.clone();
+        l.layer = layer.clone();
+        return l;
+    }
+
+    @Override
+    public org.deeplearning4j.nn.api.Layer instantiate(NeuralNetConfiguration conf,
+                    Collection<IterationListener> iterationListeners, int layerIndex, INDArray layerParamsView,
+                    boolean initializeParams) {
+        org.deeplearning4j.nn.layers.QuantizedLayer ret = new org.deeplearning4j.nn.layers.QuantizedLayer(conf);
+        ret.setListeners(iterationListeners);
+        ret.setIndex(layerIndex);
+        ret.setParamsViewArray(layerParamsView);
+        Map<String, INDArray> paramTable = initializer().init(conf, layerParamsView, initializeParams);
+        ret.setParamTable(paramTable);
+        ret.setConf(conf);
+        return ret;
+    }
+
+    @Override
+    public ParamInitializer initializer() {
+        return QuantizedLayerParamInitializer.getInstance();
+    }
+
+    @Override
+    public InputType getOutputType(int layerIndex, InputType inputType) {
+        return layer.getOutputType(layerIndex, inputType);
+    }
+
+    @Override
+    public void setNIn(InputType inputType, boolean override) {
+        //No op: weights are already quantized for the existing nIn
+    }
+
+    @Override
+    public InputPreProcessor getPreProcessorForInputType(InputType inputType) {
+        return layer.getPreProcessorForInputType(inputType);
+    }
+
+    @Override
+    public double getL1ByParam(String paramName) {
+        return 0;
+    }
+
+    @Override
+    public double getL2ByParam(String paramName) {
+        return 0;
+    }
+
+    @Override
+    public boolean isPretrainParam(String paramName) {
+        return false;
+    }
+
+    @Override
+    public IUpdater getUpdaterByParam(String paramName) {
+        //Bias is never updated: quantized layers can't be trained
+        return new NoOp();
+    }
+
+    @Override
+    public LayerMemoryReport getMemoryReport(InputType inputType) {
+        InputType outputType = getOutputType(-1, inputType);
+        int outputPerEx = outputType.arrayElementsPerExample();
+        int rowsPerEx = outputPerEx / nOut();
+
+        int numParams = initializer().numParams(this);
+
+        //int8 copy of the weights used by forward passes, in float units
+        int weightFloats = (nOut() * fanIn() + 3) / 4;
+
+        //Per example: int8 input rows (im2col for convolution), dense input copy, and the output
+        int floatInputPerEx = layer instanceof ConvolutionLayer ? 0 : fanIn();
+        int variablePerEx = rowsPerEx * (fanIn() + 3) / 4 + floatInputPerEx + outputPerEx;
+
+        return new LayerMemoryReport.Builder(layerName, QuantizedLayer.class, inputType, outputType)
+                        .standardMemory(numParams, 0)
+                        //No training
+                        .workingMemory(weightFloats, variablePerEx, 0, 0)
+                        .cacheMemory(MemoryReport.CACHE_MODE_ALL_ZEROS, MemoryReport.CACHE_MODE_ALL_ZEROS) //No caching
+                        .build();
+    }
+
+    @Override
+    public void setLayerName(String layerName) {
+        super.setLayerName(layerName);
+        if (layer != null)
+            layer.setLayerName(layerName);
+    }
+
+    public static class Builder extends Layer.Builder<Builder> {
+        private Layer layer;
+        private double inputScale;
+
+        /**
+         * Original DenseLayer or ConvolutionLayer configuration
+         */
+        public Builder layer(Layer layer) {
+            this.layer = layer;
+            return this;
+        }
+
+        /**
+         * Scale of quantized input, or 0 for scales computed per example
+         */
+        public Builder inputScale(double inputScale) {
+            this.inputScale = inputScale;
+            return this;
+        }
+
+        @Override
+        public QuantizedLayer build() {
+            if (!(layer instanceof FeedForwardLayer))
+                throw new IllegalStateException("Quantized layer requires DenseLayer or ConvolutionLayer, got " + layer);
+            return new QuantizedLayer(this);
+        }
+    }
+}
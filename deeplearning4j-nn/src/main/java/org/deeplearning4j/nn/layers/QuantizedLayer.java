@@ -0,0 +1,308 @@
+package org.deeplearning4j.nn.layers;
+
+import org.deeplearning4j.exception.DL4JInvalidInputException;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.FeedForwardLayer;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.util.ConvolutionUtils;
+import org.deeplearning4j.util.QuantizationUtils;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Inference-only DenseLayer or ConvolutionLayer with int8 weights. Input is quantized to int8 too, and output is
+ * computed by int8 matrix multiplication (after im2col, for convolution layers), with int accumulators.
+ *
+ * @see org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer
+ */
+public class QuantizedLayer extends AbstractLayer<org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer> {
+
+    protected INDArray paramsFlattened;
+    protected INDArray gradientsFlattened;
+    protected Map<String, INDArray> params;
+    //int8 copy of the parameters, reused by forward passes as long as the parameters don't change
+    protected QuantizedParams quantizedParams;
+
+    public QuantizedLayer(NeuralNetConfiguration conf) {
+        super(conf);
+    }
+
+    @Override
+    public double calcL2(boolean backpropParamsOnly) {
+        return 0;
+    }
+
+    @Override
+    public double calcL1(boolean backpropParamsOnly) {
+        return 0;
+    }
+
+    @Override
+    public Type type() {
+        return layerConf().getLayer() instanceof ConvolutionLayer ? Type.CONVOLUTIONAL : Type.FEED_FORWARD;
+    }
+
+    @Override
+    public void fit(INDArray input) {
+        throw new UnsupportedOperationException("Quantized layers can't be trained " + layerId());
+    }
+
+    @Override
+    public Pair<Gradient, INDArray> backpropGradient(INDArray epsilon) {
+        throw new UnsupportedOperationException("Quantized layers can't be trained " + layerId());
+    }
+
+    @Override
+    public INDArray activate(boolean training) {
+        INDArray z = preOutput(training);
+        return ((FeedForwardLayer) layerConf().getLayer()).getActivationFn().getActivation(z, training);
+    }
+
+    @Override
+    public INDArray preOutput(boolean training) {
+        if (input == null) {
+            throw new IllegalArgumentException("Cannot perform forward pass with null input " + layerId());
+        }
+
+        if (layerConf().getLayer() instanceof ConvolutionLayer) {
+            return preOutputConvolution();
+        } else {
+            return preOutputDense();
+        }
+    }
+
+    protected INDArray preOutputDense() {
+        int fanIn = layerConf().fanIn();
+        if (input.rank() != 2 || input.size(1) != fanIn) {
+            throw new DL4JInvalidInputException("Input size (" + Arrays.toString(input.shape())
+                            + ") does not match quantized dense layer nIn (" + fanIn + ") " + layerId());
+        }
+
+        int rows = input.size(0);
+        float[] data = toFloat(input);
+        byte[] quantized = new byte[data.length];
+        float[] rowScales;
+        if (layerConf().getInputScale() > 0) {
+            //Calibrated scale, common for all examples
+            float scale = (float) layerConf().getInputScale();
+            QuantizationUtils.quantize(data, 0, data.length, scale, quantized);
+            rowScales = new float[rows];
+            Arrays.fill(rowScales, scale);
+        } else {
+            rowScales = QuantizationUtils.quantizeRows(data, rows, fanIn, quantized);
+        }
+
+        float[] out = multiply(quantized, rowScales, rows);
+        return Nd4j.create(out, new int[] {rows, layerConf().nOut()}, 'c');
+    }
+
+    protected INDArray preOutputConvolution() {
+        ConvolutionLayer convConf = (ConvolutionLayer) layerConf().getLayer();
+        int inDepth = convConf.getNIn();
+        if (input.rank() != 4 || input.size(1) != inDepth) {
+            throw new DL4JInvalidInputException("Got input with shape " + Arrays.toString(input.shape())
+                            + ", expected rank 4 array with shape [minibatchSize, " + inDepth
+                            + ", inputHeight, inputWidth] " + layerId());
+        }
+
+        int miniBatch = input.size(0);
+        int outDepth = convConf.getNOut();
+        int[] kernel = convConf.getKernelSize();
+        int[] strides = convConf.getStride();
+        int[] dilation = convConf.getDilation();
+        ConvolutionMode convolutionMode = convConf.getConvolutionMode();
+
+        int[] pad;
+        int[] outSize;
+        if (convolutionMode == ConvolutionMode.Same) {
+            outSize = ConvolutionUtils.getOutputSize(input, kernel, strides, null, convolutionMode, dilation); //Also performs validation
+            pad = ConvolutionUtils.getSameModeTopLeftPadding(outSize, new int[] {input.size(2), input.size(3)}, kernel,
+                            strides, dilation);
+        } else {
+            pad = convConf.getPadding();
+            outSize = ConvolutionUtils.getOutputSize(input, kernel, strides, pad, convolutionMode, dilation); //Also performs validation
+        }
+        int outH = outSize[0];
+        int outW = outSize[1];
+
+        //im2col straight into int8: rows are [miniBatch, outH, outW], columns are [depthIn, kH, kW], c order,
+        // which matches the order of quantized weights
+        int rows = miniBatch * outH * outW;
+        byte[] quantized = new byte[rows * layerConf().fanIn()];
+        float[] rowScales = QuantizationUtils.im2col(toFloat(input), input.shape(), kernel, strides, pad, dilation,
+                        outSize, (float) layerConf().getInputScale(), quantized);
+        float[] out = multiply(quantized, rowScales, rows);
+
+        //[miniBatch, outH, outW, depthOut] -> [miniBatch, depthOut, outH, outW]
+        INDArray z = Nd4j.create(out, new int[] {miniBatch, outH, outW, outDepth}, 'c');
+        return z.permute(0, 3, 1, 2);
+    }
+
+    /**
+     * Multiplies quantized input rows by quantized weights
+     */
+    protected float[] multiply(byte[] quantized, float[] rowScales, int rows) {
+        int cols = layerConf().fanIn();
+        int nOut = layerConf().nOut();
+        QuantizedParams p = quantizedParams();
+
+        float[] out = new float[rows * nOut];
+        QuantizationUtils.gemm(quantized, rowScales, p.weights, p.scales, p.bias, rows, cols, nOut, out);
+        return out;
+    }
+
+    /**
+     * Returns int8 copy of the parameters. The cached copy is compared with the parameters on every call, rather
+     * than invalidated by setters, since networks assign their flattened parameters without notifying layers
+     */
+    protected QuantizedParams quantizedParams() {
+        int nOut = layerConf().nOut();
+        int nWeights = nOut * layerConf().fanIn();
+        float[] current = toFloat(paramsFlattened);
+
+        QuantizedParams cached = quantizedParams;
+        if (cached != null && cached.matches(current))
+            return cached;
+
+        //Weight parameters hold integer values, so unit scale only converts them
+        byte[] weights = new byte[nWeights];
+        QuantizationUtils.quantize(current, 0, nWeights, 1.0f, weights);
+        cached = new QuantizedParams(weights, Arrays.copyOfRange(current, nWeights, nWeights + nOut),
+                        Arrays.copyOfRange(current, nWeights + nOut, nWeights + 2 * nOut));
+        quantizedParams = cached;
+        return cached;
+    }
+
+    /**
+     * Returns values of the array in c order, copying the array first only if it isn't dense and c ordered
+     */
+    protected static float[] toFloat(INDArray array) {
+        if (array.ordering() == 'c' && !array.isView() && array.data().length() == array.length())
+            return array.data().asFloat();
+        return array.dup('c').data().asFloat();
+    }
+
+    @Override
+    public Layer transpose() {
+        throw new UnsupportedOperationException("Not supported - " + layerId());
+    }
+
+    @Override
+    public Layer clone() {
+        QuantizedLayer layer = new QuantizedLayer(conf.clone());
+        if (paramsFlattened != null) {
+            INDArray paramsCopy = paramsFlattened.dup();
+            layer.setParamsViewArray(paramsCopy);
+            layer.setParamTable(layerConf().initializer().init(layer.conf(), paramsCopy, false));
+        }
+        return layer;
+    }
+
+    @Override
+    public boolean isPretrainLayer() {
+        return false;
+    }
+
+    @Override
+    public void clearNoiseWeightParams() {
+        //No op
+    }
+
+    @Override
+    public INDArray params() {
+        return paramsFlattened;
+    }
+
+    @Override
+    public int numParams() {
+        return layerConf().initializer().numParams(conf);
+    }
+
+    @Override
+    public INDArray getParam(String param) {
+        return params.get(param);
+    }
+
+    @Override
+    public void setParam(String key, INDArray val) {
+        if (!params.containsKey(key))
+            throw new IllegalArgumentException("Unknown parameter " + key + " " + layerId());
+        params.get(key).assign(val);
+    }
+
+    @Override
+    public void setParams(INDArray params) {
+        if (params == paramsFlattened)
+            return;
+        paramsFlattened.assign(params);
+    }
+
+    @Override
+    public void setParamsViewArray(INDArray params) {
+        this.paramsFlattened = params;
+    }
+
+    @Override
+    public void setParamTable(Map<String, INDArray> paramTable) {
+        this.params = paramTable;
+    }
+
+    @Override
+    public Map<String, INDArray> paramTable(boolean backpropParamsOnly) {
+        return params == null ? Collections.<String, INDArray>emptyMap() : params;
+    }
+
+    @Override
+    public INDArray getGradientsViewArray() {
+        return gradientsFlattened;
+    }
+
+    @Override
+    public void setBackpropGradientsViewArray(INDArray gradients) {
+        //Gradients are never computed, but networks allocate gradient views for all parameters
+        this.gradientsFlattened = gradients;
+    }
+
+    /**
+     * int8 weights, with weight scales and bias as float arrays, in the order of the flattened parameters
+     */
+    protected static class QuantizedParams {
+        private final byte[] weights;
+        private final float[] scales;
+        private final float[] bias;
+
+        private QuantizedParams(byte[] weights, float[] scales, float[] bias) {
+            this.weights = weights;
+            this.scales = scales;
+            this.bias = bias;
+        }
+
+        private boolean matches(float[] params) {
+            if (params.length != weights.length + scales.length + bias.length)
+                return false;
+            for (int i = 0; i < weights.length; i++) {
+                if (weights[i] != params[i])
+                    return false;
+            }
+            int offset = weights.length;
+            for (int i = 0; i < scales.length; i++) {
+                if (scales[i] != params[offset + i])
+                    return false;
+            }
+            offset += scales.length;
+            for (int i = 0; i < bias.length; i++) {
+                if (bias[i] != params[offset + i])
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.deeplearning4j.nn.params;
+
+import org.deeplearning4j.nn.api.ParamInitializer;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parameter initializer for {@link QuantizedLayer} instances. ND4J has no int8 data type, so quantized weights are
+ * stored as integer valued float parameters, [nOut, fanIn] in c order, followed by the weight scale of each output
+ * and the bias. This keeps them with the other network parameters when the network is saved.
+ */
+public class QuantizedLayerParamInitializer implements ParamInitializer {
+
+    public final static String WEIGHT_KEY = DefaultParamInitializer.WEIGHT_KEY;
+    public final static String SCALE_KEY = "ws";
+    public final static String BIAS_KEY = DefaultParamInitializer.BIAS_KEY;
+
+    private static final QuantizedLayerParamInitializer INSTANCE = new QuantizedLayerParamInitializer();
+
+    public static QuantizedLayerParamInitializer getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public int numParams(NeuralNetConfiguration conf) {
+        return numParams(conf.getLayer());
+    }
+
+    @Override
+    public int numParams(Layer layer) {
+        QuantizedLayer layerConf = (QuantizedLayer) layer;
+        return layerConf.nOut() * (layerConf.fanIn() + 2);
+    }
+
+    @Override
+    public List<String> paramKeys(Layer layer) {
+        return Arrays.asList(WEIGHT_KEY, SCALE_KEY, BIAS_KEY);
+    }
+
+    @Override
+    public List<String> weightKeys(Layer layer) {
+        return Collections.singletonList(WEIGHT_KEY);
+    }
+
+    @Override
+    public List<String> biasKeys(Layer layer) {
+        return Collections.singletonList(BIAS_KEY);
+    }
+
+    @Override
+    public boolean isWeightParam(String key) {
+        return WEIGHT_KEY.equals(key);
+    }
+
+    @Override
+    public boolean isBiasParam(String key) {
+        return BIAS_KEY.equals(key);
+    }
+
+    @Override
+    public Map<String, INDArray> init(NeuralNetConfiguration conf, INDArray paramsView, boolean initializeParams) {
+        int length = numParams(conf);
+        if (paramsView.length() != length)
+            throw new IllegalStateException(
+                            "Expected params view of length " + length + ", got length " + paramsView.length());
+
+        //Zero weights with unit scales, until quantized weights are set
+        if (initializeParams)
+            paramsView.assign(0);
+
+        Map<String, INDArray> params = Collections.synchronizedMap(new LinkedHashMap<String, INDArray>());
+        params.putAll(split(conf, paramsView));
+        if (initializeParams)
+            params.get(SCALE_KEY).assign(1);
+        for (String key : params.keySet())
+            conf.addVariable(key);
+        return params;
+    }
+
+    @Override
+    public Map<String, INDArray> getGradientsFromFlattened(NeuralNetConfiguration conf, INDArray gradientView) {
+        return split(conf, gradientView);
+    }
+
+    private static Map<String, INDArray> split(NeuralNetConfiguration conf, INDArray view) {
+        QuantizedLayer layerConf = (QuantizedLayer) conf.getLayer();
+        int nOut = layerConf.nOut();
+        int nWeights = nOut * layerConf.fanIn();
+
+        Map<String, INDArray> out = new LinkedHashMap<>();
+        out.put(WEIGHT_KEY, view.get(NDArrayIndex.point(0), NDArrayIndex.interval(0, nWeights)).reshape('c', nOut,
+                        layerConf.fanIn()));
+        out.put(SCALE_KEY, view.get(NDArrayIndex.point(0), NDArrayIndex.interval(nWeights, nWeights + nOut)));
+        out.put(BIAS_KEY, view.get(NDArrayIndex.point(0),
+                        NDArrayIndex.interval(nWeights + nOut, nWeights + 2 * nOut)));
+        return out;
+    }
+}
@@ -0,0 +1,371 @@
+package org.deeplearning4j.nn.transferlearning;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.conf.layers.misc.FrozenLayer;
+import org.deeplearning4j.nn.conf.preprocessor.*;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastMulOp;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.*;
+
+/**
+ * Export-time optimizer, producing inference-only copies of trained networks. The optimized network gives the
+ * same output as the original one (up to floating point error), but does less work per forward pass:
+ *  - BatchNormalization layers are folded into weights and biases of the preceding ConvolutionLayer or DenseLayer,
+ *    if that layer has identity activation and its output isn't used anywhere else
+ *  - DropoutLayers are removed, and dropout, noise and weight noise are removed from all other layers
+ *  - frozen layers are unwrapped
+ *  - preprocessors of removed layers are merged with preprocessors of the following layers, and pairs of
+ *    preprocessors cancelling each other (such as CnnToFeedForward followed by FeedForwardToCnn) are removed
+ *
+ * The optimized network shouldn't be trained: global mean and variance of folded layers are gone. The original
+ * network isn't modified.
+ */
+@Slf4j
+public class InferenceOptimizer {
+
+    private InferenceOptimizer() {}
+
+    /**
+     * Returns inference-only copy of the specified network
+     *
+     * @param network trained network
+     * @return optimized network
+     */
+    public static MultiLayerNetwork optimize(MultiLayerNetwork network) {
+        MultiLayerConfiguration conf = network.getLayerWiseConfigurations().clone();
+        int nLayers = conf.getConfs().size();
+
+        //First: remove dropout layers, and move their preprocessors to the following layers
+        List<Entry> entries = new ArrayList<>();
+        InputPreProcessor pending = null;
+        for (int i = 0; i < nLayers; i++) {
+            NeuralNetConfiguration layerConf = conf.getConf(i);
+            stripTrainingOnly(layerConf);
+            InputPreProcessor preProcessor = merge(pending, conf.getInputPreProcess(i));
+            pending = null;
+
+            if (layerConf.getLayer() instanceof DropoutLayer && i < nLayers - 1) {
+                pending = preProcessor;
+                continue;
+            }
+            entries.add(new Entry(layerConf, preProcessor, i));
+        }
+
+        //Second: fold batch normalization layers into preceding layers
+        List<Entry> kept = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!kept.isEmpty() && entry.preProcessor == null) {
+                Entry previous = kept.get(kept.size() - 1);
+                if (previous.batchNormIndex < 0
+                                && canFold(previous.conf.getLayer(), entry.conf.getLayer())) {
+                    enableBias(previous.conf.getLayer());
+                    previous.batchNormIndex = entry.index;
+                    continue;
+                }
+            }
+            kept.add(entry);
+        }
+
+        List<NeuralNetConfiguration> confs = new ArrayList<>();
+        Map<Integer, InputPreProcessor> preProcessors = new HashMap<>();
+        for (int i = 0; i < kept.size(); i++) {
+            confs.add(kept.get(i).conf);
+            if (kept.get(i).preProcessor != null)
+                preProcessors.put(i, kept.get(i).preProcessor);
+        }
+        conf.setConfs(confs);
+        conf.setInputPreProcessors(preProcessors);
+
+        MultiLayerNetwork optimized = new MultiLayerNetwork(conf);
+        optimized.init();
+        for (int i = 0; i < kept.size(); i++) {
+            Entry entry = kept.get(i);
+            copyParams(network.getLayer(entry.index), optimized.getLayer(i));
+            if (entry.batchNormIndex >= 0)
+                foldBatchNorm(network.getLayer(entry.index), network.getLayer(entry.batchNormIndex),
+                                optimized.getLayer(i));
+        }
+
+        log.info("Network optimized for inference: {} layers -> {} layers", nLayers, kept.size());
+        return optimized;
+    }
+
+    /**
+     * Returns inference-only copy of the specified graph. Network inputs and outputs keep their names.
+     *
+     * @param graph trained graph
+     * @return optimized graph
+     */
+    public static ComputationGraph optimize(ComputationGraph graph) {
+        ComputationGraphConfiguration conf = graph.getConfiguration().clone();
+        Map<String, GraphVertex> vertices = conf.getVertices();
+        Map<String, List<String>> vertexInputs = conf.getVertexInputs();
+        List<String> outputs = conf.getNetworkOutputs();
+        int nVertices = vertices.size();
+
+        for (GraphVertex vertex : vertices.values()) {
+            if (vertex instanceof LayerVertex) {
+                LayerVertex layerVertex = (LayerVertex) vertex;
+                stripTrainingOnly(layerVertex.getLayerConf());
+                layerVertex.setPreProcessor(merge(layerVertex.getPreProcessor(), null));
+            }
+        }
+
+        //First: remove dropout layers. Preprocessor of removed layer is merged into preprocessors of its consumers
+        for (String name : new ArrayList<>(vertices.keySet())) {
+            if (!isLayer(vertices.get(name), DropoutLayer.class) || outputs.contains(name)
+                            || vertexInputs.get(name).size() != 1)
+                continue;
+
+            InputPreProcessor preProcessor = ((LayerVertex) vertices.get(name)).getPreProcessor();
+            List<String> consumers = consumers(vertexInputs, name);
+            if (preProcessor != null) {
+                boolean allLayers = true;
+                for (String consumer : consumers)
+                    allLayers &= vertices.get(consumer) instanceof LayerVertex;
+                if (!allLayers)
+                    continue;
+
+                for (String consumer : consumers) {
+                    LayerVertex layerVertex = (LayerVertex) vertices.get(consumer);
+                    layerVertex.setPreProcessor(merge(preProcessor.clone(), layerVertex.getPreProcessor()));
+                }
+            }
+            removeVertex(conf, name, vertexInputs.get(name).get(0));
+        }
+
+        //Second: fold batch normalization layers into their inputs
+        Map<String, String> folded = new HashMap<>();
+        for (String name : new ArrayList<>(vertices.keySet())) {
+            GraphVertex vertex = vertices.get(name);
+            if (!isLayer(vertex, BatchNormalization.class) || ((LayerVertex) vertex).getPreProcessor() != null
+                            || outputs.contains(name) || vertexInputs.get(name).size() != 1)
+                continue;
+
+            String source = vertexInputs.get(name).get(0);
+            GraphVertex sourceVertex = vertices.get(source);
+            if (!(sourceVertex instanceof LayerVertex) || outputs.contains(source)
+                            || consumers(vertexInputs, source).size() != 1)
+                continue;
+
+            Layer sourceLayer = ((LayerVertex) sourceVertex).getLayerConf().getLayer();
+            if (!canFold(sourceLayer, ((LayerVertex) vertex).getLayerConf().getLayer()))
+                continue;
+
+            enableBias(sourceLayer);
+            folded.put(source, name);
+            removeVertex(conf, name, source);
+        }
+
+        ComputationGraph optimized = new ComputationGraph(conf);
+        optimized.init();
+        for (org.deeplearning4j.nn.api.Layer layer : optimized.getLayers()) {
+            String name = layer.conf().getLayer().getLayerName();
+            copyParams(graph.getLayer(name), layer);
+            if (folded.containsKey(name))
+                foldBatchNorm(graph.getLayer(name), graph.getLayer(folded.get(name)), layer);
+        }
+
+        log.info("Graph optimized for inference: {} vertices -> {} vertices", nVertices, vertices.size());
+        return optimized;
+    }
+
+    /**
+     * Merges two preprocessors applied one after another into one, and removes pairs cancelling each other
+     *
+     * @param first  preprocessor applied first, may be null
+     * @param second preprocessor applied second, may be null
+     * @return merged preprocessor, or null if nothing is left
+     */
+    public static InputPreProcessor merge(InputPreProcessor first, InputPreProcessor second) {
+        List<InputPreProcessor> flat = new ArrayList<>();
+        flatten(first, flat);
+        flatten(second, flat);
+
+        List<InputPreProcessor> result = new ArrayList<>();
+        for (InputPreProcessor preProcessor : flat) {
+            if (!result.isEmpty() && cancels(result.get(result.size() - 1), preProcessor)) {
+                result.remove(result.size() - 1);
+            } else {
+                result.add(preProcessor);
+            }
+        }
+
+        if (result.isEmpty())
+            return null;
+        if (result.size() == 1)
+            return result.get(0);
+        return new ComposableInputPreProcessor(result.toArray(new InputPreProcessor[result.size()]));
+    }
+
+    private static void flatten(InputPreProcessor preProcessor, List<InputPreProcessor> target) {
+        if (preProcessor == null)
+            return;
+
+        if (preProcessor instanceof ComposableInputPreProcessor) {
+            for (InputPreProcessor p : ((ComposableInputPreProcessor) preProcessor).getInputPreProcessors())
+                flatten(p, target);
+        } else {
+            target.add(preProcessor);
+        }
+    }
+
+    private static boolean cancels(InputPreProcessor first, InputPreProcessor second) {
+        if (first instanceof CnnToFeedForwardPreProcessor && second instanceof FeedForwardToCnnPreProcessor) {
+            CnnToFeedForwardPreProcessor p1 = (CnnToFeedForwardPreProcessor) first;
+            FeedForwardToCnnPreProcessor p2 = (FeedForwardToCnnPreProcessor) second;
+            return p1.getInputHeight() == p2.getInputHeight() && p1.getInputWidth() == p2.getInputWidth()
+                            && p1.getNumChannels() == p2.getNumChannels();
+        }
+        if (first instanceof FeedForwardToCnnPreProcessor && second instanceof CnnToFeedForwardPreProcessor) {
+            FeedForwardToCnnPreProcessor p1 = (FeedForwardToCnnPreProcessor) first;
+            CnnToFeedForwardPreProcessor p2 = (CnnToFeedForwardPreProcessor) second;
+            return p1.getInputHeight() == p2.getInputHeight() && p1.getInputWidth() == p2.getInputWidth()
+                            && p1.getNumChannels() == p2.getNumChannels();
+        }
+        return (first instanceof RnnToFeedForwardPreProcessor && second instanceof FeedForwardToRnnPreProcessor)
+                        || (first instanceof FeedForwardToRnnPreProcessor
+                                        && second instanceof RnnToFeedForwardPreProcessor);
+    }
+
+    /**
+     * Unwraps frozen layer, and removes dropout and weight noise
+     */
+    private static void stripTrainingOnly(NeuralNetConfiguration conf) {
+        Layer layer = conf.getLayer();
+        if (layer instanceof FrozenLayer) {
+            Layer inner = ((FrozenLayer) layer).getLayer();
+            if (inner.getLayerName() == null)
+                inner.setLayerName(layer.getLayerName());
+            conf.setLayer(inner);
+            layer = inner;
+        }
+
+        layer.setIDropout(null);
+        if (layer instanceof BaseLayer)
+            ((BaseLayer) layer).setWeightNoise(null);
+    }
+
+    private static boolean canFold(Layer source, Layer target) {
+        if (!(target instanceof BatchNormalization))
+            return false;
+
+        //Locked gamma/beta is folded only in the unambiguous case: no scaling and no shift
+        BatchNormalization bn = (BatchNormalization) target;
+        if (bn.isLockGammaBeta() && (bn.getGamma() != 1.0 || bn.getBeta() != 0.0))
+            return false;
+
+        //Conv1D output is 3d, which isn't supported by batch normalization anyway
+        boolean foldable = source instanceof DenseLayer
+                        || (source instanceof ConvolutionLayer && !(source instanceof Convolution1DLayer));
+        return foldable && ((FeedForwardLayer) source).getActivationFn() instanceof ActivationIdentity;
+    }
+
+    private static void enableBias(Layer layer) {
+        if (layer instanceof DenseLayer) {
+            ((DenseLayer) layer).setHasBias(true);
+        } else {
+            ((ConvolutionLayer) layer).setHasBias(true);
+        }
+    }
+
+    private static boolean isLayer(GraphVertex vertex, Class<? extends Layer> layerClass) {
+        return vertex instanceof LayerVertex
+                        && layerClass.isInstance(((LayerVertex) vertex).getLayerConf().getLayer());
+    }
+
+    private static List<String> consumers(Map<String, List<String>> vertexInputs, String name) {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : vertexInputs.entrySet()) {
+            if (entry.getValue().contains(name))
+                result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Removes vertex from graph, and connects its consumers to the replacement vertex
+     */
+    private static void removeVertex(ComputationGraphConfiguration conf, String name, String replacement) {
+        conf.getVertices().remove(name);
+        conf.getVertexInputs().remove(name);
+        for (List<String> inputs : conf.getVertexInputs().values()) {
+            for (int i = 0; i < inputs.size(); i++) {
+                if (inputs.get(i).equals(name))
+                    inputs.set(i, replacement);
+            }
+        }
+    }
+
+    static void copyParams(org.deeplearning4j.nn.api.Layer from, org.deeplearning4j.nn.api.Layer to) {
+        for (Map.Entry<String, INDArray> entry : from.paramTable().entrySet())
+            to.setParam(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Sets weights and bias of the target layer, so it gives output of source layer followed by batch normalization
+     * in inference mode: W' = W * gamma / std, b' = (b - mean) * gamma / std + beta, per output
+     */
+    private static void foldBatchNorm(org.deeplearning4j.nn.api.Layer source,
+                    org.deeplearning4j.nn.api.Layer batchNorm, org.deeplearning4j.nn.api.Layer target) {
+        BatchNormalization bnConf = (BatchNormalization) batchNorm.conf().getLayer();
+        INDArray mean = batchNorm.getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN);
+        //Global variance already includes epsilon, added during training
+        INDArray std = Transforms.sqrt(batchNorm.getParam(BatchNormalizationParamInitializer.GLOBAL_VAR), true);
+
+        INDArray gamma;
+        INDArray beta;
+        if (bnConf.isLockGammaBeta()) {
+            gamma = Nd4j.valueArrayOf(mean.shape(), bnConf.getGamma());
+            beta = Nd4j.valueArrayOf(mean.shape(), bnConf.getBeta());
+        } else {
+            gamma = batchNorm.getParam(BatchNormalizationParamInitializer.GAMMA);
+            beta = batchNorm.getParam(BatchNormalizationParamInitializer.BETA);
+        }
+        INDArray scale = gamma.div(std);
+
+        INDArray weights = source.getParam(DefaultParamInitializer.WEIGHT_KEY).dup();
+        if (weights.rank() == 4) {
+            //Convolution weights: [depthOut, depthIn, kH, kW]
+            Nd4j.getExecutioner().execAndReturn(new BroadcastMulOp(weights, scale, weights, 0));
+        } else {
+            //Dense weights: [nIn, nOut]
+            weights.muliRowVector(scale);
+        }
+
+        INDArray bias = source.paramTable().containsKey(DefaultParamInitializer.BIAS_KEY)
+                        ? source.getParam(DefaultParamInitializer.BIAS_KEY).dup() : Nd4j.zeros(mean.shape());
+        bias.subi(mean).muli(scale).addi(beta);
+
+        target.setParam(DefaultParamInitializer.WEIGHT_KEY, weights);
+        target.setParam(DefaultParamInitializer.BIAS_KEY, bias);
+    }
+
+    private static class Entry {
+        private final NeuralNetConfiguration conf;
+        private final InputPreProcessor preProcessor;
+        private final int index;
+        private int batchNormIndex = -1;
+
+        private Entry(NeuralNetConfiguration conf, InputPreProcessor preProcessor, int index) {
+            this.conf = conf;
+            this.preProcessor = preProcessor;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package org.deeplearning4j.nn.transferlearning;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.eval.Evaluation;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.deeplearning4j.nn.params.QuantizedLayerParamInitializer;
+import org.deeplearning4j.util.QuantizationUtils;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.*;
+
+/**
+ * Post-training int8 quantization of DenseLayer and ConvolutionLayer weights, for CPU inference.
+ *
+ * The network is first optimized by {@link InferenceOptimizer} (so batch normalization is folded into weights
+ * before quantization), then weights of every dense and convolution layer are quantized with one scale per
+ * output channel, and the layer is replaced by {@link QuantizedLayer}. Quantized weights are kept as network
+ * parameters, and an int8 copy of them is multiplied by int8 layer input with int accumulators.
+ *
+ * If calibration data is set, a fixed scale of each quantized layer input is calibrated by a forward pass over it.
+ * Otherwise, input scale is computed for each example at inference time, which is slower, but more accurate for
+ * inputs out of calibrated range.
+ *
+ * Usage:
+ * <pre>
+ * {@code PostTrainingQuantizer quantizer = new PostTrainingQuantizer.Builder().calibrationData(trainIter).build();
+ * MultiLayerNetwork quantized = quantizer.quantize(net);
+ * quantizer.evaluate(net, quantized, testIter);
+ * }
+ * </pre>
+ */
+@Slf4j
+public class PostTrainingQuantizer {
+
+    private final DataSetIterator calibrationData;
+    private final int maxCalibrationBatches;
+
+    private PostTrainingQuantizer(Builder builder) {
+        this.calibrationData = builder.calibrationData;
+        this.maxCalibrationBatches = builder.maxCalibrationBatches;
+    }
+
+    /**
+     * Returns inference-only quantized copy of the specified network. The original network isn't modified.
+     */
+    public MultiLayerNetwork quantize(MultiLayerNetwork network) {
+        MultiLayerNetwork optimized = InferenceOptimizer.optimize(network);
+        MultiLayerConfiguration conf = optimized.getLayerWiseConfigurations().clone();
+        int nLayers = conf.getConfs().size();
+
+        Set<Integer> quantizable = new HashSet<>();
+        for (int i = 0; i < nLayers; i++) {
+            if (isQuantizable(conf.getConf(i).getLayer()))
+                quantizable.add(i);
+        }
+
+        double[] maxAbs = new double[nLayers];
+        if (calibrationData != null) {
+            int batches = 0;
+            calibrationData.reset();
+            while (calibrationData.hasNext() && batches++ < maxCalibrationBatches) {
+                DataSet ds = calibrationData.next();
+                //Note: activations.get(i) is the input of layer i
+                List<INDArray> activations = optimized.feedForward(ds.getFeatures(), false);
+                for (int i : quantizable) {
+                    INDArray input = preProcess(conf.getInputPreProcess(i), activations.get(i));
+                    maxAbs[i] = Math.max(maxAbs[i], maxAbs(input));
+                }
+            }
+        }
+
+        Stats stats = new Stats();
+        for (int i : quantizable) {
+            NeuralNetConfiguration layerConf = conf.getConf(i);
+            double inputScale = calibrationData != null ? QuantizationUtils.scaleFor(maxAbs[i]) : 0.0;
+            layerConf.setLayer(quantizedConf(layerConf.getLayer(), inputScale));
+            layerConf.clearVariables();
+        }
+
+        MultiLayerNetwork quantized = new MultiLayerNetwork(conf);
+        quantized.init();
+        for (int i = 0; i < nLayers; i++)
+            copyParams(optimized.getLayer(i), quantized.getLayer(i), quantizable.contains(i), stats);
+
+        stats.log();
+        return quantized;
+    }
+
+    /**
+     * Returns inference-only quantized copy of the specified graph. Calibration requires graph with single input.
+     * The original graph isn't modified.
+     */
+    public ComputationGraph quantize(ComputationGraph graph) {
+        ComputationGraph optimized = InferenceOptimizer.optimize(graph);
+        ComputationGraphConfiguration conf = optimized.getConfiguration().clone();
+
+        Set<String> quantizable = new HashSet<>();
+        for (Map.Entry<String, GraphVertex> entry : conf.getVertices().entrySet()) {
+            if (entry.getValue() instanceof LayerVertex
+                            && isQuantizable(((LayerVertex) entry.getValue()).getLayerConf().getLayer()))
+                quantizable.add(entry.getKey());
+        }
+
+        Map<String, Double> maxAbs = new HashMap<>();
+        if (calibrationData != null) {
+            if (conf.getNetworkInputs().size() != 1)
+                throw new IllegalStateException("Calibration with DataSetIterator requires graph with single input, got "
+                                + conf.getNetworkInputs());
+
+            String networkInput = conf.getNetworkInputs().get(0);
+            int batches = 0;
+            calibrationData.reset();
+            while (calibrationData.hasNext() && batches++ < maxCalibrationBatches) {
+                DataSet ds = calibrationData.next();
+                optimized.setInput(0, ds.getFeatures());
+                Map<String, INDArray> activations = optimized.feedForward(false, false, true);
+                for (String name : quantizable) {
+                    String source = conf.getVertexInputs().get(name).get(0);
+                    INDArray input = source.equals(networkInput) ? ds.getFeatures() : activations.get(source);
+                    input = preProcess(((LayerVertex) conf.getVertices().get(name)).getPreProcessor(), input);
+
+                    double previous = maxAbs.containsKey(name) ? maxAbs.get(name) : 0.0;
+                    maxAbs.put(name, Math.max(previous, maxAbs(input)));
+                }
+            }
+        }
+
+        Stats stats = new Stats();
+        for (String name : quantizable) {
+            NeuralNetConfiguration layerConf = ((LayerVertex) conf.getVertices().get(name)).getLayerConf();
+            double inputScale = maxAbs.containsKey(name) ? QuantizationUtils.scaleFor(maxAbs.get(name)) : 0.0;
+            layerConf.setLayer(quantizedConf(layerConf.getLayer(), inputScale));
+            layerConf.clearVariables();
+        }
+
+        ComputationGraph quantized = new ComputationGraph(conf);
+        quantized.init();
+        for (org.deeplearning4j.nn.api.Layer layer : quantized.getLayers()) {
+            String name = layer.conf().getLayer().getLayerName();
+            copyParams(optimized.getLayer(name), layer, quantizable.contains(name), stats);
+        }
+
+        stats.log();
+        return quantized;
+    }
+
+    /**
+     * Evaluates original and quantized network on the same data, and logs accuracy delta
+     *
+     * @return evaluation of original and quantized network
+     */
+    public Pair<Evaluation, Evaluation> evaluate(MultiLayerNetwork original, MultiLayerNetwork quantized,
+                    DataSetIterator data) {
+        Evaluation before = original.evaluate(data);
+        data.reset();
+        Evaluation after = quantized.evaluate(data);
+        logDelta(before, after);
+        return new Pair<>(before, after);
+    }
+
+    /**
+     * Evaluates original and quantized graph on the same data, and logs accuracy delta
+     *
+     * @return evaluation of original and quantized graph
+     */
+    public Pair<Evaluation, Evaluation> evaluate(ComputationGraph original, ComputationGraph quantized,
+                    DataSetIterator data) {
+        Evaluation before = original.evaluate(data);
+        data.reset();
+        Evaluation after = quantized.evaluate(data);
+        logDelta(before, after);
+        return new Pair<>(before, after);
+    }
+
+    private static void logDelta(Evaluation before, Evaluation after) {
+        log.info("Quantized network accuracy: {} -> {} (delta {}), F1: {} -> {} (delta {})", before.accuracy(),
+                        after.accuracy(), after.accuracy() - before.accuracy(), before.f1(), after.f1(),
+                        after.f1() - before.f1());
+    }
+
+    private static boolean isQuantizable(Layer layer) {
+        if (!(layer instanceof DenseLayer)
+                        && !(layer instanceof ConvolutionLayer && !(layer instanceof Convolution1DLayer)))
+            return false;
+
+        FeedForwardLayer ffl = (FeedForwardLayer) layer;
+        long fanIn = ffl.getNIn();
+        if (layer instanceof ConvolutionLayer) {
+            int[] kernel = ((ConvolutionLayer) layer).getKernelSize();
+            fanIn *= kernel[0] * kernel[1];
+        }
+        if (fanIn > QuantizationUtils.MAX_ROW_LENGTH) {
+            log.warn("Layer {} is not quantized: fan in {} exceeds max of {}", layer.getLayerName(), fanIn,
+                            QuantizationUtils.MAX_ROW_LENGTH);
+            return false;
+        }
+        return true;
+    }
+
+    private static INDArray preProcess(InputPreProcessor preProcessor, INDArray input) {
+        if (preProcessor == null)
+            return input;
+        return preProcessor.preProcess(input.dup(), input.size(0));
+    }
+
+    private static double maxAbs(INDArray array) {
+        return Transforms.abs(array, true).maxNumber().doubleValue();
+    }
+
+    private static QuantizedLayer quantizedConf(Layer layerConf, double inputScale) {
+        return new QuantizedLayer.Builder().name(layerConf.getLayerName()).layer(layerConf).inputScale(inputScale)
+                        .build();
+    }
+
+    private static void copyParams(org.deeplearning4j.nn.api.Layer from, org.deeplearning4j.nn.api.Layer to,
+                    boolean quantized, Stats stats) {
+        if (!quantized) {
+            InferenceOptimizer.copyParams(from, to);
+            return;
+        }
+
+        quantizeWeights(from, to, stats);
+        if (from.paramTable().containsKey(DefaultParamInitializer.BIAS_KEY)) {
+            //Layers without bias keep zero bias, set at initialization
+            to.setParam(QuantizedLayerParamInitializer.BIAS_KEY, from.getParam(DefaultParamInitializer.BIAS_KEY));
+        }
+    }
+
+    /**
+     * Quantizes weights of dense or convolution layer, one scale per output
+     */
+    private static void quantizeWeights(org.deeplearning4j.nn.api.Layer from, org.deeplearning4j.nn.api.Layer to,
+                    Stats stats) {
+        INDArray weights = from.getParam(DefaultParamInitializer.WEIGHT_KEY);
+        //Dense weights are [nIn, nOut], convolution weights are [nOut, nIn, kH, kW]: need one row per output
+        INDArray rows = from.conf().getLayer() instanceof ConvolutionLayer ? weights : weights.transpose();
+        float[] data = Nd4j.toFlattened('c', rows).data().asFloat();
+
+        int nOut = ((QuantizedLayer) to.conf().getLayer()).nOut();
+        int fanIn = data.length / nOut;
+        byte[] quantized = new byte[data.length];
+        float[] scales = QuantizationUtils.quantizeRows(data, nOut, fanIn, quantized);
+
+        float[] values = new float[quantized.length];
+        for (int i = 0; i < quantized.length; i++)
+            values[i] = quantized[i];
+        to.setParam(QuantizedLayerParamInitializer.WEIGHT_KEY, Nd4j.create(values, new int[] {nOut, fanIn}, 'c'));
+        to.setParam(QuantizedLayerParamInitializer.SCALE_KEY, Nd4j.create(scales));
+
+        stats.layers++;
+        stats.weights += quantized.length;
+    }
+
+    private static class Stats {
+        private int layers;
+        private long weights;
+
+        private void log() {
+            log.info("Quantized {} layers: {} weights, {} KB as int8", layers, weights, weights / 1024);
+        }
+    }
+
+    public static class Builder {
+        private DataSetIterator calibrationData;
+        private int maxCalibrationBatches = 10;
+
+        /**
+         * Data used to calibrate fixed input scales of quantized layers. If not set, input scales are computed
+         * for each example at inference time.
+         *
+         * @param calibrationData representative sample of inference data, such as part of training data
+         */
+        public Builder calibrationData(DataSetIterator calibrationData) {
+            this.calibrationData = calibrationData;
+            return this;
+        }
+
+        /**
+         * Max number of calibration minibatches used. Default: 10
+         */
+        public Builder maxCalibrationBatches(int maxCalibrationBatches) {
+            this.maxCalibrationBatches = maxCalibrationBatches;
+            return this;
+        }
+
+        public PostTrainingQuantizer build() {
+            return new PostTrainingQuantizer(this);
+        }
+    }
+}
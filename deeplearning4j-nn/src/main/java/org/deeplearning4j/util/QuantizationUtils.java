@@ -0,0 +1,286 @@
+package org.deeplearning4j.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Symmetric int8 quantization utilities: float value = int8 value * scale, int8 values in [-127, 127].
+ *
+ * Matrices are stored row by row (c order) in primitive arrays. Large matrices are processed by blocks of rows
+ * in parallel, see {@link #forEachRowBlock}.
+ */
+public class QuantizationUtils {
+
+    public static final int MAX_QUANTIZED = 127;
+
+    /**
+     * Min number of multiply-adds (or values, for quantization) per parallel task
+     */
+    public static final long MIN_TASK_WORK = 1 << 18;
+
+    private static ExecutorService executor;
+
+    /**
+     * Work on rows [from, to) of a matrix
+     */
+    public interface RowBlock {
+        void apply(int from, int to);
+    }
+
+    /**
+     * Max row length supported by {@link #gemm}: longer dot products might overflow int accumulators
+     */
+    public static final int MAX_ROW_LENGTH = Integer.MAX_VALUE / (MAX_QUANTIZED * MAX_QUANTIZED);
+
+    private QuantizationUtils() {}
+
+    private static synchronized ExecutorService executor() {
+        if (executor == null)
+            executor = MultiThreadUtils.newExecutorService();
+        return executor;
+    }
+
+    /**
+     * Splits rows [0, rows) into blocks and applies the work to each of them, in parallel if there is enough work.
+     * Blocks start at multiples of 4 rows. Returns when all blocks are done.
+     *
+     * @param rows       number of rows
+     * @param workPerRow approximate cost of one row, such as the number of multiply-adds
+     * @param block      work on a block of rows
+     */
+    public static void forEachRowBlock(int rows, long workPerRow, final RowBlock block) {
+        long maxTasks = Math.max(1, rows * workPerRow / MIN_TASK_WORK);
+        int tasks = (int) Math.min(Math.min(maxTasks, Runtime.getRuntime().availableProcessors()), (rows + 3) / 4);
+        if (tasks <= 1) {
+            block.apply(0, rows);
+            return;
+        }
+
+        int blockRows = ((rows + tasks - 1) / tasks + 3) / 4 * 4;
+        List<Callable<Void>> callables = new ArrayList<>();
+        for (int from = 0; from < rows; from += blockRows) {
+            final int blockFrom = from;
+            final int blockTo = Math.min(rows, from + blockRows);
+            callables.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    block.apply(blockFrom, blockTo);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> future : executor().invokeAll(callables))
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns scale mapping the specified absolute value to the max quantized value. Zero range gets scale 1,
+     * as all its values are quantized to 0 anyway.
+     */
+    public static float scaleFor(double maxAbs) {
+        return maxAbs > 0 ? (float) (maxAbs / MAX_QUANTIZED) : 1.0f;
+    }
+
+    /**
+     * Returns max absolute value of data[from, to)
+     */
+    public static float maxAbs(float[] data, int from, int to) {
+        float max = 0;
+        for (int i = from; i < to; i++) {
+            float abs = Math.abs(data[i]);
+            if (abs > max)
+                max = abs;
+        }
+        return max;
+    }
+
+    /**
+     * Quantizes data[from, to) with the specified scale. Values out of range are clipped.
+     */
+    public static void quantize(float[] data, int from, int to, float scale, byte[] target) {
+        quantize(data, from, to, scale, target, from);
+    }
+
+    /**
+     * Quantizes data[from, to) with the specified scale into target, starting at targetFrom
+     */
+    private static void quantize(float[] data, int from, int to, float scale, byte[] target, int targetFrom) {
+        float inverse = 1.0f / scale;
+        for (int i = from, t = targetFrom; i < to; i++, t++) {
+            int q = Math.round(data[i] * inverse);
+            if (q > MAX_QUANTIZED)
+                q = MAX_QUANTIZED;
+            else if (q < -MAX_QUANTIZED)
+                q = -MAX_QUANTIZED;
+            target[t] = (byte) q;
+        }
+    }
+
+    /**
+     * Quantizes every row of the matrix with its own scale, in parallel for large matrices
+     *
+     * @param data   matrix, [rows, cols]
+     * @param rows   number of rows
+     * @param cols   number of columns
+     * @param target quantized matrix
+     * @return scale of each row
+     */
+    public static float[] quantizeRows(final float[] data, int rows, final int cols, final byte[] target) {
+        final float[] scales = new float[rows];
+        forEachRowBlock(rows, cols, new RowBlock() {
+            @Override
+            public void apply(int fromRow, int toRow) {
+                for (int i = fromRow; i < toRow; i++) {
+                    int from = i * cols;
+                    scales[i] = scaleFor(maxAbs(data, from, from + cols));
+                    quantize(data, from, from + cols, scales[i], target);
+                }
+            }
+        });
+        return scales;
+    }
+
+    /**
+     * Quantized im2col: writes one row of quantized values per convolution output position, [miniBatch, outH, outW]
+     * in c order, with columns [depth, kH, kW] in c order, matching the order of quantized convolution weights.
+     * Positions out of the input (padding) are zeros. Rows are quantized directly, without a float im2col matrix,
+     * and blocks of rows are processed in parallel for large inputs.
+     *
+     * @param input    input, [miniBatch, depth, inH, inW] in c order
+     * @param shape    input shape
+     * @param kernel   kernel size, [kH, kW]
+     * @param stride   strides
+     * @param pad      top and left padding
+     * @param dilation dilation
+     * @param outSize  output size, [outH, outW]
+     * @param scale    scale of all values, or 0 for a scale computed for each row
+     * @param target   quantized matrix, [miniBatch * outH * outW, depth * kH * kW]
+     * @return scale of each row
+     */
+    public static float[] im2col(final float[] input, int[] shape, final int[] kernel, final int[] stride,
+                    final int[] pad, final int[] dilation, int[] outSize, final float scale, final byte[] target) {
+        final int depth = shape[1];
+        final int inH = shape[2];
+        final int inW = shape[3];
+        final int outH = outSize[0];
+        final int outW = outSize[1];
+        final int cols = depth * kernel[0] * kernel[1];
+        int rows = shape[0] * outH * outW;
+
+        final float[] scales = new float[rows];
+        forEachRowBlock(rows, cols, new RowBlock() {
+            @Override
+            public void apply(int from, int to) {
+                float[] row = new float[cols];
+                for (int r = from; r < to; r++) {
+                    int ow = r % outW;
+                    int oh = (r / outW) % outH;
+                    int n = r / (outW * outH);
+                    int c = 0;
+                    for (int d = 0; d < depth; d++) {
+                        int channel = (n * depth + d) * inH;
+                        for (int kh = 0; kh < kernel[0]; kh++) {
+                            int ih = oh * stride[0] - pad[0] + kh * dilation[0];
+                            boolean inside = ih >= 0 && ih < inH;
+                            int line = (channel + ih) * inW;
+                            for (int kw = 0; kw < kernel[1]; kw++, c++) {
+                                int iw = ow * stride[1] - pad[1] + kw * dilation[1];
+                                row[c] = inside && iw >= 0 && iw < inW ? input[line + iw] : 0.0f;
+                            }
+                        }
+                    }
+                    scales[r] = scale > 0 ? scale : scaleFor(maxAbs(row, 0, cols));
+                    quantize(row, 0, cols, scales[r], target, r * cols);
+                }
+            }
+        });
+        return scales;
+    }
+
+    /**
+     * Int8 matrix multiplication, with A * W^T product accumulated in ints:
+     * out[i, o] = (sum_k a[i, k] * w[o, k]) * aScales[i] * wScales[o] + bias[o]
+     *
+     * Blocks of input rows are multiplied in parallel for large products.
+     *
+     * @param a       quantized input, [rows, cols]
+     * @param aScales scale of each input row
+     * @param w       quantized weights, [nOut, cols]
+     * @param wScales scale of each weight row
+     * @param bias    bias, [nOut], may be null
+     * @param rows    number of input rows
+     * @param cols    row length, at most {@link #MAX_ROW_LENGTH}
+     * @param nOut    number of weight rows
+     * @param out     output, [rows, nOut]
+     */
+    public static void gemm(final byte[] a, final float[] aScales, final byte[] w, final float[] wScales,
+                    final float[] bias, int rows, final int cols, final int nOut, final float[] out) {
+        if (cols > MAX_ROW_LENGTH)
+            throw new IllegalArgumentException("Row length " + cols + " exceeds max of " + MAX_ROW_LENGTH);
+
+        forEachRowBlock(rows, (long) cols * nOut, new RowBlock() {
+            @Override
+            public void apply(int from, int to) {
+                gemmRows(a, aScales, w, wScales, bias, from, to, cols, nOut, out);
+            }
+        });
+    }
+
+    /**
+     * Single threaded {@link #gemm} of input rows [from, to)
+     */
+    private static void gemmRows(byte[] a, float[] aScales, byte[] w, float[] wScales, float[] bias, int from,
+                    int to, int cols, int nOut, float[] out) {
+        //4 input rows at once: every weight row is read once per 4 input rows, and 4 accumulators hide latency
+        int i = from;
+        for (; i + 4 <= to; i += 4) {
+            int a0 = i * cols;
+            int a1 = a0 + cols;
+            int a2 = a1 + cols;
+            int a3 = a2 + cols;
+            for (int o = 0; o < nOut; o++) {
+                int wo = o * cols;
+                int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                for (int k = 0; k < cols; k++) {
+                    int wk = w[wo + k];
+                    s0 += a[a0 + k] * wk;
+                    s1 += a[a1 + k] * wk;
+                    s2 += a[a2 + k] * wk;
+                    s3 += a[a3 + k] * wk;
+                }
+
+                float ws = wScales[o];
+                float b = bias == null ? 0.0f : bias[o];
+                out[i * nOut + o] = s0 * aScales[i] * ws + b;
+                out[(i + 1) * nOut + o] = s1 * aScales[i + 1] * ws + b;
+                out[(i + 2) * nOut + o] = s2 * aScales[i + 2] * ws + b;
+                out[(i + 3) * nOut + o] = s3 * aScales[i + 3] * ws + b;
+            }
+        }
+
+        for (; i < to; i++) {
+            int ai = i * cols;
+            for (int o = 0; o < nOut; o++) {
+                int wo = o * cols;
+                int s = 0;
+                for (int k = 0; k < cols; k++)
+                    s += a[ai + k] * w[wo + k];
+                out[i * nOut + o] = s * aScales[i] * wScales[o] + (bias == null ? 0.0f : bias[o]);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.deeplearning4j.util.reflections;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Reader for DL4J subtype index files: a ServiceLoader-style alternative to classpath scanning, for finding
+ * custom layers, graph vertices, preprocessors etc.
+ *
+ * Every jar (or classes directory) may contain a {@link #INDEX_RESOURCE} file, listing binary names of its
+ * classes (i.e., "org.example.Outer$Inner" for nested classes), one per line. Empty lines and lines starting
+ * with '#' are ignored. Reading these files costs a few resource lookups, instead of scanning every class on
+ * the classpath.
+ */
+@Slf4j
+public class DL4JSubtypesIndex {
+
+    public static final String INDEX_RESOURCE = "META-INF/deeplearning4j/subtypes";
+
+    private DL4JSubtypesIndex() {}
+
+    /**
+     * Loads classes listed in all index files visible to the context class loader (or, if not set, the class
+     * loader of this class). Classes that can't be loaded are skipped, with a warning.
+     *
+     * @return classes listed in index files
+     */
+    public static Set<Class<?>> load() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null)
+            classLoader = DL4JSubtypesIndex.class.getClassLoader();
+        return load(classLoader);
+    }
+
+    /**
+     * Loads classes listed in all index files visible to the specified class loader
+     *
+     * @param classLoader class loader used to find index files and to load classes
+     * @return classes listed in index files
+     */
+    public static Set<Class<?>> load(ClassLoader classLoader) {
+        Set<Class<?>> result = new LinkedHashSet<>();
+        Enumeration<URL> resources;
+        try {
+            resources = classLoader.getResources(INDEX_RESOURCE);
+        } catch (IOException e) {
+            log.warn("Unable to find subtype index files", e);
+            return result;
+        }
+
+        while (resources.hasMoreElements()) {
+            URL url = resources.nextElement();
+            for (String name : readIndex(url)) {
+                try {
+                    result.add(Class.forName(name, false, classLoader));
+                } catch (ClassNotFoundException | LinkageError e) {
+                    log.warn("Skipping class {} listed in subtype index {}: {}", name, url, e.toString());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static Set<String> readIndex(URL url) {
+        Set<String> names = new LinkedHashSet<>();
+        try (InputStream is = url.openStream();
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                names.add(line);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read subtype index {}", url, e);
+        }
+        return names;
+    }
+}
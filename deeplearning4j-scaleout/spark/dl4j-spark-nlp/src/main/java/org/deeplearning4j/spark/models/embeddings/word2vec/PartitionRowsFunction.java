@@ -0,0 +1,76 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+package org.deeplearning4j.spark.models.embeddings.word2vec;
+
+import org.apache.spark.api.java.function.Function2;
+import org.apache.spark.broadcast.Broadcast;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import scala.Tuple2;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Returns rows required to train one partition in sparse mode: syn0 rows of all words of the partition, and
+ * syn1 rows of their Huffman tree points with hierarchic softmax. With negative sampling negatives are drawn
+ * from the partition's own words, so syn1Neg rows are the same as syn0 rows.
+ */
+public class PartitionRowsFunction implements Function2<Integer, Iterator<int[]>, Iterator<Tuple2<Integer, SparseRows>>> {
+
+    private final Broadcast<VocabCache<VocabWord>> vocabCacheBroadcast;
+    private final boolean useHierarchicSoftmax;
+
+    public PartitionRowsFunction(Broadcast<VocabCache<VocabWord>> vocabCacheBroadcast, boolean useHierarchicSoftmax) {
+        this.vocabCacheBroadcast = vocabCacheBroadcast;
+        this.useHierarchicSoftmax = useHierarchicSoftmax;
+    }
+
+    @Override
+    public Iterator<Tuple2<Integer, SparseRows>> call(Integer partition, Iterator<int[]> sentences) throws Exception {
+        BitSet words = new BitSet();
+        while (sentences.hasNext()) {
+            for (int index : sentences.next())
+                words.set(index);
+        }
+
+        int[] syn0Indexes = toArray(words);
+        int[] syn1Indexes = syn0Indexes;
+        if (useHierarchicSoftmax) {
+            VocabCache<VocabWord> vocab = vocabCacheBroadcast.getValue();
+            BitSet points = new BitSet();
+            for (int index : syn0Indexes) {
+                for (Integer point : vocab.elementAtIndex(index).getPoints())
+                    points.set(point);
+            }
+            syn1Indexes = toArray(points);
+        }
+
+        return Collections.singletonList(new Tuple2<>(partition, new SparseRows(syn0Indexes, syn1Indexes)))
+                        .iterator();
+    }
+
+    private static int[] toArray(BitSet set) {
+        int[] result = new int[set.cardinality()];
+        int cnt = 0;
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1))
+            result[cnt++] = i;
+        return result;
+    }
+}
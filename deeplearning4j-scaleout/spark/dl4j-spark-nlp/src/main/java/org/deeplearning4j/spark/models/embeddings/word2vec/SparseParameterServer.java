@@ -0,0 +1,155 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.spark.models.embeddings.word2vec;
+
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+/**
+ * Driver-side parameter server for sparse word2vec training.
+ *
+ * Holds syn0 and syn1 (or syn1Neg) as rows of primitive arrays. Executors get only the rows their partition
+ * needs, via pull(), and their row deltas are applied by push() in a background thread, so the driver
+ * keeps fetching deltas of other partitions meanwhile.
+ *
+ * Every delta is divided by the number of partitions sharing the row, so rows trained by several
+ * partitions get the average of their updates, as with model averaging.
+ */
+public class SparseParameterServer {
+    private final int vectorLength;
+    private final float[][] syn0;
+    private final float[][] syn1;
+
+    // number of partitions sharing each row
+    private final int[] syn0Replicas;
+    private final int[] syn1Replicas;
+
+    private final ExecutorService applier;
+    private final List<Future<?>> pending = new ArrayList<>();
+
+    /**
+     * @param numWords number of syn0 rows
+     * @param numSyn1Rows number of syn1 rows
+     * @param vectorLength
+     * @param seed seed for random syn0 initialization
+     */
+    public SparseParameterServer(int numWords, int numSyn1Rows, int vectorLength, long seed) {
+        this.vectorLength = vectorLength;
+        this.syn0 = new float[numWords][vectorLength];
+        this.syn1 = new float[numSyn1Rows][vectorLength];
+        this.syn0Replicas = new int[numWords];
+        this.syn1Replicas = new int[numSyn1Rows];
+
+        Random rng = new Random(seed);
+        for (int i = 0; i < numWords; i++) {
+            for (int j = 0; j < vectorLength; j++)
+                syn0[i][j] = (rng.nextFloat() - 0.5f) / vectorLength;
+        }
+
+        this.applier = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "SparseParameterServer applier");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Registers rows used by one partition, so their deltas are averaged properly
+     */
+    public void register(@NonNull SparseRows rows) {
+        for (int index : rows.getSyn0Indexes())
+            syn0Replicas[index]++;
+        for (int index : rows.getSyn1Indexes())
+            syn1Replicas[index]++;
+    }
+
+    /**
+     * Returns current values of specified rows. Deltas pushed earlier are applied first.
+     */
+    public SparseRows pull(@NonNull SparseRows rows) {
+        flush();
+        return new SparseRows(rows.getSyn0Indexes(), gather(syn0, rows.getSyn0Indexes()), rows.getSyn1Indexes(),
+                        gather(syn1, rows.getSyn1Indexes()));
+    }
+
+    private float[] gather(float[][] matrix, int[] indexes) {
+        float[] result = new float[indexes.length * vectorLength];
+        for (int i = 0; i < indexes.length; i++)
+            System.arraycopy(matrix[indexes[i]], 0, result, i * vectorLength, vectorLength);
+        return result;
+    }
+
+    /**
+     * Schedules application of row deltas, and returns immediately
+     */
+    public void push(@NonNull final SparseRows delta) {
+        pending.add(applier.submit(new Runnable() {
+            @Override
+            public void run() {
+                scatter(syn0, syn0Replicas, delta.getSyn0Indexes(), delta.getSyn0());
+                scatter(syn1, syn1Replicas, delta.getSyn1Indexes(), delta.getSyn1());
+            }
+        }));
+    }
+
+    private void scatter(float[][] matrix, int[] replicas, int[] indexes, float[] values) {
+        for (int i = 0; i < indexes.length; i++) {
+            float[] row = matrix[indexes[i]];
+            float scale = 1.0f / Math.max(1, replicas[indexes[i]]);
+            int offset = i * vectorLength;
+            for (int j = 0; j < vectorLength; j++)
+                row[j] += values[offset + j] * scale;
+        }
+    }
+
+    /**
+     * Blocks until all pushed deltas are applied
+     */
+    public void flush() {
+        try {
+            for (Future<?> future : pending)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Applies pending deltas, stops background thread and returns syn0 as INDArray
+     */
+    public INDArray shutdown() {
+        flush();
+        applier.shutdown();
+        return Nd4j.create(syn0);
+    }
+}
@@ -0,0 +1,55 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+
+package org.deeplearning4j.spark.models.embeddings.word2vec;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.Serializable;
+
+/**
+ * Subset of syn0 and syn1 rows, used for sparse word2vec training: executors pull rows required by their
+ * partition, and push back row deltas in the same form.
+ *
+ * Indexes are sorted, and values are stored row by row, vectorLength values per index.
+ * Values can be null, if only indexes are needed.
+ */
+public class SparseRows implements Serializable {
+    private static final long serialVersionUID = 2390482398402831L;
+
+    @Getter
+    private final int[] syn0Indexes;
+    @Getter
+    private final float[] syn0;
+    @Getter
+    private final int[] syn1Indexes;
+    @Getter
+    private final float[] syn1;
+
+    public SparseRows(@NonNull int[] syn0Indexes, @NonNull int[] syn1Indexes) {
+        this(syn0Indexes, null, syn1Indexes, null);
+    }
+
+    public SparseRows(@NonNull int[] syn0Indexes, float[] syn0, @NonNull int[] syn1Indexes, float[] syn1) {
+        this.syn0Indexes = syn0Indexes;
+        this.syn0 = syn0;
+        this.syn1Indexes = syn1Indexes;
+        this.syn1 = syn1;
+    }
+}
@@ -0,0 +1,278 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+package org.deeplearning4j.spark.models.embeddings.word2vec;
+
+import org.apache.spark.api.java.function.Function2;
+import org.apache.spark.broadcast.Broadcast;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+
+import java.util.*;
+
+/**
+ * Trains one partition with skip-gram in sparse mode, for one epoch.
+ *
+ * Partition gets only rows it needs, pulled from the driver as its own broadcast, trains local copies of
+ * them, and returns differences between trained and pulled rows. Hierarchic softmax is used if negative is 0,
+ * otherwise negatives are drawn from the partition's own words with the usual unigram^0.75 distribution.
+ */
+public class SparseTrainingFunction implements Function2<Integer, Iterator<int[]>, Iterator<SparseRows>> {
+
+    private final Broadcast<Map<String, Object>> word2vecVarMapBroadcast;
+    private final Broadcast<double[]> expTableBroadcast;
+    private final Broadcast<VocabCache<VocabWord>> vocabCacheBroadcast;
+    private final List<Broadcast<SparseRows>> rowsBroadcasts;
+    private final int epoch;
+
+    private transient int vectorLength;
+    private transient int window;
+    private transient int negative;
+    private transient int maxExp;
+    private transient double[] expTable;
+    private transient float[] syn0;
+    private transient float[] syn1;
+    private transient float[] neu1e;
+
+    // Huffman codes and points of local words, points are local syn1 rows
+    private transient int[][] codes;
+    private transient int[][] points;
+    // local words, with frequency^0.75 distribution
+    private transient int[] table;
+    private transient long nextRandom;
+
+    /**
+     * @param rowsBroadcasts pulled rows, one broadcast per partition
+     * @param epoch zero-based epoch number, used for learning rate decay
+     */
+    public SparseTrainingFunction(Broadcast<Map<String, Object>> word2vecVarMapBroadcast,
+                    Broadcast<double[]> expTableBroadcast, Broadcast<VocabCache<VocabWord>> vocabCacheBroadcast,
+                    List<Broadcast<SparseRows>> rowsBroadcasts, int epoch) {
+        this.word2vecVarMapBroadcast = word2vecVarMapBroadcast;
+        this.expTableBroadcast = expTableBroadcast;
+        this.vocabCacheBroadcast = vocabCacheBroadcast;
+        this.rowsBroadcasts = rowsBroadcasts;
+        this.epoch = epoch;
+    }
+
+    @Override
+    public Iterator<SparseRows> call(Integer partition, Iterator<int[]> sentences) throws Exception {
+        Map<String, Object> word2vecVarMap = word2vecVarMapBroadcast.getValue();
+        VocabCache<VocabWord> vocab = vocabCacheBroadcast.getValue();
+        this.expTable = expTableBroadcast.getValue();
+        this.vectorLength = (int) word2vecVarMap.get("vectorLength");
+        this.window = (int) word2vecVarMap.get("window");
+        this.negative = (int) (double) word2vecVarMap.get("negative");
+        this.maxExp = (int) word2vecVarMap.get("maxExp");
+        double alpha = (double) word2vecVarMap.get("alpha");
+        double minAlpha = (double) word2vecVarMap.get("minAlpha");
+        double sampling = (double) word2vecVarMap.get("sampling");
+        long totalWordCount = (long) word2vecVarMap.get("totalWordCount");
+        long seed = (long) word2vecVarMap.get("seed");
+        int iterations = (int) word2vecVarMap.get("iterations");
+        int numEpochs = (int) word2vecVarMap.get("numEpochs");
+
+        // this is the only place where rows of this partition are fetched
+        SparseRows pulled = rowsBroadcasts.get(partition).getValue();
+        int[] syn0Indexes = pulled.getSyn0Indexes();
+        int[] syn1Indexes = pulled.getSyn1Indexes();
+        if (syn0Indexes.length == 0)
+            return Collections.singletonList(new SparseRows(syn0Indexes, new float[0], syn1Indexes, new float[0]))
+                            .iterator();
+
+        this.syn0 = pulled.getSyn0().clone();
+        this.syn1 = pulled.getSyn1().clone();
+        this.neu1e = new float[vectorLength];
+        this.nextRandom = seed + 31 * partition + 1009 * epoch;
+
+        // sentences are converted to local rows once, since there's more than one pass over them
+        List<int[]> localSentences = new ArrayList<>();
+        long partitionWords = 0;
+        while (sentences.hasNext()) {
+            int[] sentence = sentences.next();
+            int[] local = new int[sentence.length];
+            for (int i = 0; i < sentence.length; i++)
+                local[i] = Arrays.binarySearch(syn0Indexes, sentence[i]);
+            localSentences.add(local);
+            partitionWords += local.length;
+        }
+
+        double[] keepProbability = new double[syn0Indexes.length];
+        double[] frequencies = new double[syn0Indexes.length];
+        for (int i = 0; i < syn0Indexes.length; i++) {
+            VocabWord word = vocab.elementAtIndex(syn0Indexes[i]);
+            frequencies[i] = Math.max(1.0, word.getElementFrequency());
+            keepProbability[i] = sampling > 0
+                            ? (Math.sqrt(frequencies[i] / (sampling * totalWordCount)) + 1) * (sampling * totalWordCount)
+                                            / frequencies[i]
+                            : 1.0;
+        }
+
+        if (negative > 0) {
+            makeTable(frequencies);
+        } else {
+            codes = new int[syn0Indexes.length][];
+            points = new int[syn0Indexes.length][];
+            for (int i = 0; i < syn0Indexes.length; i++) {
+                VocabWord word = vocab.elementAtIndex(syn0Indexes[i]);
+                int codeLength = word.getCodeLength();
+                codes[i] = new int[codeLength];
+                points[i] = new int[codeLength];
+                for (int c = 0; c < codeLength; c++) {
+                    codes[i][c] = word.getCodes().get(c);
+                    points[i][c] = Arrays.binarySearch(syn1Indexes, word.getPoints().get(c));
+                }
+            }
+        }
+
+        long wordsProcessed = 0;
+        long totalWords = Math.max(1, partitionWords * iterations);
+        int[] sampled = new int[16];
+        for (int i = 0; i < iterations; i++) {
+            for (int[] sentence : localSentences) {
+                double progress = (epoch + wordsProcessed / (double) totalWords) / numEpochs;
+                double currentAlpha = Math.max(minAlpha, alpha * (1 - progress));
+                wordsProcessed += sentence.length;
+
+                if (sampled.length < sentence.length)
+                    sampled = new int[sentence.length];
+
+                int length = 0;
+                for (int word : sentence) {
+                    nextRandom = Math.abs(nextRandom * 25214903917L + 11);
+                    if (keepProbability[word] >= (nextRandom & 0xFFFF) / (double) 65536)
+                        sampled[length++] = word;
+                }
+
+                trainSentence(sampled, length, (float) currentAlpha);
+            }
+        }
+
+        float[] pulledSyn0 = pulled.getSyn0();
+        for (int i = 0; i < syn0.length; i++)
+            syn0[i] -= pulledSyn0[i];
+
+        float[] pulledSyn1 = pulled.getSyn1();
+        for (int i = 0; i < syn1.length; i++)
+            syn1[i] -= pulledSyn1[i];
+
+        return Collections.singletonList(new SparseRows(syn0Indexes, syn0, syn1Indexes, syn1)).iterator();
+    }
+
+    private void makeTable(double[] frequencies) {
+        int tableSize = Math.max(100000, frequencies.length * 20);
+        table = new int[tableSize];
+
+        double trainWordsPow = 0.0;
+        for (double frequency : frequencies)
+            trainWordsPow += Math.pow(frequency, 0.75);
+
+        int word = 0;
+        double d1 = Math.pow(frequencies[0], 0.75) / trainWordsPow;
+        for (int i = 0; i < tableSize; i++) {
+            table[i] = word;
+            if (i / (double) tableSize > d1 && word < frequencies.length - 1) {
+                word++;
+                d1 += Math.pow(frequencies[word], 0.75) / trainWordsPow;
+            }
+        }
+    }
+
+    private void trainSentence(int[] sentence, int length, float alpha) {
+        for (int pos = 0; pos < length; pos++) {
+            nextRandom = Math.abs(nextRandom * 25214903917L + 11);
+            int b = (int) (nextRandom % window);
+            int end = window * 2 + 1 - b;
+            for (int a = b; a < end; a++) {
+                if (a == window)
+                    continue;
+
+                int c = pos - window + a;
+                if (c >= 0 && c < length)
+                    trainPair(sentence[pos], sentence[c], alpha);
+            }
+        }
+    }
+
+    private void trainPair(int word, int context, float alpha) {
+        int l1 = context * vectorLength;
+        Arrays.fill(neu1e, 0.0f);
+
+        if (negative > 0) {
+            for (int d = 0; d < negative + 1; d++) {
+                int target;
+                int label;
+                if (d == 0) {
+                    target = word;
+                    label = 1;
+                } else {
+                    nextRandom = Math.abs(nextRandom * 25214903917L + 11);
+                    target = table[(int) ((nextRandom >> 16) % table.length)];
+                    if (target == word)
+                        continue;
+                    label = 0;
+                }
+
+                int l2 = target * vectorLength;
+                double f = dot(l1, l2);
+                double g;
+                if (f > maxExp)
+                    g = (label - 1) * alpha;
+                else if (f < -maxExp)
+                    g = label * alpha;
+                else {
+                    // f == maxExp maps right past the end of the table
+                    int idx = (int) ((f + maxExp) * ((double) expTable.length / maxExp / 2.0));
+                    g = (label - expTable[Math.min(idx, expTable.length - 1)]) * alpha;
+                }
+
+                update(l1, l2, (float) g);
+            }
+        } else {
+            for (int i = 0; i < codes[word].length; i++) {
+                int l2 = points[word][i] * vectorLength;
+                double f = dot(l1, l2);
+                if (f <= -maxExp || f >= maxExp)
+                    continue;
+
+                int idx = (int) ((f + maxExp) * ((double) expTable.length / maxExp / 2.0));
+                if (idx >= expTable.length)
+                    continue;
+
+                double g = (1 - codes[word][i] - expTable[idx]) * alpha;
+                update(l1, l2, (float) g);
+            }
+        }
+
+        for (int j = 0; j < vectorLength; j++)
+            syn0[l1 + j] += neu1e[j];
+    }
+
+    private double dot(int l1, int l2) {
+        double dot = 0.0;
+        for (int j = 0; j < vectorLength; j++)
+            dot += syn0[l1 + j] * syn1[l2 + j];
+        return dot;
+    }
+
+    private void update(int l1, int l2, float g) {
+        for (int j = 0; j < vectorLength; j++) {
+            neu1e[j] += g * syn1[l2 + j];
+            syn1[l2 + j] += g * syn0[l1 + j];
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+package org.deeplearning4j.spark.models.embeddings.word2vec;
+
+import org.apache.spark.api.java.function.Function;
+import org.deeplearning4j.models.word2vec.VocabWord;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Converts sentence of VocabWords into array of their vocabulary indexes, skipping words without index
+ */
+public class VocabWordsToIndexesFunction implements Function<List<VocabWord>, int[]> {
+
+    @Override
+    public int[] call(List<VocabWord> vocabWords) throws Exception {
+        int[] indexes = new int[vocabWords.size()];
+        int cnt = 0;
+        for (VocabWord word : vocabWords) {
+            if (word != null && word.getIndex() >= 0)
+                indexes[cnt++] = word.getIndex();
+        }
+        return cnt == indexes.length ? indexes : Arrays.copyOf(indexes, cnt);
+    }
+}
@@ -26,6 +26,7 @@ import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.storage.StorageLevel;
 import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectorsImpl;
@@ -43,10 +44,12 @@ import org.nd4j.linalg.heartbeat.utils.EnvironmentUtils;
 import org.nd4j.linalg.primitives.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import scala.Tuple2;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -75,6 +78,8 @@ public class Word2Vec extends WordVectorsImpl<VocabWord> implements Serializable
     private boolean removeStop = false;
     private long seed = 42L;
     private boolean useUnknown = false;
+    private boolean sparseUpdates = false;
+    private boolean countByKey = false;
 
     // Constructor to take InMemoryLookupCache table from an already trained model
     protected Word2Vec(INDArray trainedSyn1) {
@@ -106,6 +111,7 @@ public class Word2Vec extends WordVectorsImpl<VocabWord> implements Serializable
                 put("stopWords", stopWords);
                 put("useUnk", useUnknown);
                 put("vectorsConfiguration", configuration);
+                put("countByKey", countByKey);
             }
         };
     }
@@ -123,6 +129,8 @@ public class Word2Vec extends WordVectorsImpl<VocabWord> implements Serializable
                 put("seed", seed);
                 put("maxExp", MAX_EXP);
                 put("batchSize", batchSize);
+                put("sampling", sampling);
+                put("numEpochs", numEpochs);
             }
         };
     }
@@ -200,7 +208,13 @@ public class Word2Vec extends WordVectorsImpl<VocabWord> implements Serializable
         Broadcast<Map<String, Object>> word2vecVarMapBroadcast = sc.broadcast(word2vecVarMap);
         Broadcast<double[]> expTableBroadcast = sc.broadcast(expTable);
 
-
+        if (sparseUpdates) {
+            log.info("Training word2vec sentences with sparse updates ...");
+            INDArray syn0 = trainSparse(sc, vocabWordListRDD, vocabCache, vocabCacheBroadcast,
+                            word2vecVarMapBroadcast, expTableBroadcast);
+            initLookupTable(vocabCache, syn0);
+            return;
+        }
 
         /////////////////////////////////////
         log.info("Training word2vec sentences ...");
@@ -248,12 +262,76 @@ public class Word2Vec extends WordVectorsImpl<VocabWord> implements Serializable
         log.info("Finished calculations...");
 
 
-        vocab = vocabCache;
-        InMemoryLookupTable<VocabWord> inMemoryLookupTable = new InMemoryLookupTable<VocabWord>();
         Environment env = EnvironmentUtils.buildEnvironment();
         env.setNumCores(maxRep);
         env.setAvailableMemory(totals);
         update(env, Event.SPARK);
+        initLookupTable(vocabCache, syn0);
+    }
+
+    /**
+     * Sparse training: every executor pulls only syn0/syn1 rows used by its partition, and returns deltas of
+     * these rows, which are applied on the driver in background while deltas of other partitions are fetched.
+     * Unlike the default mode, all epochs are trained.
+     *
+     * @return trained syn0
+     */
+    protected INDArray trainSparse(JavaSparkContext sc, JavaRDD<List<VocabWord>> vocabWordListRDD,
+                    VocabCache<VocabWord> vocabCache, Broadcast<VocabCache<VocabWord>> vocabCacheBroadcast,
+                    Broadcast<Map<String, Object>> word2vecVarMapBroadcast, Broadcast<double[]> expTableBroadcast) {
+        JavaRDD<int[]> indexesRDD = vocabWordListRDD.map(new VocabWordsToIndexesFunction()).setName("indexesRDD")
+                        .cache();
+
+        // rows used by each partition don't change between epochs, so they are collected once
+        List<Tuple2<Integer, SparseRows>> partitionRows = indexesRDD
+                        .mapPartitionsWithIndex(new PartitionRowsFunction(vocabCacheBroadcast, negative <= 0), true)
+                        .collect();
+        vocabWordListRDD.unpersist();
+
+        SparseParameterServer server =
+                        new SparseParameterServer(vocabCache.numWords(), vocabCache.numWords(), layerSize, seed);
+        SparseRows[] rows = new SparseRows[partitionRows.size()];
+        long pulledRows = 0;
+        for (Tuple2<Integer, SparseRows> pair : partitionRows) {
+            rows[pair._1()] = pair._2();
+            server.register(pair._2());
+            pulledRows += pair._2().getSyn0Indexes().length;
+        }
+        log.info("Partitions: {}; syn0 rows pulled per epoch: {}, vocab size: {}", rows.length, pulledRows,
+                        vocabCache.numWords());
+
+        for (int epoch = 0; epoch < numEpochs; epoch++) {
+            // every partition gets its own broadcast, so executors fetch only rows of their partition
+            List<Broadcast<SparseRows>> rowsBroadcasts = new ArrayList<>();
+            for (SparseRows partition : rows)
+                rowsBroadcasts.add(sc.broadcast(server.pull(partition)));
+
+            JavaRDD<SparseRows> deltasRDD = indexesRDD
+                            .mapPartitionsWithIndex(new SparseTrainingFunction(word2vecVarMapBroadcast,
+                                            expTableBroadcast, vocabCacheBroadcast, rowsBroadcasts, epoch), true)
+                            .persist(StorageLevel.MEMORY_AND_DISK());
+
+            // all partitions are trained in parallel first, then deltas are fetched one partition at a time
+            deltasRDD.count();
+            Iterator<SparseRows> deltas = deltasRDD.toLocalIterator();
+            while (deltas.hasNext())
+                server.push(deltas.next());
+
+            server.flush();
+            deltasRDD.unpersist();
+            for (Broadcast<SparseRows> broadcast : rowsBroadcasts)
+                broadcast.unpersist();
+
+            log.info("Epoch [{}] finished", epoch + 1);
+        }
+
+        indexesRDD.unpersist();
+        return server.shutdown();
+    }
+
+    protected void initLookupTable(VocabCache<VocabWord> vocabCache, INDArray syn0) {
+        vocab = vocabCache;
+        InMemoryLookupTable<VocabWord> inMemoryLookupTable = new InMemoryLookupTable<VocabWord>();
         inMemoryLookupTable.setVocab(vocabCache);
         inMemoryLookupTable.setVectorLength(layerSize);
         inMemoryLookupTable.setSyn0(syn0);
@@ -281,6 +359,8 @@ public class Word2Vec extends WordVectorsImpl<VocabWord> implements Serializable
         protected List<String> stopWords = new ArrayList<>();
         protected int batchSize = 100;
         protected boolean useUnk = false;
+        protected boolean sparseUpdates = false;
+        protected boolean countByKey = false;
         private String tokenizer = "";
         private String tokenPreprocessor = "";
         private int workers = 0;
@@ -391,7 +471,7 @@ public class Word2Vec extends WordVectorsImpl<VocabWord> implements Serializable
         /**
          * This method specifies number of epochs done over whole corpus
          *
-         * PLEASE NOTE: NOT IMPLEMENTED
+         * PLEASE NOTE: only implemented for sparse updates mode
          *
          * @param numEpochs
          * @return
@@ -551,6 +631,36 @@ public class Word2Vec extends WordVectorsImpl<VocabWord> implements Serializable
             return this;
         }
 
+        /**
+         * Enables sparse training mode: executors pull only syn0/syn1 rows used by their partition, and send back
+         * row deltas instead of full vectors, applied on the driver asynchronously. This mode trains all epochs,
+         * applies subsampling, and uses hierarchic softmax only if negative is 0. Negatives are drawn from the
+         * words of the same partition.
+         *
+         * Default value: FALSE
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder useSparseUpdates(boolean reallyUse) {
+            this.sparseUpdates = reallyUse;
+            return this;
+        }
+
+        /**
+         * Enables vocabulary counting with reduceByKey instead of accumulator: words are combined per partition,
+         * filtered by minWordFrequency on executors, and only resulting vocabulary is collected on the driver.
+         *
+         * Default value: FALSE
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder countVocabByKey(boolean reallyUse) {
+            this.countByKey = reallyUse;
+            return this;
+        }
+
         public Word2Vec build() {
             Word2Vec ret = new Word2Vec();
 
@@ -586,6 +696,8 @@ public class Word2Vec extends WordVectorsImpl<VocabWord> implements Serializable
             ret.stopWords = this.stopWords;
             ret.batchSize = this.batchSize;
             ret.useUnknown = this.useUnk;
+            ret.sparseUpdates = this.sparseUpdates;
+            ret.countByKey = this.countByKey;
 
             ret.tokenizer = this.tokenizer;
             ret.tokenPreprocessor = this.tokenPreprocessor;
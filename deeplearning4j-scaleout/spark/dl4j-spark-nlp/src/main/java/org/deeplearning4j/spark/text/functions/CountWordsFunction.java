@@ -0,0 +1,144 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+package org.deeplearning4j.spark.text.functions;
+
+import org.apache.spark.broadcast.Broadcast;
+import org.datavec.spark.functions.FlatMapFunctionAdapter;
+import org.datavec.spark.transform.BaseFlatMapFunctionAdaptee;
+import org.nd4j.linalg.primitives.Pair;
+import scala.Tuple2;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts words of a whole partition in a primitive hash table, and emits every distinct word once, so
+ * reduceByKey gets already combined counts.
+ *
+ * Stop words are counted as STOP, as with WordFreqAccumulator. Partition totals are emitted under reserved keys:
+ * WORDS_KEY holds number of all tokens, as used for learning rate decay, and COUNTED_KEY holds number of
+ * counted (non-empty) tokens.
+ */
+public class CountWordsFunction
+                extends BaseFlatMapFunctionAdaptee<Iterator<Pair<List<String>, AtomicLong>>, Tuple2<String, Long>> {
+
+    public static final String WORDS_KEY = "\u0000words";
+    public static final String COUNTED_KEY = "\u0000counted";
+
+    public CountWordsFunction(Broadcast<List<String>> stopWords) {
+        super(new CountWordsFunctionAdapter(stopWords));
+    }
+}
+
+
+class CountWordsFunctionAdapter
+                implements FlatMapFunctionAdapter<Iterator<Pair<List<String>, AtomicLong>>, Tuple2<String, Long>> {
+
+    private final Broadcast<List<String>> stopWords;
+
+    public CountWordsFunctionAdapter(Broadcast<List<String>> stopWords) {
+        this.stopWords = stopWords;
+    }
+
+    @Override
+    public Iterable<Tuple2<String, Long>> call(Iterator<Pair<List<String>, AtomicLong>> sentences) throws Exception {
+        Set<String> stops = new HashSet<>(stopWords.getValue());
+        WordCountTable table = new WordCountTable();
+
+        long words = 0;
+        long counted = 0;
+        while (sentences.hasNext()) {
+            List<String> sentence = sentences.next().getFirst();
+            words += sentence.size();
+
+            for (String word : sentence) {
+                if (word.isEmpty())
+                    continue;
+
+                table.increment(stops.contains(word) ? "STOP" : word);
+                counted++;
+            }
+        }
+
+        List<Tuple2<String, Long>> result = table.toList();
+        result.add(new Tuple2<>(CountWordsFunction.WORDS_KEY, words));
+        result.add(new Tuple2<>(CountWordsFunction.COUNTED_KEY, counted));
+        return result;
+    }
+
+    /**
+     * Open addressing word-to-count table over primitive arrays
+     */
+    private static class WordCountTable {
+        private String[] keys = new String[1024];
+        private long[] counts = new long[1024];
+        private int size;
+
+        void increment(String word) {
+            int mask = keys.length - 1;
+            int i = mix(word.hashCode()) & mask;
+            while (keys[i] != null) {
+                if (keys[i].equals(word)) {
+                    counts[i]++;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+
+            keys[i] = word;
+            counts[i] = 1;
+            if (++size > keys.length / 2)
+                grow();
+        }
+
+        private void grow() {
+            String[] oldKeys = keys;
+            long[] oldCounts = counts;
+            keys = new String[oldKeys.length * 2];
+            counts = new long[oldKeys.length * 2];
+
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == null)
+                    continue;
+
+                int i = mix(oldKeys[j].hashCode()) & mask;
+                while (keys[i] != null)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                counts[i] = oldCounts[j];
+            }
+        }
+
+        private static int mix(int h) {
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            return h;
+        }
+
+        List<Tuple2<String, Long>> toList() {
+            List<Tuple2<String, Long>> result = new ArrayList<>(size + 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null)
+                    result.add(new Tuple2<>(keys[i], counts[i]));
+            }
+            return result;
+        }
+    }
+}
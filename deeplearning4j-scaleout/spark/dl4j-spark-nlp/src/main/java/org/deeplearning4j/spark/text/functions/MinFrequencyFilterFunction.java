@@ -0,0 +1,38 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+package org.deeplearning4j.spark.text.functions;
+
+import org.apache.spark.api.java.function.Function;
+import scala.Tuple2;
+
+/**
+ * Keeps words with count at or above minimal frequency, and reserved partition totals
+ */
+public class MinFrequencyFilterFunction implements Function<Tuple2<String, Long>, Boolean> {
+    private final long minWordFrequency;
+
+    public MinFrequencyFilterFunction(long minWordFrequency) {
+        this.minWordFrequency = minWordFrequency;
+    }
+
+    @Override
+    public Boolean call(Tuple2<String, Long> pair) throws Exception {
+        return pair._2() >= minWordFrequency || pair._1().equals(CountWordsFunction.WORDS_KEY)
+                        || pair._1().equals(CountWordsFunction.COUNTED_KEY);
+    }
+}
@@ -0,0 +1,35 @@
+/*-
+ *
+ *  * Copyright 2017 Skymind,Inc.
+ *  *
+ *  *    Licensed under the Apache License, Version 2.0 (the "License");
+ *  *    you may not use this file except in compliance with the License.
+ *  *    You may obtain a copy of the License at
+ *  *
+ *  *        http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  *    Unless required by applicable law or agreed to in writing, software
+ *  *    distributed under the License is distributed on an "AS IS" BASIS,
+ *  *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  *    See the License for the specific language governing permissions and
+ *  *    limitations under the License.
+ *
+ */
+package org.deeplearning4j.spark.text.functions;
+
+import org.apache.spark.api.java.function.Function;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pairs sentence with its number of words, like UpdateWordFreqAccumulatorFunction does, but without counting
+ * words into accumulator
+ */
+public class SentenceWordsCountFunction implements Function<List<String>, Pair<List<String>, AtomicLong>> {
+    @Override
+    public Pair<List<String>, AtomicLong> call(List<String> words) throws Exception {
+        return new Pair<>(words, new AtomicLong(words.size()));
+    }
+}
@@ -19,6 +19,7 @@
 package org.deeplearning4j.spark.text.functions;
 
 import org.apache.spark.Accumulator;
+import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.broadcast.Broadcast;
@@ -31,6 +32,7 @@ import org.deeplearning4j.spark.text.accumulators.WordFreqAccumulator;
 import org.nd4j.linalg.primitives.AtomicDouble;
 import org.nd4j.linalg.primitives.Counter;
 import org.nd4j.linalg.primitives.Pair;
+import scala.Tuple2;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -65,6 +67,7 @@ public class TextPipeline {
     private JavaRDD<AtomicLong> sentenceCountRDD;
     private long totalWordCount;
     private boolean useUnk;
+    private boolean countByKey;
     private VectorsConfiguration configuration;
 
     // Empty Constructor
@@ -88,6 +91,7 @@ public class TextPipeline {
         this.tokenizerPreprocessor = (String) tokenizerVarMap.get("tokenPreprocessor");
         this.useUnk = (boolean) tokenizerVarMap.get("useUnk");
         this.configuration = (VectorsConfiguration) tokenizerVarMap.get("vectorsConfiguration");
+        this.countByKey = tokenizerVarMap.containsKey("countByKey") && (boolean) tokenizerVarMap.get("countByKey");
         // Remove Stop words
         // if ((boolean) tokenizerVarMap.get("removeStop")) {
         stopWords = (List<String>) tokenizerVarMap.get("stopWords");
@@ -167,6 +171,10 @@ public class TextPipeline {
     }
 
     public void buildVocabCache() {
+        if (countByKey) {
+            buildVocabCacheByKey();
+            return;
+        }
 
         // Tokenize
         JavaRDD<List<String>> tokenizedRDD = tokenize();
@@ -190,6 +198,48 @@ public class TextPipeline {
 
     }
 
+    /**
+     * Builds vocab cache without accumulator: words are counted per partition in primitive hash tables,
+     * combined with reduceByKey and filtered by min word frequency on executors, so only the truncated
+     * vocabulary is collected on the driver. Total word count is computed in the same pass.
+     *
+     * With useUnk, UNK frequency is the number of counted tokens minus counts of words kept in vocabulary.
+     */
+    public void buildVocabCacheByKey() {
+        sentenceWordsCountRDD = tokenize().map(new SentenceWordsCountFunction()).cache();
+
+        List<Tuple2<String, Long>> counts = JavaPairRDD
+                        .fromJavaRDD(sentenceWordsCountRDD.mapPartitions(new CountWordsFunction(stopWordBroadCast)))
+                        .reduceByKey(new SumCountsFunction()).filter(new MinFrequencyFilterFunction(numWords))
+                        .collect();
+
+        long counted = 0;
+        long kept = 0;
+        for (Tuple2<String, Long> pair : counts) {
+            if (pair._1().equals(CountWordsFunction.WORDS_KEY)) {
+                totalWordCount = pair._2();
+            } else if (pair._1().equals(CountWordsFunction.COUNTED_KEY)) {
+                counted = pair._2();
+            } else {
+                addTokenToVocabCache(pair._1(), pair._2().floatValue());
+                kept += pair._2();
+            }
+        }
+
+        if (useUnk && counted > kept)
+            addTokenToVocabCache(configuration.getUNK(), (float) (counted - kept));
+
+        if (vocabCache.numWords() == 0)
+            throw new IllegalStateException("IllegalStateException: no words left in vocabulary after filtering");
+
+        // huffman tree should be built BEFORE vocab broadcast
+        Huffman huffman = new Huffman(vocabCache.vocabWords());
+        huffman.build();
+        huffman.applyIndexes(vocabCache);
+
+        vocabCacheBroadcast = sc.broadcast(vocabCache);
+    }
+
     public void buildVocabWordListRDD() {
 
         if (sentenceWordsCountRDD == null)
@@ -201,7 +251,10 @@ public class TextPipeline {
                         sentenceWordsCountRDD.map(new GetSentenceCountFunction()).setName("sentenceCountRDD").cache();
         // Actions to fill vocabWordListRDD and sentenceCountRDD
         vocabWordListRDD.count();
-        totalWordCount = sentenceCountRDD.reduce(new ReduceSentenceCount()).get();
+
+        // total word count is known already, if vocabulary was counted by key
+        if (totalWordCount == 0)
+            totalWordCount = sentenceCountRDD.reduce(new ReduceSentenceCount()).get();
 
         // Release sentenceWordsCountRDD from cache
         sentenceWordsCountRDD.unpersist();
@@ -0,0 +1,81 @@
+package org.deeplearning4j.spark.models.embeddings.word2vec;
+
+import org.apache.spark.api.java.JavaRDD;
+import org.datavec.api.util.ClassPathResource;
+import org.deeplearning4j.spark.text.BaseSparkTest;
+import org.deeplearning4j.text.tokenization.tokenizer.preprocessor.CommonPreprocessor;
+import org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory;
+import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SparseWord2VecTest extends BaseSparkTest {
+    private static final Logger log = LoggerFactory.getLogger(SparseWord2VecTest.class);
+
+    @Test
+    public void testSparseParameterServer() throws Exception {
+        SparseParameterServer server = new SparseParameterServer(4, 4, 2, 42L);
+
+        SparseRows first = new SparseRows(new int[] {0, 1}, new int[] {1});
+        SparseRows second = new SparseRows(new int[] {1, 3}, new int[] {1});
+        server.register(first);
+        server.register(second);
+
+        SparseRows pulled = server.pull(first);
+        assertEquals(4, pulled.getSyn0().length);
+        assertEquals(0.0f, pulled.getSyn1()[0], 1e-6f);
+
+        server.push(new SparseRows(new int[] {0, 1}, new float[] {1, 1, 2, 2}, new int[] {1}, new float[] {4, 4}));
+        server.push(new SparseRows(new int[] {1, 3}, new float[] {4, 4, 1, 1}, new int[] {1}, new float[] {2, 2}));
+
+        SparseRows updated = server.pull(first);
+        // row 0 belongs to one partition only, row 1 gets average of both deltas
+        assertEquals(pulled.getSyn0()[0] + 1.0f, updated.getSyn0()[0], 1e-5f);
+        assertEquals(pulled.getSyn0()[2] + 3.0f, updated.getSyn0()[2], 1e-5f);
+        assertEquals(3.0f, updated.getSyn1()[0], 1e-5f);
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testSparseTraining() throws Exception {
+        checkSparseTraining(4);
+    }
+
+    @Test
+    public void testSparseTrainingManyPartitions() throws Exception {
+        // negatives are drawn from words of the same partition only, so small partitions shouldn't hurt quality much
+        checkSparseTraining(32);
+    }
+
+    private void checkSparseTraining(int numPartitions) throws Exception {
+        String dataPath = new ClassPathResource("raw_sentences.txt").getFile().getAbsolutePath();
+        JavaRDD<String> corpus = sc.textFile(dataPath).repartition(numPartitions);
+        assertEquals(numPartitions, corpus.partitions().size());
+
+        TokenizerFactory t = new DefaultTokenizerFactory();
+        t.setTokenPreProcessor(new CommonPreprocessor());
+
+        Word2Vec word2Vec = new Word2Vec.Builder().tokenizerFactory(t).seed(42L).negative(5).layerSize(100)
+                        .windowSize(5).learningRate(0.025).minLearningRate(0.0001).iterations(1).epochs(3)
+                        .minWordFrequency(5).useSparseUpdates(true).build();
+
+        word2Vec.train(corpus);
+
+        assertEquals(word2Vec.vocab().numWords(), word2Vec.lookupTable().getWeights().rows());
+
+        double sim = word2Vec.similarity("day", "night");
+        log.info("day/night similarity with {} partitions: {}", numPartitions, sim);
+
+        Collection<String> words = word2Vec.wordsNearest("day", 10);
+        log.info("Nearest words to 'day': " + words);
+
+        assertTrue(sim > 0.5);
+    }
+}
@@ -302,6 +302,38 @@ public class TextPipelineTest extends BaseSparkTest {
         sc.stop();
     }
 
+    @Test
+    public void testBuildVocabCacheByKey() throws Exception {
+        JavaSparkContext sc = getContext();
+        JavaRDD<String> corpusRDD = getCorpusRDD(sc);
+
+        Word2Vec word2vecByKey = new Word2Vec.Builder().minWordFrequency(1).setNGrams(1)
+                        .tokenizerFactory(
+                                        "org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory")
+                        .tokenPreprocessor(
+                                        "org.deeplearning4j.text.tokenization.tokenizer.preprocessor.CommonPreprocessor")
+                        .stopWords(StopWords.getStopWords()).seed(42L).negative(0).layerSize(100).windowSize(5)
+                        .countVocabByKey(true).build();
+
+        TextPipeline expected = new TextPipeline(corpusRDD, sc.broadcast(word2vec.getTokenizerVarMap()));
+        expected.buildVocabCache();
+        expected.buildVocabWordListRDD();
+
+        TextPipeline pipeline = new TextPipeline(corpusRDD, sc.broadcast(word2vecByKey.getTokenizerVarMap()));
+        pipeline.buildVocabCache();
+        pipeline.buildVocabWordListRDD();
+        VocabCache<VocabWord> vocabCache = pipeline.getVocabCache();
+
+        assertEquals(5, vocabCache.numWords());
+        assertEquals(9, pipeline.getTotalWordCount(), 0);
+        for (VocabWord word : expected.getVocabCache().vocabWords()) {
+            assertTrue(vocabCache.containsWord(word.getWord()));
+            assertEquals(word.getElementFrequency(), vocabCache.tokenFor(word.getWord()).getElementFrequency(), 0);
+        }
+
+        sc.stop();
+    }
+
     @Test
     public void testHuffman() throws Exception {
         JavaSparkContext sc = getContext();
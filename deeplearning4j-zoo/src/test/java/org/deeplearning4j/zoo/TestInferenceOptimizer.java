@@ -0,0 +1,96 @@
+package org.deeplearning4j.zoo;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.transferlearning.InferenceOptimizer;
+import org.deeplearning4j.zoo.model.ResNet50;
+import org.deeplearning4j.zoo.model.SimpleCNN;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.deeplearning4j.TestUtils.assertOutputEquals;
+import static org.deeplearning4j.TestUtils.randomizeBatchNorm;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares output of zoo models before and after inference optimization.
+ */
+@Slf4j
+public class TestInferenceOptimizer {
+
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 10;
+
+    @Test
+    public void testSimpleCNN() throws Exception {
+        MultiLayerNetwork net = simpleCNN();
+
+        MultiLayerNetwork optimized = InferenceOptimizer.optimize(net);
+        log.info("SimpleCNN: {} layers -> {} layers", net.getnLayers(), optimized.getnLayers());
+        assertTrue(optimized.getnLayers() < net.getnLayers());
+
+        INDArray input = Nd4j.rand(new int[] {8, 3, 48, 48});
+        assertOutputEquals(net.output(input), optimized.output(input));
+    }
+
+    @Test
+    public void testResNet50() throws Exception {
+        ComputationGraph graph = resNet50();
+
+        ComputationGraph optimized = InferenceOptimizer.optimize(graph);
+        log.info("ResNet50: {} vertices -> {} vertices", graph.getVertices().length, optimized.getVertices().length);
+        assertTrue(optimized.getVertices().length < graph.getVertices().length);
+
+        INDArray input = Nd4j.rand(new int[] {2, 3, 224, 224});
+        assertOutputEquals(graph.outputSingle(input), optimized.outputSingle(input));
+    }
+
+    @Test
+    @Ignore //Benchmark, should be run manually
+    public void testLatency() throws Exception {
+        MultiLayerNetwork net = simpleCNN();
+        compareLatency("SimpleCNN", net, InferenceOptimizer.optimize(net), Nd4j.rand(new int[] {8, 3, 48, 48}));
+
+        ComputationGraph graph = resNet50();
+        compareLatency("ResNet50", graph, InferenceOptimizer.optimize(graph), Nd4j.rand(new int[] {2, 3, 224, 224}));
+    }
+
+    private static MultiLayerNetwork simpleCNN() {
+        MultiLayerNetwork net = (MultiLayerNetwork) new SimpleCNN(10, 12345, 1).init();
+        randomizeBatchNorm(net.getLayers());
+        return net;
+    }
+
+    private static ComputationGraph resNet50() {
+        ComputationGraph graph = (ComputationGraph) new ResNet50(10, 12345, 1).init();
+        randomizeBatchNorm(graph.getLayers());
+        return graph;
+    }
+
+    private static void compareLatency(String name, Model original, Model optimized, INDArray input) {
+        long originalTime = time(original, input);
+        long optimizedTime = time(optimized, input);
+        log.info("{}: average latency {} ms -> {} ms, minibatch {}", name, originalTime / ITERATIONS,
+                        optimizedTime / ITERATIONS, input.size(0));
+    }
+
+    private static long time(Model model, INDArray input) {
+        for (int i = 0; i < WARMUP; i++)
+            output(model, input);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < ITERATIONS; i++)
+            output(model, input);
+        return System.currentTimeMillis() - start;
+    }
+
+    private static INDArray output(Model model, INDArray input) {
+        if (model instanceof ComputationGraph)
+            return ((ComputationGraph) model).outputSingle(input);
+        return ((MultiLayerNetwork) model).output(input);
+    }
+}